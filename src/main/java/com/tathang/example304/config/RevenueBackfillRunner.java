@@ -0,0 +1,33 @@
+package com.tathang.example304.config;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.tathang.example304.security.services.RevenueRollupService;
+
+/**
+ * Dựng lại bảng doanh thu theo ngày khi khởi động với
+ * {@code --backfill-daily-revenue [--backfill-from=yyyy-MM-dd] [--backfill-to=yyyy-MM-dd]}
+ * (mặc định: toàn bộ lịch sử tới hôm qua). Ứng dụng vẫn chạy bình thường sau khi dựng xong.
+ */
+@Configuration
+public class RevenueBackfillRunner {
+
+    @Bean
+    ApplicationRunner backfillDailyRevenue(RevenueRollupService revenueRollup) {
+        return args -> {
+            if (args.containsOption("backfill-daily-revenue")) {
+                revenueRollup.backfill(date(args.getOptionValues("backfill-from")),
+                        date(args.getOptionValues("backfill-to")));
+            }
+        };
+    }
+
+    private static LocalDate date(List<String> values) {
+        return values == null || values.isEmpty() ? null : LocalDate.parse(values.get(0));
+    }
+}
@@ -1,11 +1,15 @@
 package com.tathang.example304.controllers;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.validation.BindingResult;
@@ -23,10 +27,18 @@ import com.tathang.example304.model.Role;
 import com.tathang.example304.model.User;
 import com.tathang.example304.repository.RoleRepository;
 import com.tathang.example304.repository.UserRepository;
+import com.tathang.example304.security.jwt.JwksKeyResolver;
 import com.tathang.example304.security.jwt.JwtUtils;
+import com.tathang.example304.security.jwt.TokenRefreshException;
+import com.tathang.example304.security.jwt.VerifiedJwt;
+import com.tathang.example304.security.services.AttemptThrottleService;
+import com.tathang.example304.security.services.AuditLog;
+import com.tathang.example304.security.services.PasswordHashingExecutor;
 import com.tathang.example304.security.services.PasswordResetService;
+import com.tathang.example304.security.services.RefreshTokenService;
 import com.tathang.example304.security.services.UserDetailsImpl;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -37,6 +49,10 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
@@ -44,25 +60,39 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "*", maxAge = 3600)
 public class AuthController {
 
+    private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
+
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtils jwtUtils;
     private final AuthenticationManager authenticationManager;
     private final PasswordResetService passwordResetService;
+    private final RefreshTokenService refreshTokenService;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final AttemptThrottleService attemptThrottle;
+    private final AuditLog auditLog;
 
     public AuthController(UserRepository userRepository,
             RoleRepository roleRepository,
             PasswordEncoder passwordEncoder,
             JwtUtils jwtUtils,
             AuthenticationManager authenticationManager,
-            PasswordResetService passwordResetService) {
+            PasswordResetService passwordResetService,
+            RefreshTokenService refreshTokenService,
+            PasswordHashingExecutor passwordHashingExecutor,
+            AttemptThrottleService attemptThrottle,
+            AuditLog auditLog) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtils = jwtUtils;
         this.authenticationManager = authenticationManager;
         this.passwordResetService = passwordResetService;
+        this.refreshTokenService = refreshTokenService;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.attemptThrottle = attemptThrottle;
+        this.auditLog = auditLog;
     }
 
     // ✅ Health check
@@ -71,15 +101,17 @@ public class AuthController {
         return ResponseEntity.ok("Server is running! Auth controller is healthy.");
     }
 
+    // ✅ JWKS: khóa công khai để các node khác tự xác thực access token RS256
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic())
+                .body(JwksKeyResolver.toJwks(jwtUtils.getPublicKeys()));
+    }
+
     // ✅ Register
     @PostMapping("/register")
     public ResponseEntity<String> register(@RequestBody RegisterDto registerDto) {
-        System.out.println("=== REGISTER ===");
-        System.out.println("Username: " + registerDto.getUsername());
-        System.out.println("Email: " + registerDto.getEmail());
-        System.out.println("Password: " + registerDto.getPassword());
-        System.out.println("Requested Roles: " + registerDto.getRoles());
-
         if (userRepository.existsByUsername(registerDto.getUsername())) {
             return new ResponseEntity<>("Username is taken!", HttpStatus.BAD_REQUEST);
         }
@@ -99,7 +131,6 @@ public class AuthController {
             Role userRole = roleRepository.findByName(ERole.ROLE_CUSTOMER)
                     .orElseThrow(() -> new RuntimeException("Error: USER Role is not found."));
             roles.add(userRole);
-            System.out.println("Assigning default USER role");
         } else {
             for (String roleName : registerDto.getRoles()) {
                 try {
@@ -109,9 +140,7 @@ public class AuthController {
                     Role role = roleRepository.findByName(roleEnum)
                             .orElseThrow(() -> new RuntimeException("Error: Role " + roleName + " is not found."));
                     roles.add(role);
-                    System.out.println("Assigning role: " + roleName);
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Invalid role requested: " + roleName);
                     return new ResponseEntity<>("Invalid role: " + roleName, HttpStatus.BAD_REQUEST);
                 }
             }
@@ -120,79 +149,84 @@ public class AuthController {
         user.setRoles(roles);
         User savedUser = userRepository.save(user);
 
-        System.out.println("User registered successfully with ID: " + savedUser.getId());
-        System.out.println("Assigned roles: " + roles.stream()
-                .map(role -> role.getName().name())
-                .collect(Collectors.toList()));
+        auditLog.record("USER_REGISTERED", "userId", savedUser.getId(), "username", savedUser.getUsername(),
+                "roles", roles.stream().map(role -> role.getName().name()).collect(Collectors.toList()));
         return new ResponseEntity<>("User registered success!", HttpStatus.OK);
     }
 
     // ✅ Login với refresh token
+    // BCrypt chạy trên pool riêng (PasswordHashingExecutor), không giữ thread Tomcat;
+    // pool đầy thì trả 429 ngay để các API gọi món/tính tiền không bị nghẽn
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginDto loginDto) {
-        try {
-            System.out.println("🔐 LOGIN ATTEMPT ==================================");
-            System.out.println("Username: " + loginDto.getUsername());
-
-            // Kiểm tra user
-            User user = userRepository.findByUsername(loginDto.getUsername())
-                    .orElseThrow(() -> {
-                        System.out.println("❌ USER NOT FOUND: " + loginDto.getUsername());
-                        return new RuntimeException("User not found");
-                    });
-
-            System.out.println("✅ User found: " + user.getUsername());
-            System.out.println("👤 Full Name: " + user.getFullName());
-            System.out.println("👥 Roles count: " + user.getRoles().size());
-            user.getRoles().forEach(role -> System.out.println("   - Role: " + role.getName()));
-
-            // Authentication
-            System.out.println("🔄 Attempting authentication...");
-            Authentication authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(loginDto.getUsername(), loginDto.getPassword()));
-
-            System.out.println("🎉 Authentication SUCCESS!");
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody LoginDto loginDto,
+            HttpServletRequest httpRequest) {
+        // Chặn brute-force trước khi tốn BCrypt / truy vấn DB
+        if (!attemptThrottle.tryLogin(loginDto.getUsername(), httpRequest.getRemoteAddr())) {
+            auditLog.record("LOGIN_THROTTLED", "username", loginDto.getUsername(), "ip", httpRequest.getRemoteAddr());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(attemptThrottle.loginRetryAfterSeconds()))
+                    .body("Too many login attempts, please try again later"));
+        }
 
-            // Generate tokens
-            System.out.println("🔑 Generating JWT token...");
-            String jwt = jwtUtils.generateJwtToken(authentication);
+        CompletableFuture<Authentication> authentication;
+        try {
+            authentication = passwordHashingExecutor.submit(() -> authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(loginDto.getUsername(), loginDto.getPassword())));
+        } catch (RejectedExecutionException e) {
+            auditLog.record("LOGIN_SHED", "username", loginDto.getUsername(), "ip", httpRequest.getRemoteAddr());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body("Too many login attempts in progress, please retry shortly"));
+        }
 
-            // 🆕 GENERATE REFRESH TOKEN
-            String refreshToken = jwtUtils.generateRefreshToken(authentication);
+        // Ghi refresh token / ký JWT trên pool khác để thread băm rảnh cho lượt đăng nhập kế tiếp
+        return authentication
+                .<ResponseEntity<?>>thenApplyAsync(this::loginResponse, passwordHashingExecutor.completionExecutor())
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    // Sai mật khẩu, không có user, tài khoản bị khóa (isActive = false)...: đều là 401.
+                    // Spring kiểm tra trạng thái tài khoản trước mật khẩu, nên không tách 403 để khỏi lộ tài khoản bị khóa
+                    if (cause instanceof AuthenticationException) {
+                        auditLog.record("LOGIN_FAILURE", "username", loginDto.getUsername(),
+                                "ip", httpRequest.getRemoteAddr(), "error", cause.getMessage());
+                        return new ResponseEntity<>("Invalid username or password! Error: " + cause.getMessage(),
+                                HttpStatus.UNAUTHORIZED);
+                    }
+                    // Lỗi hệ thống (DB, ký token...) không phải lỗi xác thực
+                    logger.error("Login failed for {}", loginDto.getUsername(), cause);
+                    auditLog.record("LOGIN_ERROR", "username", loginDto.getUsername(),
+                            "ip", httpRequest.getRemoteAddr(), "error", cause.getMessage());
+                    return new ResponseEntity<>("Login failed, please try again later",
+                            HttpStatus.INTERNAL_SERVER_ERROR);
+                });
+    }
 
-            System.out.println("✅ JWT Token generated, length: " + jwt.length());
-            System.out.println("✅ Refresh Token generated, length: " + refreshToken.length());
+    private ResponseEntity<?> loginResponse(Authentication authentication) {
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
 
-            UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-            List<String> roles = userDetails.getAuthorities().stream()
-                    .map(item -> item.getAuthority())
-                    .collect(Collectors.toList());
+        // Generate tokens (mở refresh-token family mới cho phiên đăng nhập này)
+        RefreshTokenService.IssuedTokens tokens = refreshTokenService.issue(userDetails);
 
-            System.out.println("✅ Login successful! User: " + userDetails.getUsername());
-            System.out.println("✅ Full Name: " + user.getFullName());
-            System.out.println("✅ Roles: " + roles);
-            System.out.println("==================================================");
+        List<String> roles = userDetails.getAuthorities().stream()
+                .map(item -> item.getAuthority())
+                .collect(Collectors.toList());
 
-            // 🆕 SỬA RESPONSE ĐỂ BAO GỒM REFRESH TOKEN
-            Map<String, Object> response = new HashMap<>();
-            response.put("token", jwt);
-            response.put("refreshToken", refreshToken); // 🆕 THÊM REFRESH TOKEN
-            response.put("type", "Bearer");
-            response.put("id", userDetails.getId());
-            response.put("username", userDetails.getUsername());
-            response.put("fullName", user.getFullName());
-            response.put("email", userDetails.getEmail());
-            response.put("roles", roles);
+        auditLog.record("LOGIN_SUCCESS", "userId", userDetails.getId(), "username", userDetails.getUsername(),
+                "roles", roles);
+        attemptThrottle.loginSucceeded(userDetails.getUsername());
 
-            return ResponseEntity.ok(response);
+        // 🆕 SỬA RESPONSE ĐỂ BAO GỒM REFRESH TOKEN
+        Map<String, Object> response = new HashMap<>();
+        response.put("token", tokens.accessToken());
+        response.put("refreshToken", tokens.refreshToken()); // 🆕 THÊM REFRESH TOKEN
+        response.put("type", "Bearer");
+        response.put("id", userDetails.getId());
+        response.put("username", userDetails.getUsername());
+        response.put("fullName", userDetails.getFullName());
+        response.put("email", userDetails.getEmail());
+        response.put("roles", roles);
 
-        } catch (Exception e) {
-            System.out.println("❌ LOGIN FAILED: " + e.getMessage());
-            e.printStackTrace();
-            System.out.println("==================================================");
-            return new ResponseEntity<>("Invalid username or password! Error: " + e.getMessage(),
-                    HttpStatus.UNAUTHORIZED);
-        }
+        return ResponseEntity.ok(response);
     }
 
     // 🆕 ENDPOINT REFRESH TOKEN (Sử dụng POST /refresh thay vì /refresh-token)
@@ -205,46 +239,10 @@ public class AuthController {
                 return ResponseEntity.badRequest().body("Refresh token is required");
             }
 
-            System.out.println("🔄 REFRESH TOKEN ATTEMPT ===========================");
-            System.out.println("Refresh token length: " + refreshToken.length());
-
-            // Validate refresh token
-            if (!jwtUtils.validateJwtToken(refreshToken)) {
-                System.out.println("❌ Invalid refresh token");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid refresh token");
-            }
-
-            // Check if token is expired
-            if (jwtUtils.isTokenExpired(refreshToken)) {
-                System.out.println("❌ Refresh token expired");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Refresh token expired");
-            }
-
-            // Get username from refresh token
-            String username = jwtUtils.getUserNameFromJwtToken(refreshToken);
-            System.out.println("✅ Valid refresh token for user: " + username);
-
-            // Load user details
-            User user = userRepository.findByUsername(username)
-                    .orElseThrow(() -> new RuntimeException("User not found"));
-
-            // Create authentication object từ user
-            List<GrantedAuthority> authorities = user.getRoles().stream()
-                    .map(role -> (GrantedAuthority) () -> role.getName().name())
-                    .collect(Collectors.toList());
-
-            Authentication authentication = new UsernamePasswordAuthenticationToken(
-                    user.getUsername(), null, authorities);
-
-            // Tạo new access token
-            String newAccessToken = jwtUtils.generateJwtToken(authentication);
-            System.out.println("✅ New access token generated, length: " + newAccessToken.length());
-
-            // Tạo new refresh token
-            String newRefreshToken = jwtUtils.generateRefreshToken(authentication);
-
-            System.out.println("✅ Token refresh successful!");
-            System.out.println("==================================================");
+            // Rotation: token cũ bị vô hiệu, dùng lại token cũ sẽ thu hồi cả family
+            RefreshTokenService.IssuedTokens tokens = refreshTokenService.rotate(refreshToken);
+            String newAccessToken = tokens.accessToken();
+            String newRefreshToken = tokens.refreshToken();
 
             // Return new tokens
             Map<String, Object> response = new HashMap<>();
@@ -254,14 +252,29 @@ public class AuthController {
 
             return ResponseEntity.ok(response);
 
+        } catch (TokenRefreshException e) {
+            auditLog.record("TOKEN_REFRESH_REJECTED", "error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
         } catch (Exception e) {
-            System.out.println("❌ REFRESH TOKEN FAILED: " + e.getMessage());
-            e.printStackTrace();
-            System.out.println("==================================================");
+            auditLog.record("TOKEN_REFRESH_FAILED", "error", e.getMessage());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Token refresh failed: " + e.getMessage());
         }
     }
 
+    // Đăng xuất: thu hồi refresh-token family và access token đang dùng
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestBody(required = false) Map<String, String> request,
+            @RequestHeader(value = "Authorization", required = false) String authorization) {
+        String refreshToken = request != null ? request.get("refreshToken") : null;
+        VerifiedJwt accessToken = authorization != null && authorization.startsWith("Bearer ")
+                ? jwtUtils.verifyJwtToken(authorization.substring(7)).orElse(null)
+                : null;
+
+        refreshTokenService.revoke(refreshToken, accessToken);
+        auditLog.record("LOGOUT", "username", accessToken != null ? accessToken.getUsername() : null);
+        return ResponseEntity.ok(Map.of("message", "Logged out"));
+    }
+
     @GetMapping("/me")
     public ResponseEntity<?> getCurrentUser(Authentication authentication) {
         if (authentication == null || !authentication.isAuthenticated()) {
@@ -270,7 +283,7 @@ public class AuthController {
 
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
 
-        User user = userRepository.findById(userDetails.getId())
+        User user = userRepository.findWithRolesById(userDetails.getId())
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         Map<String, Object> response = new HashMap<>();
@@ -322,7 +335,11 @@ public class AuthController {
     }
 
     @PostMapping("/forgot-password")
-    public ResponseEntity<ApiResponse> forgotPassword(@Valid @RequestBody ForgotPasswordRequest request) {
+    public ResponseEntity<ApiResponse> forgotPassword(@Valid @RequestBody ForgotPasswordRequest request,
+            HttpServletRequest httpRequest) {
+        if (!attemptThrottle.tryOtpSend(request.getEmail(), httpRequest.getRemoteAddr())) {
+            return otpThrottled();
+        }
         boolean success = passwordResetService.sendPasswordResetEmail(request.getEmail());
 
         if (success) {
@@ -336,38 +353,35 @@ public class AuthController {
 
     @PostMapping("/verify-otp")
     public ResponseEntity<ApiResponse> verifyOtp(@Valid @RequestBody VerifyOtpRequest request,
-            BindingResult bindingResult) {
-
-        System.out.println("=== VERIFY OTP CONTROLLER ===");
-        System.out.println("Email: " + request.getEmail());
-        System.out.println("OTP: " + request.getOtp());
+            BindingResult bindingResult, HttpServletRequest httpRequest) {
 
         // Kiểm tra validation errors
         if (bindingResult.hasErrors()) {
             String errorMessage = bindingResult.getFieldErrors().stream()
                     .map(error -> error.getField() + ": " + error.getDefaultMessage())
                     .collect(Collectors.joining(", "));
-            System.out.println("Validation error: " + errorMessage);
             return ResponseEntity.badRequest()
                     .body(new ApiResponse(false, "Validation error: " + errorMessage));
         }
 
+        if (!attemptThrottle.tryOtpRequest(httpRequest.getRemoteAddr())
+                || passwordResetService.isOtpLocked(request.getEmail())) {
+            return otpThrottled();
+        }
+
         try {
             var tokenOptional = passwordResetService.verifyOtp(request.getEmail(), request.getOtp());
 
             if (tokenOptional.isPresent()) {
-                System.out.println("OTP verification successful. Token: " + tokenOptional.get());
                 return ResponseEntity.ok(new ApiResponse(true,
                         "Xác thực OTP thành công",
                         Map.of("token", tokenOptional.get())));
             } else {
-                System.out.println("OTP verification failed");
                 return ResponseEntity.badRequest().body(new ApiResponse(false,
                         "Mã OTP không hợp lệ hoặc đã hết hạn"));
             }
         } catch (Exception e) {
-            System.err.println("Error in verifyOtp controller: " + e.getMessage());
-            e.printStackTrace();
+            auditLog.record("OTP_VERIFY_ERROR", "email", request.getEmail(), "error", e.getMessage());
             return ResponseEntity.internalServerError()
                     .body(new ApiResponse(false, "Lỗi server: " + e.getMessage()));
         }
@@ -390,7 +404,11 @@ public class AuthController {
      * Gửi lại OTP
      */
     @PostMapping("/resend-otp")
-    public ResponseEntity<ApiResponse> resendOtp(@Valid @RequestBody ForgotPasswordRequest request) {
+    public ResponseEntity<ApiResponse> resendOtp(@Valid @RequestBody ForgotPasswordRequest request,
+            HttpServletRequest httpRequest) {
+        if (!attemptThrottle.tryOtpSend(request.getEmail(), httpRequest.getRemoteAddr())) {
+            return otpThrottled();
+        }
         boolean success = passwordResetService.resendOtp(request.getEmail());
 
         if (success) {
@@ -402,6 +420,12 @@ public class AuthController {
         }
     }
 
+    private ResponseEntity<ApiResponse> otpThrottled() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(attemptThrottle.otpRetryAfterSeconds()))
+                .body(new ApiResponse(false, "Bạn đã thử quá nhiều lần. Vui lòng thử lại sau."));
+    }
+
     // DTO helper
     @Data
     @AllArgsConstructor
@@ -10,9 +10,15 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.dto.BillDTO;
+import com.tathang.example304.dto.BillSummaryDTO;
 import com.tathang.example304.model.Bill;
 import com.tathang.example304.model.Bill.PaymentMethod;
+import com.tathang.example304.payload.response.CursorPage;
+import com.tathang.example304.payload.response.NdjsonResponse;
 import com.tathang.example304.security.services.BillService;
 
 @RestController
@@ -21,25 +27,45 @@ import com.tathang.example304.security.services.BillService;
 public class BillController {
 
     private final BillService billService;
+    private final ObjectMapper objectMapper;
 
-    public BillController(BillService billService) {
+    public BillController(BillService billService, ObjectMapper objectMapper) {
         this.billService = billService;
+        this.objectMapper = objectMapper;
+    }
+
+    // Danh sách hóa đơn theo trang, lọc trạng thái tùy chọn: ?status=&after=&limit=
+    @GetMapping
+    @PreAuthorize("hasAnyRole('STAFF','MANAGER','ADMIN')")
+    public ResponseEntity<CursorPage<BillSummaryDTO>> getBills(
+            @RequestParam(required = false) Bill.PaymentStatus status,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(billService.getBills(status, after, limit));
+    }
+
+    // Export hóa đơn dạng NDJSON
+    @GetMapping("/stream")
+    @PreAuthorize("hasAnyRole('MANAGER','ADMIN')")
+    public ResponseEntity<StreamingResponseBody> streamBills(
+            @RequestParam(required = false) Bill.PaymentStatus status) {
+        return NdjsonResponse.<BillSummaryDTO>of(objectMapper, sink -> billService.streamBills(status, sink));
     }
 
     // Tạo hóa đơn
     @PostMapping("/create")
     @PreAuthorize("hasAnyRole('MANAGER','ADMIN','STAFF')")
-    public ResponseEntity<Bill> createBill(
+    public ResponseEntity<BillDTO> createBill(
             @RequestParam Long orderId,
             @RequestParam PaymentMethod method) {
         return ResponseEntity.ok(
-                billService.createBill(orderId, method));
+                BillDTO.from(billService.createBill(orderId, method)));
     }
 
     // Xem hóa đơn theo order
     @GetMapping("/order/{orderId}")
     @PreAuthorize("hasAnyRole('STAFF','MANAGER','ADMIN')")
-    public ResponseEntity<Bill> getBillByOrder(@PathVariable Long orderId) {
+    public ResponseEntity<BillDTO> getBillByOrder(@PathVariable Long orderId) {
         return ResponseEntity.ok(billService.getBillByOrder(orderId));
     }
 
@@ -1,12 +1,14 @@
 package com.tathang.example304.controllers;
 
+import com.tathang.example304.dto.SettlementDTO;
 import com.tathang.example304.security.services.DashboardService;
+import com.tathang.example304.security.services.RevenueRollupService;
+import com.tathang.example304.security.services.SettlementService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +21,12 @@ public class DashboardController {
         @Autowired
         private DashboardService dashboardService;
 
+        @Autowired
+        private SettlementService settlementService;
+
+        @Autowired
+        private RevenueRollupService revenueRollup;
+
         // ===== DASHBOARD TỔNG QUAN =====
         @GetMapping("/overview")
         @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
@@ -71,7 +79,7 @@ public class DashboardController {
         public ResponseEntity<?> getMonthlyRevenue(
                         @RequestParam(required = false) Integer year) {
 
-                Map<String, BigDecimal> revenue = dashboardService.getMonthlyRevenue(year);
+                Map<String, Long> revenue = dashboardService.getMonthlyRevenue(year);
 
                 return ResponseEntity.ok(Map.of(
                                 "success", true,
@@ -147,4 +155,55 @@ public class DashboardController {
                                 "message", "Lấy thống kê đơn hàng thành công",
                                 "data", orderStats));
         }
-}
\ No newline at end of file
+
+        // ===== CHỐT SỔ CUỐI NGÀY =====
+        // Ngày đã chốt thì trả lại bản đã lưu (bản chốt không sửa)
+        @PostMapping("/settlements")
+        @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+        public ResponseEntity<?> settleDay(
+                        @RequestParam(required = false) LocalDate date) {
+
+                // Mặc định chốt ngày hôm qua; ngày hôm nay trở đi chưa kết thúc nên không chốt được
+                LocalDate businessDate = date != null ? date : LocalDate.now().minusDays(1);
+                if (!businessDate.isBefore(LocalDate.now())) {
+                        return ResponseEntity.badRequest().body(Map.of(
+                                        "success", false,
+                                        "message", "Chỉ chốt sổ được ngày đã kết thúc"));
+                }
+                SettlementDTO settlement = settlementService.settle(businessDate);
+
+                return ResponseEntity.ok(Map.of(
+                                "success", true,
+                                "message", "Chốt sổ thành công",
+                                "data", settlement));
+        }
+
+        @GetMapping("/settlements/{date}")
+        @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+        public ResponseEntity<?> getSettlement(@PathVariable LocalDate date) {
+
+                return settlementService.find(date)
+                                .<ResponseEntity<?>>map(settlement -> ResponseEntity.ok(Map.of(
+                                                "success", true,
+                                                "message", "Lấy bản chốt sổ thành công",
+                                                "data", settlement)))
+                                .orElseGet(() -> ResponseEntity.status(404).body(Map.of(
+                                                "success", false,
+                                                "message", "Ngày này chưa chốt sổ")));
+        }
+
+        // Dựng lại bảng doanh thu theo ngày từ hóa đơn (mặc định: toàn bộ lịch sử tới hôm qua)
+        @PostMapping("/revenue/backfill")
+        @PreAuthorize("hasRole('ADMIN')")
+        public ResponseEntity<?> backfillDailyRevenue(
+                        @RequestParam(required = false) LocalDate from,
+                        @RequestParam(required = false) LocalDate to) {
+
+                int days = revenueRollup.backfill(from, to);
+
+                return ResponseEntity.ok(Map.of(
+                                "success", true,
+                                "message", "Đã dựng lại doanh thu " + days + " ngày",
+                                "data", Map.of("days", days)));
+        }
+}
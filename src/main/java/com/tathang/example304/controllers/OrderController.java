@@ -9,45 +9,73 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.tathang.example304.model.Order;
-import com.tathang.example304.model.OrderItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.dto.OrderDTO;
+import com.tathang.example304.dto.OrderItemDTO;
+import com.tathang.example304.dto.OrderSummaryDTO;
+import com.tathang.example304.payload.request.OrderItemRequest;
+import com.tathang.example304.payload.response.BatchItemsResponse;
+import com.tathang.example304.payload.response.CursorPage;
+import com.tathang.example304.payload.response.NdjsonResponse;
 import com.tathang.example304.security.services.OrderService;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/orders")
 @CrossOrigin(origins = "*")
 public class OrderController {
 
     private final OrderService orderService;
+    private final ObjectMapper objectMapper;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, ObjectMapper objectMapper) {
         this.orderService = orderService;
+        this.objectMapper = objectMapper;
+    }
+
+    // Danh sách order theo trang: ?after=<id cuối trang trước>&limit=
+    @GetMapping
+    @PreAuthorize("hasAnyRole('STAFF','MANAGER','ADMIN')")
+    public ResponseEntity<CursorPage<OrderSummaryDTO>> getOrders(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(orderService.getOrders(after, limit));
+    }
+
+    // Export toàn bộ order dạng NDJSON
+    @GetMapping("/stream")
+    @PreAuthorize("hasAnyRole('MANAGER','ADMIN')")
+    public ResponseEntity<StreamingResponseBody> streamOrders() {
+        return NdjsonResponse.of(objectMapper, orderService::streamOrders);
     }
 
     // Mở bàn (tạo order mới)
     @PostMapping("/open")
     @PreAuthorize("hasAnyRole('STAFF','MANAGER')")
-    public ResponseEntity<Order> openOrder(
+    public ResponseEntity<OrderDTO> openOrder(
             @RequestParam Long tableId,
             @RequestParam Long employeeId) {
-        return ResponseEntity.ok(orderService.openOrder(tableId, employeeId));
+        return ResponseEntity.ok(OrderDTO.from(orderService.openOrder(tableId, employeeId)));
     }
 
     // Xem order theo bàn
     @GetMapping("/table/{tableId}")
     @PreAuthorize("hasAnyRole('STAFF','MANAGER')")
-    public ResponseEntity<Order> getOrderByTable(@PathVariable Long tableId) {
+    public ResponseEntity<OrderDTO> getOrderByTable(@PathVariable Long tableId) {
         return ResponseEntity.ok(orderService.getOrderByTable(tableId));
     }
 
     // Thêm món
     @PostMapping("/{orderId}/items")
     @PreAuthorize("hasAnyRole('STAFF','MANAGER')")
-    public ResponseEntity<OrderItem> addItem(
+    public ResponseEntity<OrderItemDTO> addItem(
             @PathVariable Long orderId,
             @RequestParam Long productId,
             @RequestParam Integer quantity) {
@@ -55,6 +83,15 @@ public class OrderController {
                 orderService.addItem(orderId, productId, quantity));
     }
 
+    // Thêm nhiều món một lần (một transaction, một lần broadcast), kết quả theo từng dòng
+    @PostMapping("/{orderId}/items/batch")
+    @PreAuthorize("hasAnyRole('STAFF','MANAGER')")
+    public ResponseEntity<BatchItemsResponse> addItems(
+            @PathVariable Long orderId,
+            @RequestBody List<OrderItemRequest> lines) {
+        return ResponseEntity.ok(orderService.addItems(orderId, lines));
+    }
+
     // Cập nhật số lượng
     @PutMapping("/{orderId}/items/{itemId}")
     @PreAuthorize("hasAnyRole('STAFF','MANAGER')")
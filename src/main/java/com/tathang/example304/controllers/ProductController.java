@@ -11,9 +11,14 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.dto.ProductSummaryDTO;
 import com.tathang.example304.model.Product;
 import com.tathang.example304.payload.request.ProductRequest;
+import com.tathang.example304.payload.response.CursorPage;
+import com.tathang.example304.payload.response.NdjsonResponse;
 import com.tathang.example304.security.services.ProductService;
 
 @RestController
@@ -24,14 +29,13 @@ public class ProductController {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
     @PostMapping
     public ResponseEntity<?> createProductForm(@ModelAttribute ProductRequest request) {
         try {
-            System.out.println("DEBUG - Image: " + request.getImage());
-            System.out.println("DEBUG - Image name: " +
-                    (request.getImage() != null ? request.getImage().getOriginalFilename() : "null"));
-
             Product product = productService.createProduct(request);
 
             Map<String, Object> response = new HashMap<>();
@@ -63,6 +67,22 @@ public class ProductController {
         return ResponseEntity.ok(response);
     }
 
+    // === LẤY PRODUCTS THEO TRANG: ?after=<id cuối trang trước>&limit= ===
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF','CUSTOMER')")
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<ProductSummaryDTO>> getProductPage(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(productService.getProducts(after, limit));
+    }
+
+    // === EXPORT PRODUCTS (NDJSON) ===
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamProducts() {
+        return NdjsonResponse.of(objectMapper, productService::streamProducts);
+    }
+
     // === LẤY ACTIVE PRODUCTS ===
     @PreAuthorize("hasAnyRole('ADMIN','MANAGER','STAFF','CUSTOMER')")
     @GetMapping("/active")
@@ -146,11 +166,6 @@ public class ProductController {
             @RequestParam(value = "image", required = false) MultipartFile image) {
 
         try {
-            System.out.println("=== UPDATE DEBUG ===");
-            System.out.println("Image param: " + image);
-            System.out.println("Image filename: " + (image != null ? image.getOriginalFilename() : "null"));
-            System.out.println("Stock quantity: " + stockQuantity); // DEBUG thêm
-
             Product product = productService.updateProductFromForm(
                     id, name, description, price, categoryId, stockQuantity, imageUrl, active, image); // THÊM
                                                                                                        // stockQuantity
@@ -162,7 +177,6 @@ public class ProductController {
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
-            e.printStackTrace();
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("message", "Lỗi: " + e.getMessage());
@@ -14,10 +14,15 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tathang.example304.dto.CreateStaffRequest;
+import com.tathang.example304.dto.StaffSummaryDTO;
 import com.tathang.example304.dto.UpdateStaffRequest;
 import com.tathang.example304.model.User;
+import com.tathang.example304.payload.response.CursorPage;
+import com.tathang.example304.payload.response.NdjsonResponse;
 import com.tathang.example304.security.services.UserService;
 
 @RestController
@@ -27,9 +32,11 @@ import com.tathang.example304.security.services.UserService;
 public class UserManagementController {
 
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
-    public UserManagementController(UserService userService) {
+    public UserManagementController(UserService userService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.objectMapper = objectMapper;
     }
 
     // Danh sách nhân viên (MANAGER + STAFF)
@@ -38,6 +45,20 @@ public class UserManagementController {
         return ResponseEntity.ok(userService.getAllStaffs());
     }
 
+    // Danh sách nhân viên theo trang: ?after=<id cuối trang trước>&limit=
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<StaffSummaryDTO>> getStaffPage(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(userService.getStaffs(after, limit));
+    }
+
+    // Export nhân viên dạng NDJSON
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamStaffs() {
+        return NdjsonResponse.of(objectMapper, userService::streamStaffs);
+    }
+
     // Tạo nhân viên
     @PostMapping
     public ResponseEntity<User> createStaff(@RequestBody CreateStaffRequest req) {
@@ -4,8 +4,9 @@ import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.stereotype.Controller;
 
-import com.tathang.example304.model.Order;
+import com.tathang.example304.dto.OrderSummaryDTO;
 import com.tathang.example304.security.services.OrderService;
+import com.tathang.example304.security.services.WebSocketService.OrderUpdateMessage;
 
 import java.util.List;
 
@@ -20,13 +21,13 @@ public class WebSocketController {
 
     @MessageMapping("/orders.subscribe")
     @SendTo("/topic/orders")
-    public List<Order> subscribeToOrders() {
+    public List<OrderSummaryDTO> subscribeToOrders() {
         return orderService.getPendingOrders();
     }
 
     @MessageMapping("/order.update")
     @SendTo("/topic/order-updates")
-    public Order updateOrder(Order order) {
+    public OrderUpdateMessage updateOrder(OrderUpdateMessage order) {
         return order;
     }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.tathang.example304.dto;
+
+import java.time.LocalDateTime;
+
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.Money;
+
+// Hóa đơn trả về cho API: chỉ id order / bàn thay vì cả entity Order
+public record BillDTO(
+        Long id,
+        Long orderId,
+        Long tableId,
+        Money totalAmount,
+        Money playFee,
+        Bill.PaymentMethod paymentMethod,
+        Bill.PaymentStatus paymentStatus,
+        LocalDateTime issuedAt,
+        String notes) {
+
+    public static BillDTO from(Bill bill) {
+        Long orderId = bill.getOrder() != null ? bill.getOrder().getId() : null;
+        Long tableId = bill.getOrder() != null && bill.getOrder().getTable() != null
+                ? bill.getOrder().getTable().getId()
+                : null;
+        return new BillDTO(bill.getId(), orderId, tableId, bill.getTotalAmount(), bill.getPlayFee(),
+                bill.getPaymentMethod(), bill.getPaymentStatus(), bill.getIssuedAt(), bill.getNotes());
+    }
+}
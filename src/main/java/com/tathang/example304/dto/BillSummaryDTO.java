@@ -0,0 +1,17 @@
+package com.tathang.example304.dto;
+
+import java.time.LocalDateTime;
+
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.Money;
+
+// Dòng hóa đơn cho danh sách / export: chỉ id order, không nạp order
+public record BillSummaryDTO(
+        Long id,
+        Long orderId,
+        Money totalAmount,
+        Bill.PaymentMethod paymentMethod,
+        Bill.PaymentStatus paymentStatus,
+        LocalDateTime issuedAt,
+        LocalDateTime createdAt) {
+}
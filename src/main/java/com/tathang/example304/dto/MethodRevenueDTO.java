@@ -0,0 +1,11 @@
+package com.tathang.example304.dto;
+
+import com.tathang.example304.model.Bill;
+
+// Hóa đơn PAID trong một khoảng thời gian gom theo phương thức thanh toán (tiền: đơn vị nhỏ nhất)
+public record MethodRevenueDTO(
+        Bill.PaymentMethod paymentMethod,
+        Long billCount,
+        Long revenue,
+        Long playFee) {
+}
@@ -0,0 +1,41 @@
+package com.tathang.example304.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+
+// Order trả về cho API: phần đầu đọc bằng một câu projection, items bằng một câu riêng
+public record OrderDTO(
+        Long id,
+        Long tableId,
+        String tableName,
+        Long employeeId,
+        Order.OrderStatus status,
+        Money totalAmount,
+        String notes,
+        LocalDateTime startTime,
+        LocalDateTime endTime,
+        List<OrderItemDTO> items) {
+
+    // Dùng cho constructor expression trong JPQL (chưa có items)
+    public OrderDTO(Long id, Long tableId, String tableName, Long employeeId, Order.OrderStatus status,
+            Money totalAmount, String notes, LocalDateTime startTime, LocalDateTime endTime) {
+        this(id, tableId, tableName, employeeId, status, totalAmount, notes, startTime, endTime, List.of());
+    }
+
+    public OrderDTO withItems(List<OrderItemDTO> items) {
+        return new OrderDTO(id, tableId, tableName, employeeId, status, totalAmount, notes, startTime, endTime,
+                items);
+    }
+
+    // Không đụng tới items (lazy): dùng cho order vừa tạo
+    public static OrderDTO from(Order order) {
+        return new OrderDTO(order.getId(),
+                order.getTable() != null ? order.getTable().getId() : null,
+                order.getTable() != null ? order.getTable().getTableName() : null,
+                order.getEmployeeId(), order.getStatus(), order.getTotalAmount(), order.getNotes(),
+                order.getStartTime(), order.getEndTime());
+    }
+}
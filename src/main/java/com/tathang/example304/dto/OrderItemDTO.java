@@ -0,0 +1,24 @@
+package com.tathang.example304.dto;
+
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.OrderItem;
+
+// Dòng món trong order: chỉ id + tên sản phẩm, không kèm product/category/order
+public record OrderItemDTO(
+        Long id,
+        Long productId,
+        String productName,
+        Integer quantity,
+        Money price,
+        Money subtotal) {
+
+    // Dùng cho constructor expression trong JPQL
+    public OrderItemDTO(Long id, Long productId, String productName, Integer quantity, Money price) {
+        this(id, productId, productName, quantity, price, price.times(quantity));
+    }
+
+    public static OrderItemDTO from(OrderItem item) {
+        return new OrderItemDTO(item.getId(), item.getProduct().getId(), item.getProduct().getName(),
+                item.getQuantity(), item.getPrice());
+    }
+}
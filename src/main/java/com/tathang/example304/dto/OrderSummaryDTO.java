@@ -0,0 +1,18 @@
+package com.tathang.example304.dto;
+
+import java.time.LocalDateTime;
+
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+
+// Dòng order cho danh sách / export: đọc thẳng bằng constructor expression, không kèm items
+public record OrderSummaryDTO(
+        Long id,
+        Long tableId,
+        Long employeeId,
+        Order.OrderStatus status,
+        Money totalAmount,
+        LocalDateTime startTime,
+        LocalDateTime endTime,
+        LocalDateTime createdAt) {
+}
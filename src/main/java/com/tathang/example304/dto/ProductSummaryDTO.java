@@ -0,0 +1,15 @@
+package com.tathang.example304.dto;
+
+import java.math.BigDecimal;
+
+// Dòng sản phẩm cho danh sách / export, tên category lấy bằng LEFT JOIN trong cùng câu
+public record ProductSummaryDTO(
+        Long id,
+        String name,
+        BigDecimal price,
+        Integer stockQuantity,
+        Boolean active,
+        String imageUrl,
+        Long categoryId,
+        String categoryName) {
+}
@@ -0,0 +1,15 @@
+package com.tathang.example304.dto;
+
+import java.time.LocalDateTime;
+
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Money;
+
+// Order đang chơi cho ticker tiền tạm tính: chỉ những cột cần để tính tiền giờ + tiền món
+public record RunningOrderDTO(
+        Long orderId,
+        Long tableId,
+        BidaTable.TableType tableType,
+        LocalDateTime startTime,
+        Money totalAmount) {
+}
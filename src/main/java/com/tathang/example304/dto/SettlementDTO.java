@@ -0,0 +1,45 @@
+package com.tathang.example304.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import com.tathang.example304.model.Money;
+
+// Bản chốt sổ một ngày trả về cho API (breakdown / inconsistencies đọc từ JSON đã lưu)
+public record SettlementDTO(
+        LocalDate businessDate,
+        LocalDateTime generatedAt,
+        int billCount,
+        int paidBillCount,
+        Money revenue,
+        Money playFee,
+        Breakdown breakdown,
+        int inconsistencyCount,
+        List<Issue> inconsistencies) {
+
+    // Số hóa đơn + tổng tiền của một nhóm
+    public record Totals(long count, Money amount) {
+    }
+
+    // byHour: 24 phần tử theo giờ lập hóa đơn; unpaidByStatus: hóa đơn chưa PAID (không tính doanh thu)
+    public record Breakdown(
+            Map<String, Totals> byPaymentMethod,
+            Map<Long, Totals> byEmployee,
+            Map<Long, Totals> byTable,
+            List<Totals> byHour,
+            Map<String, Totals> unpaidByStatus) {
+    }
+
+    public enum IssueType {
+        PAID_ORDER_WITHOUT_BILL,
+        PAID_ORDER_UNPAID_BILL, // order đã đóng nhưng hóa đơn lập trong ngày chưa được thanh toán
+        PAID_BILL_ORDER_NOT_PAID,
+        BILL_ORDER_TOTAL_MISMATCH,
+        ORDER_ITEMS_TOTAL_MISMATCH
+    }
+
+    public record Issue(IssueType type, Long orderId, Long billId, String detail) {
+    }
+}
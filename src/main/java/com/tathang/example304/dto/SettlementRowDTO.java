@@ -0,0 +1,23 @@
+package com.tathang.example304.dto;
+
+import java.time.LocalDateTime;
+
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+
+// Một hóa đơn trong ngày cho job chốt sổ, kèm order và tổng tiền món (subquery), không nạp entity
+public record SettlementRowDTO(
+        Long billId,
+        Long orderId,
+        Long tableId,
+        Long employeeId,
+        Bill.PaymentMethod paymentMethod,
+        Bill.PaymentStatus paymentStatus,
+        Money billTotal,
+        Money playFee,
+        LocalDateTime issuedAt,
+        Order.OrderStatus orderStatus,
+        Money orderTotal,
+        Long itemsTotal) {
+}
@@ -0,0 +1,14 @@
+package com.tathang.example304.dto;
+
+import java.time.LocalDateTime;
+
+// Dòng nhân viên cho danh sách / export (không có mật khẩu, không nạp roles)
+public record StaffSummaryDTO(
+        Long id,
+        String username,
+        String email,
+        String fullName,
+        String phone,
+        Boolean isActive,
+        LocalDateTime createdAt) {
+}
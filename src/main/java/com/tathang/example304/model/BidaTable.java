@@ -26,6 +26,11 @@ public class BidaTable {
     @Column(name = "status")
     private TableStatus status;
 
+    // Loại bàn quyết định bảng giá giờ chơi (null = STANDARD)
+    @Enumerated(EnumType.STRING)
+    @Column(name = "table_type", length = 16)
+    private TableType tableType;
+
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
@@ -38,6 +43,10 @@ public class BidaTable {
         FREE, OCCUPIED, RESERVED
     }
 
+    public enum TableType {
+        STANDARD, VIP
+    }
+
     // ===== Constructors =====
     public BidaTable() {
     }
@@ -90,6 +99,14 @@ public class BidaTable {
         this.status = status;
     }
 
+    public TableType getTableType() {
+        return tableType;
+    }
+
+    public void setTableType(TableType tableType) {
+        this.tableType = tableType;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
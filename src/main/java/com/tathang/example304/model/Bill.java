@@ -3,22 +3,28 @@ package com.tathang.example304.model;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "bills")
+@Table(name = "bills", indexes = {
+        @Index(name = "idx_bills_issued_at", columnList = "issued_at")
+})
 public class Bill {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Mỗi order tối đa một hóa đơn: gửi lại lệnh tạo không sinh hóa đơn thứ hai
     @OneToOne
-    @JoinColumn(name = "order_id")
+    @JoinColumn(name = "order_id", unique = true)
     private Order order;
 
-    @Column(name = "total_amount", precision = 10, scale = 2)
-    private BigDecimal totalAmount;
+    @Column(name = "total_amount")
+    private Money totalAmount;
+
+    // Phần tiền giờ trong tổng (tính bởi PricingEngine lúc lập hóa đơn)
+    @Column(name = "play_fee")
+    private Money playFee;
 
     @Enumerated(EnumType.STRING)
     @Column(name = "payment_method")
@@ -54,7 +60,7 @@ public class Bill {
     public Bill() {
     }
 
-    public Bill(Order order, BigDecimal totalAmount) {
+    public Bill(Order order, Money totalAmount) {
         this.order = order;
         this.totalAmount = totalAmount;
         this.paymentStatus = PaymentStatus.PENDING;
@@ -78,14 +84,22 @@ public class Bill {
         this.order = order;
     }
 
-    public BigDecimal getTotalAmount() {
+    public Money getTotalAmount() {
         return totalAmount;
     }
 
-    public void setTotalAmount(BigDecimal totalAmount) {
+    public void setTotalAmount(Money totalAmount) {
         this.totalAmount = totalAmount;
     }
 
+    public Money getPlayFee() {
+        return playFee;
+    }
+
+    public void setPlayFee(Money playFee) {
+        this.playFee = playFee;
+    }
+
     public PaymentMethod getPaymentMethod() {
         return paymentMethod;
     }
@@ -0,0 +1,79 @@
+package com.tathang.example304.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+
+/**
+ * Doanh thu đã thanh toán của một ngày theo một phương thức thanh toán (theo ngày lập hóa đơn).
+ * Được cộng/trừ dần mỗi khi hóa đơn vào/ra trạng thái PAID, dựng lại được từ {@code bills}
+ * (backfill). Dashboard đọc bảng này thay vì SUM trên {@code bills}.
+ */
+@Entity
+@Table(name = "daily_revenue", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_daily_revenue_date_method", columnNames = { "revenue_date", "payment_method" })
+})
+public class DailyRevenue {
+
+    // Hóa đơn PAID không có phương thức thanh toán
+    public static final String UNKNOWN_METHOD = "UNKNOWN";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "revenue_date", nullable = false)
+    private LocalDate revenueDate;
+
+    // Tên Bill.PaymentMethod hoặc UNKNOWN
+    @Column(name = "payment_method", length = 16, nullable = false)
+    private String paymentMethod;
+
+    @Column(name = "bill_count", nullable = false)
+    private long billCount;
+
+    @Column(name = "revenue", nullable = false)
+    private Money revenue;
+
+    @Column(name = "play_fee", nullable = false)
+    private Money playFee;
+
+    protected DailyRevenue() {
+    }
+
+    public DailyRevenue(LocalDate revenueDate, String paymentMethod, long billCount, Money revenue, Money playFee) {
+        this.revenueDate = revenueDate;
+        this.paymentMethod = paymentMethod;
+        this.billCount = billCount;
+        this.revenue = revenue;
+        this.playFee = playFee;
+    }
+
+    public static String methodKey(Bill.PaymentMethod method) {
+        return method != null ? method.name() : UNKNOWN_METHOD;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public LocalDate getRevenueDate() {
+        return revenueDate;
+    }
+
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public long getBillCount() {
+        return billCount;
+    }
+
+    public Money getRevenue() {
+        return revenue;
+    }
+
+    public Money getPlayFee() {
+        return playFee;
+    }
+}
@@ -0,0 +1,109 @@
+package com.tathang.example304.model;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Chốt sổ một ngày: tổng tiền hóa đơn đã thanh toán, bảng phân tích (theo phương thức thanh toán,
+ * nhân viên, bàn, giờ) và các điểm lệch tìm được lúc chốt. Ghi một lần, không sửa: mỗi ngày một
+ * bản (unique business_date).
+ */
+@Entity
+@Immutable
+@Table(name = "daily_settlements")
+public class DailySettlement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "business_date", nullable = false, unique = true, updatable = false)
+    private LocalDate businessDate;
+
+    @Column(name = "bill_count", nullable = false, updatable = false)
+    private int billCount;
+
+    @Column(name = "paid_bill_count", nullable = false, updatable = false)
+    private int paidBillCount;
+
+    // Tổng hóa đơn PAID và phần tiền giờ trong đó
+    @Column(name = "revenue", nullable = false, updatable = false)
+    private Money revenue;
+
+    @Column(name = "play_fee", nullable = false, updatable = false)
+    private Money playFee;
+
+    // JSON: SettlementDTO.Breakdown
+    @Column(name = "breakdown", columnDefinition = "TEXT", nullable = false, updatable = false)
+    private String breakdown;
+
+    @Column(name = "inconsistency_count", nullable = false, updatable = false)
+    private int inconsistencyCount;
+
+    // JSON: danh sách SettlementDTO.Issue (có giới hạn, xem app.settlement.max-issues)
+    @Column(name = "inconsistencies", columnDefinition = "TEXT", nullable = false, updatable = false)
+    private String inconsistencies;
+
+    @Column(name = "generated_at", nullable = false, updatable = false)
+    private LocalDateTime generatedAt;
+
+    protected DailySettlement() {
+    }
+
+    public DailySettlement(LocalDate businessDate, int billCount, int paidBillCount, Money revenue, Money playFee,
+            String breakdown, int inconsistencyCount, String inconsistencies, LocalDateTime generatedAt) {
+        this.businessDate = businessDate;
+        this.billCount = billCount;
+        this.paidBillCount = paidBillCount;
+        this.revenue = revenue;
+        this.playFee = playFee;
+        this.breakdown = breakdown;
+        this.inconsistencyCount = inconsistencyCount;
+        this.inconsistencies = inconsistencies;
+        this.generatedAt = generatedAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public LocalDate getBusinessDate() {
+        return businessDate;
+    }
+
+    public int getBillCount() {
+        return billCount;
+    }
+
+    public int getPaidBillCount() {
+        return paidBillCount;
+    }
+
+    public Money getRevenue() {
+        return revenue;
+    }
+
+    public Money getPlayFee() {
+        return playFee;
+    }
+
+    public String getBreakdown() {
+        return breakdown;
+    }
+
+    public int getInconsistencyCount() {
+        return inconsistencyCount;
+    }
+
+    public String getInconsistencies() {
+        return inconsistencies;
+    }
+
+    public LocalDateTime getGeneratedAt() {
+        return generatedAt;
+    }
+}
@@ -4,5 +4,10 @@ public enum ERole {
     ROLE_ADMIN,
     ROLE_MANAGER,
     ROLE_STAFF,
-    ROLE_CUSTOMER
-}
\ No newline at end of file
+    ROLE_CUSTOMER;
+
+    // Mỗi role một bit, dùng cho kiểm tra quyền bằng phép AND (RoleMask)
+    public int bit() {
+        return 1 << ordinal();
+    }
+}
@@ -0,0 +1,119 @@
+package com.tathang.example304.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Một Idempotency-Key đã nhận. Hàng IN_PROGRESS được chèn trước khi chạy request (unique
+ * scope_key chặn bản trùng trên máy khác), chuyển COMPLETED kèm response để các lần gửi lại
+ * trả đúng kết quả cũ.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = {
+        @Index(name = "idx_idempotency_expires", columnList = "expires_at")
+})
+public class IdempotencyRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // username + ":" + key: hai nhân viên dùng trùng key không đụng nhau
+    @Column(name = "scope_key", length = 200, nullable = false, unique = true)
+    private String scopeKey;
+
+    // Method + URI + query + hash body của request đầu tiên; key dùng lại cho request khác thì từ chối
+    @Column(name = "fingerprint", length = 500, nullable = false)
+    private String fingerprint;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16, nullable = false)
+    private Status status = Status.IN_PROGRESS;
+
+    @Column(name = "response_status")
+    private Integer responseStatus;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED
+    }
+
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(String scopeKey, String fingerprint, LocalDateTime expiresAt) {
+        this.scopeKey = scopeKey;
+        this.fingerprint = fingerprint;
+        this.createdAt = LocalDateTime.now();
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public String getScopeKey() {
+        return scopeKey;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Integer getResponseStatus() {
+        return responseStatus;
+    }
+
+    public void setResponseStatus(Integer responseStatus) {
+        this.responseStatus = responseStatus;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public void setResponseBody(String responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
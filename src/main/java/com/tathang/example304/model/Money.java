@@ -0,0 +1,106 @@
+package com.tathang.example304.model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Số tiền theo đơn vị nhỏ nhất của tiền tệ (VND: đồng), lưu bằng {@code long}.
+ *
+ * VND không có phần lẻ nên cột tiền của order / dòng món / hóa đơn dùng kiểu này thay cho
+ * {@code BigDecimal} scale 2: cộng, nhân số lượng là phép tính {@code long}. Lưu DB qua
+ * {@link MoneyConverter}, JSON là một số nguyên (đọc được cả số thập phân / chuỗi cũ như
+ * {@code 25000.00}).
+ */
+@JsonSerialize(using = Money.Serializer.class)
+@JsonDeserialize(using = Money.Deserializer.class)
+public record Money(long minor) implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    public static Money of(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    // Giá trị cũ dạng BigDecimal (giá sản phẩm, dữ liệu nhập): làm tròn về đơn vị nhỏ nhất
+    public static Money of(BigDecimal amount) {
+        return amount == null ? ZERO : of(amount.setScale(0, RoundingMode.HALF_UP).longValueExact());
+    }
+
+    public static long minorOf(Money money) {
+        return money != null ? money.minor : 0;
+    }
+
+    public Money plus(Money other) {
+        return other.minor == 0 ? this : of(Math.addExact(minor, other.minor));
+    }
+
+    public Money plus(long otherMinor) {
+        return otherMinor == 0 ? this : of(Math.addExact(minor, otherMinor));
+    }
+
+    public Money minus(Money other) {
+        return other.minor == 0 ? this : of(Math.subtractExact(minor, other.minor));
+    }
+
+    public Money times(int quantity) {
+        return of(Math.multiplyExact(minor, quantity));
+    }
+
+    public boolean isPositive() {
+        return minor > 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(minor);
+    }
+
+    static final class Serializer extends JsonSerializer<Money> {
+        @Override
+        public void serialize(Money value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeNumber(value.minor);
+        }
+    }
+
+    static final class Deserializer extends JsonDeserializer<Money> {
+        @Override
+        public Money deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken token = p.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                return of(p.getLongValue());
+            }
+            if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                return of(p.getDecimalValue());
+            }
+            if (token == JsonToken.VALUE_STRING) {
+                String text = p.getText().trim();
+                try {
+                    return text.isEmpty() ? null : of(new BigDecimal(text));
+                } catch (NumberFormatException | ArithmeticException e) {
+                    return (Money) ctxt.handleWeirdStringValue(Money.class, text, "not a money amount");
+                }
+            }
+            return (Money) ctxt.handleUnexpectedToken(Money.class, p);
+        }
+    }
+}
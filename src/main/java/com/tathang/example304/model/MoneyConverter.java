@@ -0,0 +1,19 @@
+package com.tathang.example304.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// Money <-> BIGINT (đơn vị nhỏ nhất). Cột DECIMAL cũ vẫn đọc/ghi được qua getLong/setLong.
+@Converter(autoApply = true)
+public class MoneyConverter implements AttributeConverter<Money, Long> {
+
+    @Override
+    public Long convertToDatabaseColumn(Money money) {
+        return money != null ? money.minor() : null;
+    }
+
+    @Override
+    public Money convertToEntityAttribute(Long minor) {
+        return minor != null ? Money.of(minor) : null;
+    }
+}
@@ -3,13 +3,17 @@ package com.tathang.example304.model;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_table_status", columnList = "table_id, status"),
+        @Index(name = "idx_orders_status", columnList = "status")
+})
 public class Order {
 
     @Id
@@ -27,8 +31,8 @@ public class Order {
     @Column(name = "status")
     private OrderStatus status;
 
-    @Column(name = "total_amount", precision = 10, scale = 2)
-    private BigDecimal totalAmount;
+    @Column(name = "total_amount")
+    private Money totalAmount;
 
     @ManyToOne
     @JoinColumn(name = "promotion_id")
@@ -55,11 +59,29 @@ public class Order {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Tăng ở mọi lần ghi (kể cả UPDATE chuyển trạng thái): save entity cũ sẽ bị từ chối thay vì ghi đè
+    @Version
+    @Column(name = "version", columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private Long version = 0L;
+
     public enum OrderStatus {
         OPEN, // vừa mở bàn
         WAITING_PAYMENT, // đã kết thúc chơi (chờ thanh toán)
         PAID, // đã thanh toán
-        CANCELLED
+        CANCELLED;
+
+        // Bảng chuyển trạng thái: các trạng thái được phép đi tới trạng thái này
+        public Set<OrderStatus> allowedFrom() {
+            return switch (this) {
+                case OPEN -> EnumSet.of(WAITING_PAYMENT); // chơi tiếp sau khi đã bấm kết thúc
+                case WAITING_PAYMENT -> EnumSet.of(OPEN);
+                case PAID, CANCELLED -> EnumSet.of(OPEN, WAITING_PAYMENT);
+            };
+        }
+
+        public boolean canTransitionTo(OrderStatus next) {
+            return next.allowedFrom().contains(this);
+        }
     }
 
     /* ================= CONSTRUCTORS ================= */
@@ -72,7 +94,7 @@ public class Order {
         this.employeeId = employeeId;
         this.status = OrderStatus.OPEN;
         this.startTime = LocalDateTime.now();
-        this.totalAmount = BigDecimal.ZERO;
+        this.totalAmount = Money.ZERO;
     }
 
     public LocalDateTime getStartTime() {
@@ -132,11 +154,11 @@ public class Order {
         this.status = status;
     }
 
-    public BigDecimal getTotalAmount() {
+    public Money getTotalAmount() {
         return totalAmount;
     }
 
-    public void setTotalAmount(BigDecimal totalAmount) {
+    public void setTotalAmount(Money totalAmount) {
         this.totalAmount = totalAmount;
     }
 
@@ -171,4 +193,8 @@ public class Order {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public Long getVersion() {
+        return version;
+    }
 }
\ No newline at end of file
@@ -3,7 +3,6 @@ package com.tathang.example304.model;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
@@ -24,14 +23,14 @@ public class OrderItem {
     @Column(name = "quantity")
     private Integer quantity;
 
-    @Column(name = "price", precision = 10, scale = 2)
-    private BigDecimal price;
+    @Column(name = "price")
+    private Money price;
 
-    @Column(name = "unit_price", precision = 10, scale = 2) // Thêm field này
-    private BigDecimal unitPrice;
+    @Column(name = "unit_price") // Thêm field này
+    private Money unitPrice;
 
-    @Column(name = "subtotal", precision = 10, scale = 2)
-    private BigDecimal subtotal;
+    @Column(name = "subtotal")
+    private Money subtotal;
 
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
@@ -45,13 +44,13 @@ public class OrderItem {
     public OrderItem() {
     }
 
-    public OrderItem(Order order, Product product, Integer quantity, BigDecimal price) {
+    public OrderItem(Order order, Product product, Integer quantity, Money price) {
         this.order = order;
         this.product = product;
         this.quantity = quantity;
         this.price = price;
         this.unitPrice = price; // Set unitPrice
-        this.subtotal = price.multiply(BigDecimal.valueOf(quantity));
+        this.subtotal = price.times(quantity);
     }
 
     // Getters and Setters
@@ -88,28 +87,28 @@ public class OrderItem {
         calculateSubtotal();
     }
 
-    public BigDecimal getPrice() {
+    public Money getPrice() {
         return price;
     }
 
-    public void setPrice(BigDecimal price) {
+    public void setPrice(Money price) {
         this.price = price;
         calculateSubtotal();
     }
 
-    public BigDecimal getUnitPrice() {
+    public Money getUnitPrice() {
         return unitPrice;
     }
 
-    public void setUnitPrice(BigDecimal unitPrice) {
+    public void setUnitPrice(Money unitPrice) {
         this.unitPrice = unitPrice;
     }
 
-    public BigDecimal getSubtotal() {
+    public Money getSubtotal() {
         return subtotal;
     }
 
-    public void setSubtotal(BigDecimal subtotal) {
+    public void setSubtotal(Money subtotal) {
         this.subtotal = subtotal;
     }
 
@@ -131,7 +130,7 @@ public class OrderItem {
 
     private void calculateSubtotal() {
         if (this.price != null && this.quantity != null) {
-            this.subtotal = this.price.multiply(BigDecimal.valueOf(this.quantity));
+            this.subtotal = this.price.times(this.quantity);
             this.unitPrice = this.price; // Cập nhật unitPrice
         }
     }
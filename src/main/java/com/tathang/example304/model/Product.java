@@ -43,6 +43,11 @@ public class Product {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Khóa lạc quan: sửa sản phẩm từ bản đọc cũ sẽ không ghi đè tồn kho vừa bị trừ bởi order
+    @Version
+    @Column(name = "version", columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private Long version = 0L;
+
     // Constructors
     public Product() {
     }
@@ -133,4 +138,12 @@ public class Product {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
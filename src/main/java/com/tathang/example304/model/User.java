@@ -53,6 +53,11 @@ public class User {
     @Column(name = "updated_at")
     private java.time.LocalDateTime updatedAt;
 
+    // Tăng khi khóa / đổi role / xóa user (xem UserSecurityVersionService); chỉ đổi bằng UPDATE riêng
+    @Column(name = "security_version", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "bigint not null default 0")
+    private long securityVersion;
+
     @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(name = "user_roles", joinColumns = @JoinColumn(name = "user_id"), inverseJoinColumns = @JoinColumn(name = "role_id"))
     private Set<Role> roles = new HashSet<>();
@@ -178,6 +183,10 @@ public class User {
         this.updatedAt = updatedAt;
     }
 
+    public long getSecurityVersion() {
+        return securityVersion;
+    }
+
     public Set<Role> getRoles() {
         return roles;
     }
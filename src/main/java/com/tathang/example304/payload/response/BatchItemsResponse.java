@@ -0,0 +1,108 @@
+package com.tathang.example304.payload.response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tathang.example304.model.Money;
+
+// Kết quả thêm nhiều món một lần: tổng order sau khi thêm + kết quả từng dòng theo thứ tự gửi lên
+public class BatchItemsResponse {
+    private Long orderId;
+    private Money totalAmount;
+    private int succeeded;
+    private int failed;
+    private List<LineResult> lines = new ArrayList<>();
+
+    public BatchItemsResponse(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public void addLine(LineResult line) {
+        lines.add(line);
+        if (line.isSuccess()) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public Money getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(Money totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<LineResult> getLines() {
+        return lines;
+    }
+
+    public static class LineResult {
+        private int index;
+        private Long productId;
+        private Integer quantity;
+        private boolean success;
+        private Long itemId;
+        private String error;
+
+        public static LineResult ok(int index, Long productId, Integer quantity, Long itemId) {
+            LineResult result = new LineResult(index, productId, quantity);
+            result.success = true;
+            result.itemId = itemId;
+            return result;
+        }
+
+        public static LineResult failed(int index, Long productId, Integer quantity, String error) {
+            LineResult result = new LineResult(index, productId, quantity);
+            result.error = error;
+            return result;
+        }
+
+        private LineResult(int index, Long productId, Integer quantity) {
+            this.index = index;
+            this.productId = productId;
+            this.quantity = quantity;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public Integer getQuantity() {
+            return quantity;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public Long getItemId() {
+            return itemId;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
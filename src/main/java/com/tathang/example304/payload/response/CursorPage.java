@@ -0,0 +1,31 @@
+package com.tathang.example304.payload.response;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+// Một trang theo keyset (id tăng dần): client gửi lại nextCursor qua after= để lấy trang sau.
+// Dựng từ Slice nên không chạy câu COUNT.
+public record CursorPage<T>(List<T> items, Long nextCursor, boolean hasNext) {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    public static long after(Long after) {
+        return after != null ? after : 0L;
+    }
+
+    public static Pageable limit(Integer limit) {
+        int size = limit == null || limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        return PageRequest.of(0, size);
+    }
+
+    public static <T> CursorPage<T> of(Slice<T> slice, Function<T, Long> idOf) {
+        List<T> items = slice.getContent();
+        Long next = items.isEmpty() ? null : idOf.apply(items.get(items.size() - 1));
+        return new CursorPage<>(items, slice.hasNext() ? next : null, slice.hasNext());
+    }
+}
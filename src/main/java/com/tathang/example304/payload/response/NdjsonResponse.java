@@ -0,0 +1,42 @@
+package com.tathang.example304.payload.response;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Trả danh sách lớn dạng NDJSON (mỗi dòng một object), ghi dần trong lúc đọc DB.
+// source nhận một consumer và đẩy từng phần tử vào đó (vd. service đọc qua JPA Stream).
+public final class NdjsonResponse {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private NdjsonResponse() {
+    }
+
+    public static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper mapper, Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = out -> {
+            BufferedOutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+            try {
+                source.accept(item -> {
+                    try {
+                        buffered.write(mapper.writeValueAsBytes(item));
+                        buffered.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause(); // client ngắt kết nối: dừng đọc DB, đóng stream
+            }
+            buffered.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
@@ -1,21 +1,40 @@
 package com.tathang.example304.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.tathang.example304.dto.BillDTO;
+import com.tathang.example304.dto.BillSummaryDTO;
+import com.tathang.example304.dto.MethodRevenueDTO;
+import com.tathang.example304.dto.SettlementRowDTO;
 import com.tathang.example304.model.Bill;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface BillRepository extends JpaRepository<Bill, Long> {
         Optional<Bill> findByOrderId(Long orderId);
 
+        // Đổi trạng thái hóa đơn: hai lần xác nhận cùng lúc chạy lần lượt, lần sau thấy PAID và
+        // không cộng doanh thu lần nữa
+        @Lock(LockModeType.PESSIMISTIC_WRITE)
+        @Query("SELECT b FROM Bill b WHERE b.id = :id")
+        Optional<Bill> findByIdForUpdate(@Param("id") Long id);
+
         List<Bill> findByPaymentStatus(Bill.PaymentStatus paymentStatus);
 
         @Query("SELECT b FROM Bill b WHERE b.issuedAt BETWEEN :startDate AND :endDate")
@@ -27,75 +46,75 @@ public interface BillRepository extends JpaRepository<Bill, Long> {
                             WHERE b.paymentStatus = com.tathang.example304.model.Bill.PaymentStatus.PAID
                             AND b.issuedAt BETWEEN :start AND :end
                         """)
-        BigDecimal getTotalRevenueByDateRange(
+        long getTotalRevenueByDateRange(
                         @Param("start") LocalDateTime start,
                         @Param("end") LocalDateTime end);
 
+        // Hóa đơn PAID trong [start, end) gom theo phương thức (index issued_at, không bọc cột trong DATE())
         @Query("""
-                        SELECT COALESCE(SUM(b.totalAmount), 0)
+                        SELECT new com.tathang.example304.dto.MethodRevenueDTO(b.paymentMethod, COUNT(b),
+                                SUM(b.totalAmount), SUM(b.playFee))
                         FROM Bill b
-                        WHERE b.paymentStatus = 'PAID'
+                        WHERE b.paymentStatus = com.tathang.example304.model.Bill.PaymentStatus.PAID
+                        AND b.issuedAt >= :start AND b.issuedAt < :end
+                        GROUP BY b.paymentMethod
                         """)
-        BigDecimal getTotalRevenue();
+        List<MethodRevenueDTO> sumPaidByPaymentMethod(@Param("start") LocalDateTime start,
+                        @Param("end") LocalDateTime end);
 
-        @Query("""
-                        SELECT COALESCE(SUM(b.totalAmount), 0)
-                        FROM Bill b
-                        WHERE b.paymentStatus = 'PAID'
-                        AND b.issuedAt >= :startDate
-                        """)
-        BigDecimal getRevenueAfter(@Param("startDate") LocalDateTime startDate);
+        @Query("SELECT MIN(b.issuedAt) FROM Bill b WHERE b.paymentStatus = com.tathang.example304.model.Bill.PaymentStatus.PAID")
+        LocalDateTime findFirstPaidIssuedAt();
+
+        List<Bill> findTop10ByCreatedAtAfterOrderByCreatedAtDesc(LocalDateTime cutoff);
+
+        // Method này đã đúng (dùng 'PAID')
+        @Query("SELECT COALESCE(SUM(b.totalAmount), 0) FROM Bill b " +
+                        "WHERE b.paymentStatus = 'PAID' AND b.createdAt BETWEEN :startDate AND :endDate")
+        long getRevenueFromPaidOrders(@Param("startDate") LocalDateTime startDate,
+                        @Param("endDate") LocalDateTime endDate);
 
         @Query("""
-                        SELECT COALESCE(SUM(b.totalAmount), 0)
-                        FROM Bill b
-                        WHERE b.paymentStatus = 'PAID'
-                        AND b.issuedAt BETWEEN :startDate AND :endDate
+                        SELECT new com.tathang.example304.dto.BillDTO(b.id, o.id, o.table.id, b.totalAmount,
+                                b.playFee, b.paymentMethod, b.paymentStatus, b.issuedAt, b.notes)
+                        FROM Bill b JOIN b.order o
+                        WHERE o.id = :orderId
                         """)
-        BigDecimal getRevenueBetween(
-                        @Param("startDate") LocalDateTime startDate,
-                        @Param("endDate") LocalDateTime endDate);
+        Optional<BillDTO> findViewByOrderId(@Param("orderId") Long orderId);
 
+        // Keyset theo id, lọc trạng thái nếu có (status = null: tất cả)
         @Query("""
-                        SELECT DATE(b.issuedAt), SUM(b.totalAmount)
+                        SELECT new com.tathang.example304.dto.BillSummaryDTO(b.id, b.order.id, b.totalAmount,
+                                b.paymentMethod, b.paymentStatus, b.issuedAt, b.createdAt)
                         FROM Bill b
-                        WHERE b.paymentStatus = 'PAID'
-                        AND b.issuedAt BETWEEN :startDate AND :endDate
-                        GROUP BY DATE(b.issuedAt)
-                        ORDER BY DATE(b.issuedAt)
+                        WHERE b.id > :after
+                        AND (:status IS NULL OR b.paymentStatus = :status)
+                        ORDER BY b.id
                         """)
-        List<Object[]> getDailyRevenueBetween(
-                        @Param("startDate") LocalDateTime startDate,
-                        @Param("endDate") LocalDateTime endDate);
+        Slice<BillSummaryDTO> findSummariesAfter(@Param("status") Bill.PaymentStatus status,
+                        @Param("after") long after, Pageable pageable);
 
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
         @Query("""
-                        SELECT MONTH(b.issuedAt), SUM(b.totalAmount)
+                        SELECT new com.tathang.example304.dto.BillSummaryDTO(b.id, b.order.id, b.totalAmount,
+                                b.paymentMethod, b.paymentStatus, b.issuedAt, b.createdAt)
                         FROM Bill b
-                        WHERE b.paymentStatus = 'PAID'
-                        AND b.issuedAt BETWEEN :startDate AND :endDate
-                        GROUP BY MONTH(b.issuedAt)
-                        ORDER BY MONTH(b.issuedAt)
+                        WHERE (:status IS NULL OR b.paymentStatus = :status)
+                        ORDER BY b.id
                         """)
-        List<Object[]> getMonthlyRevenue(
-                        @Param("startDate") LocalDateTime startDate,
-                        @Param("endDate") LocalDateTime endDate);
+        Stream<BillSummaryDTO> streamSummaries(@Param("status") Bill.PaymentStatus status);
 
+        // Chốt sổ: đọc dần các hóa đơn trong ngày (index issued_at), dùng trong transaction và phải đóng Stream
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
         @Query("""
-                            SELECT b.paymentMethod, SUM(b.totalAmount)
-                            FROM Bill b
-                            WHERE b.paymentStatus = 'PAID'
-                            AND b.issuedAt BETWEEN :startDate AND :endDate
-                            GROUP BY b.paymentMethod
+                        SELECT new com.tathang.example304.dto.SettlementRowDTO(b.id, o.id, t.id, o.employeeId,
+                                b.paymentMethod, b.paymentStatus, b.totalAmount, b.playFee, b.issuedAt,
+                                o.status, o.totalAmount,
+                                (SELECT COALESCE(SUM(oi.price * oi.quantity), 0) FROM OrderItem oi
+                                        WHERE oi.order = o))
+                        FROM Bill b JOIN b.order o LEFT JOIN o.table t
+                        WHERE b.issuedAt >= :start AND b.issuedAt < :end
+                        ORDER BY b.id
                         """)
-        List<Object[]> getRevenueByPaymentMethod(
-                        @Param("startDate") LocalDateTime startDate,
-                        @Param("endDate") LocalDateTime endDate);
-
-        List<Bill> findTop10ByCreatedAtAfterOrderByCreatedAtDesc(LocalDateTime cutoff);
-
-        // Method này đã đúng (dùng 'PAID')
-        @Query("SELECT COALESCE(SUM(b.totalAmount), 0) FROM Bill b " +
-                        "WHERE b.paymentStatus = 'PAID' AND b.createdAt BETWEEN :startDate AND :endDate")
-        BigDecimal getRevenueFromPaidOrders(@Param("startDate") LocalDateTime startDate,
-                        @Param("endDate") LocalDateTime endDate);
-}
\ No newline at end of file
+        Stream<SettlementRowDTO> streamSettlementRows(@Param("start") LocalDateTime start,
+                        @Param("end") LocalDateTime end);
+}
@@ -0,0 +1,46 @@
+package com.tathang.example304.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tathang.example304.model.DailyRevenue;
+import com.tathang.example304.model.Money;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DailyRevenueRepository extends JpaRepository<DailyRevenue, Long> {
+
+    List<DailyRevenue> findByRevenueDateBetweenOrderByRevenueDate(LocalDate from, LocalDate to);
+
+    // Cộng dồn tại chỗ, tạo dòng nếu chưa có (một câu lệnh, khóa đúng một dòng), chạy trong
+    // transaction đổi trạng thái hóa đơn. Tiền: đơn vị nhỏ nhất (query native không qua converter)
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO daily_revenue (revenue_date, payment_method, bill_count, revenue, play_fee)
+            VALUES (:date, :method, :bills, :revenue, :playFee)
+            ON DUPLICATE KEY UPDATE bill_count = bill_count + :bills, revenue = revenue + :revenue,
+                play_fee = play_fee + :playFee
+            """, nativeQuery = true)
+    int upsertIncrement(@Param("date") LocalDate date, @Param("method") String method, @Param("bills") long bills,
+            @Param("revenue") long revenue, @Param("playFee") long playFee);
+
+    // Dựng lại từ bills: ghi giá trị tuyệt đối
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE DailyRevenue r SET r.billCount = :bills, r.revenue = :revenue, r.playFee = :playFee
+            WHERE r.revenueDate = :date AND r.paymentMethod = :method
+            """)
+    int overwrite(@Param("date") LocalDate date, @Param("method") String method, @Param("bills") long bills,
+            @Param("revenue") Money revenue, @Param("playFee") Money playFee);
+
+    @Query("SELECT COALESCE(SUM(r.revenue), 0) FROM DailyRevenue r WHERE r.revenueDate < :before")
+    long sumRevenueBefore(@Param("before") LocalDate before);
+}
@@ -0,0 +1,15 @@
+package com.tathang.example304.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.tathang.example304.model.DailySettlement;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface DailySettlementRepository extends JpaRepository<DailySettlement, Long> {
+
+    Optional<DailySettlement> findByBusinessDate(LocalDate businessDate);
+}
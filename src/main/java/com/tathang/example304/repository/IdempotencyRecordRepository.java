@@ -0,0 +1,31 @@
+package com.tathang.example304.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tathang.example304.model.IdempotencyRecord;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    Optional<IdempotencyRecord> findByScopeKey(String scopeKey);
+
+    // Request lỗi / bị bỏ dở: nhả key để client gửi lại được
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.scopeKey = :scopeKey AND r.status = com.tathang.example304.model.IdempotencyRecord.Status.IN_PROGRESS")
+    int releaseInProgress(@Param("scopeKey") String scopeKey);
+
+    // Dùng index expires_at
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
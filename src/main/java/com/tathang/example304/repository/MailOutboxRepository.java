@@ -0,0 +1,58 @@
+package com.tathang.example304.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tathang.example304.model.MailOutbox;
+import com.tathang.example304.model.MailOutbox.MailStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MailOutboxRepository extends JpaRepository<MailOutbox, Long> {
+
+    // Dùng index (status, next_attempt_at)
+    @Query("SELECT m FROM MailOutbox m WHERE m.status = :status AND m.nextAttemptAt <= :now ORDER BY m.nextAttemptAt ASC, m.id ASC")
+    List<MailOutbox> findDue(@Param("status") MailStatus status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    @Query("SELECT MIN(m.createdAt) FROM MailOutbox m WHERE m.status IN :statuses")
+    LocalDateTime findOldestCreatedAt(@Param("statuses") Collection<MailStatus> statuses);
+
+    long countByStatus(MailStatus status);
+
+    // Nhận một mail (PENDING -> SENDING) kèm lease; 0 nếu node khác đã nhận trước
+    @Transactional
+    @Modifying
+    @Query("UPDATE MailOutbox m SET m.status = com.tathang.example304.model.MailOutbox.MailStatus.SENDING, m.claimedBy = :node, m.claimedAt = :now WHERE m.id = :id AND m.status = com.tathang.example304.model.MailOutbox.MailStatus.PENDING")
+    int claim(@Param("id") Long id, @Param("node") String node, @Param("now") LocalDateTime now);
+
+    // Trả lại các mail chính node này đã nhận nhưng chưa giao được cho worker
+    @Transactional
+    @Modifying
+    @Query("UPDATE MailOutbox m SET m.status = com.tathang.example304.model.MailOutbox.MailStatus.PENDING, m.claimedBy = NULL, m.claimedAt = NULL WHERE m.id IN :ids AND m.status = com.tathang.example304.model.MailOutbox.MailStatus.SENDING AND m.claimedBy = :node")
+    int release(@Param("ids") Collection<Long> ids, @Param("node") String node);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE MailOutbox m SET m.status = com.tathang.example304.model.MailOutbox.MailStatus.SENT, m.sentAt = :sentAt, m.attempts = m.attempts + 1 WHERE m.id IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") LocalDateTime sentAt);
+
+    // Lease quá hạn (node nhận mail đã chết hoặc treo): trả về hàng đợi.
+    // claimed_at NULL: dòng SENDING từ trước khi có lease
+    @Transactional
+    @Modifying
+    @Query("UPDATE MailOutbox m SET m.status = com.tathang.example304.model.MailOutbox.MailStatus.PENDING, m.claimedBy = NULL, m.claimedAt = NULL WHERE m.status = com.tathang.example304.model.MailOutbox.MailStatus.SENDING AND (m.claimedAt IS NULL OR m.claimedAt < :before)")
+    int requeueStale(@Param("before") LocalDateTime before);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM MailOutbox m WHERE m.status = com.tathang.example304.model.MailOutbox.MailStatus.SENT AND m.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
@@ -1,13 +1,16 @@
 package com.tathang.example304.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.tathang.example304.dto.OrderItemDTO;
 import com.tathang.example304.model.OrderItem;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +20,30 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
 
     Optional<OrderItem> findByOrderIdAndProductId(Long orderId, Long productId);
 
+    @Modifying
+    @Query("UPDATE OrderItem oi SET oi.quantity = :quantity WHERE oi.id = :id")
+    int updateQuantity(@Param("id") Long id, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("DELETE FROM OrderItem oi WHERE oi.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Các dòng món của order cho API: chỉ id + tên sản phẩm, không nạp product/category
+    @Query("""
+                SELECT new com.tathang.example304.dto.OrderItemDTO(oi.id, p.id, p.name, oi.quantity, oi.price)
+                FROM OrderItem oi JOIN oi.product p
+                WHERE oi.order.id = :orderId
+                ORDER BY oi.id
+            """)
+    List<OrderItemDTO> findViewsByOrderId(@Param("orderId") Long orderId);
+
+    @Query("""
+                SELECT new com.tathang.example304.dto.OrderItemDTO(oi.id, p.id, p.name, oi.quantity, oi.price)
+                FROM OrderItem oi JOIN oi.product p
+                WHERE oi.id IN :ids
+            """)
+    List<OrderItemDTO> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
     @Query("SELECT oi FROM OrderItem oi WHERE oi.order.id = :orderId")
     List<OrderItem> findOrderItemsByOrderId(Long orderId);
 
@@ -25,7 +52,7 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
                 FROM OrderItem oi
                 WHERE oi.order.id = :orderId
             """)
-    java.math.BigDecimal getTotalAmountByOrderId(Long orderId);
+    long getTotalAmountByOrderId(Long orderId);
 
     @Query("""
                 SELECT oi.product.id, oi.product.name,
@@ -1,15 +1,29 @@
 package com.tathang.example304.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.tathang.example304.dto.OrderDTO;
+import com.tathang.example304.dto.OrderSummaryDTO;
+import com.tathang.example304.dto.RunningOrderDTO;
+import com.tathang.example304.model.Money;
 import com.tathang.example304.model.Order;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -43,10 +57,26 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
         @Query("""
                             SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items
                             WHERE o.table.id = :tableId
-                              AND o.status IN ('OPEN', 'PLAYING', 'SERVED')
+                              AND o.status IN :statuses
+                            ORDER BY o.startTime DESC
+                        """)
+        List<Order> findActiveOrderByTable(@Param("tableId") Long tableId,
+                        @Param("statuses") Collection<Order.OrderStatus> statuses);
+
+        // Con trỏ order active của bàn: chỉ id + giờ mở, đi qua index (table_id, status)
+        @Query("""
+                            SELECT o.id, o.startTime FROM Order o
+                            WHERE o.table.id = :tableId
+                              AND o.status IN :statuses
                             ORDER BY o.startTime DESC
                         """)
-        List<Order> findActiveOrderByTable(@Param("tableId") Long tableId);
+        List<Object[]> findActiveOrderRefs(@Param("tableId") Long tableId,
+                        @Param("statuses") Collection<Order.OrderStatus> statuses, Pageable pageable);
+
+        // Kiểm tra lô con trỏ active theo khóa chính: trả về id của các order vẫn còn active
+        @Query("SELECT o.id FROM Order o WHERE o.id IN :ids AND o.status IN :statuses")
+        List<Long> findIdsStillIn(@Param("ids") Collection<Long> ids,
+                        @Param("statuses") Collection<Order.OrderStatus> statuses);
 
         // ✅ Thêm method để lấy order với items
         @Query("SELECT DISTINCT o FROM Order o " +
@@ -75,4 +105,66 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
         Long countByStatusAndCreatedAtBetween(Order.OrderStatus status, LocalDateTime start, LocalDateTime end);
 
-}
\ No newline at end of file
+        // Compare-and-set trạng thái: một câu UPDATE, không khóa bi quan; 0 dòng = đã bị chuyển trước
+        @Modifying(flushAutomatically = true, clearAutomatically = true)
+        @Query("UPDATE Order o SET o.status = :to, o.updatedAt = :updatedAt, o.version = o.version + 1 " +
+                        "WHERE o.id = :orderId AND o.status IN :from")
+        int transition(@Param("orderId") Long orderId, @Param("from") Collection<Order.OrderStatus> from,
+                        @Param("to") Order.OrderStatus to, @Param("updatedAt") LocalDateTime updatedAt);
+
+        @Query("SELECT o.status FROM Order o WHERE o.id = :orderId")
+        Optional<Order.OrderStatus> findStatusById(@Param("orderId") Long orderId);
+
+        // Write-behind từ TableSessionStore: ghi trạng thái session (giá trị tuyệt đối). Chỉ ghi khi
+        // order còn active: lượt ghi trễ không được hồi sinh order đã thanh toán / hủy
+        @Modifying
+        @Query("UPDATE Order o SET o.status = :status, o.totalAmount = :totalAmount, o.endTime = :endTime, " +
+                        "o.updatedAt = :updatedAt, o.version = o.version + 1 WHERE o.id = :orderId " +
+                        "AND o.status IN (com.tathang.example304.model.Order.OrderStatus.OPEN, " +
+                        "com.tathang.example304.model.Order.OrderStatus.WAITING_PAYMENT)")
+        int applySessionState(@Param("orderId") Long orderId, @Param("status") Order.OrderStatus status,
+                        @Param("totalAmount") Money totalAmount, @Param("endTime") LocalDateTime endTime,
+                        @Param("updatedAt") LocalDateTime updatedAt);
+
+        // Phần đầu order cho API (tên bàn qua join), không nạp entity
+        @Query("SELECT new com.tathang.example304.dto.OrderDTO(o.id, t.id, t.tableName, o.employeeId, o.status, " +
+                        "o.totalAmount, o.notes, o.startTime, o.endTime) " +
+                        "FROM Order o LEFT JOIN o.table t WHERE o.id = :orderId")
+        Optional<OrderDTO> findViewById(@Param("orderId") Long orderId);
+
+        @Query("SELECT new com.tathang.example304.dto.OrderSummaryDTO(o.id, o.table.id, o.employeeId, o.status, " +
+                        "o.totalAmount, o.startTime, o.endTime, o.createdAt) " +
+                        "FROM Order o WHERE o.status = :status ORDER BY o.id")
+        List<OrderSummaryDTO> findSummariesByStatus(@Param("status") Order.OrderStatus status);
+
+        // Ticker tiền tạm tính: mọi order OPEN trong một câu (index idx_orders_status)
+        @Query("SELECT new com.tathang.example304.dto.RunningOrderDTO(o.id, t.id, t.tableType, o.startTime, " +
+                        "o.totalAmount) " +
+                        "FROM Order o JOIN o.table t " +
+                        "WHERE o.status = com.tathang.example304.model.Order.OrderStatus.OPEN ORDER BY t.id")
+        List<RunningOrderDTO> findRunningOrders();
+
+        // Keyset: id > after, trả Slice (lấy limit + 1 dòng để biết còn trang sau, không COUNT)
+        @Query("SELECT new com.tathang.example304.dto.OrderSummaryDTO(o.id, o.table.id, o.employeeId, o.status, " +
+                        "o.totalAmount, o.startTime, o.endTime, o.createdAt) " +
+                        "FROM Order o WHERE o.id > :after ORDER BY o.id")
+        Slice<OrderSummaryDTO> findSummariesAfter(@Param("after") long after, Pageable pageable);
+
+        // Chốt sổ: order PAID kết thúc trong ngày mà không có hóa đơn nào (đóng order không qua hóa đơn).
+        // Order PAID có hóa đơn chưa thanh toán được báo riêng từ các dòng hóa đơn của ngày
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+        @Query("SELECT o.id FROM Order o " +
+                        "WHERE o.status = com.tathang.example304.model.Order.OrderStatus.PAID " +
+                        "AND COALESCE(o.endTime, o.updatedAt) >= :start AND COALESCE(o.endTime, o.updatedAt) < :end " +
+                        "AND NOT EXISTS (SELECT 1 FROM Bill b WHERE b.order = o) " +
+                        "ORDER BY o.id")
+        Stream<Long> streamPaidOrdersWithoutBill(@Param("start") LocalDateTime start,
+                        @Param("end") LocalDateTime end);
+
+        // Export: đọc dần theo fetch size, dùng trong transaction và phải đóng Stream
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+        @Query("SELECT new com.tathang.example304.dto.OrderSummaryDTO(o.id, o.table.id, o.employeeId, o.status, " +
+                        "o.totalAmount, o.startTime, o.endTime, o.createdAt) " +
+                        "FROM Order o ORDER BY o.id")
+        Stream<OrderSummaryDTO> streamSummaries();
+}
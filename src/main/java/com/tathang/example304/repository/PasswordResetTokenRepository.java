@@ -1,6 +1,9 @@
 package com.tathang.example304.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.tathang.example304.model.PasswordResetToken;
@@ -18,9 +21,14 @@ public interface PasswordResetTokenRepository extends JpaRepository<PasswordRese
 
     Optional<PasswordResetToken> findByOtpAndUsedFalse(String otp);
 
-    void deleteByUser(User user);
+    // Xóa trực tiếp bằng một câu DELETE (derived deleteBy sẽ load từng entity rồi xóa)
+    @Modifying
+    @Query("DELETE FROM PasswordResetToken t WHERE t.user = :user")
+    int deleteByUser(@Param("user") User user);
 
-    void deleteByExpiryDateBefore(LocalDateTime date);
+    @Modifying
+    @Query("DELETE FROM PasswordResetToken t WHERE t.expiryDate < :date")
+    int deleteByExpiryDateBefore(@Param("date") LocalDateTime date);
 
     Optional<PasswordResetToken> findByUserAndOtpAndUsedFalse(User user, String otp);
 }
\ No newline at end of file
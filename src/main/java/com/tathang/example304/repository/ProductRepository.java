@@ -1,11 +1,24 @@
 package com.tathang.example304.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.tathang.example304.dto.ProductSummaryDTO;
 import com.tathang.example304.model.Product;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
@@ -18,4 +31,44 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByStockQuantityLessThan(Integer quantity);
 
     Long countByActiveTrue();
-}
\ No newline at end of file
+
+    // Lấy nhiều sản phẩm (kèm category) trong một câu SELECT
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.id IN :ids")
+    List<Product> findAllWithCategoryByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Trừ kho nguyên tử: chỉ thành công khi còn đủ hàng (trả về 0 nếu không đủ), tăng version
+    @Modifying
+    @Query("""
+                UPDATE Product p
+                SET p.stockQuantity = p.stockQuantity - :quantity, p.version = p.version + 1
+                WHERE p.id = :id AND p.stockQuantity >= :quantity
+            """)
+    int decrementStock(@Param("id") Long id, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("""
+                UPDATE Product p
+                SET p.stockQuantity = p.stockQuantity + :quantity, p.version = p.version + 1
+                WHERE p.id = :id
+            """)
+    int incrementStock(@Param("id") Long id, @Param("quantity") int quantity);
+
+    // Keyset theo id, category lấy trong cùng câu (không N+1)
+    @Query("""
+                SELECT new com.tathang.example304.dto.ProductSummaryDTO(p.id, p.name, p.price, p.stockQuantity,
+                        p.active, p.imageUrl, c.id, c.name)
+                FROM Product p LEFT JOIN p.category c
+                WHERE p.id > :after
+                ORDER BY p.id
+            """)
+    Slice<ProductSummaryDTO> findSummariesAfter(@Param("after") long after, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+                SELECT new com.tathang.example304.dto.ProductSummaryDTO(p.id, p.name, p.price, p.stockQuantity,
+                        p.active, p.imageUrl, c.id, c.name)
+                FROM Product p LEFT JOIN p.category c
+                ORDER BY p.id
+            """)
+    Stream<ProductSummaryDTO> streamSummaries();
+}
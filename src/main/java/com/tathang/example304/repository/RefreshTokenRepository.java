@@ -0,0 +1,36 @@
+package com.tathang.example304.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.tathang.example304.model.RefreshToken;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    // Chỉ dùng khi khởi động để nạp lại index trong bộ nhớ
+    List<RefreshToken> findByExpiresAtAfter(LocalDateTime now);
+
+    // Token không có trong index của node này (phát hành ở node khác sau khi node này khởi động)
+    Optional<RefreshToken> findByTokenId(String tokenId);
+
+    // Family đã bị thu hồi ở node khác thì không đổi được nữa
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.rotatedAt = :rotatedAt WHERE r.tokenId = :tokenId AND r.rotatedAt IS NULL AND r.revoked = false")
+    int markRotated(@Param("tokenId") String tokenId, @Param("rotatedAt") LocalDateTime rotatedAt);
+
+    @Modifying
+    @Query("UPDATE RefreshToken r SET r.revoked = true WHERE r.familyId = :familyId")
+    int revokeFamily(@Param("familyId") String familyId);
+
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
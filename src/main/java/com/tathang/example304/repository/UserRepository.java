@@ -3,13 +3,23 @@ package com.tathang.example304.repository;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.tathang.example304.dto.StaffSummaryDTO;
 import com.tathang.example304.model.ERole;
 import com.tathang.example304.model.User;
 
@@ -23,9 +33,18 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Boolean existsByEmail(String email);
 
-    @Query("SELECT u FROM User u JOIN u.roles r WHERE r.name IN :roleNames")
+    // Nạp sẵn roles: entity User được serialize ngoài transaction (open-in-view tắt)
+    @EntityGraph(attributePaths = "roles")
+    @Query("SELECT DISTINCT u FROM User u JOIN u.roles r WHERE r.name IN :roleNames")
     List<User> findByRolesNameIn(@Param("roleNames") List<ERole> roleNames);
 
+    @Query("SELECT u.securityVersion FROM User u WHERE u.id = :id")
+    Optional<Long> findSecurityVersionById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE User u SET u.securityVersion = u.securityVersion + 1 WHERE u.id = :id")
+    int incrementSecurityVersion(@Param("id") Long id);
+
     // === THÊM CÁC METHOD MỚI ===
 
     @EntityGraph(attributePaths = "roles")
@@ -69,4 +88,25 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     // Thêm method để lấy số người dùng theo khoảng thời gian
     Long countByCreatedAtBetween(LocalDateTime start, LocalDateTime end);
-}
\ No newline at end of file
+
+    // Keyset theo id cho danh sách nhân viên; DISTINCT vì một user có thể có nhiều role khớp
+    @Query("""
+            SELECT DISTINCT new com.tathang.example304.dto.StaffSummaryDTO(u.id, u.username, u.email, u.fullName,
+                    u.phone, u.isActive, u.createdAt)
+            FROM User u JOIN u.roles r
+            WHERE r.name IN :roleNames AND u.id > :after
+            ORDER BY u.id
+            """)
+    Slice<StaffSummaryDTO> findStaffSummariesAfter(@Param("roleNames") List<ERole> roleNames,
+            @Param("after") long after, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            SELECT DISTINCT new com.tathang.example304.dto.StaffSummaryDTO(u.id, u.username, u.email, u.fullName,
+                    u.phone, u.isActive, u.createdAt)
+            FROM User u JOIN u.roles r
+            WHERE r.name IN :roleNames
+            ORDER BY u.id
+            """)
+    Stream<StaffSummaryDTO> streamStaffSummaries(@Param("roleNames") List<ERole> roleNames);
+}
@@ -0,0 +1,317 @@
+package com.tathang.example304.security;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.security.services.IdempotencyService;
+
+/**
+ * Request ghi (POST/PUT/PATCH/DELETE) có header {@code Idempotency-Key} của người dùng đã đăng
+ * nhập: lần đầu chạy bình thường và lưu response; gửi lại cùng key và cùng body thì trả response
+ * đã lưu, không vào controller. Chạy sau AuthTokenFilter để key được tách theo người dùng.
+ *
+ * Không áp dụng cho {@code /api/auth/**} (response chứa token), request chưa đăng nhập và body
+ * form / multipart. Controller trả kết quả async thì response được lưu ở lượt async dispatch.
+ */
+public class IdempotencyFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotency-Replayed";
+
+    private static final Set<String> MUTATING = Set.of("POST", "PUT", "PATCH", "DELETE");
+    private static final int MAX_KEY_LENGTH = 100;
+    // Body được đọc hết vào bộ nhớ để băm; lớn hơn thì từ chối thay vì bỏ qua key
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    private static final String SCOPE_KEY_ATTRIBUTE = IdempotencyFilter.class.getName() + ".scopeKey";
+    private static final String FINGERPRINT_ATTRIBUTE = IdempotencyFilter.class.getName() + ".fingerprint";
+
+    private final IdempotencyService idempotency;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public IdempotencyFilter(IdempotencyService idempotency) {
+        this.idempotency = idempotency;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return !MUTATING.contains(request.getMethod())
+                || request.getHeader(HEADER) == null
+                || request.getServletPath().startsWith("/api/auth/")
+                || (contentType != null && isFormOrMultipart(contentType.toLowerCase()));
+    }
+
+    // Body kiểu form / multipart được container tự đọc, không đọc trước rồi trả lại cho controller được
+    private static boolean isFormOrMultipart(String contentType) {
+        return contentType.startsWith("multipart/")
+                || contentType.startsWith(MediaType.APPLICATION_FORM_URLENCODED_VALUE);
+    }
+
+    // Lượt async dispatch cần đi qua filter để lưu response khi kết quả async đã có
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (isAsyncDispatch(request)) {
+            resumeAsync(request, response, filterChain);
+            return;
+        }
+        String principal = principal();
+        if (principal == null) {
+            // Chưa đăng nhập: không có phạm vi riêng để tách key giữa các client
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String key = request.getHeader(HEADER).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            reject(request, response, HttpServletResponse.SC_BAD_REQUEST, "Idempotency-Key không hợp lệ");
+            return;
+        }
+        BufferedBodyRequest buffered = BufferedBodyRequest.read(request, MAX_BODY_BYTES);
+        if (buffered == null) {
+            reject(request, response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Body quá lớn để dùng Idempotency-Key");
+            return;
+        }
+        String scopeKey = principal + ":" + key;
+        String fingerprint = fingerprint(buffered);
+
+        IdempotencyService.Claim claim;
+        try {
+            claim = idempotency.claim(scopeKey, fingerprint);
+        } catch (RuntimeException e) {
+            logger.error("Idempotency claim failed for {}: {}", request.getRequestURI(), e.getMessage());
+            reject(request, response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Không kiểm tra được Idempotency-Key, vui lòng thử lại");
+            return;
+        }
+
+        switch (claim.outcome()) {
+            case REPLAY -> replay(response, claim.response());
+            case MISMATCH -> reject(request, response, 422, "Idempotency-Key đã được dùng cho request khác");
+            case BUSY -> reject(request, response, HttpServletResponse.SC_CONFLICT,
+                    "Request với Idempotency-Key này vẫn đang xử lý");
+            case PROCEED -> proceed(buffered, response, filterChain, scopeKey, fingerprint);
+        }
+    }
+
+    private void proceed(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+            String scopeKey, String fingerprint) throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        boolean finished = false;
+        try {
+            filterChain.doFilter(request, wrapper);
+            if (request.isAsyncStarted()) {
+                // Kết quả chưa có: lưu ở lượt async dispatch (resumeAsync)
+                request.setAttribute(SCOPE_KEY_ATTRIBUTE, scopeKey);
+                request.setAttribute(FINGERPRINT_ATTRIBUTE, fingerprint);
+                return;
+            }
+            finished = true;
+            finish(wrapper, scopeKey, fingerprint);
+        } finally {
+            if (!finished && !request.isAsyncStarted()) {
+                idempotency.release(scopeKey);
+                wrapper.copyBodyToResponse();
+            }
+        }
+    }
+
+    private void resumeAsync(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String scopeKey = (String) request.getAttribute(SCOPE_KEY_ATTRIBUTE);
+        String fingerprint = (String) request.getAttribute(FINGERPRINT_ATTRIBUTE);
+        ContentCachingResponseWrapper wrapper = WebUtils.getNativeResponse(response,
+                ContentCachingResponseWrapper.class);
+        if (scopeKey == null || wrapper == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        boolean finished = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                return;
+            }
+            finished = true;
+            finish(wrapper, scopeKey, fingerprint);
+        } finally {
+            if (!finished && !request.isAsyncStarted()) {
+                idempotency.release(scopeKey);
+                wrapper.copyBodyToResponse();
+            }
+        }
+    }
+
+    // 5xx là lỗi tạm thời: không lưu để client gửi lại được
+    private void finish(ContentCachingResponseWrapper wrapper, String scopeKey, String fingerprint)
+            throws IOException {
+        try {
+            if (wrapper.getStatus() < 500) {
+                idempotency.complete(scopeKey, fingerprint, wrapper.getStatus(), wrapper.getContentType(),
+                        new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8));
+            } else {
+                idempotency.release(scopeKey);
+            }
+        } finally {
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private static void replay(HttpServletResponse response, IdempotencyService.StoredResponse stored)
+            throws IOException {
+        response.setStatus(stored.status());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        if (stored.body() != null && !stored.body().isEmpty()) {
+            byte[] body = stored.body().getBytes(StandardCharsets.UTF_8);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, int status, String message)
+            throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setStatus(status);
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("status", status);
+        body.put("message", message);
+        body.put("path", request.getServletPath());
+        mapper.writeValue(response.getOutputStream(), body);
+    }
+
+    // null: chưa đăng nhập
+    private static String principal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    // Method + URI + query + SHA-256 của body: cùng key nhưng body khác thì bị từ chối
+    static String fingerprint(BufferedBodyRequest request) {
+        String query = request.getQueryString();
+        String target = request.getMethod() + " " + request.getRequestURI() + (query != null ? "?" + query : "");
+        if (target.length() > 450) {
+            target = target.substring(0, 450);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(request.body());
+            return target + " #" + Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Request với body đã đọc sẵn vào bộ nhớ, đọc lại được cho controller
+    static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        // null: body lớn hơn maxBytes
+        static BufferedBodyRequest read(HttpServletRequest request, int maxBytes) throws IOException {
+            if (request.getContentLengthLong() > maxBytes) {
+                return null;
+            }
+            try (InputStream in = request.getInputStream()) {
+                byte[] body = in.readNBytes(maxBytes + 1);
+                return body.length > maxBytes ? null : new BufferedBodyRequest(request, body);
+            }
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // Body đã nằm hết trong bộ nhớ: báo có dữ liệu rồi báo đọc xong ngay
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
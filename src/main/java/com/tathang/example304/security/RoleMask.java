@@ -0,0 +1,49 @@
+package com.tathang.example304.security;
+
+import java.util.Collection;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import com.tathang.example304.model.ERole;
+
+/**
+ * Chuyển qua lại giữa tên authority ("ROLE_ADMIN") và bitmask của {@link ERole}.
+ * Authority không thuộc ERole (vd. ROLE_ANONYMOUS) không có bit nào.
+ */
+public final class RoleMask {
+
+    private static final ERole[] ROLES = ERole.values();
+
+    private RoleMask() {
+    }
+
+    public static int of(String authority) {
+        if (authority == null) {
+            return 0;
+        }
+        for (ERole role : ROLES) {
+            if (role.name().equals(authority)) {
+                return role.bit();
+            }
+        }
+        return 0;
+    }
+
+    public static int ofNames(Collection<String> authorities) {
+        int mask = 0;
+        for (String authority : authorities) {
+            mask |= of(authority);
+        }
+        return mask;
+    }
+
+    public static int ofAuthorities(Collection<? extends GrantedAuthority> authorities) {
+        int mask = 0;
+        if (authorities != null) {
+            for (GrantedAuthority authority : authorities) {
+                mask |= of(authority.getAuthority());
+            }
+        }
+        return mask;
+    }
+}
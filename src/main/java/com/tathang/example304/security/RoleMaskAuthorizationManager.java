@@ -0,0 +1,138 @@
+package com.tathang.example304.security;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.tathang.example304.security.services.UserDetailsImpl;
+
+/**
+ * Kiểm tra {@code @PreAuthorize} bằng bitmask role thay vì đánh giá SpEL mỗi request.
+ *
+ * Khi khởi động, mọi method có {@code @PreAuthorize} trong các {@code @RestController} được
+ * dịch một lần thành mask role yêu cầu (chỉ với dạng hasRole / hasAnyRole / hasAuthority /
+ * hasAnyAuthority trên các ERole). Mỗi request chỉ còn một phép AND với
+ * {@link UserDetailsImpl#getRoleMask()}. Biểu thức khác vẫn đi qua SpEL như cũ.
+ */
+public class RoleMaskAuthorizationManager implements AuthorizationManager<MethodInvocation>,
+        SmartInitializingSingleton, ApplicationContextAware {
+
+    private static final Pattern ROLE_EXPRESSION = Pattern
+            .compile("^\\s*(hasRole|hasAnyRole|hasAuthority|hasAnyAuthority)\\s*\\((.*)\\)\\s*$");
+    private static final Pattern QUOTED = Pattern.compile("\\s*'([^']*)'\\s*");
+
+    // Mask = 0 nghĩa là biểu thức không dịch được, dùng SpEL
+    private static final int SPEL = 0;
+
+    private final AuthorizationManager<MethodInvocation> fallback;
+    private final Map<Method, Integer> table = new ConcurrentHashMap<>();
+    private ApplicationContext applicationContext;
+
+    public RoleMaskAuthorizationManager(AuthorizationManager<MethodInvocation> fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        Integer required = table.get(method);
+        if (required == null) {
+            required = table.computeIfAbsent(method, m -> compile(m, targetClass(invocation)));
+        }
+        if (required == SPEL) {
+            return fallback.check(authentication, invocation);
+        }
+        return new AuthorizationDecision((roleMask(authentication.get()) & required) != 0);
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    // Dựng sẵn bảng quyền cho tất cả controller sau khi các bean đã được tạo
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (applicationContext == null) {
+            return;
+        }
+        for (Object controller : applicationContext.getBeansWithAnnotation(RestController.class).values()) {
+            precompile(AopUtils.getTargetClass(controller));
+        }
+    }
+
+    public void precompile(Class<?> type) {
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(type)) {
+            if (AnnotatedElementUtils.hasAnnotation(method, PreAuthorize.class)
+                    || AnnotatedElementUtils.hasAnnotation(method.getDeclaringClass(), PreAuthorize.class)) {
+                table.computeIfAbsent(method, m -> compile(m, type));
+            }
+        }
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    static int roleMask(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return 0;
+        }
+        if (authentication.getPrincipal() instanceof UserDetailsImpl user) {
+            return user.getRoleMask();
+        }
+        return RoleMask.ofAuthorities(authentication.getAuthorities());
+    }
+
+    private static Class<?> targetClass(MethodInvocation invocation) {
+        return invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis())
+                : invocation.getMethod().getDeclaringClass();
+    }
+
+    private static int compile(Method method, Class<?> targetClass) {
+        PreAuthorize annotation = AnnotatedElementUtils.findMergedAnnotation(method, PreAuthorize.class);
+        if (annotation == null) {
+            annotation = AnnotatedElementUtils.findMergedAnnotation(targetClass, PreAuthorize.class);
+        }
+        return annotation == null ? SPEL : compile(annotation.value());
+    }
+
+    static int compile(String expression) {
+        Matcher call = ROLE_EXPRESSION.matcher(expression);
+        if (!call.matches()) {
+            return SPEL;
+        }
+        boolean rolePrefix = call.group(1).contains("Role");
+        int mask = 0;
+        for (String argument : call.group(2).split(",", -1)) {
+            Matcher quoted = QUOTED.matcher(argument);
+            if (!quoted.matches()) {
+                return SPEL;
+            }
+            String name = quoted.group(1);
+            // Giống SpEL: hasRole tự thêm tiền tố ROLE_ nếu chưa có
+            int bit = RoleMask.of(rolePrefix && !name.startsWith("ROLE_") ? "ROLE_" + name : name);
+            if (bit == 0) {
+                return SPEL; // role không thuộc ERole: để SpEL xử lý
+            }
+            mask |= bit;
+        }
+        return mask;
+    }
+}
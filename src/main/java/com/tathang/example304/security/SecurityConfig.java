@@ -1,14 +1,25 @@
 package com.tathang.example304.security;
 
+import com.tathang.example304.security.jwt.AccessTokenDenylist;
 import com.tathang.example304.security.jwt.AuthEntryPointJwt;
 import com.tathang.example304.security.jwt.AuthTokenFilter;
 import com.tathang.example304.security.jwt.JwtUtils;
 import com.tathang.example304.CustomUserDetailsService;
+import com.tathang.example304.security.services.IdempotencyService;
+import com.tathang.example304.security.services.UserSecurityVersionService;
 
+import org.springframework.aop.Advisor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authorization.method.AuthorizationManagerBeforeMethodInterceptor;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -25,9 +36,27 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import java.util.Arrays;
 
 @Configuration
-@EnableMethodSecurity(prePostEnabled = true)
+// @PreAuthorize vẫn được dùng như cũ, nhưng được kiểm tra bởi RoleMaskAuthorizationManager (đăng ký bên dưới)
+@EnableMethodSecurity(prePostEnabled = false)
 public class SecurityConfig {
 
+    // ================= METHOD SECURITY (@PreAuthorize) =================
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static RoleMaskAuthorizationManager roleMaskAuthorizationManager(ApplicationContext context) {
+        DefaultMethodSecurityExpressionHandler expressionHandler = new DefaultMethodSecurityExpressionHandler();
+        expressionHandler.setApplicationContext(context);
+        PreAuthorizeAuthorizationManager spel = new PreAuthorizeAuthorizationManager();
+        spel.setExpressionHandler(expressionHandler);
+        return new RoleMaskAuthorizationManager(spel);
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor preAuthorizeAuthorizationMethodInterceptor(RoleMaskAuthorizationManager roleMaskAuthorizationManager) {
+        return AuthorizationManagerBeforeMethodInterceptor.preAuthorize(roleMaskAuthorizationManager);
+    }
+
     @Autowired
     private AuthEntryPointJwt unauthorizedHandler;
 
@@ -37,18 +66,36 @@ public class SecurityConfig {
     @Autowired
     private CustomUserDetailsService userDetailsService;
 
+    @Autowired
+    private UserSecurityVersionService securityVersions;
+
+    @Autowired
+    private AccessTokenDenylist accessTokenDenylist;
+
+    @Value("${app.security.stateless-principal:false}")
+    private boolean statelessPrincipal;
+
     // ================= ĐĂNG KÝ BEAN AuthTokenFilter =================
     @Bean
     public AuthTokenFilter authTokenFilter() {
         AuthTokenFilter authTokenFilter = new AuthTokenFilter();
         authTokenFilter.setJwtUtils(jwtUtils);
         authTokenFilter.setUserDetailsService(userDetailsService);
+        authTokenFilter.setSecurityVersions(securityVersions);
+        authTokenFilter.setDenylist(accessTokenDenylist);
+        authTokenFilter.setStatelessPrincipal(statelessPrincipal);
         return authTokenFilter;
     }
 
+    // ================= ĐĂNG KÝ BEAN IdempotencyFilter =================
+    @Bean
+    public IdempotencyFilter idempotencyFilter(IdempotencyService idempotencyService) {
+        return new IdempotencyFilter(idempotencyService);
+    }
+
     // ================= FILTER CHAIN =================
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, IdempotencyFilter idempotencyFilter) throws Exception {
 
         http
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
@@ -67,7 +114,7 @@ public class SecurityConfig {
                                 "/v3/api-docs/**",
                                 "/webjars/**",
                                 "/uploads/**",
-                                "/ws/**",
+                                "/ws/**", // handshake SockJS; JWT được kiểm tra ở frame CONNECT
                                 "/api/chat/**",
                                 "/api/test/**")
                         .permitAll()
@@ -76,6 +123,10 @@ public class SecurityConfig {
                         .requestMatchers("/api/dashboard/**")
                         .hasAnyRole("ADMIN", "MANAGER")
 
+                        // 🔐 METRICS
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+
                         // 🔐 ADMIN API
                         .requestMatchers("/api/admin/**")
                         .hasRole("ADMIN")
@@ -86,6 +137,8 @@ public class SecurityConfig {
         http.addFilterBefore(
                 authTokenFilter(),
                 UsernamePasswordAuthenticationFilter.class);
+        // Idempotency-Key cần biết người dùng: đặt sau JWT filter
+        http.addFilterAfter(idempotencyFilter, AuthTokenFilter.class);
 
         return http.build();
     }
@@ -96,8 +149,9 @@ public class SecurityConfig {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(Arrays.asList("*"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Auth-Token"));
-        configuration.setExposedHeaders(Arrays.asList("X-Auth-Token"));
+        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Auth-Token",
+                IdempotencyFilter.HEADER));
+        configuration.setExposedHeaders(Arrays.asList("X-Auth-Token", IdempotencyFilter.REPLAYED_HEADER));
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
@@ -0,0 +1,81 @@
+package com.tathang.example304.security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tathang.example304.model.ERole;
+
+/**
+ * Bảng quyền theo destination STOMP, dựng một lần khi khởi động.
+ *
+ * Mỗi destination (khớp chính xác, hoặc theo tiền tố nếu khai báo kết thúc bằng {@code /**})
+ * ánh xạ tới mask role được phép. Kiểm tra mỗi frame chỉ là tra map + một phép AND với
+ * {@code UserDetailsImpl#getRoleMask()}. Destination không có trong bảng thì bị từ chối.
+ */
+public final class StompDestinationTable {
+
+    public static final int ANY_ROLE = ERole.ROLE_ADMIN.bit() | ERole.ROLE_MANAGER.bit()
+            | ERole.ROLE_STAFF.bit() | ERole.ROLE_CUSTOMER.bit();
+    private static final int STAFF = ERole.ROLE_ADMIN.bit() | ERole.ROLE_MANAGER.bit() | ERole.ROLE_STAFF.bit();
+
+    private final Map<String, Integer> exact;
+    private final List<Map.Entry<String, Integer>> prefixes;
+
+    private StompDestinationTable(Map<String, Integer> rules) {
+        Map<String, Integer> exactRules = new HashMap<>();
+        List<Map.Entry<String, Integer>> prefixRules = new ArrayList<>();
+        rules.forEach((pattern, mask) -> {
+            if (pattern.endsWith("/**")) {
+                prefixRules.add(Map.entry(pattern.substring(0, pattern.length() - 2), mask));
+            } else {
+                exactRules.put(pattern, mask);
+            }
+        });
+        // Tiền tố dài hơn (cụ thể hơn) được xét trước
+        prefixRules.sort((a, b) -> b.getKey().length() - a.getKey().length());
+        this.exact = Map.copyOf(exactRules);
+        this.prefixes = List.copyOf(prefixRules);
+    }
+
+    public static StompDestinationTable of(Map<String, Integer> rules) {
+        return new StompDestinationTable(rules);
+    }
+
+    // Quyền của các topic/endpoint hiện có (WebSocketService, WebSocketController)
+    public static StompDestinationTable defaults() {
+        Map<String, Integer> rules = new HashMap<>();
+        // Broker -> client
+        rules.put("/topic/orders", STAFF);
+        rules.put("/topic/order-updates", STAFF);
+        rules.put("/topic/table-status", ANY_ROLE);
+        rules.put("/topic/running-bills", STAFF);
+        rules.put("/user/queue/**", ANY_ROLE);
+        // Client -> @MessageMapping
+        rules.put("/app/orders.subscribe", STAFF);
+        rules.put("/app/order.update", ERole.ROLE_MANAGER.bit() | ERole.ROLE_STAFF.bit());
+        return new StompDestinationTable(rules);
+    }
+
+    // 0 = không ai được phép
+    public int requiredMask(String destination) {
+        if (destination == null) {
+            return 0;
+        }
+        Integer mask = exact.get(destination);
+        if (mask != null) {
+            return mask;
+        }
+        for (Map.Entry<String, Integer> prefix : prefixes) {
+            if (destination.startsWith(prefix.getKey())) {
+                return prefix.getValue();
+            }
+        }
+        return 0;
+    }
+
+    public boolean isAllowed(String destination, int roleMask) {
+        return (requiredMask(destination) & roleMask) != 0;
+    }
+}
@@ -0,0 +1,120 @@
+package com.tathang.example304.security.jwt;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Danh sách chặn dạng Bloom filter cho access token đã bị thu hồi
+ * (theo jti hoặc theo family id). Kiểm tra O(1), không đụng DB, bộ nhớ cố định.
+ *
+ * Access token sống ngắn nên chỉ giữ 2 thế hệ: mỗi thế hệ kéo dài đúng bằng
+ * thời hạn access token, thế hệ cũ bị bỏ khi quay vòng. Dương tính giả chỉ khiến
+ * client phải gọi /refresh (đường refresh kiểm tra chính xác qua index).
+ */
+@Component
+public class AccessTokenDenylist {
+
+    private static final int HASHES = 4;
+
+    private final int bits;
+    private final long generationMillis;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    public AccessTokenDenylist(
+            @Value("${app.security.denylist-bits:1048576}") int bits,
+            @Value("${bezkoder.app.jwtExpirationMs}") long generationMillis) {
+        this.bits = Math.max(1024, Integer.highestOneBit(bits - 1) << 1);
+        this.generationMillis = generationMillis;
+        this.current = new Generation(this.bits, System.currentTimeMillis());
+        this.previous = new Generation(this.bits, 0);
+    }
+
+    public void add(String id) {
+        if (id == null) {
+            return;
+        }
+        rotateIfNeeded(System.currentTimeMillis());
+        current.add(hash(id));
+    }
+
+    public boolean mightContain(String id) {
+        if (id == null) {
+            return false;
+        }
+        rotateIfNeeded(System.currentTimeMillis());
+        long h = hash(id);
+        return current.mightContain(h) || previous.mightContain(h);
+    }
+
+    private void rotateIfNeeded(long now) {
+        if (now - current.startedAt < generationMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - current.startedAt >= generationMillis) {
+                previous = current;
+                current = new Generation(bits, now);
+            }
+        }
+    }
+
+    // FNV-1a 64-bit + splitmix64 finalizer
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    private static final class Generation {
+        private final AtomicLongArray words;
+        private final int mask;
+        private final long startedAt;
+
+        Generation(int bits, long startedAt) {
+            this.words = new AtomicLongArray(bits >>> 6);
+            this.mask = bits - 1;
+            this.startedAt = startedAt;
+        }
+
+        void add(long h) {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                int word = bit >>> 6;
+                long flag = 1L << bit;
+                long old;
+                do {
+                    old = words.get(word);
+                    if ((old & flag) != 0) {
+                        break;
+                    }
+                } while (!words.compareAndSet(word, old, old | flag));
+            }
+        }
+
+        boolean mightContain(long h) {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
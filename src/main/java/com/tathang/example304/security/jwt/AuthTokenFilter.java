@@ -17,10 +17,16 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import com.tathang.example304.security.services.UserDetailsImpl;
+import com.tathang.example304.security.services.UserSecurityVersionService;
+
 public class AuthTokenFilter extends OncePerRequestFilter {
 
     private JwtUtils jwtUtils;
     private UserDetailsService userDetailsService;
+    private UserSecurityVersionService securityVersions;
+    private AccessTokenDenylist denylist;
+    private boolean statelessPrincipal;
 
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
@@ -33,6 +39,19 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         this.userDetailsService = userDetailsService;
     }
 
+    public void setSecurityVersions(UserSecurityVersionService securityVersions) {
+        this.securityVersions = securityVersions;
+    }
+
+    public void setDenylist(AccessTokenDenylist denylist) {
+        this.denylist = denylist;
+    }
+
+    // Bật chế độ dựng principal trực tiếp từ claims (không query DB mỗi request)
+    public void setStatelessPrincipal(boolean statelessPrincipal) {
+        this.statelessPrincipal = statelessPrincipal;
+    }
+
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
         String path = request.getServletPath();
@@ -44,10 +63,15 @@ public class AuthTokenFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         try {
             String jwt = parseJwt(request);
-            if (jwt != null && jwtUtils != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            VerifiedJwt verified = jwt != null && jwtUtils != null
+                    ? jwtUtils.verifyJwtToken(jwt).orElse(null)
+                    : null;
+            if (verified != null && isRevoked(verified)) {
+                logger.error("JWT token has been revoked");
+                verified = null;
+            }
+            UserDetails userDetails = verified != null ? resolvePrincipal(verified) : null;
+            if (userDetails != null && userDetails.isEnabled()) {
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -64,6 +88,22 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    // Kiểm tra O(1) trong bộ nhớ: token hoặc cả family đã bị thu hồi (logout / dùng lại refresh token)
+    private boolean isRevoked(VerifiedJwt verified) {
+        return denylist != null
+                && (denylist.mightContain(verified.getTokenId()) || denylist.mightContain(verified.getFamilyId()));
+    }
+
+    // Token còn khớp security version -> dùng claims; user đã bị khóa/đổi role/xóa -> tải lại từ DB
+    private UserDetails resolvePrincipal(VerifiedJwt verified) {
+        if (statelessPrincipal && securityVersions != null
+                && securityVersions.isCurrent(verified.getUserId(), verified.getSecurityVersion())) {
+            return UserDetailsImpl.fromClaims(verified.getUserId(), verified.getUsername(),
+                    verified.getEmail(), verified.getRoles());
+        }
+        return userDetailsService.loadUserByUsername(verified.getUsername());
+    }
+
     private String parseJwt(HttpServletRequest request) {
         String headerAuth = request.getHeader("Authorization");
 
@@ -0,0 +1,182 @@
+package com.tathang.example304.security.jwt;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.SignatureException;
+
+/**
+ * Chọn khóa xác thực theo header của token: HS* dùng secret chung, RS256 tra khóa công khai theo kid.
+ * Ở chế độ RS256 ({@code hmacAccessTokens = false}) secret chung chỉ còn dùng cho refresh token
+ * trên node phát hành; access token HS* bị từ chối để ai giữ secret cũ cũng không tự ký được.
+ *
+ * Khóa công khai được cache trong bộ nhớ và chỉ nạp lại từ nguồn (bộ khóa cục bộ, hoặc JWKS của
+ * auth node) khi cache quá {@code ttlMs} hoặc khi gặp kid lạ. Gặp kid lạ thì nạp lại ngay, nhưng
+ * không quá một lần mỗi {@code minRefreshMs} để token giả kid không thể dội vào nguồn.
+ */
+public class JwksKeyResolver extends SigningKeyResolverAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(JwksKeyResolver.class);
+
+    private final Key hmacKey;
+    private final boolean hmacAccessTokens;
+    private final Supplier<Map<String, ? extends PublicKey>> source;
+    private final long ttlMs;
+    private final long minRefreshMs;
+
+    private volatile Map<String, ? extends PublicKey> keys = Map.of();
+    private volatile long loadedAt;
+    // Chỉ tính các lần nạp do kid lạ; nạp theo TTL không chặn lần nạp vì kid mới
+    private volatile long lastMissRefresh = Long.MIN_VALUE / 2;
+
+    // hmacKey = null: node không nhận token HS* nào (node chỉ xác thực)
+    public JwksKeyResolver(Key hmacKey, boolean hmacAccessTokens, Supplier<Map<String, ? extends PublicKey>> source,
+            long ttlMs, long minRefreshMs) {
+        this.hmacKey = hmacKey;
+        this.hmacAccessTokens = hmacAccessTokens;
+        this.source = source;
+        this.ttlMs = ttlMs;
+        this.minRefreshMs = minRefreshMs;
+    }
+
+    @Override
+    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+        String algorithm = header.getAlgorithm();
+        if (algorithm != null && algorithm.startsWith("HS")) {
+            if (hmacKey == null) {
+                throw new SignatureException("Node này không nhận token " + algorithm);
+            }
+            // typ chưa được xác thực ở đây, nhưng token tự gắn typ=refresh thì không dùng làm access token được
+            if (!hmacAccessTokens && !JwtUtils.REFRESH_TOKEN_TYPE.equals(claims.get("typ"))) {
+                throw new SignatureException("Access token phải ký RS256");
+            }
+            return hmacKey;
+        }
+        String kid = header.getKeyId();
+        if (kid == null) {
+            throw new SignatureException("Token " + algorithm + " không có kid");
+        }
+        long now = System.currentTimeMillis();
+        if (now - loadedAt > ttlMs) {
+            refresh(now, true);
+        }
+        PublicKey key = keys.get(kid);
+        if (key == null && refresh(now, false)) {
+            key = keys.get(kid);
+        }
+        if (key == null) {
+            throw new SignatureException("Không tìm thấy khóa cho kid " + kid);
+        }
+        return key;
+    }
+
+    private synchronized boolean refresh(long now, boolean expired) {
+        if (expired ? now - loadedAt <= ttlMs : now - lastMissRefresh < minRefreshMs) {
+            return expired; // thread khác vừa nạp xong
+        }
+        if (!expired) {
+            lastMissRefresh = now;
+        }
+        try {
+            keys = Map.copyOf(source.get());
+            loadedAt = now;
+            return true;
+        } catch (RuntimeException e) {
+            // Giữ cache cũ: nguồn JWKS tạm lỗi không được làm hỏng các token đang hợp lệ
+            logger.error("Failed to refresh JWT public keys: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // ===== JWKS (RFC 7517) =====
+
+    public static Map<String, Object> toJwks(Map<String, RSAPublicKey> publicKeys) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        List<Map<String, Object>> keys = new ArrayList<>();
+        publicKeys.forEach((kid, key) -> {
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "RSA");
+            jwk.put("use", "sig");
+            jwk.put("alg", "RS256");
+            jwk.put("kid", kid);
+            jwk.put("n", encoder.encodeToString(unsigned(key.getModulus())));
+            jwk.put("e", encoder.encodeToString(unsigned(key.getPublicExponent())));
+            keys.add(jwk);
+        });
+        return Map.of("keys", keys);
+    }
+
+    public static Map<String, PublicKey> parseJwks(String json, ObjectMapper mapper) {
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            KeyFactory factory = KeyFactory.getInstance("RSA");
+            Map<String, PublicKey> result = new HashMap<>();
+            for (JsonNode jwk : mapper.readTree(json).path("keys")) {
+                if (!"RSA".equals(jwk.path("kty").asText()) || !jwk.hasNonNull("kid")) {
+                    continue;
+                }
+                BigInteger modulus = new BigInteger(1, decoder.decode(jwk.path("n").asText()));
+                BigInteger exponent = new BigInteger(1, decoder.decode(jwk.path("e").asText()));
+                result.put(jwk.path("kid").asText(), factory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+            }
+            return result;
+        } catch (Exception e) {
+            throw new IllegalStateException("JWKS không hợp lệ: " + e.getMessage(), e);
+        }
+    }
+
+    // Nguồn khóa từ JWKS endpoint của auth node
+    public static Supplier<Map<String, ? extends PublicKey>> remote(String jwksUri, ObjectMapper mapper) {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(3)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(jwksUri)).timeout(Duration.ofSeconds(5)).GET().build();
+        return () -> {
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("JWKS trả về HTTP " + response.statusCode());
+                }
+                return parseJwks(response.body(), mapper);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Bị ngắt khi tải JWKS", e);
+            } catch (IOException e) {
+                throw new IllegalStateException("Không tải được JWKS: " + e.getMessage(), e);
+            }
+        };
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return bytes;
+    }
+}
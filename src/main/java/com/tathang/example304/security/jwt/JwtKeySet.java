@@ -0,0 +1,186 @@
+package com.tathang.example304.security.jwt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bộ khóa RSA cục bộ để ký access token (RS256), có xoay vòng theo kid.
+ *
+ * Khóa được lưu trong thư mục {@code <kid>.key} (PKCS#8, base64); kid bắt đầu bằng thời điểm tạo
+ * nên thứ tự tên file chính là thứ tự tạo. Luôn giữ ba trạng thái:
+ * <ul>
+ * <li>khóa mới nhất là <b>pending</b>: đã công bố trong JWKS nhưng chưa dùng để ký, để các
+ * verifier kịp cache trước khi rotate;</li>
+ * <li>khóa kế trước là <b>active</b>: đang dùng để ký;</li>
+ * <li>các khóa cũ hơn là <b>retired</b>: vẫn công bố cho đến khi mọi token ký bằng chúng hết hạn
+ * ({@code retentionMs} tính từ lúc chúng bị thay).</li>
+ * </ul>
+ */
+public class JwtKeySet {
+    private static final Logger logger = LoggerFactory.getLogger(JwtKeySet.class);
+
+    private static final String SUFFIX = ".key";
+    private static final int KEY_SIZE = 2048;
+
+    private final Path dir;
+    private final long retentionMs;
+    private final SecureRandom random = new SecureRandom();
+
+    // Snapshot bất biến, thay nguyên khối khi rotate: đọc không cần lock
+    private volatile Snapshot snapshot = new Snapshot(List.of());
+
+    public JwtKeySet(String dir, long retentionMs) {
+        this.dir = Paths.get(dir);
+        this.retentionMs = retentionMs;
+    }
+
+    public synchronized void load() {
+        try {
+            Files.createDirectories(dir);
+            List<SigningKey> keys = new ArrayList<>();
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).sorted().toList()) {
+                    keys.add(read(file));
+                }
+            }
+            // Cần ít nhất một khóa active và một khóa pending
+            while (keys.size() < 2) {
+                keys.add(generate());
+            }
+            snapshot = new Snapshot(prune(keys, System.currentTimeMillis()));
+            logger.info("Loaded JWT key set: active kid={}, {} published keys", activeKid(), snapshot.keys.size());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Không thể nạp bộ khóa JWT từ " + dir, e);
+        }
+    }
+
+    /**
+     * Pending thành active, sinh pending mới, bỏ các khóa retired đã quá hạn giữ.
+     */
+    public synchronized void rotate() {
+        try {
+            List<SigningKey> keys = new ArrayList<>(snapshot.keys);
+            keys.add(generate());
+            snapshot = new Snapshot(prune(keys, System.currentTimeMillis()));
+            logger.info("Rotated JWT signing key: active kid={}", activeKid());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Không thể xoay khóa JWT", e);
+        }
+    }
+
+    public String activeKid() {
+        return snapshot.active().kid;
+    }
+
+    public ActiveKey active() {
+        SigningKey key = snapshot.active();
+        return new ActiveKey(key.kid, key.privateKey);
+    }
+
+    // Mọi khóa công khai đang được công bố (retired + active + pending), theo kid
+    public Map<String, RSAPublicKey> publicKeys() {
+        return snapshot.publicKeys;
+    }
+
+    private List<SigningKey> prune(List<SigningKey> keys, long now) throws IOException {
+        // Khóa i bị thay khi khóa i+1 lên active, tức là lúc khóa i+2 được tạo
+        List<SigningKey> kept = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            boolean expired = i + 2 < keys.size() && now - keys.get(i + 2).createdAt > retentionMs;
+            if (expired) {
+                Files.deleteIfExists(dir.resolve(keys.get(i).kid + SUFFIX));
+            } else {
+                kept.add(keys.get(i));
+            }
+        }
+        return kept;
+    }
+
+    private SigningKey generate() throws IOException, GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(KEY_SIZE, random);
+        KeyPair pair = generator.generateKeyPair();
+        long now = System.currentTimeMillis();
+        String kid = String.format("%012x-%04x", now, random.nextInt(0x10000));
+        Path file = dir.resolve(kid + SUFFIX);
+        Files.writeString(file, Base64.getEncoder().encodeToString(pair.getPrivate().getEncoded()),
+                StandardCharsets.US_ASCII);
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // Windows: không có quyền POSIX, dựa vào quyền của thư mục
+        }
+        return new SigningKey(kid, now, pair.getPrivate(), (RSAPublicKey) pair.getPublic());
+    }
+
+    private static SigningKey read(Path file) throws IOException, GeneralSecurityException {
+        String name = file.getFileName().toString();
+        String kid = name.substring(0, name.length() - SUFFIX.length());
+        byte[] encoded = Base64.getDecoder().decode(Files.readString(file, StandardCharsets.US_ASCII).trim());
+        KeyFactory factory = KeyFactory.getInstance("RSA");
+        RSAPrivateCrtKey privateKey = (RSAPrivateCrtKey) factory.generatePrivate(new PKCS8EncodedKeySpec(encoded));
+        RSAPublicKey publicKey = (RSAPublicKey) factory
+                .generatePublic(new RSAPublicKeySpec(privateKey.getModulus(), privateKey.getPublicExponent()));
+        return new SigningKey(kid, createdAt(kid), privateKey, publicKey);
+    }
+
+    private static long createdAt(String kid) {
+        int dash = kid.indexOf('-');
+        try {
+            return Long.parseLong(dash < 0 ? kid : kid.substring(0, dash), 16);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    public record ActiveKey(String kid, PrivateKey privateKey) {
+    }
+
+    private record SigningKey(String kid, long createdAt, PrivateKey privateKey, RSAPublicKey publicKey) {
+    }
+
+    private static final class Snapshot {
+        private final List<SigningKey> keys;
+        private final Map<String, RSAPublicKey> publicKeys;
+
+        private Snapshot(List<SigningKey> keys) {
+            this.keys = List.copyOf(keys);
+            Map<String, RSAPublicKey> published = new LinkedHashMap<>();
+            for (SigningKey key : keys) {
+                published.put(key.kid, key.publicKey);
+            }
+            this.publicKeys = Collections.unmodifiableMap(published);
+        }
+
+        private SigningKey active() {
+            if (keys.size() < 2) {
+                throw new IllegalStateException("Bộ khóa JWT chưa được nạp");
+            }
+            return keys.get(keys.size() - 2);
+        }
+    }
+}
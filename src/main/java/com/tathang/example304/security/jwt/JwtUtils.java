@@ -1,27 +1,40 @@
 package com.tathang.example304.security.jwt;
 
 import java.security.Key;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import com.tathang.example304.security.services.UserDetailsImpl;
+import com.tathang.example304.security.services.UserSecurityVersionService;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 
 @Component
 public class JwtUtils {
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
-    @Value("${bezkoder.app.jwtSecret}")
+    // Chỉ ký/xác thực refresh token (và access token khi HS256); node chỉ xác thực RS256 để trống
+    @Value("${bezkoder.app.jwtSecret:}")
     private String jwtSecret;
 
     @Value("${bezkoder.app.jwtExpirationMs}")
@@ -30,25 +43,118 @@ public class JwtUtils {
     @Value("${bezkoder.app.jwtRefreshExpirationMs}")
     private int jwtRefreshExpirationMs;
 
+    @Value("${bezkoder.app.jwtVerifiedCacheSize:1024}")
+    private int verifiedCacheSize;
+
+    // HS256: secret chung (mặc định). RS256: ký bằng bộ khóa RSA cục bộ, node khác xác thực qua JWKS
+    @Value("${bezkoder.app.jwtAlgorithm:HS256}")
+    private String jwtAlgorithm;
+
+    @Value("${bezkoder.app.jwtKeysDir:./keys}")
+    private String jwtKeysDir;
+
+    // Để trống trên auth node; node chỉ xác thực thì trỏ về /api/auth/jwks của auth node
+    @Value("${bezkoder.app.jwtJwksUri:}")
+    private String jwtJwksUri;
+
+    @Value("${bezkoder.app.jwtJwksCacheMs:300000}")
+    private long jwksCacheMs;
+
+    @Autowired
+    private UserSecurityVersionService securityVersions;
+
+    // Key và parser được dựng một lần, dùng chung cho mọi request (thread-safe)
+    private Key signingKey;
+    private JwtKeySet keySet;
+    private JwtParser parser;
+    private VerifiedTokenCache verifiedCache;
+
+    @PostConstruct
+    public void init() {
+        boolean verifyOnly = isRs256() && jwtJwksUri != null && !jwtJwksUri.isBlank();
+        if (jwtSecret != null && !jwtSecret.isBlank() && !verifyOnly) {
+            byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
+            if (keyBytes.length < 64) {
+                logger.warn("JWT secret key is too short ({} bytes). Recommended minimum is 64 bytes for HS512.",
+                        keyBytes.length);
+            }
+            this.signingKey = Keys.hmacShaKeyFor(keyBytes);
+        } else if (!verifyOnly) {
+            throw new IllegalStateException("bezkoder.app.jwtSecret is required on nodes that issue tokens");
+        }
+
+        Supplier<Map<String, ? extends PublicKey>> publicKeys = Map::of;
+        if (isRs256()) {
+            if (jwtJwksUri == null || jwtJwksUri.isBlank()) {
+                // Auth node: giữ khóa bí mật, giữ lại khóa cũ đủ lâu cho access token cuối cùng hết hạn
+                keySet = new JwtKeySet(jwtKeysDir, jwtExpirationMs + KEY_RETENTION_SKEW_MS);
+                keySet.load();
+                publicKeys = keySet::publicKeys;
+            } else {
+                publicKeys = JwksKeyResolver.remote(jwtJwksUri, new ObjectMapper());
+            }
+        }
+        // Refresh token luôn ký HMAC: RS256 chỉ nhận HS* cho refresh token, node chỉ xác thực không nhận HS*
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new JwksKeyResolver(signingKey, !isRs256(), publicKeys, jwksCacheMs,
+                        JWKS_MIN_REFRESH_MS))
+                .build();
+        this.verifiedCache = new VerifiedTokenCache(verifiedCacheSize);
+    }
+
+    public static final String REFRESH_TOKEN_TYPE = "refresh";
+
+    private static final long KEY_RETENTION_SKEW_MS = 60_000;
+    private static final long JWKS_MIN_REFRESH_MS = 10_000;
+
+    private boolean isRs256() {
+        return "RS256".equalsIgnoreCase(jwtAlgorithm);
+    }
+
+    // Xoay khóa ký định kỳ; chỉ auth node (có bộ khóa cục bộ) mới xoay
+    @Scheduled(initialDelayString = "${bezkoder.app.jwtKeyRotationMs:604800000}",
+            fixedDelayString = "${bezkoder.app.jwtKeyRotationMs:604800000}")
+    public void rotateSigningKey() {
+        if (keySet != null) {
+            keySet.rotate();
+        }
+    }
+
+    // Khóa công khai đang công bố, dùng cho JWKS endpoint; rỗng khi chạy HS256 hoặc node chỉ xác thực
+    public Map<String, RSAPublicKey> getPublicKeys() {
+        return keySet != null ? keySet.publicKeys() : Map.of();
+    }
+
     // Tạo access token với nhiều claims hơn
     public String generateJwtToken(Authentication authentication) {
+        return generateJwtToken(authentication, null);
+    }
+
+    // Access token gắn với refresh-token family để có thể thu hồi theo family
+    public String generateJwtToken(Authentication authentication, String familyId) {
         UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
 
         Map<String, Object> claims = new HashMap<>();
+        if (familyId != null) {
+            claims.put("fid", familyId);
+        }
         claims.put("sub", userPrincipal.getUsername());
         claims.put("userId", userPrincipal.getId());
         claims.put("email", userPrincipal.getEmail());
-        claims.put("roles", userPrincipal.getAuthorities());
+        claims.put("sv", securityVersions.current(userPrincipal.getId()));
+        claims.put("roles", userPrincipal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList());
         claims.put("iat", new Date());
         claims.put("exp", new Date((new Date()).getTime() + jwtExpirationMs));
 
-        String token = Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
                 .setClaims(claims)
+                .setId(UUID.randomUUID().toString())
                 .setSubject(userPrincipal.getUsername())
                 .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(key(), SignatureAlgorithm.HS256)
-                .compact();
+                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs));
+        String token = signAccessToken(builder).compact();
 
         logger.info("Generated JWT token length: {}", token.length());
         logger.info("Token expires at: {}", new Date((new Date()).getTime() + jwtExpirationMs));
@@ -56,66 +162,76 @@ public class JwtUtils {
         return token;
     }
 
-    // Tạo refresh token từ Authentication
-    public String generateRefreshToken(Authentication authentication) {
-        UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
-
+    // Tạo refresh token; jti/family/hạn dùng do RefreshTokenService quản lý
+    public String generateRefreshToken(String username, String tokenId, String familyId, Date expiresAt) {
         return Jwts.builder()
-                .setSubject(userPrincipal.getUsername())
+                .setSubject(username)
+                .setId(tokenId)
+                .claim("fid", familyId)
+                .claim("typ", REFRESH_TOKEN_TYPE)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtRefreshExpirationMs))
+                .setExpiration(expiresAt)
                 .signWith(key(), SignatureAlgorithm.HS512) // Dùng HS512 cho refresh token
                 .compact();
     }
 
     // 🆕 Thêm phương thức tạo token từ username
     public String generateTokenFromUsername(String username) {
-        return Jwts.builder()
+        return signAccessToken(Jwts.builder()
                 .setSubject(username)
                 .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(key(), SignatureAlgorithm.HS256)
+                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs)))
                 .compact();
     }
 
-    // 🆕 Thêm phương thức tạo refresh token từ username
-    public String generateRefreshTokenFromUsername(String username) {
-        return Jwts.builder()
-                .setSubject(username)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtRefreshExpirationMs))
-                .signWith(key(), SignatureAlgorithm.HS512)
-                .compact();
+    private JwtBuilder signAccessToken(JwtBuilder builder) {
+        if (!isRs256()) {
+            return builder.signWith(key(), SignatureAlgorithm.HS256);
+        }
+        if (keySet == null) {
+            throw new IllegalStateException("Node này chỉ xác thực token (jwtJwksUri đã cấu hình), không ký token");
+        }
+        // Đọc kid và khóa từ cùng một snapshot để không lệch nhau khi đang rotate
+        JwtKeySet.ActiveKey active = keySet.active();
+        return builder.setHeaderParam(JwsHeader.KEY_ID, active.kid())
+                .signWith(active.privateKey(), SignatureAlgorithm.RS256);
     }
 
     private Key key() {
-        // Đảm bảo secret key đủ dài (ít nhất 64 ký tự cho HS512)
-        byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
-        if (keyBytes.length < 64) {
-            logger.warn("JWT secret key is too short ({} bytes). Recommended minimum is 64 bytes for HS512.",
-                    keyBytes.length);
+        if (signingKey == null) {
+            throw new IllegalStateException("Node này chỉ xác thực token (jwtJwksUri đã cấu hình), không ký token");
         }
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signingKey;
     }
 
-    public String getUserNameFromJwtToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+    private Claims parseClaims(String token) {
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    public boolean validateJwtToken(String authToken) {
+    /**
+     * Xác thực token một lần duy nhất và trả về claims đã kiểm tra.
+     * Token đã xác thực gần đây được lấy từ cache (theo hash của token)
+     * cho đến khi hết hạn, nên request tiếp theo không phải verify chữ ký lại.
+     */
+    public Optional<VerifiedJwt> verifyJwtToken(String authToken) {
+        if (authToken == null || authToken.isEmpty()) {
+            logger.error("JWT claims string is empty");
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        VerifiedJwt cached = verifiedCache.get(authToken, now);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(key())
-                    .build()
-                    .parseClaimsJws(authToken);
-
-            logger.debug("JWT token is valid");
-            return true;
+            VerifiedJwt verified = VerifiedJwt.fromClaims(parseClaims(authToken));
+            if (verified.isRefreshToken()) {
+                // Refresh token chỉ dùng cho /api/auth/refresh, không dùng để gọi API
+                logger.error("Refresh token used as access token");
+                return Optional.empty();
+            }
+            verifiedCache.put(authToken, verified, now);
+            return Optional.of(verified);
         } catch (SecurityException e) {
             logger.error("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
@@ -129,17 +245,46 @@ public class JwtUtils {
         } catch (Exception e) {
             logger.error("JWT token validation error: {}", e.getMessage());
         }
-        return false;
+        return Optional.empty();
+    }
+
+    // Refresh token không đi qua cache: mỗi token chỉ được dùng đúng một lần
+    public Optional<VerifiedJwt> verifyRefreshToken(String refreshToken) {
+        try {
+            VerifiedJwt verified = VerifiedJwt.fromClaims(parseClaims(refreshToken));
+            if (!verified.isRefreshToken() || verified.getTokenId() == null) {
+                logger.error("Token is not a refresh token");
+                return Optional.empty();
+            }
+            return Optional.of(verified);
+        } catch (ExpiredJwtException e) {
+            logger.error("Refresh token is expired: {}", e.getMessage());
+        } catch (Exception e) {
+            logger.error("Refresh token validation error: {}", e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    public long getRefreshExpirationMs() {
+        return jwtRefreshExpirationMs;
+    }
+
+    public String getUserNameFromJwtToken(String token) {
+        return parseClaims(token).getSubject();
+    }
+
+    public boolean validateJwtToken(String authToken) {
+        boolean valid = verifyJwtToken(authToken).isPresent();
+        if (valid) {
+            logger.debug("JWT token is valid");
+        }
+        return valid;
     }
 
     // Kiểm tra token hết hạn
     public boolean isTokenExpired(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(key())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            Claims claims = parseClaims(token);
 
             return claims.getExpiration().before(new Date());
         } catch (Exception e) {
@@ -154,11 +299,7 @@ public class JwtUtils {
     // Thêm method để kiểm tra token sắp hết hạn
     public boolean isTokenExpiringSoon(String token, int minutesBefore) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(key())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            Claims claims = parseClaims(token);
 
             Date expiration = claims.getExpiration();
             Date now = new Date();
@@ -172,10 +313,6 @@ public class JwtUtils {
 
     // 🆕 Thêm phương thức để lấy claims từ token
     public Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parseClaims(token);
     }
 }
\ No newline at end of file
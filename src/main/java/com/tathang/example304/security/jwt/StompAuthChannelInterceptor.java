@@ -0,0 +1,95 @@
+package com.tathang.example304.security.jwt;
+
+import java.security.Principal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.tathang.example304.security.StompDestinationTable;
+import com.tathang.example304.security.services.UserDetailsImpl;
+import com.tathang.example304.security.services.UserSecurityVersionService;
+
+/**
+ * Xác thực STOMP bằng JWT, chỉ một lần lúc CONNECT.
+ *
+ * Token lấy từ native header {@code Authorization: Bearer ...} của frame CONNECT (SockJS không
+ * gửi được header HTTP nên không xác thực ở handshake). Principal được dựng thẳng từ claims và
+ * gắn vào session; các frame SUBSCRIBE/SEND sau đó chỉ tra {@link StompDestinationTable} bằng
+ * role mask của principal, không đọc DB và không verify lại token.
+ */
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(StompAuthChannelInterceptor.class);
+
+    private final JwtUtils jwtUtils;
+    private final UserSecurityVersionService securityVersions;
+    private final AccessTokenDenylist denylist;
+    private final StompDestinationTable destinations = StompDestinationTable.defaults();
+
+    public StompAuthChannelInterceptor(JwtUtils jwtUtils, UserSecurityVersionService securityVersions,
+            AccessTokenDenylist denylist) {
+        this.jwtUtils = jwtUtils;
+        this.securityVersions = securityVersions;
+        this.denylist = denylist;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message; // heartbeat
+        }
+        StompCommand command = accessor.getCommand();
+        if (command == StompCommand.CONNECT) {
+            accessor.setUser(authenticate(accessor.getFirstNativeHeader("Authorization")));
+        } else if (command == StompCommand.SUBSCRIBE || command == StompCommand.SEND) {
+            String destination = accessor.getDestination();
+            if (!destinations.isAllowed(destination, roleMask(accessor.getUser()))) {
+                logger.warn("STOMP {} to {} denied for {}", command, destination, name(accessor.getUser()));
+                throw new AccessDeniedException("Không có quyền với " + destination);
+            }
+        }
+        return message;
+    }
+
+    private UsernamePasswordAuthenticationToken authenticate(String header) {
+        if (!StringUtils.hasText(header) || !header.startsWith("Bearer ")) {
+            throw new BadCredentialsException("Thiếu JWT trong frame CONNECT");
+        }
+        VerifiedJwt verified = jwtUtils.verifyJwtToken(header.substring(7))
+                .orElseThrow(() -> new BadCredentialsException("JWT không hợp lệ"));
+        if (denylist.mightContain(verified.getTokenId()) || denylist.mightContain(verified.getFamilyId())) {
+            throw new BadCredentialsException("JWT đã bị thu hồi");
+        }
+        // Role/trạng thái user đã đổi sau khi cấp token: yêu cầu client refresh thay vì đọc DB
+        if (!securityVersions.isCurrent(verified.getUserId(), verified.getSecurityVersion())) {
+            throw new BadCredentialsException("JWT đã cũ, cần refresh");
+        }
+        UserDetailsImpl principal = UserDetailsImpl.fromClaims(verified.getUserId(), verified.getUsername(),
+                verified.getEmail(), verified.getRoles());
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+
+    private static int roleMask(Principal user) {
+        if (user instanceof UsernamePasswordAuthenticationToken authentication
+                && authentication.getPrincipal() instanceof UserDetailsImpl principal) {
+            return principal.getRoleMask();
+        }
+        return 0;
+    }
+
+    private static String name(Principal user) {
+        return user != null ? user.getName() : "anonymous";
+    }
+}
@@ -0,0 +1,12 @@
+package com.tathang.example304.security.jwt;
+
+/**
+ * Refresh token không hợp lệ, đã bị thu hồi hoặc bị dùng lại.
+ */
+public class TokenRefreshException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public TokenRefreshException(String message) {
+        super(message);
+    }
+}
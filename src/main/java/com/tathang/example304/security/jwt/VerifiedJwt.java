@@ -0,0 +1,120 @@
+package com.tathang.example304.security.jwt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Kết quả xác thực JWT (đã kiểm tra chữ ký + hạn dùng), chỉ parse một lần.
+ * Immutable nên có thể chia sẻ giữa các thread qua {@link VerifiedTokenCache}.
+ */
+public final class VerifiedJwt {
+
+    private final String username;
+    private final Long userId;
+    private final String email;
+    private final List<String> roles;
+    private final Long securityVersion;
+    private final String tokenId;
+    private final String familyId;
+    private final String type;
+    private final long issuedAtMillis;
+    private final long expiresAtMillis;
+
+    public VerifiedJwt(String username, Long userId, String email, List<String> roles,
+            Long securityVersion, String tokenId, String familyId, String type,
+            long issuedAtMillis, long expiresAtMillis) {
+        this.username = username;
+        this.userId = userId;
+        this.email = email;
+        this.roles = roles == null ? List.of() : List.copyOf(roles);
+        this.securityVersion = securityVersion;
+        this.tokenId = tokenId;
+        this.familyId = familyId;
+        this.type = type;
+        this.issuedAtMillis = issuedAtMillis;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    static VerifiedJwt fromClaims(Claims claims) {
+        return new VerifiedJwt(
+                claims.getSubject(),
+                readLong(claims.get("userId")),
+                claims.get("email", String.class),
+                readRoles(claims.get("roles")),
+                readLong(claims.get("sv")),
+                claims.getId(),
+                claims.get("fid", String.class),
+                claims.get("typ", String.class),
+                claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0L,
+                claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE);
+    }
+
+    private static Long readLong(Object raw) {
+        return raw instanceof Number number ? number.longValue() : null;
+    }
+
+    // Token cũ lưu roles dạng [{"authority":"ROLE_X"}], token mới lưu ["ROLE_X"]
+    private static List<String> readRoles(Object raw) {
+        if (!(raw instanceof Collection<?> values)) {
+            return Collections.emptyList();
+        }
+        List<String> roles = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value instanceof String role) {
+                roles.add(role);
+            } else if (value instanceof Map<?, ?> map && map.get("authority") != null) {
+                roles.add(map.get("authority").toString());
+            }
+        }
+        return roles;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public Long getSecurityVersion() {
+        return securityVersion;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public String getFamilyId() {
+        return familyId;
+    }
+
+    public boolean isRefreshToken() {
+        return JwtUtils.REFRESH_TOKEN_TYPE.equals(type);
+    }
+
+    public long getIssuedAtMillis() {
+        return issuedAtMillis;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+}
@@ -0,0 +1,94 @@
+package com.tathang.example304.security.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache nhỏ, có giới hạn kích thước cho các token đã xác thực.
+ * Key là SHA-256 của token (không giữ token gốc trong bộ nhớ),
+ * entry tự hết hiệu lực khi token hết hạn.
+ */
+public class VerifiedTokenCache {
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final int maxSize;
+    private final Map<TokenHash, VerifiedJwt> entries;
+
+    public VerifiedTokenCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        this.entries = new ConcurrentHashMap<>(Math.max(16, this.maxSize));
+    }
+
+    public VerifiedJwt get(String token, long nowMillis) {
+        if (maxSize == 0) {
+            return null;
+        }
+        TokenHash key = TokenHash.of(token);
+        VerifiedJwt cached = entries.get(key);
+        if (cached != null && cached.isExpired(nowMillis)) {
+            entries.remove(key, cached);
+            return null;
+        }
+        return cached;
+    }
+
+    public void put(String token, VerifiedJwt verified, long nowMillis) {
+        if (maxSize == 0 || verified.isExpired(nowMillis)) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict(nowMillis);
+        }
+        entries.put(TokenHash.of(token), verified);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Xóa token hết hạn trước; nếu vẫn đầy thì bỏ bớt 1/8 entry bất kỳ
+    private void evict(long nowMillis) {
+        entries.values().removeIf(v -> v.isExpired(nowMillis));
+        if (entries.size() < maxSize) {
+            return;
+        }
+        int toDrop = entries.size() - maxSize + Math.max(1, maxSize / 8);
+        Iterator<TokenHash> it = entries.keySet().iterator();
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private record TokenHash(long h0, long h1, long h2, long h3) {
+
+        static TokenHash of(String token) {
+            MessageDigest digest = SHA256.get();
+            byte[] d = digest.digest(token.getBytes(StandardCharsets.US_ASCII));
+            return new TokenHash(read(d, 0), read(d, 8), read(d, 16), read(d, 24));
+        }
+
+        private static long read(byte[] b, int off) {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (b[off + i] & 0xFF);
+            }
+            return v;
+        }
+    }
+}
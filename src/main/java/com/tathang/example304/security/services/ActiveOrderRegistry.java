@@ -0,0 +1,123 @@
+package com.tathang.example304.security.services;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.tathang.example304.model.Order;
+import com.tathang.example304.repository.OrderRepository;
+
+/**
+ * Con trỏ bàn -> order đang hoạt động (OPEN hoặc WAITING_PAYMENT), giữ trong bộ nhớ.
+ *
+ * Lần đầu hỏi một bàn thì đọc bằng index {@code orders(table_id, status)} (chỉ lấy id + giờ mở),
+ * sau đó trả từ map. Mở / đóng / hủy order cập nhật map sau khi transaction commit, để rollback
+ * không để lại con trỏ sai. Bàn không có order active thì không cache: luôn hỏi lại index.
+ * Con trỏ có thể cũ nếu order bị đổi ngoài các đường này, nên nơi đọc order đầy đủ phải kiểm tra
+ * lại trạng thái và gọi {@link #evict(Long)} khi lệch.
+ */
+@Component
+public class ActiveOrderRegistry {
+
+    public static final List<Order.OrderStatus> ACTIVE_STATUSES = List.of(Order.OrderStatus.OPEN,
+            Order.OrderStatus.WAITING_PAYMENT);
+
+    private final OrderRepository orderRepository;
+    private final Map<Long, ActiveOrder> byTable = new ConcurrentHashMap<>();
+
+    public ActiveOrderRegistry(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+    }
+
+    public record ActiveOrder(Long orderId, LocalDateTime startTime) {
+    }
+
+    public static boolean isActive(Order.OrderStatus status) {
+        return status == Order.OrderStatus.OPEN || status == Order.OrderStatus.WAITING_PAYMENT;
+    }
+
+    public Optional<ActiveOrder> find(Long tableId) {
+        ActiveOrder cached = byTable.get(tableId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        List<Object[]> rows = orderRepository.findActiveOrderRefs(tableId, ACTIVE_STATUSES, PageRequest.of(0, 1));
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        ActiveOrder loaded = new ActiveOrder((Long) rows.get(0)[0], (LocalDateTime) rows.get(0)[1]);
+        // Nếu một transaction vừa commit đã ghi con trỏ mới hơn thì giữ con trỏ đó
+        ActiveOrder current = byTable.putIfAbsent(tableId, loaded);
+        return Optional.of(current != null ? current : loaded);
+    }
+
+    /**
+     * Con trỏ active của nhiều bàn, đã đối chiếu trạng thái với DB bằng một câu theo khóa chính.
+     * Con trỏ lệch (order đã bị đóng / hủy ngoài luồng) bị bỏ và đọc lại từ index.
+     */
+    public Map<Long, ActiveOrder> findVerified(Collection<Long> tableIds) {
+        Map<Long, ActiveOrder> pointers = new HashMap<>();
+        for (Long tableId : tableIds) {
+            find(tableId).ifPresent(pointer -> pointers.put(tableId, pointer));
+        }
+        if (pointers.isEmpty()) {
+            return pointers;
+        }
+        Set<Long> active = new HashSet<>(orderRepository.findIdsStillIn(
+                pointers.values().stream().map(ActiveOrder::orderId).toList(), ACTIVE_STATUSES));
+        for (Long tableId : List.copyOf(pointers.keySet())) {
+            if (!active.contains(pointers.get(tableId).orderId())) {
+                evict(tableId);
+                find(tableId).ifPresentOrElse(pointer -> pointers.put(tableId, pointer),
+                        () -> pointers.remove(tableId));
+            }
+        }
+        return pointers;
+    }
+
+    // Gọi trong transaction mở order
+    public void opened(Order order) {
+        Long tableId = order.getTable().getId();
+        ActiveOrder pointer = new ActiveOrder(order.getId(), order.getStartTime());
+        afterCommit(() -> byTable.put(tableId, pointer));
+    }
+
+    // Gọi trong transaction đóng / hủy / xóa order; chỉ gỡ nếu bàn vẫn trỏ tới đúng order đó
+    public void ended(Long tableId, Long orderId) {
+        afterCommit(() -> byTable.computeIfPresent(tableId,
+                (id, pointer) -> pointer.orderId().equals(orderId) ? null : pointer));
+    }
+
+    // Không biết bàn (vd. xóa order theo id): quét map, số bàn nhỏ
+    public void ended(Long orderId) {
+        afterCommit(() -> byTable.values().removeIf(pointer -> pointer.orderId().equals(orderId)));
+    }
+
+    public void evict(Long tableId) {
+        byTable.remove(tableId);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
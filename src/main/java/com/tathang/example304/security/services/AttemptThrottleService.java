@@ -0,0 +1,102 @@
+package com.tathang.example304.security.services;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Giới hạn số lần đăng nhập / xác thực OTP / gửi OTP theo username, email và IP.
+ * Kiểm tra hoàn toàn trong bộ nhớ nên request bị chặn không tốn BCrypt, DB hay email.
+ */
+@Service
+public class AttemptThrottleService {
+
+    private final SlidingWindowLimiter loginByUser;
+    private final SlidingWindowLimiter loginByIp;
+    private final SlidingWindowLimiter otpFailuresByEmail;
+    private final SlidingWindowLimiter otpSendByEmail;
+    private final SlidingWindowLimiter otpByIp;
+    private final List<SlidingWindowLimiter> all;
+
+    public AttemptThrottleService(
+            @Value("${app.security.throttle.max-keys:10000}") int maxKeys,
+            @Value("${app.security.throttle.login-per-user:5}") int loginPerUser,
+            @Value("${app.security.throttle.login-user-window-ms:300000}") long loginUserWindowMs,
+            @Value("${app.security.throttle.login-per-ip:60}") int loginPerIp,
+            @Value("${app.security.throttle.login-ip-window-ms:60000}") long loginIpWindowMs,
+            @Value("${app.security.throttle.otp-max-failures:5}") int otpMaxFailures,
+            @Value("${app.security.throttle.otp-lockout-ms:900000}") long otpLockoutMs,
+            @Value("${app.security.throttle.otp-send-per-email:3}") int otpSendPerEmail,
+            @Value("${app.security.throttle.otp-send-window-ms:600000}") long otpSendWindowMs,
+            @Value("${app.security.throttle.otp-per-ip:20}") int otpPerIp,
+            @Value("${app.security.throttle.otp-ip-window-ms:600000}") long otpIpWindowMs) {
+        this.loginByUser = new SlidingWindowLimiter(loginPerUser, loginUserWindowMs, maxKeys);
+        this.loginByIp = new SlidingWindowLimiter(loginPerIp, loginIpWindowMs, maxKeys);
+        this.otpFailuresByEmail = new SlidingWindowLimiter(otpMaxFailures, otpLockoutMs, maxKeys);
+        this.otpSendByEmail = new SlidingWindowLimiter(otpSendPerEmail, otpSendWindowMs, maxKeys);
+        this.otpByIp = new SlidingWindowLimiter(otpPerIp, otpIpWindowMs, maxKeys);
+        this.all = List.of(loginByUser, loginByIp, otpFailuresByEmail, otpSendByEmail, otpByIp);
+    }
+
+    /**
+     * IP kiểm tra trước để một IP không thể rải username làm đầy bảng đếm.
+     * Đăng nhập thành công thì xóa bộ đếm của username (IP vẫn giữ vì nhân viên dùng chung mạng quán).
+     */
+    public boolean tryLogin(String username, String clientIp) {
+        return loginByIp.tryAcquire(clientIp) && loginByUser.tryAcquire(normalize(username));
+    }
+
+    public void loginSucceeded(String username) {
+        loginByUser.reset(normalize(username));
+    }
+
+    public long loginRetryAfterSeconds() {
+        return toSeconds(loginByUser.getWindowMillis());
+    }
+
+    // Xác thực OTP: mỗi lần thử đều bị tính, chỉ xóa khi nhập đúng
+    public boolean tryOtpVerify(String email) {
+        return otpFailuresByEmail.tryAcquire(normalize(email));
+    }
+
+    public boolean isOtpLocked(String email) {
+        return otpFailuresByEmail.isBlocked(normalize(email));
+    }
+
+    public void otpVerified(String email) {
+        otpFailuresByEmail.reset(normalize(email));
+    }
+
+    // Gửi / gửi lại OTP (tốn một email mỗi lần)
+    public boolean tryOtpSend(String email, String clientIp) {
+        return otpByIp.tryAcquire(clientIp) && otpSendByEmail.tryAcquire(normalize(email));
+    }
+
+    public boolean tryOtpRequest(String clientIp) {
+        return otpByIp.tryAcquire(clientIp);
+    }
+
+    public long otpRetryAfterSeconds() {
+        return toSeconds(otpSendByEmail.getWindowMillis());
+    }
+
+    /**
+     * Dọn key không còn hoạt động mỗi phút.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        all.forEach(limiter -> limiter.evict(now));
+    }
+
+    private static String normalize(String value) {
+        return value == null ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long toSeconds(long millis) {
+        return Math.max(1, millis / 1000);
+    }
+}
@@ -0,0 +1,8 @@
+package com.tathang.example304.security.services;
+
+/**
+ * Một sự kiện audit: loại sự kiện, người thực hiện và các cặp key/value bổ sung.
+ * Chỉ được tạo trên thread request; việc format JSON do thread ghi log làm.
+ */
+public record AuditEvent(long timestampMillis, String type, String actor, Object[] fields) {
+}
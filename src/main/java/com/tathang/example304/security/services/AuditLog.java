@@ -0,0 +1,250 @@
+package com.tathang.example304.security.services;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Audit log có cấu trúc (JSON mỗi dòng) cho đăng nhập, thay đổi order, thanh toán bill, tồn kho.
+ *
+ * {@link #record} chỉ đẩy sự kiện vào {@link AuditRingBuffer} (không lock, không I/O); một thread
+ * nền gom sự kiện theo lô, ghi vào file và xoay vòng file khi vượt dung lượng.
+ * Buffer đầy thì sự kiện bị bỏ và được đếm ở metric audit.events.dropped.
+ */
+@Component
+public class AuditLog {
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final DateTimeFormatter ROTATED_SUFFIX = DateTimeFormatter
+            .ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+    private static final int BATCH = 512;
+
+    private final AuditRingBuffer buffer;
+    private final Path directory;
+    private final Path activeFile;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final StringBuilder line = new StringBuilder(256);
+    private BufferedWriter writer;
+    private long writtenBytes;
+    private long rotations;
+    private volatile boolean running;
+    private Thread appender;
+
+    public AuditLog(MeterRegistry registry,
+            @Value("${app.audit.dir:./logs}") String directory,
+            @Value("${app.audit.buffer-size:8192}") int bufferSize,
+            @Value("${app.audit.max-file-bytes:10485760}") long maxFileBytes,
+            @Value("${app.audit.max-files:10}") int maxFiles) {
+        this.buffer = new AuditRingBuffer(bufferSize);
+        this.directory = Path.of(directory);
+        this.activeFile = this.directory.resolve("audit.log");
+        this.maxFileBytes = Math.max(1024, maxFileBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+
+        Gauge.builder("audit.queue.depth", buffer, AuditRingBuffer::size).register(registry);
+        Gauge.builder("audit.events.dropped", dropped, AtomicLong::get).register(registry);
+    }
+
+    /**
+     * Ghi nhận sự kiện. {@code fields} là các cặp key, value xen kẽ.
+     */
+    public void record(String type, Object... fields) {
+        if (!buffer.offer(new AuditEvent(System.currentTimeMillis(), type, currentActor(), fields))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        appender = new Thread(this::runAppender, "audit-appender");
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (appender != null) {
+            LockSupport.unpark(appender);
+            try {
+                appender.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void runAppender() {
+        long idleNanos = 0;
+        while (running) {
+            if (drainOnce() > 0) {
+                idleNanos = 0;
+            } else {
+                // Không có việc: ngủ tăng dần tới 10ms, producer không cần đánh thức
+                idleNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(10), Math.max(50_000, idleNanos * 2));
+                LockSupport.parkNanos(idleNanos);
+            }
+        }
+        while (drainOnce() > 0) {
+            // ghi nốt sự kiện còn lại khi tắt
+        }
+        closeWriter();
+    }
+
+    private int drainOnce() {
+        try {
+            int drained = buffer.drain(this::append, BATCH);
+            if (drained > 0 && writer != null) {
+                writer.flush();
+            }
+            return drained;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Audit log write failed: {}", e.getMessage());
+            closeWriter();
+            return 0;
+        }
+    }
+
+    private void append(AuditEvent event) {
+        try {
+            if (writer == null || writtenBytes >= maxFileBytes) {
+                rotate();
+            }
+            String json = toJson(event);
+            writer.write(json);
+            writer.write('\n');
+            writtenBytes += json.length() + 1;
+        } catch (IOException e) {
+            // Không dừng cả lô vì một lỗi ghi: bỏ sự kiện này, mở lại file ở lần sau
+            dropped.incrementAndGet();
+            closeWriter();
+        }
+    }
+
+    private void rotate() throws IOException {
+        Files.createDirectories(directory);
+        if (writer != null) {
+            closeWriter();
+        }
+        if (Files.exists(activeFile) && Files.size(activeFile) >= maxFileBytes) {
+            Path rotated = directory.resolve("audit-" + ROTATED_SUFFIX.format(Instant.now())
+                    + "-" + (++rotations) + ".log");
+            Files.move(activeFile, rotated);
+            pruneRotated();
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(activeFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+        writtenBytes = Files.size(activeFile);
+    }
+
+    private void pruneRotated() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> rotated = files
+                    .filter(p -> p.getFileName().toString().startsWith("audit-"))
+                    .sorted(Comparator.comparing(p -> p.getFileName().toString()))
+                    .toList();
+            for (int i = 0; i < rotated.size() - maxFiles; i++) {
+                Files.deleteIfExists(rotated.get(i));
+            }
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+                // file sẽ được mở lại ở lần ghi sau
+            }
+            writer = null;
+        }
+    }
+
+    private String toJson(AuditEvent event) {
+        StringBuilder sb = line;
+        sb.setLength(0);
+        sb.append("{\"ts\":\"").append(Instant.ofEpochMilli(event.timestampMillis())).append('"');
+        sb.append(",\"type\":");
+        appendValue(sb, event.type());
+        sb.append(",\"actor\":");
+        appendValue(sb, event.actor());
+        Object[] fields = event.fields();
+        if (fields != null) {
+            for (int i = 0; i + 1 < fields.length; i += 2) {
+                sb.append(',');
+                appendValue(sb, String.valueOf(fields[i]));
+                sb.append(':');
+                appendValue(sb, fields[i + 1]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+            return;
+        }
+        String text = value.toString();
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static String currentActor() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && !(authentication instanceof AnonymousAuthenticationToken)
+                ? authentication.getName()
+                : null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.tathang.example304.security.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Ring buffer nhiều producer / một consumer, không dùng lock (mỗi slot có một sequence riêng).
+ * Producer chỉ CAS con trỏ tail; khi buffer đầy thì {@link #offer} trả false ngay, không bao giờ chờ.
+ */
+public class AuditRingBuffer {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<AuditEvent> slots;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    public AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.slots = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public boolean offer(AuditEvent event) {
+        long position = tail.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, event);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // đầy: slot chưa được consumer giải phóng
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Chỉ được gọi từ một thread consumer duy nhất.
+     */
+    public int drain(Consumer<AuditEvent> sink, int maxEvents) {
+        long position = head.get();
+        int drained = 0;
+        try {
+            while (drained < maxEvents) {
+                int index = (int) (position & mask);
+                if (sequences.get(index) != position + 1) {
+                    break;
+                }
+                AuditEvent event = slots.get(index);
+                slots.lazySet(index, null);
+                sequences.lazySet(index, position + mask + 1);
+                position++;
+                drained++;
+                sink.accept(event);
+            }
+        } finally {
+            head.lazySet(position);
+        }
+        return drained;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -5,21 +5,21 @@ import org.springframework.stereotype.Service;
 import com.tathang.example304.dto.TableDTO;
 import com.tathang.example304.model.BidaTable;
 import com.tathang.example304.repository.BidaTableRepository;
-import com.tathang.example304.repository.OrderRepository;
 
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class BidaTableService {
 
     private final BidaTableRepository tableRepository;
-    private final OrderRepository orderRepository;
+    private final ActiveOrderRegistry activeOrders;
 
     public BidaTableService(
             BidaTableRepository tableRepository,
-            OrderRepository orderRepository) {
+            ActiveOrderRegistry activeOrders) {
         this.tableRepository = tableRepository;
-        this.orderRepository = orderRepository;
+        this.activeOrders = activeOrders;
     }
 
     public List<BidaTable> getAllTables() {
@@ -47,7 +47,14 @@ public class BidaTableService {
     }
 
     public List<TableDTO> getAllTableDTO() {
-        return tableRepository.findAll().stream().map(table -> {
+        List<BidaTable> tables = tableRepository.findAll();
+        // Chỉ cần id + giờ mở: lấy từ con trỏ (đã đối chiếu trạng thái), không fetch order kèm items
+        Map<Long, ActiveOrderRegistry.ActiveOrder> activeByTable = activeOrders.findVerified(tables.stream()
+                .filter(table -> table.getStatus() == BidaTable.TableStatus.OCCUPIED)
+                .map(BidaTable::getId)
+                .toList());
+
+        return tables.stream().map(table -> {
             TableDTO dto = new TableDTO();
 
             dto.setId(table.getId());
@@ -56,14 +63,10 @@ public class BidaTableService {
             dto.setCapacity(table.getCapacity());
             dto.setStatus(table.getStatus());
 
-            if (table.getStatus() == BidaTable.TableStatus.OCCUPIED) {
-                orderRepository.findActiveOrderByTable(table.getId())
-                        .stream()
-                        .findFirst()
-                        .ifPresent(order -> {
-                            dto.setCurrentOrderId(order.getId());
-                            dto.setStartTime(order.getStartTime());
-                        });
+            ActiveOrderRegistry.ActiveOrder order = activeByTable.get(table.getId());
+            if (order != null) {
+                dto.setCurrentOrderId(order.orderId());
+                dto.setStartTime(order.startTime());
             }
 
             return dto;
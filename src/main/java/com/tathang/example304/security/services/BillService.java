@@ -3,14 +3,20 @@ package com.tathang.example304.security.services;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.tathang.example304.dto.BillDTO;
+import com.tathang.example304.dto.BillSummaryDTO;
+import com.tathang.example304.model.BidaTable;
 import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.Money;
 import com.tathang.example304.model.Order;
+import com.tathang.example304.payload.response.CursorPage;
 import com.tathang.example304.repository.BillRepository;
 import com.tathang.example304.repository.OrderRepository;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -18,13 +24,36 @@ public class BillService {
 
     private final BillRepository billRepository;
     private final OrderRepository orderRepository;
-
-    public BillService(BillRepository billRepository, OrderRepository orderRepository) {
+    private final AuditLog auditLog;
+    private final ActiveOrderRegistry activeOrders;
+    private final TableSessionStore tableSessions;
+    private final OrderStateMachine stateMachine;
+    private final PricingEngine pricingEngine;
+    private final RevenueRollupService revenueRollup;
+
+    public BillService(BillRepository billRepository, OrderRepository orderRepository, AuditLog auditLog,
+            ActiveOrderRegistry activeOrders, TableSessionStore tableSessions, OrderStateMachine stateMachine,
+            PricingEngine pricingEngine, RevenueRollupService revenueRollup) {
         this.billRepository = billRepository;
         this.orderRepository = orderRepository;
+        this.auditLog = auditLog;
+        this.activeOrders = activeOrders;
+        this.tableSessions = tableSessions;
+        this.stateMachine = stateMachine;
+        this.pricingEngine = pricingEngine;
+        this.revenueRollup = revenueRollup;
     }
 
     public Bill createBill(Long orderId, Bill.PaymentMethod paymentMethod) {
+        // Đã lập hóa đơn (client gửi lại): trả hóa đơn cũ, không cộng tiền giờ lần nữa
+        Optional<Bill> existing = billRepository.findByOrderId(orderId);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        // Tổng tiền phải là bản đã ghi xuống DB, không phải bản còn chờ write-behind
+        tableSessions.close(orderId);
+        // Chốt trạng thái trước (compare-and-set): hủy bàn chen vào giữa thì một trong hai nhận 409
+        stateMachine.transition(orderId, Order.OrderStatus.PAID);
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
 
@@ -32,31 +61,41 @@ public class BillService {
         LocalDateTime endTime = LocalDateTime.now();
         order.setEndTime(endTime);
 
-        // 2️⃣ Tính tiền giờ
-        BigDecimal playFee = calculatePlayFee(order.getStartTime(), endTime);
+        // 2️⃣ Tính tiền giờ (bảng giá theo khung giờ / loại bàn)
+        BidaTable.TableType tableType = order.getTable() != null ? order.getTable().getTableType() : null;
+        Money playFee = Money.of(pricingEngine.playFee(tableType, order.getStartTime(), endTime));
 
         // 3️⃣ Tổng tiền = tiền giờ + tiền đồ
-        BigDecimal total = order.getTotalAmount().add(playFee);
+        Money total = order.getTotalAmount().plus(playFee);
         order.setTotalAmount(total);
 
-        // 4️⃣ Đóng order
-        order.setStatus(Order.OrderStatus.PAID);
+        // 4️⃣ Đóng order (trạng thái đã chuyển ở trên)
         orderRepository.save(order);
+        activeOrders.ended(orderId);
 
         // 5️⃣ Tạo bill
         Bill bill = new Bill(order, total);
+        bill.setPlayFee(playFee);
         bill.setPaymentMethod(paymentMethod);
         bill.setPaymentStatus(Bill.PaymentStatus.PENDING);
         bill.setIssuedAt(endTime);
 
-        return billRepository.save(bill);
+        Bill saved = billRepository.save(bill);
+        auditLog.record("BILL_CREATED", "billId", saved.getId(), "orderId", orderId, "playFee", playFee,
+                "total", total, "method", paymentMethod);
+        return saved;
     }
 
     public Bill updatePaymentStatus(Long billId, Bill.PaymentStatus paymentStatus) {
-        Bill bill = billRepository.findById(billId)
+        Bill bill = billRepository.findByIdForUpdate(billId)
                 .orElseThrow(() -> new RuntimeException("Bill not found"));
+        Bill.PaymentStatus previous = bill.getPaymentStatus();
+        RevenueRollupService.Contribution before = RevenueRollupService.Contribution.of(bill);
         bill.setPaymentStatus(paymentStatus);
-        return billRepository.save(bill);
+        Bill saved = billRepository.save(bill);
+        revenueRollup.billChanged(before, saved);
+        auditLog.record("BILL_STATUS_CHANGED", "billId", billId, "from", previous, "to", paymentStatus);
+        return saved;
     }
 
     public Bill getBillByOrderId(Long orderId) {
@@ -67,45 +106,54 @@ public class BillService {
     // ========== THÊM CÁC PHƯƠNG THỨC BỊ THIẾU ==========
 
     // 1. Phương thức getBillByOrder - được gọi từ Controller
-    public Bill getBillByOrder(Long orderId) {
-        return getBillByOrderId(orderId);
+    @Transactional(readOnly = true)
+    public BillDTO getBillByOrder(Long orderId) {
+        return billRepository.findViewByOrderId(orderId).orElse(null);
     }
 
     // 2. Phương thức confirmCashPayment - được gọi từ Controller
     public void confirmCashPayment(Long billId) {
-        Bill bill = billRepository.findById(billId)
+        Bill bill = billRepository.findByIdForUpdate(billId)
                 .orElseThrow(() -> new RuntimeException("Bill not found"));
+        RevenueRollupService.Contribution before = RevenueRollupService.Contribution.of(bill);
 
         bill.setPaymentMethod(Bill.PaymentMethod.CASH);
         bill.setPaymentStatus(Bill.PaymentStatus.PAID);
         bill.setIssuedAt(LocalDateTime.now());
 
         billRepository.save(bill);
+        revenueRollup.billChanged(before, bill);
+        auditLog.record("BILL_PAID", "billId", billId, "method", Bill.PaymentMethod.CASH,
+                "amount", bill.getTotalAmount());
 
         // Cập nhật trạng thái order nếu cần
         Order order = bill.getOrder();
         if (order != null && order.getStatus() != Order.OrderStatus.PAID) {
-            order.setStatus(Order.OrderStatus.PAID);
-            orderRepository.save(order);
+            stateMachine.transition(order.getId(), Order.OrderStatus.PAID);
+            activeOrders.ended(order.getId());
         }
     }
 
     // 3. Phương thức confirmMomoPayment - được gọi từ Controller
     public void confirmMomoPayment(Long billId) {
-        Bill bill = billRepository.findById(billId)
+        Bill bill = billRepository.findByIdForUpdate(billId)
                 .orElseThrow(() -> new RuntimeException("Bill not found"));
+        RevenueRollupService.Contribution before = RevenueRollupService.Contribution.of(bill);
 
         bill.setPaymentMethod(Bill.PaymentMethod.MOMO);
         bill.setPaymentStatus(Bill.PaymentStatus.PAID);
         bill.setIssuedAt(LocalDateTime.now());
 
         billRepository.save(bill);
+        revenueRollup.billChanged(before, bill);
+        auditLog.record("BILL_PAID", "billId", billId, "method", Bill.PaymentMethod.MOMO,
+                "amount", bill.getTotalAmount());
 
         // Cập nhật trạng thái order nếu cần
         Order order = bill.getOrder();
         if (order != null && order.getStatus() != Order.OrderStatus.PAID) {
-            order.setStatus(Order.OrderStatus.PAID);
-            orderRepository.save(order);
+            stateMachine.transition(order.getId(), Order.OrderStatus.PAID);
+            activeOrders.ended(order.getId());
         }
     }
 
@@ -114,28 +162,23 @@ public class BillService {
         return billRepository.findByPaymentStatus(paymentStatus);
     }
 
-    public BigDecimal getTotalRevenue(LocalDateTime startDate, LocalDateTime endDate) {
-        BigDecimal revenue = billRepository.getTotalRevenueByDateRange(startDate, endDate);
-        return revenue != null ? revenue : BigDecimal.ZERO;
+    // status = null: mọi trạng thái
+    @Transactional(readOnly = true)
+    public CursorPage<BillSummaryDTO> getBills(Bill.PaymentStatus status, Long after, Integer limit) {
+        return CursorPage.of(
+                billRepository.findSummariesAfter(status, CursorPage.after(after), CursorPage.limit(limit)),
+                BillSummaryDTO::id);
     }
 
-    private BigDecimal calculatePlayFee(LocalDateTime start, LocalDateTime end) {
-        if (start == null || end == null) {
-            return BigDecimal.ZERO;
+    @Transactional(readOnly = true)
+    public void streamBills(Bill.PaymentStatus status, Consumer<BillSummaryDTO> sink) {
+        try (Stream<BillSummaryDTO> bills = billRepository.streamSummaries(status)) {
+            bills.forEach(sink);
         }
+    }
 
-        long minutes = java.time.Duration.between(start, end).toMinutes();
-        if (minutes <= 0)
-            minutes = 1;
-
-        // Giá bàn: 60.000 / giờ
-        BigDecimal pricePerHour = new BigDecimal("60000");
-
-        // Làm tròn lên theo phút
-        BigDecimal hours = BigDecimal.valueOf(minutes)
-                .divide(BigDecimal.valueOf(60), 2, java.math.RoundingMode.UP);
-
-        return pricePerHour.multiply(hours);
+    public Money getTotalRevenue(LocalDateTime startDate, LocalDateTime endDate) {
+        return Money.of(billRepository.getTotalRevenueByDateRange(startDate, endDate));
     }
 
 }
\ No newline at end of file
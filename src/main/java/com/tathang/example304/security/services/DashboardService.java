@@ -6,8 +6,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
@@ -39,6 +37,9 @@ public class DashboardService {
     @Autowired
     private OrderItemRepository orderItemRepository;
 
+    @Autowired
+    private RevenueRollupService revenueRollup;
+
     // ===== TỔNG QUAN DASHBOARD =====
     public Map<String, Object> getDashboardOverview(String timeRange) {
         LocalDate startDate = getStartDateByTimeRange(timeRange);
@@ -53,16 +54,10 @@ public class DashboardService {
         long totalOrders = orderRepository.count();
         long newOrders = orderRepository.countByCreatedAtAfter(startDate.atStartOfDay());
 
-        // Tổng doanh thu
-        BigDecimal totalRevenue = billRepository.getTotalRevenue();
-        if (totalRevenue == null) {
-            totalRevenue = BigDecimal.ZERO;
-        }
-
-        BigDecimal periodRevenue = billRepository.getRevenueAfter(startDate.atStartOfDay());
-        if (periodRevenue == null) {
-            periodRevenue = BigDecimal.ZERO;
-        }
+        // Tổng doanh thu (đơn vị nhỏ nhất, xem Money) từ bảng tổng hợp theo ngày
+        LocalDate today = LocalDate.now();
+        long totalRevenue = revenueRollup.totalRevenue();
+        long periodRevenue = revenueRollup.revenueBetween(startDate, today);
 
         // Tổng sản phẩm
         long totalProducts = productRepository.countByActiveTrue();
@@ -71,18 +66,13 @@ public class DashboardService {
         long activeTables = bidaTableRepository.countByStatus(BidaTable.TableStatus.OCCUPIED);
 
         // Tính tỷ lệ tăng trưởng
-        BigDecimal previousPeriodRevenue = billRepository.getRevenueBetween(
-                startDate.minusDays(getDaysByTimeRange(timeRange)).atStartOfDay(),
-                startDate.atStartOfDay());
-        if (previousPeriodRevenue == null) {
-            previousPeriodRevenue = BigDecimal.ZERO;
-        }
+        long previousPeriodRevenue = revenueRollup.revenueBetween(
+                startDate.minusDays(getDaysByTimeRange(timeRange)), startDate.minusDays(1));
 
-        BigDecimal growthRate = BigDecimal.ZERO;
-        if (previousPeriodRevenue.compareTo(BigDecimal.ZERO) > 0) {
-            growthRate = periodRevenue.subtract(previousPeriodRevenue)
-                    .divide(previousPeriodRevenue, 4, RoundingMode.HALF_UP)
-                    .multiply(BigDecimal.valueOf(100));
+        // Phần trăm, 2 chữ số thập phân
+        double growthRate = 0;
+        if (previousPeriodRevenue > 0) {
+            growthRate = Math.round((periodRevenue - previousPeriodRevenue) * 10000.0 / previousPeriodRevenue) / 100.0;
         }
 
         response.put("totalUsers", totalUsers);
@@ -112,17 +102,10 @@ public class DashboardService {
         LocalDateTime endDateTime = endDate.atTime(23, 59, 59);
 
         // Doanh thu theo ngày
-        List<Object[]> dailyRevenue = billRepository.getDailyRevenueBetween(startDateTime, endDateTime);
-        Map<String, BigDecimal> revenueByDate = new HashMap<>();
-        if (dailyRevenue != null) {
-            revenueByDate = dailyRevenue.stream()
-                    .collect(Collectors.toMap(
-                            arr -> ((java.sql.Date) arr[0]).toLocalDate().format(DateTimeFormatter.ofPattern("dd/MM")),
-                            arr -> {
-                                BigDecimal revenue = (BigDecimal) arr[1];
-                                return revenue != null ? revenue : BigDecimal.ZERO;
-                            }));
-        }
+        Map<LocalDate, Long> dailyRevenue = revenueRollup.dailyRevenue(startDate, endDate);
+        Map<String, Long> revenueByDate = new HashMap<>();
+        dailyRevenue.forEach((date, revenue) -> revenueByDate.merge(
+                date.format(DateTimeFormatter.ofPattern("dd/MM")), revenue, Long::sum));
 
         // Đơn hàng theo ngày
         List<Object[]> dailyOrders = orderRepository.getDailyOrdersBetween(startDateTime, endDateTime);
@@ -134,10 +117,7 @@ public class DashboardService {
                             arr -> (Long) arr[1]));
         }
 
-        BigDecimal totalRevenue = billRepository.getRevenueBetween(startDateTime, endDateTime);
-        if (totalRevenue == null) {
-            totalRevenue = BigDecimal.ZERO;
-        }
+        long totalRevenue = dailyRevenue.values().stream().mapToLong(Long::longValue).sum();
 
         result.put("revenueByDate", revenueByDate);
         result.put("ordersByDate", ordersByDate);
@@ -164,13 +144,13 @@ public class DashboardService {
             productMap.put("id", arr[0]);
             productMap.put("name", arr[1]);
             productMap.put("soldQuantity", arr[2]);
-            productMap.put("revenue", arr[3]);
+            productMap.put("revenue", sum(arr[3]));
             return productMap;
         }).collect(Collectors.toList());
     }
 
     // ===== DOANH THU THEO THÁNG =====
-    public Map<String, BigDecimal> getMonthlyRevenue(Integer yearParam) {
+    public Map<String, Long> getMonthlyRevenue(Integer yearParam) {
         // Sử dụng biến final để sử dụng trong lambda
         final int year;
         if (yearParam == null) {
@@ -179,27 +159,12 @@ public class DashboardService {
             year = yearParam;
         }
 
-        LocalDateTime startDate = LocalDate.of(year, 1, 1).atStartOfDay();
-        LocalDateTime endDate = LocalDate.of(year, 12, 31).atTime(23, 59, 59);
+        Map<Integer, Long> monthlyData = revenueRollup.monthlyRevenue(year);
 
-        List<Object[]> monthlyData = billRepository.getMonthlyRevenue(startDate, endDate);
-
-        Map<String, BigDecimal> result = new LinkedHashMap<>();
+        Map<String, Long> result = new LinkedHashMap<>();
         for (int i = 1; i <= 12; i++) {
             String monthKey = String.format("%02d/%d", i, year);
-            result.put(monthKey, BigDecimal.ZERO);
-        }
-
-        if (monthlyData != null) {
-            monthlyData.forEach(arr -> {
-                Integer month = (Integer) arr[0];
-                BigDecimal revenue = (BigDecimal) arr[1];
-                if (revenue == null) {
-                    revenue = BigDecimal.ZERO;
-                }
-                String monthKey = String.format("%02d/%d", month, year);
-                result.put(monthKey, revenue);
-            });
+            result.put(monthKey, monthlyData.getOrDefault(i, 0L));
         }
 
         return result;
@@ -326,26 +291,16 @@ public class DashboardService {
 
         Map<String, Object> result = new HashMap<>();
 
-        BigDecimal dailyRevenue = billRepository.getRevenueBetween(startOfDay, endOfDay);
-        if (dailyRevenue == null) {
-            dailyRevenue = BigDecimal.ZERO;
-        }
-
         long dailyOrders = orderRepository.countByCreatedAtBetween(startOfDay, endOfDay);
 
         // Doanh thu theo phương thức thanh toán
-        List<Object[]> paymentMethodStats = billRepository.getRevenueByPaymentMethod(startOfDay, endOfDay);
-        Map<String, BigDecimal> revenueByPaymentMethod = new HashMap<>();
-        if (paymentMethodStats != null) {
-            revenueByPaymentMethod = paymentMethodStats.stream()
-                    .collect(Collectors.toMap(
-                            arr -> arr[0].toString(), // ✅ enum -> String
-                            arr -> (BigDecimal) arr[1]));
-        }
+        Map<String, Long> revenueByPaymentMethod = revenueRollup.revenueByPaymentMethod(date);
+        long dailyRevenue = revenueByPaymentMethod.values().stream().mapToLong(Long::longValue).sum();
 
-        BigDecimal averageOrderValue = BigDecimal.ZERO;
+        // Làm tròn half-up về đơn vị nhỏ nhất
+        long averageOrderValue = 0;
         if (dailyOrders > 0) {
-            averageOrderValue = dailyRevenue.divide(BigDecimal.valueOf(dailyOrders), 2, RoundingMode.HALF_UP);
+            averageOrderValue = (dailyRevenue + dailyOrders / 2) / dailyOrders;
         }
 
         result.put("date", date.toString());
@@ -378,10 +333,7 @@ public class DashboardService {
                 Order.OrderStatus.CANCELLED, startDateTime, endDateTime);
 
         // Doanh thu từ đơn hàng đã thanh toán
-        BigDecimal revenueFromPaidOrders = billRepository.getRevenueFromPaidOrders(startDateTime, endDateTime);
-        if (revenueFromPaidOrders == null) {
-            revenueFromPaidOrders = BigDecimal.ZERO;
-        }
+        long revenueFromPaidOrders = billRepository.getRevenueFromPaidOrders(startDateTime, endDateTime);
 
         stats.put("totalOrders", totalOrders);
         stats.put("openOrders", openOrders);
@@ -395,6 +347,11 @@ public class DashboardService {
     }
 
     // ===== CÁC PHƯƠNG THỨC HỖ TRỢ =====
+    // Cột SUM(...) trong các câu group by: Long theo đơn vị nhỏ nhất, null khi không có dòng
+    private static long sum(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
     private LocalDate getStartDateByTimeRange(String timeRange) {
         LocalDate now = LocalDate.now();
 
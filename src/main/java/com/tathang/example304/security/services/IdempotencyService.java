@@ -0,0 +1,241 @@
+package com.tathang.example304.security.services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tathang.example304.model.IdempotencyRecord;
+import com.tathang.example304.repository.IdempotencyRecordRepository;
+
+/**
+ * Lưu kết quả của request có Idempotency-Key để lần gửi lại trả đúng response cũ mà không
+ * chạy lại service.
+ *
+ * Response đã xong nằm trong cache bộ nhớ có giới hạn + TTL, bản bền ở bảng
+ * {@code idempotency_keys}. Bản trùng chạy đồng thời trên cùng máy chờ request đầu tiên rồi
+ * dùng lại kết quả; khác máy thì unique scope_key chặn, bản đến sau nhận {@link Outcome#BUSY}.
+ */
+@Service
+public class IdempotencyService {
+
+    // Response lớn hơn thì không lưu (cột TEXT), request chạy như không có key
+    static final int MAX_BODY_CHARS = 60_000;
+
+    private final IdempotencyRecordRepository repository;
+    private final TransactionTemplate transactions;
+    private final Duration ttl;
+    private final Duration inProgressTtl;
+    private final long waitMillis;
+    private final int cacheSize;
+
+    private final Map<String, StoredResponse> completed = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(IdempotencyRecordRepository repository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.idempotency.ttl-hours:24}") long ttlHours,
+            @Value("${app.idempotency.in-progress-seconds:120}") long inProgressSeconds,
+            @Value("${app.idempotency.wait-ms:10000}") long waitMillis,
+            @Value("${app.idempotency.cache-size:10000}") int cacheSize) {
+        this.repository = repository;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.transactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.ttl = Duration.ofHours(ttlHours);
+        this.inProgressTtl = Duration.ofSeconds(inProgressSeconds);
+        this.waitMillis = waitMillis;
+        this.cacheSize = Math.max(1, cacheSize);
+    }
+
+    public enum Outcome {
+        PROCEED, // request này giữ key: chạy rồi gọi complete / release
+        REPLAY, // đã có kết quả: trả lại response
+        MISMATCH, // key đã dùng cho request khác
+        BUSY // bản đầu tiên vẫn đang chạy (máy khác, hoặc chờ quá wait-ms)
+    }
+
+    public record StoredResponse(String fingerprint, int status, String contentType, String body,
+            LocalDateTime expiresAt) {
+
+        boolean isExpired(LocalDateTime now) {
+            return expiresAt.isBefore(now);
+        }
+    }
+
+    public record Claim(Outcome outcome, StoredResponse response) {
+    }
+
+    public Claim claim(String scopeKey, String fingerprint) {
+        while (true) {
+            StoredResponse cached = cached(scopeKey);
+            if (cached != null) {
+                return replay(cached, fingerprint);
+            }
+
+            CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(scopeKey, mine);
+            if (running != null) {
+                StoredResponse done;
+                try {
+                    done = running.get(waitMillis, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    return new Claim(Outcome.BUSY, null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return new Claim(Outcome.BUSY, null);
+                } catch (ExecutionException e) {
+                    done = null;
+                }
+                if (done != null) {
+                    return replay(done, fingerprint);
+                }
+                continue; // request đầu tiên lỗi và đã nhả key: thử giữ lại
+            }
+
+            try {
+                Claim claim = claimRow(scopeKey, fingerprint);
+                if (claim.outcome() != Outcome.PROCEED) {
+                    finish(scopeKey, mine, claim.response());
+                }
+                return claim;
+            } catch (RuntimeException e) {
+                finish(scopeKey, mine, null);
+                throw e;
+            }
+        }
+    }
+
+    // Lưu response của request đã giữ key (không lưu nếu quá lớn: nhả key)
+    public void complete(String scopeKey, String fingerprint, int status, String contentType, String body) {
+        if (body != null && body.length() > MAX_BODY_CHARS) {
+            release(scopeKey);
+            return;
+        }
+        StoredResponse response = new StoredResponse(fingerprint, status, contentType, body,
+                LocalDateTime.now().plus(ttl));
+        try {
+            transactions.executeWithoutResult(tx -> repository.findByScopeKey(scopeKey).ifPresent(record -> {
+                record.setStatus(IdempotencyRecord.Status.COMPLETED);
+                record.setResponseStatus(status);
+                record.setContentType(contentType);
+                record.setResponseBody(body);
+                record.setExpiresAt(response.expiresAt());
+            }));
+            remember(scopeKey, response);
+        } finally {
+            CompletableFuture<StoredResponse> running = inFlight.get(scopeKey);
+            if (running != null) {
+                finish(scopeKey, running, response);
+            }
+        }
+    }
+
+    // Request lỗi (5xx / exception): không lưu, lần gửi lại chạy như mới
+    public void release(String scopeKey) {
+        try {
+            transactions.executeWithoutResult(tx -> repository.releaseInProgress(scopeKey));
+        } finally {
+            CompletableFuture<StoredResponse> running = inFlight.get(scopeKey);
+            if (running != null) {
+                finish(scopeKey, running, null);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-ms:600000}")
+    public void cleanupExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        completed.values().removeIf(r -> r.isExpired(now));
+        repository.deleteExpired(now);
+    }
+
+    private Claim claimRow(String scopeKey, String fingerprint) {
+        Optional<Claim> existing = transactions.execute(tx -> existingRow(scopeKey, fingerprint));
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        try {
+            transactions.executeWithoutResult(tx -> repository.saveAndFlush(
+                    new IdempotencyRecord(scopeKey, fingerprint, LocalDateTime.now().plus(inProgressTtl))));
+            return new Claim(Outcome.PROCEED, null);
+        } catch (DataIntegrityViolationException e) {
+            // Máy khác vừa chèn cùng key
+            return transactions.execute(tx -> existingRow(scopeKey, fingerprint))
+                    .orElse(new Claim(Outcome.BUSY, null));
+        }
+    }
+
+    private Optional<Claim> existingRow(String scopeKey, String fingerprint) {
+        Optional<IdempotencyRecord> found = repository.findByScopeKey(scopeKey);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        IdempotencyRecord record = found.get();
+        if (record.getExpiresAt().isBefore(LocalDateTime.now())) {
+            // Hết hạn (hoặc máy giữ key đã chết giữa chừng): coi như chưa có
+            repository.delete(record);
+            repository.flush();
+            return Optional.empty();
+        }
+        if (record.getStatus() == IdempotencyRecord.Status.IN_PROGRESS) {
+            return Optional.of(record.getFingerprint().equals(fingerprint)
+                    ? new Claim(Outcome.BUSY, null)
+                    : new Claim(Outcome.MISMATCH, null));
+        }
+        StoredResponse response = new StoredResponse(record.getFingerprint(), record.getResponseStatus(),
+                record.getContentType(), record.getResponseBody(), record.getExpiresAt());
+        remember(scopeKey, response);
+        return Optional.of(replay(response, fingerprint));
+    }
+
+    private static Claim replay(StoredResponse response, String fingerprint) {
+        return response.fingerprint().equals(fingerprint)
+                ? new Claim(Outcome.REPLAY, response)
+                : new Claim(Outcome.MISMATCH, null);
+    }
+
+    private StoredResponse cached(String scopeKey) {
+        StoredResponse cached = completed.get(scopeKey);
+        if (cached != null && cached.isExpired(LocalDateTime.now())) {
+            completed.remove(scopeKey, cached);
+            return null;
+        }
+        return cached;
+    }
+
+    private void finish(String scopeKey, CompletableFuture<StoredResponse> future, StoredResponse response) {
+        inFlight.remove(scopeKey, future);
+        future.complete(response);
+    }
+
+    // Đầy thì bỏ entry hết hạn trước, vẫn đầy thì bỏ 1/8 entry bất kỳ (như VerifiedTokenCache)
+    private void remember(String scopeKey, StoredResponse response) {
+        if (completed.size() >= cacheSize) {
+            LocalDateTime now = LocalDateTime.now();
+            completed.values().removeIf(r -> r.isExpired(now));
+        }
+        if (completed.size() >= cacheSize) {
+            int toDrop = completed.size() - cacheSize + Math.max(1, cacheSize / 8);
+            Iterator<String> it = completed.keySet().iterator();
+            while (toDrop-- > 0 && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        completed.put(scopeKey, response);
+    }
+}
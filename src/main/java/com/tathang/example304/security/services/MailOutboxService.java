@@ -0,0 +1,263 @@
+package com.tathang.example304.security.services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tathang.example304.model.MailOutbox;
+import com.tathang.example304.model.MailOutbox.MailStatus;
+import com.tathang.example304.repository.MailOutboxRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Gửi email qua bảng mail_outbox thay vì gọi SMTP ngay trong request.
+ *
+ * {@link #enqueue} chỉ INSERT một dòng trong transaction của nghiệp vụ. Poller định kỳ lấy
+ * các mail đến hạn theo lô, chuyển sang SENDING rồi giao cho pool worker nhỏ; mỗi lô dùng
+ * một phiên SMTP ({@code JavaMailSender.send(SimpleMailMessage...)}). Mail lỗi được thử lại
+ * với backoff tăng dần cho tới khi hết số lần thử.
+ *
+ * Nhiều node cùng poll một bảng: mỗi mail được nhận bằng UPDATE có điều kiện, ghi lại node và thời
+ * điểm nhận (lease). Mail SENDING có lease quá {@code claim-timeout-ms} (node chết / treo) được trả
+ * về PENDING; timeout phải dài hơn thời gian gửi một lô qua SMTP.
+ */
+@Service
+public class MailOutboxService {
+
+    private static final List<MailStatus> QUEUED = List.of(MailStatus.PENDING, MailStatus.SENDING);
+
+    private final MailOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final AuditLog auditLog;
+    private final String fromEmail;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    private final long claimTimeoutMs;
+    // Định danh tiến trình này trong lease; khởi động lại là một node mới
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ThreadPoolExecutor workers;
+
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private final Counter sentCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+
+    public MailOutboxService(MailOutboxRepository outboxRepository,
+            JavaMailSender mailSender,
+            MeterRegistry registry,
+            AuditLog auditLog,
+            @Value("${app.email.from:no-reply@bida.com}") String fromEmail,
+            @Value("${app.mail.outbox.workers:2}") int workerCount,
+            @Value("${app.mail.outbox.batch-size:20}") int batchSize,
+            @Value("${app.mail.outbox.max-attempts:8}") int maxAttempts,
+            @Value("${app.mail.outbox.backoff-base-ms:5000}") long backoffBaseMs,
+            @Value("${app.mail.outbox.backoff-max-ms:900000}") long backoffMaxMs,
+            @Value("${app.mail.outbox.claim-timeout-ms:300000}") long claimTimeoutMs) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.auditLog = auditLog;
+        this.fromEmail = fromEmail;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseMs = Math.max(1, backoffBaseMs);
+        this.backoffMaxMs = Math.max(this.backoffBaseMs, backoffMaxMs);
+        this.claimTimeoutMs = Math.max(1, claimTimeoutMs);
+
+        int poolSize = Math.max(1, workerCount);
+        AtomicInteger sequence = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(poolSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "mail-outbox-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("mail.outbox.lag.seconds", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest mail still waiting in the outbox")
+                .register(registry);
+        Gauge.builder("mail.outbox.pending", pending, AtomicLong::get)
+                .description("Mails waiting to be sent")
+                .register(registry);
+        this.sentCounter = Counter.builder("mail.outbox.sent").register(registry);
+        this.retryCounter = Counter.builder("mail.outbox.retried").register(registry);
+        this.failedCounter = Counter.builder("mail.outbox.failed").register(registry);
+    }
+
+    /**
+     * Ghi mail vào outbox trong transaction hiện tại (mail chỉ được gửi nếu transaction commit).
+     */
+    @Transactional
+    public MailOutbox enqueue(String recipient, String subject, String body) {
+        return outboxRepository.save(new MailOutbox(recipient, subject, body));
+    }
+
+    /**
+     * Trả về hàng đợi các mail mà node nhận đã không gửi xong trong {@code claim-timeout-ms}.
+     */
+    @Scheduled(initialDelayString = "${app.mail.outbox.claim-timeout-ms:300000}",
+            fixedDelayString = "${app.mail.outbox.claim-timeout-ms:300000}")
+    public void requeueStale() {
+        int requeued = outboxRepository.requeueStale(LocalDateTime.now().minus(Duration.ofMillis(claimTimeoutMs)));
+        if (requeued > 0) {
+            auditLog.record("MAIL_REQUEUED", "count", requeued);
+        }
+    }
+
+    /**
+     * Lấy mail đến hạn theo lô và giao cho worker khi worker còn chỗ.
+     */
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-ms:1000}")
+    public void poll() {
+        refreshLag();
+        while (workers.getQueue().remainingCapacity() > 0) {
+            List<MailOutbox> due = outboxRepository.findDue(MailStatus.PENDING, LocalDateTime.now(),
+                    PageRequest.of(0, batchSize));
+            if (due.isEmpty()) {
+                return;
+            }
+            // Nhiều node cùng poll: chỉ gửi mail mà chính node này nhận được
+            LocalDateTime now = LocalDateTime.now();
+            List<MailOutbox> claimed = new ArrayList<>(due.size());
+            for (MailOutbox mail : due) {
+                if (outboxRepository.claim(mail.getId(), nodeId, now) == 1) {
+                    claimed.add(mail);
+                }
+            }
+            if (!claimed.isEmpty()) {
+                try {
+                    workers.execute(() -> deliver(claimed));
+                } catch (RejectedExecutionException e) {
+                    outboxRepository.release(claimed.stream().map(MailOutbox::getId).toList(), nodeId);
+                    return;
+                }
+            }
+            if (due.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gửi một lô trong một phiên SMTP; mail gửi được đánh dấu SENT, mail lỗi được hẹn thử lại.
+     */
+    void deliver(List<MailOutbox> batch) {
+        SimpleMailMessage[] messages = new SimpleMailMessage[batch.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = toMessage(batch.get(i));
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        Exception batchError = null;
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException e) {
+            failures = e.getFailedMessages();
+            batchError = failures.isEmpty() ? e : null;
+        } catch (MailException e) {
+            batchError = e;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> sentIds = new ArrayList<>();
+        List<MailOutbox> retries = new ArrayList<>();
+        for (int i = 0; i < messages.length; i++) {
+            // failedMessages của JavaMailSenderImpl dùng chính các SimpleMailMessage đã truyền vào làm key
+            Exception error = batchError != null ? batchError : failures.get(messages[i]);
+            if (error == null) {
+                sentIds.add(batch.get(i).getId());
+            } else {
+                retries.add(scheduleRetry(batch.get(i), error, now));
+            }
+        }
+
+        if (!sentIds.isEmpty()) {
+            outboxRepository.markSent(sentIds, now);
+            sentCounter.increment(sentIds.size());
+        }
+        if (!retries.isEmpty()) {
+            outboxRepository.saveAll(retries);
+        }
+    }
+
+    private MailOutbox scheduleRetry(MailOutbox mail, Exception error, LocalDateTime now) {
+        int attempts = mail.getAttempts() + 1;
+        mail.setAttempts(attempts);
+        String message = String.valueOf(error.getMessage());
+        mail.setLastError(message.length() > 500 ? message.substring(0, 500) : message);
+        if (attempts >= maxAttempts) {
+            mail.setStatus(MailStatus.FAILED);
+            failedCounter.increment();
+            auditLog.record("MAIL_FAILED", "mailId", mail.getId(), "recipient", mail.getRecipient(),
+                    "attempts", attempts, "error", message);
+        } else {
+            mail.setStatus(MailStatus.PENDING);
+            mail.setNextAttemptAt(now.plus(Duration.ofMillis(backoff(attempts))));
+            retryCounter.increment();
+        }
+        return mail;
+    }
+
+    // Backoff lũy thừa 2 có giới hạn, cộng jitter tới 20% để các mail lỗi không dồn lại cùng lúc
+    long backoff(int attempts) {
+        long delay = backoffBaseMs << Math.min(attempts - 1, 20);
+        delay = Math.min(backoffMaxMs, delay);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    private SimpleMailMessage toMessage(MailOutbox mail) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(fromEmail);
+        message.setTo(mail.getRecipient());
+        message.setSubject(mail.getSubject());
+        message.setText(mail.getBody());
+        return message;
+    }
+
+    private void refreshLag() {
+        LocalDateTime oldest = outboxRepository.findOldestCreatedAt(QUEUED);
+        lagSeconds.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).getSeconds()));
+        pending.set(outboxRepository.countByStatus(MailStatus.PENDING));
+    }
+
+    /**
+     * Xóa mail đã gửi quá 7 ngày (chạy mỗi ngày lúc 3:00 AM)
+     */
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void cleanupSent() {
+        outboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(7));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+}
@@ -1,15 +1,32 @@
 package com.tathang.example304.security.services;
 
+import com.tathang.example304.dto.OrderDTO;
+import com.tathang.example304.dto.OrderItemDTO;
+import com.tathang.example304.dto.OrderSummaryDTO;
 import com.tathang.example304.model.*;
 import com.tathang.example304.model.Order.OrderStatus;
+import com.tathang.example304.payload.request.OrderItemRequest;
+import com.tathang.example304.payload.response.BatchItemsResponse;
+import com.tathang.example304.payload.response.CursorPage;
+import com.tathang.example304.payload.response.BatchItemsResponse.LineResult;
 import com.tathang.example304.repository.*;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -20,41 +37,98 @@ public class OrderService {
     private final BidaTableRepository tableRepository;
     private final ProductRepository productRepository;
     private final WebSocketService webSocketService;
+    private final AuditLog auditLog;
+    private final ActiveOrderRegistry activeOrders;
+    private final TableSessionStore tableSessions;
+    private final OrderStateMachine stateMachine;
+    private final TransactionTemplate transactions;
+
+    private static final int MAX_BATCH_LINES = 50;
 
     public OrderService(
             OrderRepository orderRepository,
             OrderItemRepository orderItemRepository,
             BidaTableRepository tableRepository,
             ProductRepository productRepository,
-            WebSocketService webSocketService) {
+            WebSocketService webSocketService,
+            AuditLog auditLog,
+            ActiveOrderRegistry activeOrders,
+            TableSessionStore tableSessions,
+            OrderStateMachine stateMachine,
+            PlatformTransactionManager transactionManager) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
         this.tableRepository = tableRepository;
         this.productRepository = productRepository;
         this.webSocketService = webSocketService;
+        this.auditLog = auditLog;
+        this.activeOrders = activeOrders;
+        this.tableSessions = tableSessions;
+        this.stateMachine = stateMachine;
+        this.transactions = new TransactionTemplate(transactionManager);
     }
 
     // =====================================================
     // PRIVATE COMMON LOGIC (CHỐNG PHÌNH SERVICE)
     // =====================================================
 
-    private void updateStock(Product product, int diff) {
-        if (diff > 0 && product.getStockQuantity() < diff) {
-            throw new RuntimeException("Insufficient stock");
+    // Một câu UPDATE có điều kiện: hai nhân viên cùng gọi món cuối cùng thì chỉ một người thành công.
+    private void updateStock(Long productId, int diff) {
+        if (diff > 0) {
+            if (!tryTakeStock(productId, diff)) {
+                throw new RuntimeException("Insufficient stock");
+            }
+        } else if (diff < 0) {
+            productRepository.incrementStock(productId, -diff);
+            auditLog.record("STOCK_CHANGED", "productId", productId, "delta", -diff);
         }
-        product.setStockQuantity(product.getStockQuantity() - diff);
-        productRepository.save(product);
     }
 
-    private void recalcAndNotify(Order order) {
-        updateOrderTotal(order.getId());
-        webSocketService.notifyOrderUpdate(order);
+    private boolean tryTakeStock(Long productId, int quantity) {
+        if (productRepository.decrementStock(productId, quantity) == 0) {
+            return false;
+        }
+        auditLog.record("STOCK_CHANGED", "productId", productId, "delta", -quantity);
+        return true;
+    }
+
+    // Tổng tiền cộng dồn trên session (ghi xuống orders bằng write-behind)
+    private void applyTotalDelta(TableSession session, long delta) {
+        session.addTotal(delta);
+        webSocketService.notifyOrderUpdate(session.orderId, session.tableId, session.status(),
+                Money.of(session.totalAmount()));
+    }
+
+    // Tiền theo đơn vị nhỏ nhất (xem Money)
+    private static long lineAmount(long price, int quantity) {
+        return Math.multiplyExact(price, quantity);
+    }
+
+    private static TableSession.Line lineByProduct(TableSession session, Long productId) {
+        TableSession.Line line = session.lineByProduct(productId);
+        if (line == null) {
+            throw new RuntimeException("Order item not found");
+        }
+        return line;
     }
 
-    private OrderItem getOrderItem(Long orderId, Long productId) {
-        return orderItemRepository
-                .findByOrderIdAndProductId(orderId, productId)
-                .orElseThrow(() -> new RuntimeException("Order item not found"));
+    private static TableSession.Line lineById(TableSession session, Long itemId) {
+        TableSession.Line line = session.lineById(itemId);
+        if (line == null) {
+            throw new RuntimeException("Item not found");
+        }
+        return line;
+    }
+
+    // Order đã thanh toán / hủy: không sửa món (tổng tiền đã chốt trên hóa đơn)
+    private static void requireLive(TableSession session) {
+        if (!session.isLive()) {
+            throw new RuntimeException("Order đã kết thúc, không thể sửa món");
+        }
+    }
+
+    private static OrderItemDTO toDTO(TableSession.Line line) {
+        return new OrderItemDTO(line.itemId, line.productId, line.productName, line.quantity, Money.of(line.price));
     }
 
     // =====================================================
@@ -65,13 +139,28 @@ public class OrderService {
         return orderRepository.findAll();
     }
 
+    @Transactional(readOnly = true)
+    public CursorPage<OrderSummaryDTO> getOrders(Long after, Integer limit) {
+        return CursorPage.of(orderRepository.findSummariesAfter(CursorPage.after(after), CursorPage.limit(limit)),
+                OrderSummaryDTO::id);
+    }
+
+    // Export toàn bộ: đọc qua JPA Stream (DTO, không giữ entity trong persistence context)
+    @Transactional(readOnly = true)
+    public void streamOrders(Consumer<OrderSummaryDTO> sink) {
+        try (Stream<OrderSummaryDTO> orders = orderRepository.streamSummaries()) {
+            orders.forEach(sink);
+        }
+    }
+
     public Order getOrderById(Long orderId) {
         return orderRepository.findByIdWithItems(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
     }
 
-    public List<Order> getPendingOrders() {
-        return orderRepository.findByStatus(Order.OrderStatus.OPEN);
+    @Transactional(readOnly = true)
+    public List<OrderSummaryDTO> getPendingOrders() {
+        return orderRepository.findSummariesByStatus(Order.OrderStatus.OPEN);
     }
 
     public List<Order> getOrdersByTable(Long tableId) {
@@ -95,28 +184,35 @@ public class OrderService {
         order.setStartTime(LocalDateTime.now());
 
         Order saved = orderRepository.save(order);
+        activeOrders.opened(saved);
+        auditLog.record("ORDER_OPENED", "orderId", saved.getId(), "tableId", tableId, "employeeId", employeeId);
 
         return saved;
     }
 
     public Order updateOrderStatus(Long orderId, Order.OrderStatus status) {
-        Order order = getOrderById(orderId);
-        order.setStatus(status);
-        Order saved = orderRepository.save(order);
+        tableSessions.close(orderId);
+        Order.OrderStatus previous = orderRepository.findStatusById(orderId)
+                .orElseThrow(() -> new RuntimeException("Order not found"));
+        stateMachine.transition(orderId, status);
+        Order saved = getOrderById(orderId);
+        if (ActiveOrderRegistry.isActive(status)) {
+            activeOrders.opened(saved);
+        } else {
+            activeOrders.ended(saved.getTable().getId(), orderId);
+        }
+        auditLog.record("ORDER_STATUS_CHANGED", "orderId", orderId, "from", previous, "to", status);
         webSocketService.notifyOrderUpdate(saved);
         return saved;
     }
 
     public void closeOrder(Long orderId) {
+        tableSessions.close(orderId);
+        // CHO PHÉP đóng từ cả OPEN và WAITING_PAYMENT (bảng chuyển trạng thái)
+        stateMachine.transition(orderId, OrderStatus.PAID);
         Order order = getOrderById(orderId);
-
-        // CHO PHÉP đóng từ cả OPEN và WAITING_PAYMENT
-        if (order.getStatus() != OrderStatus.OPEN && order.getStatus() != OrderStatus.WAITING_PAYMENT) {
-            throw new RuntimeException("Order không ở trạng thái đang chơi hoặc chờ thanh toán");
-        }
-
-        order.setStatus(OrderStatus.PAID);
-        orderRepository.save(order);
+        activeOrders.ended(order.getTable().getId(), orderId);
+        auditLog.record("ORDER_CLOSED", "orderId", orderId, "total", order.getTotalAmount());
 
         BidaTable table = order.getTable();
         table.setStatus(BidaTable.TableStatus.FREE);
@@ -129,86 +225,219 @@ public class OrderService {
     // =====================================================
     // ORDER ITEM ACTIONS
     // =====================================================
+    // Chạy trên TableSession dưới lock của bàn: trừ kho và INSERT dòng mới là transaction ngắn
+    // (commit trước khi sửa bộ nhớ), số lượng / tổng tiền ghi xuống DB bằng write-behind.
+    // SUPPORTS: không mở transaction bao ngoài để lock không giữ tới lúc commit.
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public OrderDTO addItemToOrder(Long orderId, Long productId, Integer quantity) {
+        addItem(orderId, productId, quantity);
+        return tableSessions.view(orderId);
+    }
 
-    public Order addItemToOrder(Long orderId, Long productId, Integer quantity) {
-        Order order = getOrderById(orderId);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public OrderDTO updateOrderItemQuantity(Long orderId, Long productId, Integer newQuantity) {
+        tableSessions.mutate(orderId, session -> changeQuantity(session, lineByProduct(session, productId), newQuantity));
+        return tableSessions.view(orderId);
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public OrderDTO removeItemFromOrder(Long orderId, Long productId) {
+        tableSessions.mutate(orderId, session -> removeLine(session, lineByProduct(session, productId)));
+        return tableSessions.view(orderId);
+    }
 
-        if (order.getStatus() != OrderStatus.OPEN) {
+    private OrderItemDTO addLine(TableSession session, Long productId, int quantity) {
+        if (session.status() != OrderStatus.OPEN) {
             throw new RuntimeException("Không thể thêm món khi đã kết thúc chơi");
         }
 
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
-
-        OrderItem item = orderItemRepository
-                .findByOrderIdAndProductId(orderId, productId)
-                .orElse(new OrderItem(order, product, 0, product.getPrice()));
-
-        item.setQuantity(item.getQuantity() + quantity);
-        updateStock(product, quantity);
+        TableSession.Line line = session.lineByProduct(productId);
+        if (line != null) {
+            transactions.executeWithoutResult(status -> updateStock(productId, quantity));
+            session.setQuantity(line, line.quantity + quantity);
+        } else {
+            line = transactions.execute(status -> {
+                Product product = productRepository.findById(productId)
+                        .orElseThrow(() -> new RuntimeException("Product not found"));
+                updateStock(productId, quantity);
+                OrderItem saved = orderItemRepository.save(new OrderItem(
+                        orderRepository.getReferenceById(session.orderId), product, quantity, Money.of(product.getPrice())));
+                return new TableSession.Line(saved.getId(), productId, product.getName(), saved.getPrice().minor(),
+                        quantity);
+            });
+            session.addLine(line);
+        }
 
-        orderItemRepository.save(item);
-        recalcAndNotify(order);
+        applyTotalDelta(session, lineAmount(line.price, quantity));
+        auditLog.record("ORDER_ITEM_ADDED", "orderId", session.orderId, "productId", productId, "quantity", quantity);
+        return toDTO(line);
+    }
 
-        return order;
+    // Số lượng 0 = bỏ món; âm thì từ chối
+    private Void changeQuantity(TableSession session, TableSession.Line line, Integer newQuantity) {
+        if (newQuantity == null || newQuantity < 0) {
+            throw new RuntimeException("Số lượng không hợp lệ");
+        }
+        if (newQuantity == 0) {
+            return removeLine(session, line);
+        }
+        requireLive(session);
+        int diff = newQuantity - line.quantity;
+        transactions.executeWithoutResult(status -> updateStock(line.productId, diff));
+        session.setQuantity(line, newQuantity);
+
+        applyTotalDelta(session, lineAmount(line.price, diff));
+        auditLog.record("ORDER_ITEM_UPDATED", "orderId", session.orderId, "productId", line.productId,
+                "quantityDelta", diff, "quantity", newQuantity);
+        return null;
     }
 
-    public Order updateOrderItemQuantity(Long orderId, Long productId, Integer newQuantity) {
-        Order order = getOrderById(orderId);
-        OrderItem item = getOrderItem(orderId, productId);
+    private Void removeLine(TableSession session, TableSession.Line line) {
+        requireLive(session);
+        transactions.executeWithoutResult(status -> updateStock(line.productId, -line.quantity));
+        session.removeLine(line);
 
-        int diff = newQuantity - item.getQuantity();
-        updateStock(item.getProduct(), diff);
+        applyTotalDelta(session, lineAmount(line.price, -line.quantity));
+        auditLog.record("ORDER_ITEM_REMOVED", "orderId", session.orderId, "productId", line.productId,
+                "quantity", line.quantity);
+        return null;
+    }
 
-        item.setQuantity(newQuantity);
-        orderItemRepository.save(item);
+    // =====================================================
+    // BATCH: NHIỀU MÓN TRONG MỘT TRANSACTION
+    // =====================================================
 
-        recalcAndNotify(order);
-        return order;
+    /**
+     * Thêm nhiều dòng món một lần: một câu SELECT cho các sản phẩm, trừ kho từng dòng bằng UPDATE
+     * có điều kiện và INSERT dòng mới trong một transaction; sau khi commit mới cộng vào session
+     * và broadcast một lần. Dòng lỗi (sản phẩm không tồn tại, số lượng sai, hết hàng) được bỏ qua
+     * và báo lỗi riêng.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BatchItemsResponse addItems(Long orderId, List<OrderItemRequest> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new RuntimeException("Danh sách món trống");
+        }
+        if (lines.size() > MAX_BATCH_LINES) {
+            throw new RuntimeException("Tối đa " + MAX_BATCH_LINES + " dòng mỗi lần");
+        }
+        return tableSessions.mutate(orderId, session -> {
+            if (session.status() != OrderStatus.OPEN) {
+                throw new RuntimeException("Không thể thêm món khi đã kết thúc chơi");
+            }
+            BatchItemsResponse response = new BatchItemsResponse(orderId);
+            // Dòng đã có trong session: số lượng cộng thêm; dòng mới: entity vừa INSERT (cùng transaction)
+            Map<TableSession.Line, Integer> added = new LinkedHashMap<>();
+            Map<Long, OrderItem> inserted = new LinkedHashMap<>();
+            long delta = transactions.execute(status -> takeLines(session, lines, response, added, inserted));
+
+            added.forEach((line, quantity) -> session.setQuantity(line, line.quantity + quantity));
+            inserted.values().forEach(item -> session.addLine(new TableSession.Line(item.getId(),
+                    item.getProduct().getId(), item.getProduct().getName(), item.getPrice().minor(), item.getQuantity())));
+            if (response.getSucceeded() > 0) {
+                applyTotalDelta(session, delta);
+            }
+            response.setTotalAmount(Money.of(session.totalAmount()));
+            return response;
+        });
     }
 
-    public Order removeItemFromOrder(Long orderId, Long productId) {
-        Order order = getOrderById(orderId);
-        OrderItem item = getOrderItem(orderId, productId);
-
-        updateStock(item.getProduct(), -item.getQuantity());
-        orderItemRepository.delete(item);
+    private long takeLines(TableSession session, List<OrderItemRequest> lines, BatchItemsResponse response,
+            Map<TableSession.Line, Integer> added, Map<Long, OrderItem> inserted) {
+        Set<Long> productIds = new HashSet<>();
+        for (OrderItemRequest line : lines) {
+            if (line != null && line.getProductId() != null && session.lineByProduct(line.getProductId()) == null) {
+                productIds.add(line.getProductId());
+            }
+        }
+        Map<Long, Product> products = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            for (Product product : productRepository.findAllWithCategoryByIdIn(productIds)) {
+                products.put(product.getId(), product);
+            }
+        }
 
-        recalcAndNotify(order);
-        return order;
+        long delta = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            OrderItemRequest line = lines.get(i);
+            Long productId = line != null ? line.getProductId() : null;
+            Integer quantity = line != null ? line.getQuantity() : null;
+            TableSession.Line existing = productId != null ? session.lineByProduct(productId) : null;
+
+            if (quantity == null || quantity <= 0) {
+                response.addLine(LineResult.failed(i, productId, quantity, "Số lượng không hợp lệ"));
+                continue;
+            }
+            if (existing == null && (productId == null || !products.containsKey(productId))) {
+                response.addLine(LineResult.failed(i, productId, quantity, "Product not found"));
+                continue;
+            }
+            if (!tryTakeStock(productId, quantity)) {
+                response.addLine(LineResult.failed(i, productId, quantity, "Insufficient stock"));
+                continue;
+            }
+
+            Long itemId;
+            long price;
+            if (existing != null) {
+                added.merge(existing, quantity, Integer::sum);
+                itemId = existing.itemId;
+                price = existing.price;
+            } else {
+                OrderItem item = inserted.get(productId);
+                if (item == null) {
+                    Product product = products.get(productId);
+                    item = orderItemRepository.save(new OrderItem(orderRepository.getReferenceById(session.orderId),
+                            product, quantity, Money.of(product.getPrice())));
+                    inserted.put(productId, item);
+                } else {
+                    item.setQuantity(item.getQuantity() + quantity); // ghi khi commit
+                }
+                itemId = item.getId();
+                price = item.getPrice().minor();
+            }
+
+            delta = Math.addExact(delta, lineAmount(price, quantity));
+            auditLog.record("ORDER_ITEM_ADDED", "orderId", session.orderId, "productId", productId,
+                    "quantity", quantity);
+            response.addLine(LineResult.ok(i, productId, quantity, itemId));
+        }
+        return delta;
     }
 
     // =====================================================
     // ITEM ACTIONS BY ITEM ID (CHO CONTROLLER CŨ)
     // =====================================================
 
-    public OrderItem addItem(Long orderId, Long productId, Integer quantity) {
-        addItemToOrder(orderId, productId, quantity);
-        return getOrderItem(orderId, productId);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public OrderItemDTO addItem(Long orderId, Long productId, Integer quantity) {
+        // Như API batch: số lượng âm / 0 sẽ "trả kho" và trừ tổng tiền
+        if (quantity == null || quantity <= 0) {
+            throw new RuntimeException("Số lượng không hợp lệ");
+        }
+        return tableSessions.mutate(orderId, session -> addLine(session, productId, quantity));
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void updateItemQuantity(Long orderId, Long itemId, Integer quantity) {
-        OrderItem item = orderItemRepository.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Item not found"));
-
-        updateOrderItemQuantity(orderId, item.getProduct().getId(), quantity);
+        tableSessions.mutate(orderId, session -> changeQuantity(session, lineById(session, itemId), quantity));
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void removeItem(Long orderId, Long itemId) {
-        OrderItem item = orderItemRepository.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Item not found"));
-
-        removeItemFromOrder(orderId, item.getProduct().getId());
+        tableSessions.mutate(orderId, session -> removeLine(session, lineById(session, itemId)));
     }
 
     // =====================================================
-    // TOTAL MONEY (BIGDECIMAL ONLY)
+    // TOTAL MONEY
     // =====================================================
 
+    // Đối soát: tính lại tổng từ order_items (thao tác thêm/sửa/xóa món đã cộng dồn theo delta)
     public void updateOrderTotal(Long orderId) {
+        tableSessions.close(orderId);
         Order order = getOrderById(orderId);
-        BigDecimal total = orderItemRepository.getTotalAmountByOrderId(orderId);
-        order.setTotalAmount(total);
+        order.setTotalAmount(Money.of(orderItemRepository.getTotalAmountByOrderId(orderId)));
         orderRepository.save(order);
     }
 
@@ -220,55 +449,63 @@ public class OrderService {
         if (!orderRepository.existsById(orderId)) {
             throw new RuntimeException("Order not found");
         }
+        tableSessions.discard(orderId);
         orderRepository.deleteById(orderId);
+        activeOrders.ended(orderId);
+        auditLog.record("ORDER_DELETED", "orderId", orderId);
     }
 
-    public Order getOrderByTable(Long tableId) {
-        // Sử dụng method mới để fetch items
-        List<Order> orders = orderRepository.findByTableIdWithItems(tableId);
-
-        if (orders.isEmpty()) {
-            throw new RuntimeException("Không tìm thấy order cho bàn này");
+    // Con trỏ active của bàn -> session trong bộ nhớ (lần đầu: hai câu projection nạp session),
+    // không phụ thuộc lịch sử của bàn
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public OrderDTO getOrderByTable(Long tableId) {
+        Optional<ActiveOrderRegistry.ActiveOrder> pointer = activeOrders.find(tableId);
+        Optional<OrderDTO> order = pointer.flatMap(p -> loadActiveOrder(tableId, p.orderId()));
+        if (pointer.isPresent() && order.isEmpty()) {
+            // Con trỏ cũ (order bị đổi ngoài luồng mở/đóng): bỏ và đọc lại từ index
+            activeOrders.evict(tableId);
+            order = activeOrders.find(tableId).flatMap(p -> loadActiveOrder(tableId, p.orderId()));
         }
-
-        // Tìm order đang active (OPEN hoặc WAITING_PAYMENT)
-        Order activeOrder = orders.stream()
-                .filter(o -> o.getStatus() == OrderStatus.OPEN ||
-                        o.getStatus() == OrderStatus.WAITING_PAYMENT)
-                .reduce((first, second) -> second) // lấy order mới nhất
-                .orElseThrow(() -> new RuntimeException("Không có order đang hoạt động"));
-
-        // Debug: in ra số lượng items
-        System.out.println("🔄 DEBUG: Order " + activeOrder.getId() +
-                " has " + (activeOrder.getItems() != null ? activeOrder.getItems().size() : 0) + " items");
-
-        return activeOrder;
+        return order.orElseThrow(() -> new RuntimeException("Không có order đang hoạt động"));
     }
 
-    public Order finishPlaying(Long orderId) {
-        Order order = getOrderById(orderId);
-
-        if (order.getStatus() != OrderStatus.OPEN) {
-            throw new RuntimeException("Order không ở trạng thái đang chơi");
-        }
-
-        order.setStatus(OrderStatus.WAITING_PAYMENT);
-        order.setEndTime(LocalDateTime.now());
+    private Optional<OrderDTO> loadActiveOrder(Long tableId, Long orderId) {
+        return tableSessions.find(orderId)
+                .filter(o -> ActiveOrderRegistry.isActive(o.status()) && tableId.equals(o.tableId()));
+    }
 
-        Order saved = orderRepository.save(order);
-        webSocketService.notifyOrderUpdate(saved);
-        return saved;
+    // Order vẫn active (chờ thanh toán): chỉ đổi trên session, ghi xuống bằng write-behind
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public OrderDTO finishPlaying(Long orderId) {
+        return tableSessions.mutate(orderId, session -> {
+            if (session.status() != OrderStatus.OPEN) {
+                throw new RuntimeException("Order không ở trạng thái đang chơi");
+            }
+            // Chuyển trạng thái ghi ngay (compare-and-set), giờ kết thúc đi theo write-behind
+            try {
+                transactions.executeWithoutResult(
+                        status -> stateMachine.transition(orderId, OrderStatus.WAITING_PAYMENT));
+            } catch (OrderStateConflictException e) {
+                tableSessions.discard(orderId); // session đã cũ so với DB
+                throw e;
+            }
+            LocalDateTime endTime = LocalDateTime.now();
+            session.finishPlaying(endTime);
+
+            auditLog.record("ORDER_FINISHED", "orderId", orderId, "endTime", endTime);
+            webSocketService.notifyOrderUpdate(orderId, session.tableId, session.status(),
+                    Money.of(session.totalAmount()));
+            return session.toDTO();
+        });
     }
 
     public void cancelOrder(Long orderId) {
+        tableSessions.close(orderId);
+        // Order đã thanh toán (hoặc đã hủy) thì không hủy được: 409
+        stateMachine.transition(orderId, OrderStatus.CANCELLED);
         Order order = getOrderById(orderId);
-
-        if (order.getStatus() == OrderStatus.PAID) {
-            throw new RuntimeException("Order đã thanh toán, không thể hủy");
-        }
-
-        order.setStatus(OrderStatus.CANCELLED);
-        orderRepository.save(order);
+        activeOrders.ended(order.getTable().getId(), orderId);
+        auditLog.record("ORDER_CANCELLED", "orderId", orderId);
 
         BidaTable table = order.getTable();
         table.setStatus(BidaTable.TableStatus.FREE);
@@ -0,0 +1,160 @@
+package com.tathang.example304.security.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * Journal cho write-behind của {@link TableSessionStore}: mỗi thay đổi session ghi một dòng JSON
+ * ({@link TableSession.Snapshot}, giá trị tuyệt đối) trước khi trả kết quả cho client.
+ *
+ * Ghi vào segment hiện tại; lượt write-behind {@link #rotate()} sang segment mới rồi xóa các
+ * segment cũ khi mọi thay đổi trong đó đã xuống DB. Khởi động lại sau crash thì đọc các segment
+ * còn sót, lấy ảnh chụp mới nhất của từng order và ghi lại (idempotent).
+ */
+final class OrderSessionJournal {
+    private static final Logger logger = LoggerFactory.getLogger(OrderSessionJournal.class);
+
+    private static final String PREFIX = "orders-";
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final boolean fsync;
+    private final ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+
+    private FileChannel channel;
+    private long segment;
+
+    OrderSessionJournal(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+            segment = segments().stream().mapToLong(OrderSessionJournal::segmentNumber).max().orElse(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void append(TableSession.Snapshot snapshot) {
+        try {
+            if (channel == null) {
+                open(segment + 1);
+            }
+            byte[] json = mapper.writeValueAsBytes(snapshot);
+            ByteBuffer buffer = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Không ghi được journal order", e);
+        }
+    }
+
+    /**
+     * Đóng segment hiện tại; lần append sau mở segment mới. Trả về các segment đã đóng.
+     */
+    synchronized List<Path> rotate() {
+        closeChannel();
+        return segments();
+    }
+
+    void delete(Collection<Path> closedSegments) {
+        for (Path path : closedSegments) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Cannot delete order journal {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ảnh chụp cuối cùng của từng order trong các segment (theo thứ tự ghi).
+     */
+    Map<Long, TableSession.Snapshot> latest(Collection<Path> closedSegments) {
+        Map<Long, TableSession.Snapshot> latest = new LinkedHashMap<>();
+        for (Path path : closedSegments) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        TableSession.Snapshot snapshot = mapper.readValue(line, TableSession.Snapshot.class);
+                        latest.put(snapshot.orderId(), snapshot);
+                    } catch (IOException e) {
+                        // Dòng cuối bị cắt dở khi crash: bỏ qua
+                        logger.warn("Skipping corrupt order journal line in {}", path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return latest;
+    }
+
+    synchronized void close() {
+        closeChannel();
+    }
+
+    private void open(long number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(directory.resolve(String.format("%s%08d%s", PREFIX, number, SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Cannot close order journal: {}", e.getMessage());
+        }
+        channel = null;
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> result = new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().startsWith(PREFIX)
+                            && p.getFileName().toString().endsWith(SUFFIX))
+                    .toList());
+            result.sort((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,38 @@
+package com.tathang.example304.security.services;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import com.tathang.example304.model.Order;
+
+/**
+ * Chuyển trạng thái order thất bại vì order đã ở trạng thái không cho phép (thường do một thao tác
+ * khác vừa chuyển trước, vd. hủy bàn trong lúc đang lập hóa đơn). Trả về 409 cho client.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class OrderStateConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Long orderId;
+    private final Order.OrderStatus current;
+    private final Order.OrderStatus target;
+
+    public OrderStateConflictException(Long orderId, Order.OrderStatus current, Order.OrderStatus target) {
+        super("Order " + orderId + " đang ở trạng thái " + current + ", không thể chuyển sang " + target);
+        this.orderId = orderId;
+        this.current = current;
+        this.target = target;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public Order.OrderStatus getCurrent() {
+        return current;
+    }
+
+    public Order.OrderStatus getTarget() {
+        return target;
+    }
+}
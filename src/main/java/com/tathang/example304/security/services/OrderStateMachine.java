@@ -0,0 +1,34 @@
+package com.tathang.example304.security.services;
+
+import java.time.LocalDateTime;
+
+import org.springframework.stereotype.Component;
+
+import com.tathang.example304.model.Order;
+import com.tathang.example304.repository.OrderRepository;
+
+/**
+ * Chuyển trạng thái order theo bảng {@link Order.OrderStatus#allowedFrom()} bằng một câu UPDATE
+ * có điều kiện trên status (kèm tăng version). Hai thao tác tranh nhau thì chỉ một thắng, bên
+ * còn lại nhận {@link OrderStateConflictException} thay vì ghi đè.
+ *
+ * Phải gọi trong transaction, trước khi nạp entity Order (UPDATE xóa persistence context).
+ */
+@Component
+public class OrderStateMachine {
+
+    private final OrderRepository orderRepository;
+
+    public OrderStateMachine(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+    }
+
+    public void transition(Long orderId, Order.OrderStatus target) {
+        if (orderRepository.transition(orderId, target.allowedFrom(), target, LocalDateTime.now()) == 1) {
+            return;
+        }
+        Order.OrderStatus current = orderRepository.findStatusById(orderId)
+                .orElseThrow(() -> new RuntimeException("Order not found"));
+        throw new OrderStateConflictException(orderId, current, target);
+    }
+}
@@ -0,0 +1,71 @@
+package com.tathang.example304.security.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Lưu OTP đang hiệu lực trong bộ nhớ theo email, tự hết hạn theo TTL của OTP.
+ * Xác thực OTP vừa gửi không cần truy vấn bảng password_reset_tokens;
+ * DB vẫn là nguồn gốc (dùng khi server khởi động lại hoặc entry đã bị dọn).
+ */
+@Component
+public class OtpStore {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public void put(String email, String otp, String resetToken, long expiresAtMillis) {
+        entries.put(normalize(email), new Entry(otp, resetToken, expiresAtMillis));
+    }
+
+    /**
+     * @return reset token nếu OTP khớp và còn hạn; empty nếu không có entry trong bộ nhớ hoặc sai OTP
+     */
+    public Optional<String> match(String email, String otp) {
+        return match(email, otp, System.currentTimeMillis());
+    }
+
+    Optional<String> match(String email, String otp, long nowMillis) {
+        String key = normalize(email);
+        Entry entry = entries.get(key);
+        if (entry == null || otp == null) {
+            return Optional.empty();
+        }
+        if (nowMillis > entry.expiresAtMillis()) {
+            entries.remove(key, entry);
+            return Optional.empty();
+        }
+        boolean equal = MessageDigest.isEqual(
+                entry.otp().getBytes(StandardCharsets.US_ASCII),
+                otp.trim().getBytes(StandardCharsets.US_ASCII));
+        return equal ? Optional.of(entry.resetToken()) : Optional.empty();
+    }
+
+    public boolean contains(String email) {
+        Entry entry = entries.get(normalize(email));
+        return entry != null && System.currentTimeMillis() <= entry.expiresAtMillis();
+    }
+
+    public void remove(String email) {
+        entries.remove(normalize(email));
+    }
+
+    public int purgeExpired() {
+        long now = System.currentTimeMillis();
+        int before = entries.size();
+        entries.values().removeIf(entry -> now > entry.expiresAtMillis());
+        return before - entries.size();
+    }
+
+    private static String normalize(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record Entry(String otp, String resetToken, long expiresAtMillis) {
+    }
+}
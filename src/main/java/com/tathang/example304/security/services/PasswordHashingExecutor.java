@@ -0,0 +1,108 @@
+package com.tathang.example304.security.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pool riêng, có giới hạn cho việc băm/kiểm tra mật khẩu (BCrypt) khi đăng nhập.
+ * Không chiếm thread của Tomcat; khi hàng đợi đầy thì từ chối ngay
+ * ({@link RejectedExecutionException}) để controller trả 429 thay vì xếp hàng vô hạn.
+ * Phần việc sau khi xác thực (ghi refresh token, ký JWT) chạy trên {@link #completionExecutor()}
+ * để không giữ thread băm.
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor completion;
+    private final Timer waitTimer;
+    private final Timer hashTimer;
+    private final Counter rejected;
+
+    public PasswordHashingExecutor(MeterRegistry registry,
+            @Value("${app.security.login.hash-threads:0}") int threads,
+            @Value("${app.security.login.hash-queue:32}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-hash-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        // Hàng đợi không cần giới hạn: số việc vào đây đã bị chặn bởi pool băm phía trước
+        AtomicInteger completionSequence = new AtomicInteger();
+        this.completion = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-complete-" + completionSequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        Gauge.builder("auth.login.hash.queue.depth", executor, e -> e.getQueue().size())
+                .description("Login requests waiting for a password-hashing thread")
+                .register(registry);
+        Gauge.builder("auth.login.hash.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password-hashing threads currently busy")
+                .register(registry);
+        this.waitTimer = Timer.builder("auth.login.hash.wait")
+                .description("Time a login spent queued before hashing started")
+                .register(registry);
+        this.hashTimer = Timer.builder("auth.login.hash.duration")
+                .description("Time spent authenticating (user load + BCrypt check)")
+                .register(registry);
+        this.rejected = Counter.builder("auth.login.hash.rejected")
+                .description("Logins shed with 429 because the hashing queue was full")
+                .register(registry);
+    }
+
+    /**
+     * Chạy task trên pool băm mật khẩu.
+     *
+     * @throws RejectedExecutionException khi hàng đợi đã đầy
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long enqueuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                waitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                return hashTimer.record(task);
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Pool cho phần việc sau khi xác thực xong (DB, ký token), tách khỏi pool băm mật khẩu.
+     */
+    public Executor completionExecutor() {
+        return completion;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        completion.shutdown();
+    }
+}
@@ -2,8 +2,6 @@ package com.tathang.example304.security.services;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -15,10 +13,9 @@ import com.tathang.example304.repository.PasswordResetTokenRepository;
 import com.tathang.example304.repository.UserRepository;
 
 import java.time.LocalDateTime;
-import java.util.List;
+import java.time.ZoneId;
 import java.util.Optional;
 import java.util.Random;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -26,8 +23,11 @@ public class PasswordResetService {
 
     private final UserRepository userRepository;
     private final PasswordResetTokenRepository tokenRepository;
-    private final JavaMailSender mailSender;
+    private final MailOutboxService mailOutbox;
     private final PasswordEncoder passwordEncoder;
+    private final AttemptThrottleService attemptThrottle;
+    private final OtpStore otpStore;
+    private final AuditLog auditLog;
 
     @Value("${app.password-reset.token-expiry-hours:24}")
     private int tokenExpiryHours;
@@ -35,44 +35,25 @@ public class PasswordResetService {
     @Value("${app.password-reset.otp-expiry-minutes:10}")
     private int otpExpiryMinutes;
 
-    @Value("${app.email.from:no-reply@bida.com}")
-    private String fromEmail;
-
     /**
      * Gửi email quên mật khẩu với OTP
      */
     @Transactional
     public boolean sendPasswordResetEmail(String email) {
         try {
-            System.out.println("DEBUG: Sending password reset email to: " + email);
-
             Optional<User> userOptional = userRepository.findByEmail(email);
             if (userOptional.isEmpty()) {
-                System.out.println("DEBUG: User not found for email: " + email);
+                auditLog.record("PASSWORD_RESET_UNKNOWN_EMAIL", "email", email);
                 return false;
             }
 
             User user = userOptional.get();
-            System.out.println("DEBUG: User found - ID: " + user.getId() + ", Name: " + user.getFullName());
-
-            // Xóa token cũ nếu có
-            try {
-                List<PasswordResetToken> existingTokens = tokenRepository.findAll().stream()
-                        .filter(t -> t.getUser().getId().equals(user.getId()))
-                        .collect(Collectors.toList());
-
-                if (!existingTokens.isEmpty()) {
-                    System.out.println("DEBUG: Found " + existingTokens.size() + " existing tokens to delete");
-                    tokenRepository.deleteAll(existingTokens);
-                    tokenRepository.flush();
-                }
-            } catch (Exception e) {
-                System.out.println("DEBUG: Error deleting old tokens (might not exist): " + e.getMessage());
-            }
+
+            // Xóa token cũ nếu có (một câu DELETE theo user_id, không load cả bảng)
+            tokenRepository.deleteByUser(user);
 
             // Tạo OTP 6 số
             String otp = generateOtp();
-            System.out.println("DEBUG: Generated OTP: " + otp);
 
             // Tạo token
             PasswordResetToken resetToken = new PasswordResetToken();
@@ -83,24 +64,18 @@ public class PasswordResetService {
             resetToken.setOtpExpiryDate(LocalDateTime.now().plusMinutes(otpExpiryMinutes));
             resetToken.setUsed(false);
 
-            System.out.println("DEBUG: Saving new token...");
             tokenRepository.save(resetToken);
             tokenRepository.flush(); // Đảm bảo lưu vào DB
 
-            System.out.println("DEBUG: Token saved successfully - ID: " + resetToken.getId());
-            System.out.println("DEBUG: Token: " + resetToken.getToken());
-            System.out.println("DEBUG: Expiry date: " + resetToken.getExpiryDate());
-            System.out.println("DEBUG: OTP expiry date: " + resetToken.getOtpExpiryDate());
+            otpStore.put(user.getEmail(), otp, resetToken.getToken(), toMillis(resetToken.getOtpExpiryDate()));
 
-            // Gửi email
-            System.out.println("DEBUG: Sending email to: " + user.getEmail());
+            // Gửi email (ghi vào outbox cùng transaction, worker nền gửi SMTP)
             sendOtpEmail(user.getEmail(), user.getFullName(), otp);
-            System.out.println("DEBUG: Email sent successfully");
+            auditLog.record("PASSWORD_RESET_REQUESTED", "userId", user.getId(), "email", email);
 
             return true;
         } catch (Exception e) {
-            System.err.println("ERROR in sendPasswordResetEmail: " + e.getMessage());
-            e.printStackTrace();
+            auditLog.record("PASSWORD_RESET_ERROR", "email", email, "error", e.getMessage());
             return false;
         }
     }
@@ -111,29 +86,36 @@ public class PasswordResetService {
     @Transactional
     public Optional<String> verifyOtp(String email, String otp) {
         try {
-            System.out.println("DEBUG: Verifying OTP - Email: " + email + ", OTP: " + otp);
+            // Khóa email sau N lần nhập sai OTP, không truy vấn DB khi đang bị khóa
+            if (!attemptThrottle.tryOtpVerify(email)) {
+                auditLog.record("OTP_LOCKED", "email", email);
+                return Optional.empty();
+            }
+
+            // OTP vừa gửi nằm trong bộ nhớ: khớp thì xong, sai thì từ chối luôn
+            Optional<String> cached = otpStore.match(email, otp);
+            if (cached.isPresent()) {
+                auditLog.record("OTP_VERIFIED", "email", email);
+                attemptThrottle.otpVerified(email);
+                return cached;
+            }
+            if (otpStore.contains(email)) {
+                auditLog.record("OTP_REJECTED", "email", email);
+                return Optional.empty();
+            }
 
+            // Không có trong bộ nhớ (vd. server khởi động lại): tra DB theo index (user_id, otp)
             Optional<User> userOptional = userRepository.findByEmail(email);
             if (userOptional.isEmpty()) {
-                System.out.println("DEBUG: User not found for email: " + email);
                 return Optional.empty();
             }
 
             User user = userOptional.get();
-            System.out.println("DEBUG: User found - ID: " + user.getId());
 
-            // Tìm token theo user và OTP
-            List<PasswordResetToken> allTokens = tokenRepository.findAll();
-
-            Optional<PasswordResetToken> tokenOptional = allTokens.stream()
-                    .filter(t -> t.getOtp().equals(otp) &&
-                            t.getUser().getId().equals(user.getId()) &&
-                            !t.isUsed() &&
-                            !t.isOtpExpired())
-                    .findFirst();
+            Optional<PasswordResetToken> tokenOptional = tokenRepository.findByUserAndOtpAndUsedFalse(user, otp);
 
             if (tokenOptional.isEmpty()) {
-                System.out.println("DEBUG: No valid token found for OTP: " + otp + " and user ID: " + user.getId());
+                auditLog.record("OTP_REJECTED", "email", email, "userId", user.getId());
                 return Optional.empty();
             }
 
@@ -141,79 +123,74 @@ public class PasswordResetService {
 
             // Kiểm tra OTP hết hạn
             if (token.isOtpExpired()) {
-                System.out.println("DEBUG: OTP expired. OTP expiry date: " + token.getOtpExpiryDate());
+                auditLog.record("OTP_EXPIRED", "email", email, "userId", user.getId());
                 return Optional.empty();
             }
 
+            otpStore.put(email, token.getOtp(), token.getToken(), toMillis(token.getOtpExpiryDate()));
+
             // KHÔNG đánh dấu used ở đây
-            System.out.println("DEBUG: OTP verified successfully. Token: " + token.getToken());
+            auditLog.record("OTP_VERIFIED", "email", email, "userId", user.getId());
+            attemptThrottle.otpVerified(email);
 
             return Optional.of(token.getToken());
         } catch (Exception e) {
-            System.err.println("ERROR in verifyOtp: " + e.getMessage());
-            e.printStackTrace();
+            auditLog.record("OTP_VERIFY_ERROR", "email", email, "error", e.getMessage());
             return Optional.empty();
         }
     }
 
+    /**
+     * Email đang bị khóa xác thực OTP do nhập sai quá nhiều lần
+     */
+    public boolean isOtpLocked(String email) {
+        return attemptThrottle.isOtpLocked(email);
+    }
+
     /**
      * Đặt lại mật khẩu
      */
     @Transactional
     public boolean resetPassword(String token, String newPassword) {
         try {
-            System.out.println("=== RESET PASSWORD START ===");
-            System.out.println("Token: " + token);
-
             String cleanToken = token.trim();
             Optional<PasswordResetToken> tokenOptional = tokenRepository.findByToken(cleanToken);
 
-            System.out.println("Token found in DB: " + tokenOptional.isPresent());
-
             if (tokenOptional.isEmpty()) {
-                System.out.println("❌ Token not found in database");
+                auditLog.record("PASSWORD_RESET_REJECTED", "reason", "unknown token");
                 return false;
             }
 
             PasswordResetToken resetToken = tokenOptional.get();
-            System.out.println("Token details:");
-            System.out.println("  ID: " + resetToken.getId());
-            System.out.println("  User ID: " + resetToken.getUser().getId());
-            System.out.println("  Used: " + resetToken.isUsed());
-            System.out.println("  Expiry Date: " + resetToken.getExpiryDate());
-            System.out.println("  Is Expired: " + resetToken.isExpired());
 
             // Kiểm tra token hết hạn
             if (resetToken.isExpired()) {
-                System.out.println("❌ Token expired. Expiry date: " + resetToken.getExpiryDate());
+                auditLog.record("PASSWORD_RESET_REJECTED", "reason", "expired", "userId", resetToken.getUser().getId());
                 return false;
             }
 
             // Kiểm tra token đã sử dụng (CHỈ KIỂM TRA NẾU KHÔNG CHO PHÉP REUSE)
             if (resetToken.isUsed()) {
-                System.out.println("❌ Token already used");
+                auditLog.record("PASSWORD_RESET_REJECTED", "reason", "used", "userId", resetToken.getUser().getId());
                 return false;
             }
 
             // Cập nhật mật khẩu
             User user = resetToken.getUser();
-            System.out.println("User to update - ID: " + user.getId() + ", Email: " + user.getEmail());
 
             user.setPassword(passwordEncoder.encode(newPassword));
             userRepository.save(user);
-            System.out.println("✅ Password updated for user ID: " + user.getId());
 
             // Đánh dấu token đã sử dụng SAU KHI RESET THÀNH CÔNG
             resetToken.setUsed(true);
             tokenRepository.save(resetToken);
-            System.out.println("✅ Token marked as used");
+            otpStore.remove(user.getEmail());
 
-            System.out.println("=== RESET PASSWORD SUCCESS ===");
+            auditLog.record("PASSWORD_RESET", "userId", user.getId());
             return true;
 
         } catch (Exception e) {
-            System.err.println("❌ RESET PASSWORD ERROR: " + e.getMessage());
-            e.printStackTrace();
+            auditLog.record("PASSWORD_RESET_ERROR", "error", e.getMessage());
             return false;
         }
     }
@@ -243,13 +220,14 @@ public class PasswordResetService {
             token.setOtp(newOtp);
             token.setOtpExpiryDate(LocalDateTime.now().plusMinutes(otpExpiryMinutes));
             tokenRepository.save(token);
+            otpStore.put(user.getEmail(), newOtp, token.getToken(), toMillis(token.getOtpExpiryDate()));
 
             // Gửi email với OTP mới
             sendOtpEmail(user.getEmail(), user.getFullName(), newOtp);
 
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            auditLog.record("OTP_RESEND_ERROR", "email", email, "error", e.getMessage());
             return false;
         }
     }
@@ -271,24 +249,20 @@ public class PasswordResetService {
     }
 
     /**
-     * Gửi email OTP
+     * Gửi email OTP (ghi vào mail_outbox, không gọi SMTP trực tiếp)
      */
     private void sendOtpEmail(String toEmail, String userName, String otp) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setFrom(fromEmail);
-        message.setTo(toEmail);
-        message.setSubject("Mã OTP đặt lại mật khẩu - Hệ thống Quản lý Bida");
-        message.setText(String.format(
-                "Xin chào %s,\n\n" +
-                        "Bạn đã yêu cầu đặt lại mật khẩu cho tài khoản của mình.\n" +
-                        "Mã OTP của bạn là: %s\n" +
-                        "Mã OTP có hiệu lực trong %d phút.\n\n" +
-                        "Nếu bạn không yêu cầu đặt lại mật khẩu, vui lòng bỏ qua email này.\n\n" +
-                        "Trân trọng,\n" +
-                        "Đội ngũ Hệ thống Quản lý Bida",
-                userName, otp, otpExpiryMinutes));
-
-        mailSender.send(message);
+        mailOutbox.enqueue(toEmail,
+                "Mã OTP đặt lại mật khẩu - Hệ thống Quản lý Bida",
+                String.format(
+                        "Xin chào %s,\n\n" +
+                                "Bạn đã yêu cầu đặt lại mật khẩu cho tài khoản của mình.\n" +
+                                "Mã OTP của bạn là: %s\n" +
+                                "Mã OTP có hiệu lực trong %d phút.\n\n" +
+                                "Nếu bạn không yêu cầu đặt lại mật khẩu, vui lòng bỏ qua email này.\n\n" +
+                                "Trân trọng,\n" +
+                                "Đội ngũ Hệ thống Quản lý Bida",
+                        userName, otp, otpExpiryMinutes));
     }
 
     /**
@@ -298,6 +272,12 @@ public class PasswordResetService {
     @Transactional
     public void cleanupExpiredTokens() {
         LocalDateTime now = LocalDateTime.now();
-        tokenRepository.deleteByExpiryDateBefore(now);
+        int deleted = tokenRepository.deleteByExpiryDateBefore(now);
+        int purged = otpStore.purgeExpired();
+        auditLog.record("PASSWORD_RESET_CLEANUP", "deletedTokens", deleted, "purgedOtps", purged);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 }
\ No newline at end of file
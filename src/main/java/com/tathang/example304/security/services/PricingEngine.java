@@ -0,0 +1,271 @@
+package com.tathang.example304.security.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.model.BidaTable;
+
+/**
+ * Tính tiền giờ chơi theo {@link PricingRules}.
+ *
+ * Lúc nạp, các luật được "vẽ" lên một tuần theo từng phút rồi nén thành bảng khoảng đã sắp xếp
+ * (mốc bắt đầu + giá/giờ) cho từng loại bàn. Tính tiền chỉ là đi qua các khoảng mà lượt chơi cắt
+ * qua, cộng {@code giá/giờ × số giây} bằng {@code long}, cuối cùng chia 3600 và làm tròn một lần.
+ *
+ * File luật được kiểm tra định kỳ; đổi giá thì nạp lại không cần restart. File lỗi thì giữ bảng cũ.
+ * Chỉ nạp lại được khi luật là file trên đĩa ({@code file:...}); luật nằm trong jar chỉ nạp lúc khởi động.
+ */
+@Service
+public class PricingEngine {
+    private static final Logger logger = LoggerFactory.getLogger(PricingEngine.class);
+
+    static final int MINUTES_PER_DAY = 24 * 60;
+    static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+    static final int SECONDS_PER_WEEK = MINUTES_PER_WEEK * 60;
+
+    private final ObjectMapper mapper;
+    private final Resource rulesResource;
+    private final boolean reloadable;
+
+    private volatile PriceTable table;
+    private volatile long loadedModified;
+
+    public PricingEngine(ObjectMapper mapper, ResourceLoader resourceLoader,
+            @Value("${app.pricing.rules:classpath:pricing.json}") String rulesLocation) {
+        this.mapper = mapper;
+        this.rulesResource = resourceLoader.getResource(rulesLocation);
+        this.reloadable = rulesResource.isFile();
+        reload();
+        if (!reloadable) {
+            logger.info("Pricing rules {} are not a file on disk, hot reload disabled", rulesResource);
+        }
+    }
+
+    /**
+     * Tiền giờ (đơn vị nhỏ nhất) cho lượt chơi từ {@code start} tới {@code end}.
+     */
+    public long playFee(BidaTable.TableType tableType, LocalDateTime start, LocalDateTime end) {
+        return table.fee(tableType, start, end);
+    }
+
+    @Scheduled(initialDelayString = "${app.pricing.reload-ms:30000}",
+            fixedDelayString = "${app.pricing.reload-ms:30000}")
+    public void reloadIfChanged() {
+        if (!reloadable) {
+            return;
+        }
+        try {
+            if (rulesResource.lastModified() != loadedModified) {
+                reload();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Cannot reload pricing rules from {}: {}", rulesResource, e.getMessage());
+        }
+    }
+
+    public synchronized void reload() {
+        try (InputStream in = rulesResource.getInputStream()) {
+            long modified = lastModified();
+            table = compile(mapper.readValue(in, PricingRules.class));
+            loadedModified = modified;
+            logger.info("Loaded pricing rules from {}", rulesResource);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read pricing rules from " + rulesResource, e);
+        }
+    }
+
+    private long lastModified() {
+        try {
+            return rulesResource.lastModified();
+        } catch (IOException e) {
+            return 0; // resource không có thời gian sửa: không dùng để so khi nạp lại
+        }
+    }
+
+    // =====================================================
+    // COMPILE: LUẬT -> BẢNG KHOẢNG THEO TUẦN
+    // =====================================================
+
+    static PriceTable compile(PricingRules rules) {
+        Map<BidaTable.TableType, Long> base = rules.baseRatePerHour();
+        if (base == null || base.get(BidaTable.TableType.STANDARD) == null) {
+            throw new IllegalArgumentException("baseRatePerHour.STANDARD is required");
+        }
+        List<PricingRules.Rule> overrides = rules.rules() != null ? rules.rules() : List.of();
+
+        Map<BidaTable.TableType, Schedule> schedules = new EnumMap<>(BidaTable.TableType.class);
+        for (BidaTable.TableType type : BidaTable.TableType.values()) {
+            long[] minuteRates = new long[MINUTES_PER_WEEK];
+            Arrays.fill(minuteRates, base.getOrDefault(type, base.get(BidaTable.TableType.STANDARD)));
+            for (PricingRules.Rule rule : overrides) {
+                if (rule.tableTypes() == null || rule.tableTypes().isEmpty() || rule.tableTypes().contains(type)) {
+                    paint(minuteRates, rule);
+                }
+            }
+            schedules.put(type, Schedule.of(minuteRates));
+        }
+
+        int increment = rules.billingIncrementMinutes() != null ? rules.billingIncrementMinutes() : 1;
+        long roundTo = rules.roundTo() != null ? rules.roundTo() : 1;
+        RoundingMode rounding = rules.rounding() != null ? rules.rounding() : RoundingMode.UP;
+        if (increment <= 0 || roundTo <= 0) {
+            throw new IllegalArgumentException("billingIncrementMinutes and roundTo must be positive");
+        }
+        if (rounding != RoundingMode.UP && rounding != RoundingMode.DOWN && rounding != RoundingMode.HALF_UP) {
+            throw new IllegalArgumentException("rounding must be UP, DOWN or HALF_UP");
+        }
+        return new PriceTable(schedules, increment * 60L,
+                rules.minimumCharge() != null ? rules.minimumCharge() : 0, roundTo, rounding);
+    }
+
+    private static void paint(long[] minuteRates, PricingRules.Rule rule) {
+        if ((rule.ratePerHour() == null) == (rule.percent() == null)) {
+            throw new IllegalArgumentException("Rule " + rule.name() + " needs exactly one of ratePerHour / percent");
+        }
+        int from = minuteOfDay(rule.from(), 0);
+        int to = minuteOfDay(rule.to(), MINUTES_PER_DAY);
+        List<DayOfWeek> days = rule.days() == null || rule.days().isEmpty()
+                ? List.of(DayOfWeek.values())
+                : rule.days();
+        for (DayOfWeek day : days) {
+            int dayStart = (day.getValue() - 1) * MINUTES_PER_DAY;
+            int end = to > from ? to : to + MINUTES_PER_DAY; // qua nửa đêm: sang ngày hôm sau
+            for (int m = from; m < end; m++) {
+                int slot = (dayStart + m) % MINUTES_PER_WEEK;
+                minuteRates[slot] = rule.ratePerHour() != null
+                        ? rule.ratePerHour()
+                        : minuteRates[slot] * rule.percent() / 100;
+            }
+        }
+    }
+
+    private static int minuteOfDay(String time, int defaultValue) {
+        if (time == null || time.isBlank()) {
+            return defaultValue;
+        }
+        String[] parts = time.trim().split(":");
+        int minute = Integer.parseInt(parts[0]) * 60 + (parts.length > 1 ? Integer.parseInt(parts[1]) : 0);
+        if (minute < 0 || minute > MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Invalid time " + time);
+        }
+        return minute;
+    }
+
+    // Các khoảng giá của một loại bàn trong tuần, tính bằng giây từ 00:00 thứ Hai
+    static final class Schedule {
+        private final int[] starts;
+        private final long[] ratesPerHour;
+
+        private Schedule(int[] starts, long[] ratesPerHour) {
+            this.starts = starts;
+            this.ratesPerHour = ratesPerHour;
+        }
+
+        static Schedule of(long[] minuteRates) {
+            int count = 1;
+            for (int m = 1; m < minuteRates.length; m++) {
+                if (minuteRates[m] != minuteRates[m - 1]) {
+                    count++;
+                }
+            }
+            int[] starts = new int[count];
+            long[] rates = new long[count];
+            rates[0] = minuteRates[0];
+            for (int m = 1, i = 0; m < minuteRates.length; m++) {
+                if (minuteRates[m] != minuteRates[m - 1]) {
+                    i++;
+                    starts[i] = m * 60;
+                    rates[i] = minuteRates[m];
+                }
+            }
+            return new Schedule(starts, rates);
+        }
+
+        int size() {
+            return starts.length;
+        }
+
+        // Σ giá/giờ × số giây trên [from, from + seconds), quay vòng qua tuần sau nếu cần
+        long weightedSeconds(int from, long seconds) {
+            int i = Arrays.binarySearch(starts, from);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            long position = from;
+            long remaining = seconds;
+            long sum = 0;
+            while (remaining > 0) {
+                long segmentEnd = i + 1 < starts.length ? starts[i + 1] : SECONDS_PER_WEEK;
+                long take = Math.min(segmentEnd - position, remaining);
+                sum += ratesPerHour[i] * take;
+                remaining -= take;
+                position += take;
+                if (position == SECONDS_PER_WEEK) {
+                    position = 0;
+                    i = 0;
+                } else if (position == segmentEnd) {
+                    i++;
+                }
+            }
+            return sum;
+        }
+    }
+
+    static final class PriceTable {
+        private final Map<BidaTable.TableType, Schedule> schedules;
+        private final long incrementSeconds;
+        private final long minimumCharge;
+        private final long roundTo;
+        private final RoundingMode rounding;
+
+        PriceTable(Map<BidaTable.TableType, Schedule> schedules, long incrementSeconds, long minimumCharge,
+                long roundTo, RoundingMode rounding) {
+            this.schedules = schedules;
+            this.incrementSeconds = incrementSeconds;
+            this.minimumCharge = minimumCharge;
+            this.roundTo = roundTo;
+            this.rounding = rounding;
+        }
+
+        Schedule schedule(BidaTable.TableType tableType) {
+            return schedules.get(tableType != null ? tableType : BidaTable.TableType.STANDARD);
+        }
+
+        long fee(BidaTable.TableType tableType, LocalDateTime start, LocalDateTime end) {
+            if (start == null || end == null) {
+                return 0;
+            }
+            long seconds = Duration.between(start, end).getSeconds();
+            // Tối thiểu một block; block bắt đầu thì tính đủ
+            long blocks = Math.max(1, Math.ceilDiv(seconds, incrementSeconds));
+            int from = (start.getDayOfWeek().getValue() - 1) * MINUTES_PER_DAY * 60
+                    + start.toLocalTime().toSecondOfDay();
+            long weighted = schedule(tableType).weightedSeconds(from, blocks * incrementSeconds);
+
+            long unit = 3600 * roundTo;
+            long units = switch (rounding) {
+                case DOWN -> weighted / unit;
+                case HALF_UP -> (weighted + unit / 2) / unit;
+                default -> Math.ceilDiv(weighted, unit);
+            };
+            return Math.max(units * roundTo, minimumCharge);
+        }
+    }
+}
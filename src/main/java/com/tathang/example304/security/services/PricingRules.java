@@ -0,0 +1,44 @@
+package com.tathang.example304.security.services;
+
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.util.List;
+import java.util.Map;
+
+import com.tathang.example304.model.BidaTable;
+
+/**
+ * Cấu hình giá giờ chơi (đọc từ JSON, xem {@code pricing.json}). Mọi số tiền là số nguyên theo
+ * đơn vị nhỏ nhất của tiền tệ (VND: đồng).
+ *
+ * @param baseRatePerHour         giá/giờ theo loại bàn; thiếu loại nào thì dùng giá STANDARD
+ * @param rules                   luật ghi đè theo thứ tự: luật sau đè luật trước trên cùng khung giờ
+ * @param billingIncrementMinutes tính tiền theo block (vd. 15 = mỗi 15 phút bắt đầu tính đủ)
+ * @param minimumCharge           tiền giờ tối thiểu của một lượt chơi
+ * @param roundTo                 làm tròn tiền giờ tới bội số này (vd. 1000)
+ * @param rounding                UP, DOWN hoặc HALF_UP
+ */
+public record PricingRules(
+        Map<BidaTable.TableType, Long> baseRatePerHour,
+        List<Rule> rules,
+        Integer billingIncrementMinutes,
+        Long minimumCharge,
+        Long roundTo,
+        RoundingMode rounding) {
+
+    /**
+     * Một khung giá: các ngày trong tuần (rỗng = mọi ngày), giờ "HH:mm" từ {@code from} tới
+     * {@code to} ({@code to} nhỏ hơn {@code from} = qua nửa đêm, "24:00" = hết ngày), loại bàn
+     * (rỗng = mọi loại). Chỉ một trong hai: {@code ratePerHour} (giá tuyệt đối) hoặc
+     * {@code percent} (phần trăm của giá đang áp dụng ở khung đó).
+     */
+    public record Rule(
+            String name,
+            List<DayOfWeek> days,
+            String from,
+            String to,
+            List<BidaTable.TableType> tableTypes,
+            Long ratePerHour,
+            Integer percent) {
+    }
+}
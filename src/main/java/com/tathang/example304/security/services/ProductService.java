@@ -4,9 +4,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.tathang.example304.dto.ProductSummaryDTO;
 import com.tathang.example304.model.Category;
 import com.tathang.example304.model.Product;
 import com.tathang.example304.payload.request.ProductRequest;
+import com.tathang.example304.payload.response.CursorPage;
 import com.tathang.example304.repository.CategoryRepository;
 import com.tathang.example304.repository.ProductRepository;
 
@@ -14,6 +16,8 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -22,13 +26,16 @@ public class ProductService {
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
     private final FileStorageService fileStorageService;
+    private final AuditLog auditLog;
 
     public ProductService(ProductRepository productRepository,
             CategoryRepository categoryRepository,
-            FileStorageService fileStorageService) {
+            FileStorageService fileStorageService,
+            AuditLog auditLog) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
         this.fileStorageService = fileStorageService;
+        this.auditLog = auditLog;
     }
 
     // === CẬP NHẬT PRODUCT TỪ FORM-DATA ===
@@ -39,10 +46,7 @@ public class ProductService {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy product với ID: " + id));
 
-        System.out.println("=== SERVICE UPDATE DEBUG ===");
-        System.out.println("Updating product: " + product.getName());
-        System.out.println("New imageFile: " + (imageFile != null ? imageFile.getOriginalFilename() : "null"));
-        System.out.println("New stockQuantity: " + stockQuantity); // DEBUG
+        Integer previousStock = product.getStockQuantity();
 
         // Lưu file mới nếu có
         String savedImageUrl = product.getImageUrl();
@@ -53,7 +57,6 @@ public class ProductService {
             }
             String fileName = fileStorageService.storeFile(imageFile);
             savedImageUrl = fileName;
-            System.out.println("✅ Đã lưu ảnh mới: " + savedImageUrl);
         } else if (imageUrl != null && !imageUrl.trim().isEmpty()) {
             savedImageUrl = imageUrl;
         }
@@ -80,8 +83,10 @@ public class ProductService {
             product.setCategory(category);
         }
 
-        System.out.println("💾 Saving updated product...");
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        auditLog.record("PRODUCT_UPDATED", "productId", id, "name", name, "price", price,
+                "stockBefore", previousStock, "stockAfter", saved.getStockQuantity());
+        return saved;
     }
 
     // === XÓA VĨNH VIỄN PRODUCT ===
@@ -94,11 +99,12 @@ public class ProductService {
             try {
                 fileStorageService.deleteFile(product.getImageUrl());
             } catch (Exception e) {
-                System.out.println("⚠️ Không thể xóa file ảnh: " + e.getMessage());
+                auditLog.record("PRODUCT_IMAGE_DELETE_FAILED", "productId", id, "error", e.getMessage());
             }
         }
 
         productRepository.delete(product);
+        auditLog.record("PRODUCT_DELETED", "productId", id, "name", product.getName());
     }
 
     // === LẤY TẤT CẢ PRODUCTS ===
@@ -106,6 +112,20 @@ public class ProductService {
         return productRepository.findAll();
     }
 
+    // === LẤY PRODUCTS THEO TRANG (KEYSET) ===
+    @Transactional(readOnly = true)
+    public CursorPage<ProductSummaryDTO> getProducts(Long after, Integer limit) {
+        return CursorPage.of(productRepository.findSummariesAfter(CursorPage.after(after), CursorPage.limit(limit)),
+                ProductSummaryDTO::id);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamProducts(Consumer<ProductSummaryDTO> sink) {
+        try (Stream<ProductSummaryDTO> products = productRepository.streamSummaries()) {
+            products.forEach(sink);
+        }
+    }
+
     // === LẤY PRODUCTS ĐANG ACTIVE (không bị Active) ===
     public List<Product> getActiveProducts() {
         return productRepository.findByActiveTrue();
@@ -136,8 +156,11 @@ public class ProductService {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy product với ID: " + id));
 
+        Integer previousStock = product.getStockQuantity();
         product.setStockQuantity(quantity);
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        auditLog.record("STOCK_SET", "productId", id, "stockBefore", previousStock, "stockAfter", quantity);
+        return saved;
     }
 
     // === TOGGLE ACTIVE STATUS ===
@@ -173,7 +196,10 @@ public class ProductService {
         product.setActive(
                 request.getActive() != null ? request.getActive() : true);
 
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        auditLog.record("PRODUCT_CREATED", "productId", saved.getId(), "name", saved.getName(),
+                "price", saved.getPrice(), "stockAfter", saved.getStockQuantity());
+        return saved;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,298 @@
+package com.tathang.example304.security.services;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.tathang.example304.model.RefreshToken;
+import com.tathang.example304.repository.RefreshTokenRepository;
+import com.tathang.example304.repository.UserRepository;
+import com.tathang.example304.security.jwt.AccessTokenDenylist;
+import com.tathang.example304.security.jwt.JwtUtils;
+import com.tathang.example304.security.jwt.TokenRefreshException;
+import com.tathang.example304.security.jwt.VerifiedJwt;
+
+/**
+ * Quản lý refresh-token family: mỗi lần đăng nhập tạo một family, mỗi lần refresh
+ * đổi sang token mới (rotation). Dùng lại token đã đổi = bị đánh cắp -> thu hồi cả family.
+ *
+ * Bảng refresh_tokens là nguồn lưu trữ bền, được phản chiếu vào index trong bộ nhớ
+ * nên việc tra cứu không cần quét bảng. Family bị thu hồi được đưa vào
+ * {@link AccessTokenDenylist} để filter chặn access token mà không đụng DB.
+ * Token mới và cờ rotated chỉ vào index sau khi transaction commit; thu hồi thì áp ngay.
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+    private final JwtUtils jwtUtils;
+    private final AccessTokenDenylist denylist;
+    private final UserSecurityVersionService securityVersions;
+
+    private final Map<String, TokenEntry> tokens = new ConcurrentHashMap<>();
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+            UserRepository userRepository,
+            JwtUtils jwtUtils,
+            AccessTokenDenylist denylist,
+            UserSecurityVersionService securityVersions) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepository = userRepository;
+        this.jwtUtils = jwtUtils;
+        this.denylist = denylist;
+        this.securityVersions = securityVersions;
+    }
+
+    public record IssuedTokens(String accessToken, String refreshToken, UserDetailsImpl principal) {
+    }
+
+    // Nạp lại index từ các token còn hạn khi khởi động
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void loadIndex() {
+        List<RefreshToken> active = refreshTokenRepository.findByExpiresAtAfter(LocalDateTime.now());
+        for (RefreshToken row : active) {
+            index(row);
+        }
+        logger.info("Loaded {} refresh tokens in {} families", tokens.size(), families.size());
+    }
+
+    /**
+     * Đăng nhập thành công: mở family mới và phát hành cặp token đầu tiên.
+     */
+    @Transactional
+    public IssuedTokens issue(UserDetailsImpl principal) {
+        Family family = new Family(UUID.randomUUID().toString(), principal.getId());
+        family.remember(stripped(principal), securityVersions.current(principal.getId()));
+        afterCommit(() -> families.put(family.id, family));
+        return issueInFamily(family, family.snapshot.principal());
+    }
+
+    /**
+     * Đổi refresh token cũ lấy cặp token mới trong cùng family.
+     */
+    @Transactional(noRollbackFor = TokenRefreshException.class)
+    public IssuedTokens rotate(String refreshToken) {
+        VerifiedJwt verified = jwtUtils.verifyRefreshToken(refreshToken)
+                .orElseThrow(() -> new TokenRefreshException("Invalid refresh token"));
+
+        TokenEntry entry = findEntry(verified.getTokenId());
+        if (entry == null) {
+            throw new TokenRefreshException("Unknown refresh token");
+        }
+        Family family = families.get(entry.familyId);
+        if (family == null || family.revoked) {
+            throw new TokenRefreshException("Refresh token revoked");
+        }
+
+        // Cờ trong bộ nhớ loại nhanh token đã đổi; điều kiện rotated_at IS NULL quyết định
+        // khi 2 request (cùng node hay khác node) dùng chung token. Cờ chỉ bật khi commit:
+        // transaction rollback thì token cũ vẫn dùng được
+        if (entry.rotated.get()
+                || refreshTokenRepository.markRotated(entry.tokenId, LocalDateTime.now()) == 0) {
+            logger.warn("Refresh token reuse detected for family {} (user {})", family.id, family.userId);
+            revokeFamily(family.id);
+            throw new TokenRefreshException("Refresh token reuse detected, session revoked");
+        }
+        afterCommit(() -> entry.rotated.set(true));
+
+        UserDetailsImpl principal = resolvePrincipal(family);
+        if (principal == null || !principal.isEnabled()) {
+            revokeFamily(family.id);
+            throw new TokenRefreshException("User is disabled or no longer exists");
+        }
+        return issueInFamily(family, principal);
+    }
+
+    /**
+     * Đăng xuất: thu hồi cả family của refresh token và chặn access token hiện tại.
+     * Thu hồi theo family id trong DB, kể cả khi index của node này không có family đó.
+     */
+    @Transactional
+    public void revoke(String refreshToken, VerifiedJwt accessToken) {
+        Set<String> familyIds = new HashSet<>();
+        if (refreshToken != null) {
+            jwtUtils.verifyRefreshToken(refreshToken).ifPresent(v -> familyIds.add(v.getFamilyId()));
+        }
+        if (accessToken != null) {
+            denylist.add(accessToken.getTokenId());
+            if (accessToken.getFamilyId() != null) {
+                familyIds.add(accessToken.getFamilyId());
+            }
+        }
+        familyIds.forEach(this::revokeFamily);
+    }
+
+    /**
+     * Dọn token hết hạn khỏi index và DB (mỗi giờ)
+     */
+    @Scheduled(fixedDelayString = "${app.security.refresh-purge-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        tokens.values().removeIf(t -> t.expiresAt <= now);
+        families.values().removeIf(f -> f.expiresAt <= now);
+        int deleted = refreshTokenRepository.deleteExpired(LocalDateTime.now());
+        if (deleted > 0) {
+            logger.info("Purged {} expired refresh tokens", deleted);
+        }
+    }
+
+    private IssuedTokens issueInFamily(Family family, UserDetailsImpl principal) {
+        LocalDateTime issuedAt = LocalDateTime.now();
+        LocalDateTime expiresAt = issuedAt.plusNanos(jwtUtils.getRefreshExpirationMs() * 1_000_000L);
+        String tokenId = UUID.randomUUID().toString();
+
+        refreshTokenRepository.save(new RefreshToken(tokenId, family.id, principal.getId(),
+                principal.getUsername(), issuedAt, expiresAt));
+
+        long expiresAtMillis = toMillis(expiresAt);
+        afterCommit(() -> {
+            tokens.put(tokenId, new TokenEntry(tokenId, family.id, expiresAtMillis, false));
+            family.extendTo(expiresAtMillis);
+        });
+
+        String accessToken = jwtUtils.generateJwtToken(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()), family.id);
+        String refreshToken = jwtUtils.generateRefreshToken(principal.getUsername(), tokenId, family.id,
+                new Date(expiresAtMillis));
+        return new IssuedTokens(accessToken, refreshToken, principal);
+    }
+
+    // Dùng lại principal đã nhớ nếu security version của user chưa đổi, ngược lại tải lại từ DB
+    private UserDetailsImpl resolvePrincipal(Family family) {
+        PrincipalSnapshot cached = family.snapshot;
+        if (cached != null && securityVersions.isCurrent(family.userId, cached.securityVersion())) {
+            return cached.principal();
+        }
+        long version = securityVersions.current(family.userId);
+        UserDetailsImpl loaded = userRepository.findWithRolesById(family.userId)
+                .map(UserDetailsImpl::build)
+                .orElse(null);
+        if (loaded == null || !loaded.isEnabled()) {
+            return loaded;
+        }
+        UserDetailsImpl principal = stripped(loaded);
+        family.remember(principal, version);
+        return principal;
+    }
+
+    private void revokeFamily(String familyId) {
+        Family family = families.get(familyId);
+        if (family != null) {
+            family.revoked = true;
+        }
+        refreshTokenRepository.revokeFamily(familyId);
+        denylist.add(familyId);
+    }
+
+    // Index chỉ có token của lần nạp lúc khởi động và token phát hành ở node này:
+    // token phát hành ở node khác thì tra DB theo token id rồi đưa vào index
+    private TokenEntry findEntry(String tokenId) {
+        TokenEntry entry = tokens.get(tokenId);
+        if (entry != null) {
+            return entry;
+        }
+        return refreshTokenRepository.findByTokenId(tokenId).map(this::index).orElse(null);
+    }
+
+    // Đưa một dòng đã commit trong DB vào index; trả về entry đang có nếu token đã được index
+    private TokenEntry index(RefreshToken row) {
+        long expiresAt = toMillis(row.getExpiresAt());
+        Family family = families.computeIfAbsent(row.getFamilyId(), id -> new Family(id, row.getUserId()));
+        family.extendTo(expiresAt);
+        if (row.isRevoked()) {
+            family.revoked = true;
+            denylist.add(family.id);
+        }
+        TokenEntry entry = new TokenEntry(row.getTokenId(), row.getFamilyId(), expiresAt, row.getRotatedAt() != null);
+        TokenEntry existing = tokens.putIfAbsent(row.getTokenId(), entry);
+        return existing != null ? existing : entry;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // Không giữ password hash trong bộ nhớ
+    private static UserDetailsImpl stripped(UserDetailsImpl principal) {
+        return UserDetailsImpl.fromClaims(principal.getId(), principal.getUsername(), principal.getEmail(),
+                principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static final class TokenEntry {
+        final String tokenId;
+        final String familyId;
+        final long expiresAt;
+        final AtomicBoolean rotated;
+
+        TokenEntry(String tokenId, String familyId, long expiresAt, boolean rotated) {
+            this.tokenId = tokenId;
+            this.familyId = familyId;
+            this.expiresAt = expiresAt;
+            this.rotated = new AtomicBoolean(rotated);
+        }
+    }
+
+    private static final class Family {
+        final String id;
+        final Long userId;
+        volatile boolean revoked;
+        volatile long expiresAt;
+        volatile PrincipalSnapshot snapshot;
+
+        Family(String id, Long userId) {
+            this.id = id;
+            this.userId = userId;
+        }
+
+        synchronized void extendTo(long millis) {
+            if (millis > expiresAt) {
+                expiresAt = millis;
+            }
+        }
+
+        void remember(UserDetailsImpl principal, long securityVersion) {
+            this.snapshot = new PrincipalSnapshot(principal, securityVersion);
+        }
+    }
+
+    private record PrincipalSnapshot(UserDetailsImpl principal, long securityVersion) {
+    }
+}
@@ -0,0 +1,238 @@
+package com.tathang.example304.security.services;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tathang.example304.dto.MethodRevenueDTO;
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.DailyRevenue;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.repository.BillRepository;
+import com.tathang.example304.repository.DailyRevenueRepository;
+
+/**
+ * Doanh thu theo ngày cho dashboard, đọc từ bảng tổng hợp {@link DailyRevenue}.
+ *
+ * Mỗi lần hóa đơn đổi trạng thái / phương thức / ngày lập, {@link #billChanged} trừ phần đóng
+ * góp cũ và cộng phần mới ngay trong transaction đó (upsert cộng dồn một dòng). Ngày hôm nay
+ * luôn đọc trực tiếp từ {@code bills} theo khoảng {@code issued_at} (dùng index), các ngày
+ * trước đọc từ bảng tổng hợp. {@link #backfill} dựng lại các ngày đã qua từ {@code bills}, mỗi
+ * ngày một transaction khóa các dòng của ngày đó; hằng đêm tự dựng lại ngày hôm qua để sửa sai
+ * lệch nếu có.
+ */
+@Service
+public class RevenueRollupService {
+    private static final Logger logger = LoggerFactory.getLogger(RevenueRollupService.class);
+
+    // Mọi giá trị của payment_method: dựng lại một ngày thì khóa đủ các dòng này
+    private static final List<String> METHODS = methods();
+
+    private final DailyRevenueRepository rollupRepository;
+    private final BillRepository billRepository;
+    private final TransactionTemplate transactions;
+
+    public RevenueRollupService(DailyRevenueRepository rollupRepository,
+            BillRepository billRepository,
+            PlatformTransactionManager transactionManager) {
+        this.rollupRepository = rollupRepository;
+        this.billRepository = billRepository;
+        this.transactions = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Phần doanh thu một hóa đơn đóng góp vào bảng tổng hợp; {@code null} nếu chưa PAID.
+     */
+    public record Contribution(LocalDate date, String method, Money total, Money playFee) {
+
+        public static Contribution of(Bill bill) {
+            if (bill.getPaymentStatus() != Bill.PaymentStatus.PAID || bill.getIssuedAt() == null) {
+                return null;
+            }
+            return new Contribution(bill.getIssuedAt().toLocalDate(),
+                    DailyRevenue.methodKey(bill.getPaymentMethod()),
+                    bill.getTotalAmount() != null ? bill.getTotalAmount() : Money.ZERO,
+                    bill.getPlayFee() != null ? bill.getPlayFee() : Money.ZERO);
+        }
+    }
+
+    /**
+     * Gọi trong transaction đổi hóa đơn, với {@code before} chụp trước khi sửa. Rollback thì
+     * bảng tổng hợp cũng rollback theo.
+     */
+    public void billChanged(Contribution before, Bill after) {
+        Contribution now = Contribution.of(after);
+        if (Objects.equals(before, now)) {
+            return;
+        }
+        if (before != null) {
+            apply(before, -1);
+        }
+        if (now != null) {
+            apply(now, 1);
+        }
+    }
+
+    private void apply(Contribution c, int sign) {
+        rollupRepository.upsertIncrement(c.date(), c.method(), sign, c.total().minor() * sign,
+                c.playFee().minor() * sign);
+    }
+
+    // =====================================================
+    // ĐỌC: BẢNG TỔNG HỢP + HÔM NAY ĐỌC TRỰC TIẾP
+    // =====================================================
+
+    // Doanh thu của một ngày theo một phương thức (tiền: đơn vị nhỏ nhất)
+    record Line(LocalDate date, String method, long billCount, long revenue, long playFee) {
+    }
+
+    List<Line> lines(LocalDate from, LocalDate to) {
+        LocalDate today = LocalDate.now();
+        List<Line> lines = new ArrayList<>();
+        LocalDate rollupTo = to.isBefore(today) ? to : today.minusDays(1);
+        if (!from.isAfter(rollupTo)) {
+            for (DailyRevenue r : rollupRepository.findByRevenueDateBetweenOrderByRevenueDate(from, rollupTo)) {
+                if (r.getBillCount() == 0) {
+                    continue; // dòng rỗng (tạo khi dựng lại, hoặc hóa đơn đã hủy hết)
+                }
+                lines.add(new Line(r.getRevenueDate(), r.getPaymentMethod(), r.getBillCount(),
+                        r.getRevenue().minor(), r.getPlayFee().minor()));
+            }
+        }
+        if (!today.isBefore(from) && !today.isAfter(to)) {
+            lines.addAll(live(today));
+        }
+        return lines;
+    }
+
+    private List<Line> live(LocalDate day) {
+        List<Line> lines = new ArrayList<>();
+        for (MethodRevenueDTO m : billRepository.sumPaidByPaymentMethod(day.atStartOfDay(),
+                day.plusDays(1).atStartOfDay())) {
+            lines.add(new Line(day, DailyRevenue.methodKey(m.paymentMethod()), value(m.billCount()),
+                    value(m.revenue()), value(m.playFee())));
+        }
+        return lines;
+    }
+
+    public long revenueBetween(LocalDate from, LocalDate to) {
+        return lines(from, to).stream().mapToLong(Line::revenue).sum();
+    }
+
+    public long totalRevenue() {
+        LocalDate today = LocalDate.now();
+        return rollupRepository.sumRevenueBefore(today) + live(today).stream().mapToLong(Line::revenue).sum();
+    }
+
+    public Map<LocalDate, Long> dailyRevenue(LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> byDate = new TreeMap<>();
+        for (Line line : lines(from, to)) {
+            byDate.merge(line.date(), line.revenue(), Long::sum);
+        }
+        return byDate;
+    }
+
+    // Tháng 1..12 -> doanh thu (tháng không có doanh thu không có trong map)
+    public Map<Integer, Long> monthlyRevenue(int year) {
+        Map<Integer, Long> byMonth = new TreeMap<>();
+        for (Line line : lines(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31))) {
+            byMonth.merge(line.date().getMonthValue(), line.revenue(), Long::sum);
+        }
+        return byMonth;
+    }
+
+    public Map<String, Long> revenueByPaymentMethod(LocalDate date) {
+        Map<String, Long> byMethod = new TreeMap<>();
+        for (Line line : lines(date, date)) {
+            byMethod.merge(line.method(), line.revenue(), Long::sum);
+        }
+        return byMethod;
+    }
+
+    // =====================================================
+    // BACKFILL / ĐỐI SOÁT
+    // =====================================================
+
+    /**
+     * Dựng lại bảng tổng hợp từ {@code bills} cho các ngày {@code from..to} (null: từ hóa đơn
+     * PAID đầu tiên tới hôm qua). Hôm nay luôn đọc trực tiếp nên không dựng lại. Mỗi ngày một
+     * transaction ngắn. Trả về số ngày đã dựng.
+     */
+    public int backfill(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new RuntimeException("from must not be after to");
+        }
+        if (from == null) {
+            LocalDateTime first = billRepository.findFirstPaidIssuedAt();
+            if (first == null) {
+                return 0;
+            }
+            from = first.toLocalDate();
+        }
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        if (to == null || to.isAfter(yesterday)) {
+            to = yesterday;
+        }
+        int days = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            LocalDate current = day;
+            transactions.executeWithoutResult(tx -> rebuild(current));
+            days++;
+        }
+        logger.info("Rebuilt daily revenue rollup for {} day(s) from {} to {}", days, from, to);
+        return days;
+    }
+
+    // Khóa mọi dòng của ngày (upsert cộng 0) trước khi đọc bills: hóa đơn đổi trạng thái cùng lúc
+    // hoặc đã cộng trước (và được tính trong bills) hoặc chờ tới khi dựng xong rồi mới cộng
+    private void rebuild(LocalDate day) {
+        for (String method : METHODS) {
+            rollupRepository.upsertIncrement(day, method, 0, 0, 0);
+        }
+        Map<String, Line> byMethod = new HashMap<>();
+        for (Line line : live(day)) {
+            byMethod.put(line.method(), line);
+        }
+        for (String method : METHODS) {
+            Line line = byMethod.getOrDefault(method, new Line(day, method, 0, 0, 0));
+            rollupRepository.overwrite(day, method, line.billCount(), Money.of(line.revenue()),
+                    Money.of(line.playFee()));
+        }
+    }
+
+    // Hóa đơn sửa trực tiếp trong DB / ngoài BillService: ngày hôm qua được dựng lại mỗi đêm
+    @Scheduled(cron = "${app.revenue-rollup.reconcile-cron:0 15 4 * * ?}")
+    public void reconcileYesterday() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        try {
+            backfill(yesterday, yesterday);
+        } catch (RuntimeException e) {
+            logger.error("Cannot reconcile daily revenue for {}: {}", yesterday, e.getMessage());
+        }
+    }
+
+    private static List<String> methods() {
+        List<String> methods = new ArrayList<>();
+        for (Bill.PaymentMethod method : Bill.PaymentMethod.values()) {
+            methods.add(DailyRevenue.methodKey(method));
+        }
+        methods.add(DailyRevenue.UNKNOWN_METHOD);
+        return List.copyOf(methods);
+    }
+
+    private static long value(Long value) {
+        return value != null ? value : 0L;
+    }
+}
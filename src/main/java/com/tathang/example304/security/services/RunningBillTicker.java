@@ -0,0 +1,87 @@
+package com.tathang.example304.security.services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.tathang.example304.dto.RunningOrderDTO;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.repository.OrderRepository;
+
+/**
+ * Tiền tạm tính (tiền giờ đến hiện tại + tiền món) của mọi bàn đang chơi, đẩy lên
+ * {@code /topic/running-bills} thành một lô mỗi N giây.
+ *
+ * Mỗi lượt: một câu SELECT lấy các order OPEN, tiền món lấy từ {@link TableSessionStore} nếu order
+ * đang có session (mới hơn DB), tiền giờ tính bằng {@link PricingEngine} trong bộ nhớ. Chi phí theo
+ * số bàn đang chơi; broker fan-out cùng một message cho mọi client đã subscribe.
+ */
+@Component
+public class RunningBillTicker {
+    private static final Logger logger = LoggerFactory.getLogger(RunningBillTicker.class);
+
+    private final OrderRepository orderRepository;
+    private final TableSessionStore tableSessions;
+    private final PricingEngine pricingEngine;
+    private final WebSocketService webSocketService;
+
+    // Lô trước rỗng thì không gửi tiếp lô rỗng
+    private boolean lastEmpty;
+
+    public RunningBillTicker(OrderRepository orderRepository,
+            TableSessionStore tableSessions,
+            PricingEngine pricingEngine,
+            WebSocketService webSocketService) {
+        this.orderRepository = orderRepository;
+        this.tableSessions = tableSessions;
+        this.pricingEngine = pricingEngine;
+        this.webSocketService = webSocketService;
+    }
+
+    @Scheduled(initialDelayString = "${app.orders.ticker-ms:5000}",
+            fixedDelayString = "${app.orders.ticker-ms:5000}")
+    public void tick() {
+        try {
+            WebSocketService.RunningBillsMessage message = sweep(LocalDateTime.now());
+            if (message.bills().isEmpty() && lastEmpty) {
+                return;
+            }
+            webSocketService.notifyRunningBills(message);
+            lastEmpty = message.bills().isEmpty();
+        } catch (RuntimeException e) {
+            logger.error("Running bill tick failed: {}", e.getMessage());
+        }
+    }
+
+    WebSocketService.RunningBillsMessage sweep(LocalDateTime now) {
+        List<RunningOrderDTO> orders = orderRepository.findRunningOrders();
+        List<WebSocketService.RunningBill> bills = new ArrayList<>(orders.size());
+        for (RunningOrderDTO order : orders) {
+            long items = Money.minorOf(order.totalAmount());
+            Optional<TableSessionStore.LiveState> live = tableSessions.peek(order.orderId());
+            if (live.isPresent()) {
+                if (live.get().status() != Order.OrderStatus.OPEN) {
+                    continue; // đã bấm kết thúc, write-behind chưa ghi xuống DB
+                }
+                items = live.get().totalAmount();
+            }
+            long fee = pricingEngine.playFee(order.tableType(), order.startTime(), now);
+            long minutes = order.startTime() != null
+                    ? Math.max(0, Duration.between(order.startTime(), now).toMinutes())
+                    : 0;
+            bills.add(new WebSocketService.RunningBill(order.tableId(), order.orderId(), minutes, fee, items,
+                    fee + items));
+        }
+        return new WebSocketService.RunningBillsMessage(
+                now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), bills);
+    }
+}
@@ -0,0 +1,258 @@
+package com.tathang.example304.security.services;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.dto.SettlementDTO;
+import com.tathang.example304.dto.SettlementDTO.IssueType;
+import com.tathang.example304.dto.SettlementRowDTO;
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.DailySettlement;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.repository.BillRepository;
+import com.tathang.example304.repository.DailySettlementRepository;
+import com.tathang.example304.repository.OrderRepository;
+
+/**
+ * Chốt sổ cuối ngày.
+ *
+ * Hóa đơn trong ngày được đọc dần bằng {@code Stream} (fetch size, projection không phải entity)
+ * và cộng dồn trong một lượt: theo phương thức thanh toán, nhân viên, bàn, giờ. Bộ nhớ chỉ phụ
+ * thuộc số nhân viên / bàn, không phụ thuộc số hóa đơn; danh sách điểm lệch lưu tối đa
+ * {@code app.settlement.max-issues} dòng (vẫn đếm đủ).
+ *
+ * Kết quả ghi vào {@link DailySettlement} một lần; chạy lại cùng ngày trả bản đã chốt.
+ */
+@Service
+public class SettlementService {
+    private static final Logger logger = LoggerFactory.getLogger(SettlementService.class);
+
+    private static final TypeReference<List<SettlementDTO.Issue>> ISSUES = new TypeReference<>() {
+    };
+
+    private final BillRepository billRepository;
+    private final OrderRepository orderRepository;
+    private final DailySettlementRepository settlementRepository;
+    private final ObjectMapper mapper;
+    private final TransactionTemplate readTransactions;
+    private final TransactionTemplate transactions;
+    private final int maxIssues;
+
+    public SettlementService(BillRepository billRepository,
+            OrderRepository orderRepository,
+            DailySettlementRepository settlementRepository,
+            ObjectMapper mapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.settlement.max-issues:200}") int maxIssues) {
+        this.billRepository = billRepository;
+        this.orderRepository = orderRepository;
+        this.settlementRepository = settlementRepository;
+        this.mapper = mapper;
+        this.readTransactions = new TransactionTemplate(transactionManager);
+        this.readTransactions.setReadOnly(true);
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.maxIssues = Math.max(0, maxIssues);
+    }
+
+    /**
+     * Chốt sổ ngày {@code date}. Ngày đã chốt thì trả lại bản cũ (bản chốt không sửa).
+     */
+    public SettlementDTO settle(LocalDate date) {
+        // Bản chốt không sửa được: chốt ngày đang chạy thì mọi hóa đơn sau đó không bao giờ được chốt
+        if (!date.isBefore(LocalDate.now())) {
+            throw new RuntimeException("Chỉ chốt sổ được ngày đã kết thúc");
+        }
+        Optional<SettlementDTO> existing = find(date);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+
+        DailySettlement computed = readTransactions.execute(status -> compute(date));
+        try {
+            DailySettlement saved = transactions.execute(status -> settlementRepository.saveAndFlush(computed));
+            logger.info("Settled {}: {} bills, revenue {}, {} inconsistencies", date, saved.getBillCount(),
+                    saved.getRevenue(), saved.getInconsistencyCount());
+            return toDTO(saved);
+        } catch (DataIntegrityViolationException e) {
+            // Lượt chạy khác vừa chốt cùng ngày
+            return find(date).orElseThrow(() -> e);
+        }
+    }
+
+    public Optional<SettlementDTO> find(LocalDate date) {
+        return readTransactions.execute(status -> settlementRepository.findByBusinessDate(date)).map(this::toDTO);
+    }
+
+    // Chốt ngày hôm qua nếu chưa ai chốt tay
+    @Scheduled(cron = "${app.settlement.cron:0 30 4 * * ?}")
+    public void settleYesterday() {
+        try {
+            settle(LocalDate.now().minusDays(1));
+        } catch (RuntimeException e) {
+            logger.error("Daily settlement failed: {}", e.getMessage());
+        }
+    }
+
+    DailySettlement compute(LocalDate date) {
+        LocalDateTime start = date.atStartOfDay();
+        LocalDateTime end = date.plusDays(1).atStartOfDay();
+        Accumulator accumulator = new Accumulator(maxIssues);
+        try (Stream<SettlementRowDTO> rows = billRepository.streamSettlementRows(start, end)) {
+            rows.forEach(accumulator::add);
+        }
+        try (Stream<Long> orderIds = orderRepository.streamPaidOrdersWithoutBill(start, end)) {
+            orderIds.forEach(orderId -> accumulator.issue(IssueType.PAID_ORDER_WITHOUT_BILL, orderId, null,
+                    "Order PAID nhưng không có hóa đơn"));
+        }
+        try {
+            return new DailySettlement(date, accumulator.billCount, accumulator.paid.count,
+                    Money.of(accumulator.paid.amount), Money.of(accumulator.playFee),
+                    mapper.writeValueAsString(accumulator.breakdown()), accumulator.issueCount,
+                    mapper.writeValueAsString(accumulator.issues),
+                    LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize settlement for " + date, e);
+        }
+    }
+
+    private SettlementDTO toDTO(DailySettlement settlement) {
+        try {
+            return new SettlementDTO(settlement.getBusinessDate(), settlement.getGeneratedAt(),
+                    settlement.getBillCount(), settlement.getPaidBillCount(), settlement.getRevenue(),
+                    settlement.getPlayFee(), mapper.readValue(settlement.getBreakdown(), SettlementDTO.Breakdown.class),
+                    settlement.getInconsistencyCount(), mapper.readValue(settlement.getInconsistencies(), ISSUES));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot read settlement " + settlement.getBusinessDate(), e);
+        }
+    }
+
+    // Số hóa đơn + tổng tiền (đơn vị nhỏ nhất) của một nhóm
+    static final class Sum {
+        int count;
+        long amount;
+
+        void add(long value) {
+            count++;
+            amount = Math.addExact(amount, value);
+        }
+
+        SettlementDTO.Totals toTotals() {
+            return new SettlementDTO.Totals(count, Money.of(amount));
+        }
+    }
+
+    /**
+     * Trạng thái cộng dồn của một lượt chốt sổ. Chỉ hóa đơn PAID được cộng vào doanh thu và các
+     * bảng phân tích; mọi hóa đơn đều được đối chiếu với order.
+     */
+    static final class Accumulator {
+        // Nhân viên / bàn không rõ gom vào khóa 0
+        private static final Long UNKNOWN = 0L;
+
+        private final int maxIssues;
+
+        int billCount;
+        final Sum paid = new Sum();
+        long playFee;
+        final Map<String, Sum> byPaymentMethod = new HashMap<>();
+        final Map<Long, Sum> byEmployee = new HashMap<>();
+        final Map<Long, Sum> byTable = new HashMap<>();
+        final Sum[] byHour = new Sum[24];
+        final Map<String, Sum> unpaidByStatus = new HashMap<>();
+
+        int issueCount;
+        final List<SettlementDTO.Issue> issues = new ArrayList<>();
+
+        Accumulator(int maxIssues) {
+            this.maxIssues = maxIssues;
+            for (int h = 0; h < byHour.length; h++) {
+                byHour[h] = new Sum();
+            }
+        }
+
+        void add(SettlementRowDTO row) {
+            billCount++;
+            long billTotal = Money.minorOf(row.billTotal());
+            long fee = Money.minorOf(row.playFee());
+            long orderTotal = Money.minorOf(row.orderTotal());
+            long itemsTotal = row.itemsTotal() != null ? row.itemsTotal() : 0;
+
+            if (row.paymentStatus() == Bill.PaymentStatus.PAID) {
+                paid.add(billTotal);
+                playFee = Math.addExact(playFee, fee);
+                String method = row.paymentMethod() != null ? row.paymentMethod().name() : "UNKNOWN";
+                byPaymentMethod.computeIfAbsent(method, k -> new Sum()).add(billTotal);
+                byEmployee.computeIfAbsent(row.employeeId() != null ? row.employeeId() : UNKNOWN, k -> new Sum())
+                        .add(billTotal);
+                byTable.computeIfAbsent(row.tableId() != null ? row.tableId() : UNKNOWN, k -> new Sum())
+                        .add(billTotal);
+                if (row.issuedAt() != null) {
+                    byHour[row.issuedAt().getHour()].add(billTotal);
+                }
+                if (row.orderStatus() != Order.OrderStatus.PAID) {
+                    issue(IssueType.PAID_BILL_ORDER_NOT_PAID, row.orderId(), row.billId(),
+                            "Order đang " + row.orderStatus());
+                }
+            } else {
+                unpaidByStatus.computeIfAbsent(String.valueOf(row.paymentStatus()), k -> new Sum()).add(billTotal);
+                // createBill đã đóng order (bàn trống) nhưng khách chưa trả: có thể là khách bỏ về
+                if (row.orderStatus() == Order.OrderStatus.PAID) {
+                    issue(IssueType.PAID_ORDER_UNPAID_BILL, row.orderId(), row.billId(),
+                            "Hóa đơn đang " + row.paymentStatus());
+                }
+            }
+            if (billTotal != orderTotal) {
+                issue(IssueType.BILL_ORDER_TOTAL_MISMATCH, row.orderId(), row.billId(),
+                        "bill=" + billTotal + ", order=" + orderTotal);
+            }
+            // Tổng order = tiền món + tiền giờ (BillService cộng tiền giờ vào order khi lập hóa đơn)
+            if (orderTotal != itemsTotal + fee) {
+                issue(IssueType.ORDER_ITEMS_TOTAL_MISMATCH, row.orderId(), row.billId(),
+                        "order=" + orderTotal + ", items=" + itemsTotal + ", playFee=" + fee);
+            }
+        }
+
+        void issue(IssueType type, Long orderId, Long billId, String detail) {
+            issueCount++;
+            if (issues.size() < maxIssues) {
+                issues.add(new SettlementDTO.Issue(type, orderId, billId, detail));
+            }
+        }
+
+        SettlementDTO.Breakdown breakdown() {
+            List<SettlementDTO.Totals> hours = new ArrayList<>(byHour.length);
+            for (Sum hour : byHour) {
+                hours.add(hour.toTotals());
+            }
+            return new SettlementDTO.Breakdown(totals(byPaymentMethod), totals(byEmployee), totals(byTable), hours,
+                    totals(unpaidByStatus));
+        }
+
+        private static <K> Map<K, SettlementDTO.Totals> totals(Map<K, Sum> sums) {
+            Map<K, SettlementDTO.Totals> result = new TreeMap<>();
+            sums.forEach((key, sum) -> result.put(key, sum.toTotals()));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.tathang.example304.security.services;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bộ đếm sliding-window (xấp xỉ bằng 2 cửa sổ cố định có trọng số), không dùng lock.
+ *
+ * Mỗi key giữ đúng một {@link AtomicLong}: 32 bit cao là chỉ số cửa sổ hiện tại,
+ * 16 bit kế là số lần của cửa sổ trước, 16 bit thấp là số lần của cửa sổ hiện tại.
+ * Số lượng key có giới hạn; key không còn hoạt động (cửa sổ đã trôi qua) bị dọn.
+ */
+public class SlidingWindowLimiter {
+
+    private static final long COUNT_MASK = 0xFFFFL;
+
+    private final int limit;
+    private final long windowMillis;
+    private final int maxKeys;
+    private final Map<String, AtomicLong> windows;
+
+    public SlidingWindowLimiter(int limit, long windowMillis, int maxKeys) {
+        this.limit = Math.max(1, Math.min(limit, (int) COUNT_MASK));
+        this.windowMillis = Math.max(1, windowMillis);
+        this.maxKeys = Math.max(16, maxKeys);
+        this.windows = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Ghi nhận một lần thử; trả về false (và không tính) nếu key đã chạm giới hạn.
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key, System.currentTimeMillis());
+    }
+
+    boolean tryAcquire(String key, long nowMillis) {
+        if (key == null) {
+            return true;
+        }
+        AtomicLong state = windows.get(key);
+        if (state == null) {
+            if (windows.size() >= maxKeys) {
+                evict(nowMillis);
+            }
+            state = windows.computeIfAbsent(key, k -> new AtomicLong());
+        }
+
+        int index = windowIndex(nowMillis);
+        double previousWeight = previousWeight(nowMillis);
+        for (;;) {
+            long current = state.get();
+            long rolled = roll(current, index);
+            long previousCount = (rolled >>> 16) & COUNT_MASK;
+            long currentCount = rolled & COUNT_MASK;
+            if (previousCount * previousWeight + currentCount >= limit) {
+                return false;
+            }
+            if (state.compareAndSet(current, rolled + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isBlocked(String key) {
+        return isBlocked(key, System.currentTimeMillis());
+    }
+
+    boolean isBlocked(String key, long nowMillis) {
+        AtomicLong state = key != null ? windows.get(key) : null;
+        if (state == null) {
+            return false;
+        }
+        long rolled = roll(state.get(), windowIndex(nowMillis));
+        return ((rolled >>> 16) & COUNT_MASK) * previousWeight(nowMillis) + (rolled & COUNT_MASK) >= limit;
+    }
+
+    public void reset(String key) {
+        if (key != null) {
+            windows.remove(key);
+        }
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public int size() {
+        return windows.size();
+    }
+
+    /**
+     * Xóa key không còn lần thử nào trong 2 cửa sổ gần nhất; nếu vẫn đầy thì bỏ bớt 1/8 key bất kỳ.
+     */
+    public int evict(long nowMillis) {
+        int index = windowIndex(nowMillis);
+        int before = windows.size();
+        windows.entrySet().removeIf(entry -> roll(entry.getValue().get(), index) == pack(index, 0, 0));
+        if (windows.size() >= maxKeys) {
+            int toDrop = windows.size() - maxKeys + Math.max(1, maxKeys / 8);
+            Iterator<String> it = windows.keySet().iterator();
+            while (toDrop-- > 0 && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return before - windows.size();
+    }
+
+    private int windowIndex(long nowMillis) {
+        return (int) (nowMillis / windowMillis);
+    }
+
+    // Phần của cửa sổ trước còn nằm trong khoảng trượt
+    private double previousWeight(long nowMillis) {
+        return 1.0 - (double) (nowMillis % windowMillis) / windowMillis;
+    }
+
+    // Đưa state về cửa sổ index: cùng cửa sổ thì giữ nguyên, sang cửa sổ kế thì dịch, quá cũ thì về 0
+    private static long roll(long state, int index) {
+        int stored = (int) (state >>> 32);
+        if (stored == index) {
+            return state;
+        }
+        if (stored == index - 1) {
+            return pack(index, state & COUNT_MASK, 0);
+        }
+        return pack(index, 0, 0);
+    }
+
+    private static long pack(int index, long previousCount, long currentCount) {
+        return ((long) index << 32) | (previousCount << 16) | currentCount;
+    }
+}
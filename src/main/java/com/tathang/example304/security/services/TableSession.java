@@ -0,0 +1,185 @@
+package com.tathang.example304.security.services;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.tathang.example304.dto.OrderDTO;
+import com.tathang.example304.dto.OrderItemDTO;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+
+/**
+ * Trạng thái trong bộ nhớ của một order đang chơi (OPEN / WAITING_PAYMENT).
+ *
+ * Chỉ được đọc/sửa khi giữ lock của bàn trong {@link TableSessionStore}. Các thay đổi chưa
+ * ghi xuống DB được đánh dấu bẩn (tổng tiền/trạng thái, từng dòng món, dòng đã xóa) để lượt
+ * write-behind chỉ ghi đúng phần đó.
+ *
+ * Tiền giữ bằng {@code long} (đơn vị nhỏ nhất, xem {@link Money}): cộng/trừ trên session không
+ * tạo object; chỉ đổi sang {@link Money} khi dựng DTO / ảnh chụp.
+ */
+final class TableSession {
+
+    final Long orderId;
+    final Long tableId;
+    private final String tableName;
+    private final Long employeeId;
+    private final String notes;
+    private final LocalDateTime startTime;
+
+    private Order.OrderStatus status;
+    private long totalAmount;
+    private LocalDateTime endTime;
+
+    // itemId -> dòng món, giữ thứ tự thêm
+    private final Map<Long, Line> lines = new LinkedHashMap<>();
+    private final Set<Long> dirtyItems = new LinkedHashSet<>();
+    private final Set<Long> removedItems = new LinkedHashSet<>();
+    private boolean dirty;
+
+    // Đã bị gỡ khỏi store (đóng/hủy/xóa order): luồng đang chờ lock phải lấy session mới
+    boolean evicted;
+    // Đang nằm trong hàng đợi write-behind
+    boolean queued;
+
+    static final class Line {
+        final Long itemId;
+        final Long productId;
+        final String productName;
+        final long price;
+        int quantity;
+
+        Line(Long itemId, Long productId, String productName, long price, int quantity) {
+            this.itemId = itemId;
+            this.productId = productId;
+            this.productName = productName;
+            this.price = price;
+            this.quantity = quantity;
+        }
+    }
+
+    // Dòng món đã ghi (id + số lượng tuyệt đối): ghi lại nhiều lần vẫn ra cùng kết quả
+    record LineState(Long itemId, int quantity) {
+    }
+
+    /**
+     * Ảnh chụp phần chưa ghi xuống DB; cũng là một dòng trong journal.
+     */
+    record Snapshot(Long orderId, Order.OrderStatus status, Money totalAmount, LocalDateTime endTime,
+            List<LineState> lines, List<Long> removedItems) {
+    }
+
+    TableSession(OrderDTO order) {
+        this.orderId = order.id();
+        this.tableId = order.tableId();
+        this.tableName = order.tableName();
+        this.employeeId = order.employeeId();
+        this.notes = order.notes();
+        this.startTime = order.startTime();
+        this.status = order.status();
+        this.totalAmount = Money.minorOf(order.totalAmount());
+        this.endTime = order.endTime();
+        for (OrderItemDTO item : order.items()) {
+            lines.put(item.id(), new Line(item.id(), item.productId(), item.productName(), Money.minorOf(item.price()),
+                    item.quantity()));
+        }
+    }
+
+    boolean isLive() {
+        return ActiveOrderRegistry.isActive(status);
+    }
+
+    Order.OrderStatus status() {
+        return status;
+    }
+
+    long totalAmount() {
+        return totalAmount;
+    }
+
+    Line lineById(Long itemId) {
+        return lines.get(itemId);
+    }
+
+    Line lineByProduct(Long productId) {
+        for (Line line : lines.values()) {
+            if (line.productId.equals(productId)) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    // Dòng mới đã INSERT đồng bộ (cần id thật cho client), không cần ghi lại
+    void addLine(Line line) {
+        lines.put(line.itemId, line);
+    }
+
+    void setQuantity(Line line, int quantity) {
+        line.quantity = quantity;
+        dirtyItems.add(line.itemId);
+        dirty = true;
+    }
+
+    void removeLine(Line line) {
+        lines.remove(line.itemId);
+        dirtyItems.remove(line.itemId);
+        removedItems.add(line.itemId);
+        dirty = true;
+    }
+
+    void addTotal(long delta) {
+        totalAmount = Math.addExact(totalAmount, delta);
+        dirty = true;
+    }
+
+    void finishPlaying(LocalDateTime endTime) {
+        this.status = Order.OrderStatus.WAITING_PAYMENT;
+        this.endTime = endTime;
+        dirty = true;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    Snapshot snapshot() {
+        List<LineState> changed = new ArrayList<>(dirtyItems.size());
+        for (Long itemId : dirtyItems) {
+            changed.add(new LineState(itemId, lines.get(itemId).quantity));
+        }
+        return new Snapshot(orderId, status, Money.of(totalAmount), endTime, changed, List.copyOf(removedItems));
+    }
+
+    // Lần ghi bị rollback: đánh dấu bẩn lại phần của ảnh chụp đó
+    void restore(Snapshot snapshot) {
+        for (LineState line : snapshot.lines()) {
+            if (lines.containsKey(line.itemId())) {
+                dirtyItems.add(line.itemId());
+            }
+        }
+        removedItems.addAll(snapshot.removedItems());
+        dirty = true;
+    }
+
+    void markClean() {
+        dirtyItems.clear();
+        removedItems.clear();
+        dirty = false;
+    }
+
+    OrderDTO toDTO() {
+        List<OrderItemDTO> items = new ArrayList<>(lines.size());
+        for (Line line : lines.values()) {
+            items.add(new OrderItemDTO(line.itemId, line.productId, line.productName, line.quantity,
+                    Money.of(line.price)));
+        }
+        return new OrderDTO(orderId, tableId, tableName, employeeId, status, Money.of(totalAmount), notes, startTime,
+                endTime, items);
+    }
+}
@@ -0,0 +1,393 @@
+package com.tathang.example304.security.services;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tathang.example304.dto.OrderDTO;
+import com.tathang.example304.dto.OrderItemDTO;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.repository.OrderItemRepository;
+import com.tathang.example304.repository.OrderRepository;
+import com.tathang.example304.repository.ProductRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Nguồn sự thật trong lúc bàn đang chơi: mỗi order OPEN / WAITING_PAYMENT có một
+ * {@link TableSession} trong bộ nhớ, khóa theo bàn (lock phân dải theo tableId).
+ *
+ * Thao tác POS sửa session dưới lock, ghi ảnh chụp vào {@link OrderSessionJournal} rồi mới xếp
+ * order vào hàng đợi write-behind; một lượt định kỳ ghi tổng tiền / trạng thái / số lượng món xuống
+ * {@code orders} và {@code order_items} theo thứ tự. Những việc cần DB ngay (trừ kho, INSERT
+ * dòng món mới để có id) vẫn chạy đồng bộ trong thao tác.
+ *
+ * Trước khi đọc / đổi order qua entity (lập hóa đơn, đóng/hủy order, đối soát) phải gọi
+ * {@link #close}. Order không còn active thì không giữ trong bộ nhớ: thay đổi được ghi ngay.
+ * Session cũ bị bỏ (order đã được chốt qua đường khác) thì kho được trả về theo số lượng trong DB.
+ */
+@Component
+public class TableSessionStore {
+    private static final Logger logger = LoggerFactory.getLogger(TableSessionStore.class);
+
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactions;
+    private final OrderSessionJournal journal;
+    private final ReentrantLock[] stripes;
+
+    private final Map<Long, TableSession> sessions = new ConcurrentHashMap<>();
+    private final Queue<TableSession> pending = new ConcurrentLinkedQueue<>();
+
+    public TableSessionStore(OrderRepository orderRepository,
+            OrderItemRepository orderItemRepository,
+            ProductRepository productRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.orders.journal-dir:./journal}") String journalDir,
+            @Value("${app.orders.journal-fsync:true}") boolean fsync,
+            @Value("${app.orders.lock-stripes:64}") int lockStripes) {
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.productRepository = productRepository;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.journal = new OrderSessionJournal(Path.of(journalDir), fsync);
+        this.stripes = new ReentrantLock[Math.max(1, lockStripes)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Chạy {@code action} trên session của order, giữ lock của bàn. Session bẩn sau action được
+     * ghi journal và xếp hàng write-behind (hoặc ghi ngay nếu order không còn active).
+     */
+    public <T> T mutate(Long orderId, Function<TableSession, T> action) {
+        while (true) {
+            TableSession session = session(orderId);
+            ReentrantLock lock = lockFor(session.tableId);
+            lock.lock();
+            try {
+                if (session.evicted) {
+                    continue; // vừa bị đóng/hủy trong lúc chờ lock: đọc lại
+                }
+                T result = action.apply(session);
+                if (session.isDirty()) {
+                    if (session.isLive()) {
+                        persist(session);
+                    } else {
+                        write(session);
+                    }
+                }
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Đọc order đang chơi từ bộ nhớ (không chạm DB nếu session đã có).
+     */
+    public OrderDTO view(Long orderId) {
+        return find(orderId).orElseThrow(() -> new RuntimeException("Order not found"));
+    }
+
+    public Optional<OrderDTO> find(Long orderId) {
+        return load(orderId).map(session -> {
+            ReentrantLock lock = lockFor(session.tableId);
+            lock.lock();
+            try {
+                return session.toDTO();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Trạng thái + tổng tiền món mới nhất của order nếu đang có session (mới hơn DB khi
+     * write-behind chưa chạy). Không nạp session từ DB.
+     */
+    public Optional<LiveState> peek(Long orderId) {
+        TableSession session = sessions.get(orderId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        ReentrantLock lock = lockFor(session.tableId);
+        lock.lock();
+        try {
+            return session.evicted
+                    ? Optional.empty()
+                    : Optional.of(new LiveState(session.status(), session.totalAmount()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // totalAmount: đơn vị nhỏ nhất (xem Money)
+    public record LiveState(Order.OrderStatus status, long totalAmount) {
+    }
+
+    /**
+     * Ghi nốt phần chưa xuống DB rồi gỡ session: order sắp được đổi qua đường entity (thanh toán,
+     * đóng, hủy, đối soát...). Ghi trong transaction của người gọi; nếu transaction đó rollback thì
+     * session được đặt lại và xếp hàng ghi tiếp.
+     */
+    public void close(Long orderId) {
+        TableSession session = sessions.get(orderId);
+        if (session == null) {
+            return;
+        }
+        ReentrantLock lock = lockFor(session.tableId);
+        lock.lock();
+        try {
+            if (session.evicted) {
+                return;
+            }
+            TableSession.Snapshot written = null;
+            if (session.isDirty()) {
+                written = session.snapshot();
+                write(session);
+            }
+            evict(session);
+            TableSession.Snapshot snapshot = written;
+            onRollback(() -> reinstate(session, snapshot));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gỡ session, bỏ thay đổi chưa ghi (order bị xóa).
+     */
+    public void discard(Long orderId) {
+        TableSession session = sessions.get(orderId);
+        if (session == null) {
+            return;
+        }
+        ReentrantLock lock = lockFor(session.tableId);
+        lock.lock();
+        try {
+            evict(session);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Lượt write-behind: chuyển journal sang segment mới, ghi mọi order bẩn theo thứ tự xếp hàng,
+     * rồi xóa các segment cũ nếu tất cả đã xuống DB.
+     */
+    @Scheduled(initialDelayString = "${app.orders.write-behind-ms:200}",
+            fixedDelayString = "${app.orders.write-behind-ms:200}")
+    public void flushAll() {
+        List<Path> closed = journal.rotate();
+        boolean complete = true;
+        int size = pending.size();
+        for (int i = 0; i < size; i++) {
+            TableSession session = pending.poll();
+            if (session == null) {
+                break;
+            }
+            ReentrantLock lock = lockFor(session.tableId);
+            lock.lock();
+            try {
+                session.queued = false;
+                if (!session.evicted && session.isDirty()) {
+                    write(session);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Write-behind failed for order {}: {}", session.orderId, e.getMessage());
+                enqueue(session);
+                complete = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (complete && !closed.isEmpty()) {
+            journal.delete(closed);
+        }
+    }
+
+    // Sau crash: áp lại ảnh chụp cuối cùng của từng order còn trong journal
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        List<Path> closed = journal.rotate();
+        if (closed.isEmpty()) {
+            return;
+        }
+        Map<Long, TableSession.Snapshot> snapshots = journal.latest(closed);
+        for (TableSession.Snapshot snapshot : snapshots.values()) {
+            transactions.executeWithoutResult(status -> apply(snapshot));
+        }
+        logger.info("Recovered {} order sessions from journal", snapshots.size());
+        journal.delete(closed);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushAll();
+        journal.close();
+    }
+
+    private TableSession session(Long orderId) {
+        return load(orderId).orElseThrow(() -> new RuntimeException("Order not found"));
+    }
+
+    private Optional<TableSession> load(Long orderId) {
+        TableSession cached = sessions.get(orderId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<OrderDTO> order = orderRepository.findViewById(orderId);
+        if (order.isEmpty()) {
+            return Optional.empty();
+        }
+        TableSession loaded = new TableSession(order.get().withItems(orderItemRepository.findViewsByOrderId(orderId)));
+        if (!loaded.isLive()) {
+            return Optional.of(loaded); // order đã kết thúc: không giữ, mọi thay đổi ghi ngay
+        }
+        TableSession current = sessions.putIfAbsent(orderId, loaded);
+        return Optional.of(current != null ? current : loaded);
+    }
+
+    private ReentrantLock lockFor(Long tableId) {
+        return stripes[Math.floorMod(tableId != null ? tableId.hashCode() : 0, stripes.length)];
+    }
+
+    // Journal trước, hàng đợi sau: ghi journal lỗi thì ghi thẳng xuống DB thay vì để lượt
+    // write-behind ghi một thay đổi mà client đã nhận lỗi (gửi lại sẽ thành cộng hai lần)
+    private void persist(TableSession session) {
+        try {
+            journal.append(session.snapshot());
+        } catch (RuntimeException e) {
+            logger.error("Order journal append failed for order {}, writing through: {}", session.orderId,
+                    e.getMessage());
+            write(session);
+            return;
+        }
+        enqueue(session);
+    }
+
+    private void enqueue(TableSession session) {
+        if (!session.queued) {
+            session.queued = true;
+            pending.add(session);
+        }
+    }
+
+    private void evict(TableSession session) {
+        session.evicted = true;
+        sessions.remove(session.orderId, session);
+    }
+
+    // Transaction của close() rollback: DB vẫn là trạng thái cũ, session (và phần vừa ghi) còn hiệu lực
+    private void reinstate(TableSession session, TableSession.Snapshot written) {
+        ReentrantLock lock = lockFor(session.tableId);
+        lock.lock();
+        try {
+            session.evicted = false;
+            TableSession other = sessions.put(session.orderId, session);
+            if (other != null && other != session) {
+                other.evicted = true;
+            }
+            if (written != null) {
+                session.restore(written);
+                persist(session);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void onRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    // Gọi khi giữ lock của bàn
+    private void write(TableSession session) {
+        TableSession.Snapshot snapshot = session.snapshot();
+        boolean applied = Boolean.TRUE.equals(transactions.execute(status -> apply(snapshot)));
+        session.markClean();
+        if (!applied) {
+            // Order đã được thanh toán / hủy qua đường khác: session cũ, bỏ
+            logger.warn("Order {} is no longer active, dropping unwritten session state", session.orderId);
+            evict(session);
+        }
+    }
+
+    // Order không còn active thì bỏ cả thay đổi dòng món (khớp với tổng tiền đã chốt trên hóa đơn)
+    private boolean apply(TableSession.Snapshot snapshot) {
+        if (orderRepository.applySessionState(snapshot.orderId(), snapshot.status(), snapshot.totalAmount(),
+                snapshot.endTime(), LocalDateTime.now()) == 0) {
+            restoreStock(snapshot);
+            return false;
+        }
+        for (TableSession.LineState line : snapshot.lines()) {
+            orderItemRepository.updateQuantity(line.itemId(), line.quantity());
+        }
+        if (!snapshot.removedItems().isEmpty()) {
+            orderItemRepository.deleteByIdIn(snapshot.removedItems());
+        }
+        return true;
+    }
+
+    // Kho đã bị trừ / cộng đồng bộ theo số lượng trên session; session bị bỏ thì đưa kho về khớp
+    // với số lượng đang có trong DB (số lượng đã tính tiền)
+    private void restoreStock(TableSession.Snapshot snapshot) {
+        Map<Long, Integer> sessionQuantities = new HashMap<>();
+        for (TableSession.LineState line : snapshot.lines()) {
+            sessionQuantities.put(line.itemId(), line.quantity());
+        }
+        for (Long itemId : snapshot.removedItems()) {
+            sessionQuantities.put(itemId, 0);
+        }
+        if (sessionQuantities.isEmpty()) {
+            return;
+        }
+        for (OrderItemDTO item : orderItemRepository.findViewsByIdIn(sessionQuantities.keySet())) {
+            int diff = sessionQuantities.get(item.id()) - item.quantity();
+            if (diff > 0) {
+                productRepository.incrementStock(item.productId(), diff);
+            } else if (diff < 0 && productRepository.decrementStock(item.productId(), -diff) == 0) {
+                logger.warn("Cannot take back {} of product {} for dropped order {}: insufficient stock", -diff,
+                        item.productId(), snapshot.orderId());
+            }
+        }
+    }
+}
@@ -1,15 +1,17 @@
 package com.tathang.example304.security.services;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import com.tathang.example304.model.Role;
 import com.tathang.example304.model.User;
+import com.tathang.example304.security.RoleMask;
 
 public class UserDetailsImpl implements UserDetails {
     private static final long serialVersionUID = 1L;
@@ -17,8 +19,11 @@ public class UserDetailsImpl implements UserDetails {
     private Long id;
     private String username;
     private String email;
+    private String fullName;
     private String password;
     private Collection<? extends GrantedAuthority> authorities;
+    private boolean enabled = true;
+    private int roleMask;
 
     public UserDetailsImpl(Long id, String username, String email, String password,
             Collection<? extends GrantedAuthority> authorities) {
@@ -27,19 +32,39 @@ public class UserDetailsImpl implements UserDetails {
         this.email = email;
         this.password = password;
         this.authorities = authorities;
+        this.roleMask = RoleMask.ofAuthorities(authorities);
+    }
+
+    public UserDetailsImpl(Long id, String username, String email, String password,
+            Collection<? extends GrantedAuthority> authorities, boolean enabled) {
+        this(id, username, email, password, authorities);
+        this.enabled = enabled;
     }
 
     public static UserDetailsImpl build(User user) {
-        List<GrantedAuthority> authorities = user.getRoles().stream()
-                .map(role -> new SimpleGrantedAuthority(role.getName().name()))
-                .collect(Collectors.toList());
+        List<GrantedAuthority> authorities = new ArrayList<>(user.getRoles().size());
+        for (Role role : user.getRoles()) {
+            authorities.add(new SimpleGrantedAuthority(role.getName().name()));
+        }
 
-        return new UserDetailsImpl(
+        UserDetailsImpl details = new UserDetailsImpl(
                 user.getId(),
                 user.getUsername(),
                 user.getEmail(),
                 user.getPassword(),
-                authorities);
+                authorities,
+                !Boolean.FALSE.equals(user.getIsActive()));
+        details.fullName = user.getFullName();
+        return details;
+    }
+
+    // Dựng principal từ claims của access token, không cần truy vấn DB
+    public static UserDetailsImpl fromClaims(Long id, String username, String email, List<String> roles) {
+        List<GrantedAuthority> authorities = roles.stream()
+                .map(role -> (GrantedAuthority) new SimpleGrantedAuthority(role))
+                .toList();
+
+        return new UserDetailsImpl(id, username, email, null, authorities);
     }
 
     @Override
@@ -47,6 +72,11 @@ public class UserDetailsImpl implements UserDetails {
         return authorities;
     }
 
+    // Bitmask các ERole của user, dùng bởi RoleMaskAuthorizationManager
+    public int getRoleMask() {
+        return roleMask;
+    }
+
     public Long getId() {
         return id;
     }
@@ -55,6 +85,10 @@ public class UserDetailsImpl implements UserDetails {
         return email;
     }
 
+    public String getFullName() {
+        return fullName;
+    }
+
     @Override
     public String getPassword() {
         return password;
@@ -82,7 +116,7 @@ public class UserDetailsImpl implements UserDetails {
 
     @Override
     public boolean isEnabled() {
-        return true;
+        return enabled;
     }
 
     @Override
@@ -0,0 +1,76 @@
+package com.tathang.example304.security.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.tathang.example304.repository.UserRepository;
+
+/**
+ * "Security version" theo từng user, lưu ở cột {@code users.security_version}.
+ * Access token mang version tại thời điểm phát hành (claim "sv"); khi user bị khóa,
+ * đổi role hoặc bị xóa thì version được tăng, token cũ không còn khớp và filter
+ * phải tải lại user từ DB. Version nằm trong DB nên giữ nguyên qua restart và giống
+ * nhau giữa các node.
+ *
+ * Mỗi node cache version đã đọc trong {@code app.security.version-cache-ms}: node tăng
+ * version thấy ngay, node khác thấy chậm nhất sau khoảng đó.
+ */
+@Service
+public class UserSecurityVersionService {
+
+    // User không còn trong DB: không token nào khớp
+    private static final long DELETED = -1;
+
+    private final UserRepository userRepository;
+    private final long cacheMs;
+    private final Map<Long, Cached> versions = new ConcurrentHashMap<>();
+
+    private record Cached(long version, long loadedAt) {
+    }
+
+    public UserSecurityVersionService(UserRepository userRepository,
+            @Value("${app.security.version-cache-ms:10000}") long cacheMs) {
+        this.userRepository = userRepository;
+        this.cacheMs = cacheMs;
+    }
+
+    public long current(Long userId) {
+        long now = System.currentTimeMillis();
+        Cached cached = versions.get(userId);
+        if (cached != null && now - cached.loadedAt() < cacheMs) {
+            return cached.version();
+        }
+        long version = userRepository.findSecurityVersionById(userId).orElse(DELETED);
+        versions.put(userId, new Cached(version, now));
+        return version;
+    }
+
+    public boolean isCurrent(Long userId, Long version) {
+        return userId != null && version != null && version != DELETED && version == current(userId);
+    }
+
+    // Bỏ cache sau khi commit: bỏ sớm hơn thì luồng khác có thể đọc lại version cũ rồi cache tiếp
+    @Transactional
+    public void bump(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        userRepository.incrementSecurityVersion(userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            versions.remove(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                versions.remove(userId);
+            }
+        });
+    }
+}
@@ -2,16 +2,21 @@ package com.tathang.example304.security.services;
 
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.tathang.example304.dto.StaffSummaryDTO;
 import com.tathang.example304.model.ERole;
 import com.tathang.example304.model.Role;
 import com.tathang.example304.model.User;
+import com.tathang.example304.payload.response.CursorPage;
 import com.tathang.example304.repository.RoleRepository;
 import com.tathang.example304.repository.UserRepository;
 
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class UserService {
@@ -19,16 +24,33 @@ public class UserService {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserSecurityVersionService securityVersions;
 
-    public UserService(UserRepository userRepository, RoleRepository roleRepository, PasswordEncoder passwordEncoder) {
+    private static final List<ERole> STAFF_ROLES = List.of(ERole.ROLE_MANAGER, ERole.ROLE_STAFF);
+
+    public UserService(UserRepository userRepository, RoleRepository roleRepository, PasswordEncoder passwordEncoder,
+            UserSecurityVersionService securityVersions) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.passwordEncoder = passwordEncoder;
+        this.securityVersions = securityVersions;
     }
 
     public List<User> getAllStaffs() {
-        return userRepository.findByRolesNameIn(
-                List.of(ERole.ROLE_MANAGER, ERole.ROLE_STAFF));
+        return userRepository.findByRolesNameIn(STAFF_ROLES);
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<StaffSummaryDTO> getStaffs(Long after, Integer limit) {
+        return CursorPage.of(userRepository.findStaffSummariesAfter(STAFF_ROLES, CursorPage.after(after),
+                CursorPage.limit(limit)), StaffSummaryDTO::id);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamStaffs(Consumer<StaffSummaryDTO> sink) {
+        try (Stream<StaffSummaryDTO> staffs = userRepository.streamStaffSummaries(STAFF_ROLES)) {
+            staffs.forEach(sink);
+        }
     }
 
     public User createStaff(String username, String email, String password, String fullName,
@@ -103,14 +125,19 @@ public class UserService {
         }
         user.setRoles(roleSet);
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        // Token đang dùng mang role/username cũ -> buộc filter tải lại từ DB
+        securityVersions.bump(id);
+        return saved;
     }
 
     public User toggleUserStatus(Long id, Boolean isActive) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User không tồn tại với ID: " + id));
         user.setIsActive(isActive);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        securityVersions.bump(id);
+        return saved;
     }
 
     public User getUserById(Long id) {
@@ -121,6 +148,7 @@ public class UserService {
     public boolean deleteUser(Long id) {
         if (userRepository.existsById(id)) {
             userRepository.deleteById(id);
+            securityVersions.bump(id);
             return true;
         }
         return false;
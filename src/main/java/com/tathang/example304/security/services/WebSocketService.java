@@ -1,8 +1,11 @@
 package com.tathang.example304.security.services;
 
+import java.util.List;
+
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import com.tathang.example304.model.Money;
 import com.tathang.example304.model.Order;
 
 @Service
@@ -15,11 +18,25 @@ public class WebSocketService {
     }
 
     public void notifyNewOrder(Order order) {
-        messagingTemplate.convertAndSend("/topic/orders", order);
+        messagingTemplate.convertAndSend("/topic/orders", toMessage(order));
     }
 
+    // Chỉ gửi phần tóm tắt: serialize cả entity Order sẽ kéo theo items (lazy load) và lặp vô hạn order <-> items
     public void notifyOrderUpdate(Order order) {
-        messagingTemplate.convertAndSend("/topic/order-updates", order);
+        messagingTemplate.convertAndSend("/topic/order-updates", toMessage(order));
+    }
+
+    // Order đang chơi nằm trong session bộ nhớ, không có entity
+    public void notifyOrderUpdate(Long orderId, Long tableId, Order.OrderStatus status, Money totalAmount) {
+        messagingTemplate.convertAndSend("/topic/order-updates",
+                new OrderUpdateMessage(orderId, tableId, status != null ? status.name() : null, totalAmount));
+    }
+
+    private static OrderUpdateMessage toMessage(Order order) {
+        return new OrderUpdateMessage(order.getId(),
+                order.getTable() != null ? order.getTable().getId() : null,
+                order.getStatus() != null ? order.getStatus().name() : null,
+                order.getTotalAmount());
     }
 
     public void notifyTableStatus(Long tableId, String status) {
@@ -27,6 +44,22 @@ public class WebSocketService {
             new TableStatusMessage(tableId, status));
     }
 
+    // Một lô cho mọi bàn đang chơi, gửi một lần mỗi lượt ticker (xem RunningBillTicker)
+    public void notifyRunningBills(RunningBillsMessage message) {
+        messagingTemplate.convertAndSend("/topic/running-bills", message);
+    }
+
+    /**
+     * Tiền tạm tính của các bàn đang chơi tại thời điểm {@code at} (epoch millis). Số tiền là
+     * số nguyên theo đơn vị nhỏ nhất của tiền tệ, tên field ngắn để lô gọn.
+     */
+    public record RunningBillsMessage(long at, List<RunningBill> bills) {
+    }
+
+    // t = tableId, o = orderId, m = số phút đã chơi, fee = tiền giờ, items = tiền món, total = fee + items
+    public record RunningBill(long t, long o, long m, long fee, long items, long total) {
+    }
+
     public static class TableStatusMessage {
         private Long tableId;
         private String status;
@@ -42,4 +75,31 @@ public class WebSocketService {
         public String getStatus() { return status; }
         public void setStatus(String status) { this.status = status; }
     }
-}
\ No newline at end of file
+
+    public static class OrderUpdateMessage {
+        private Long orderId;
+        private Long tableId;
+        private String status;
+        private Money totalAmount;
+
+        public OrderUpdateMessage() {
+        }
+
+        public OrderUpdateMessage(Long orderId, Long tableId, String status, Money totalAmount) {
+            this.orderId = orderId;
+            this.tableId = tableId;
+            this.status = status;
+            this.totalAmount = totalAmount;
+        }
+
+        // Getters and Setters
+        public Long getOrderId() { return orderId; }
+        public void setOrderId(Long orderId) { this.orderId = orderId; }
+        public Long getTableId() { return tableId; }
+        public void setTableId(Long tableId) { this.tableId = tableId; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public Money getTotalAmount() { return totalAmount; }
+        public void setTotalAmount(Money totalAmount) { this.totalAmount = totalAmount; }
+    }
+}
@@ -0,0 +1,99 @@
+package com.tathang.example304.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.tathang.example304.CustomUserDetailsService;
+import com.tathang.example304.dto.LoginDto;
+import com.tathang.example304.model.User;
+import com.tathang.example304.repository.RoleRepository;
+import com.tathang.example304.repository.UserRepository;
+import com.tathang.example304.security.jwt.JwtUtils;
+import com.tathang.example304.security.services.AttemptThrottleService;
+import com.tathang.example304.security.services.AuditLog;
+import com.tathang.example304.security.services.PasswordHashingExecutor;
+import com.tathang.example304.security.services.PasswordResetService;
+import com.tathang.example304.security.services.RefreshTokenService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Đăng nhập thất bại vì xác thực (sai mật khẩu, tài khoản bị khóa) là 401 + LOGIN_FAILURE,
+ * không phải lỗi hệ thống.
+ */
+class AuthControllerTest {
+
+    private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final AttemptThrottleService throttle = mock(AttemptThrottleService.class);
+    private final AuditLog auditLog = mock(AuditLog.class);
+    private final PasswordHashingExecutor hashing = new PasswordHashingExecutor(new SimpleMeterRegistry(), 1, 4);
+    private AuthController controller;
+
+    @BeforeEach
+    void setUp() {
+        when(throttle.tryLogin(any(), any())).thenReturn(true);
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(new CustomUserDetailsService(userRepository));
+        provider.setPasswordEncoder(encoder);
+        controller = new AuthController(userRepository, mock(RoleRepository.class), encoder, mock(JwtUtils.class),
+                new ProviderManager(provider), mock(PasswordResetService.class), mock(RefreshTokenService.class),
+                hashing, throttle, auditLog);
+    }
+
+    @AfterEach
+    void tearDown() {
+        hashing.shutdown();
+    }
+
+    @Test
+    void deactivatedUserIsRejectedAsAuthenticationFailure() throws Exception {
+        User user = new User("staff01", "staff01@bida.com", encoder.encode("secret"));
+        user.setIsActive(false);
+        when(userRepository.findByUsername("staff01")).thenReturn(Optional.of(user));
+
+        ResponseEntity<?> response = login("staff01", "secret");
+
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        assertEquals(List.of("LOGIN_FAILURE"), auditEvents());
+    }
+
+    @Test
+    void wrongPasswordIsUnauthorized() throws Exception {
+        when(userRepository.findByUsername("staff01"))
+                .thenReturn(Optional.of(new User("staff01", "staff01@bida.com", encoder.encode("secret"))));
+
+        ResponseEntity<?> response = login("staff01", "wrong");
+
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        assertEquals(List.of("LOGIN_FAILURE"), auditEvents());
+    }
+
+    private ResponseEntity<?> login(String username, String password) throws Exception {
+        LoginDto dto = new LoginDto();
+        dto.setUsername(username);
+        dto.setPassword(password);
+        return controller.login(dto, new MockHttpServletRequest()).get();
+    }
+
+    private List<Object> auditEvents() {
+        return mockingDetails(auditLog).getInvocations().stream()
+                .map(invocation -> invocation.getArgument(0))
+                .toList();
+    }
+}
@@ -0,0 +1,38 @@
+package com.tathang.example304.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class MoneyTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    record Line(Money price) {
+    }
+
+    @Test
+    void writesPlainIntegerAndReadsLegacyDecimals() throws Exception {
+        assertEquals("{\"price\":25000}", mapper.writeValueAsString(new Line(Money.of(25_000))));
+
+        assertEquals(Money.of(25_000), mapper.readValue("{\"price\":25000}", Line.class).price());
+        // Journal / client cũ gửi BigDecimal scale 2
+        assertEquals(Money.of(25_000), mapper.readValue("{\"price\":25000.00}", Line.class).price());
+        assertEquals(Money.of(25_000), mapper.readValue("{\"price\":\"25000.00\"}", Line.class).price());
+        assertEquals(null, mapper.readValue("{\"price\":null}", Line.class).price());
+    }
+
+    @Test
+    void arithmeticStaysInLongAndRejectsOverflow() {
+        assertEquals(Money.of(45_000), Money.of(15_000).times(3));
+        assertEquals(Money.of(40_000), Money.of(45_000).minus(Money.of(5_000)).plus(0));
+        assertEquals(Money.of(15_000), Money.of(new BigDecimal("14999.50")));
+        assertEquals(new BigDecimal("70000"), Money.of(70_000).toBigDecimal());
+        assertThrows(ArithmeticException.class, () -> Money.of(Long.MAX_VALUE).plus(1));
+    }
+}
@@ -0,0 +1,156 @@
+package com.tathang.example304.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.tathang.example304.security.services.IdempotencyService;
+import com.tathang.example304.security.services.IdempotencyService.Claim;
+import com.tathang.example304.security.services.IdempotencyService.Outcome;
+
+class IdempotencyFilterTest {
+
+    private final IdempotencyService idempotency = mock(IdempotencyService.class);
+    private final IdempotencyFilter filter = new IdempotencyFilter(idempotency);
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void anonymousAndAuthRequestsBypassTheStore() throws Exception {
+        filter.doFilter(request("/api/orders/1/items/batch", "{}"), new MockHttpServletResponse(), (req, res) -> {
+        });
+
+        login();
+        filter.doFilter(request("/api/auth/login", "{}"), new MockHttpServletResponse(), (req, res) -> {
+        });
+
+        verifyNoInteractions(idempotency);
+    }
+
+    @Test
+    void fingerprintCoversBodyAndControllerStillReadsIt() throws Exception {
+        login();
+        when(idempotency.claim(anyString(), anyString())).thenReturn(new Claim(Outcome.PROCEED, null));
+        StringBuilder seen = new StringBuilder();
+        FilterChain controller = (req, res) -> seen.append(new String(req.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8));
+
+        filter.doFilter(request("/api/orders/1/items/batch", "{\"a\":1}"), new MockHttpServletResponse(), controller);
+        filter.doFilter(request("/api/orders/1/items/batch", "{\"a\":2}"), new MockHttpServletResponse(), controller);
+
+        ArgumentCaptor<String> fingerprints = ArgumentCaptor.forClass(String.class);
+        verify(idempotency, times(2)).claim(eq("staff01:k1"), fingerprints.capture());
+        List<String> values = fingerprints.getAllValues();
+        assertNotEquals(values.get(0), values.get(1));
+        assertEquals("{\"a\":1}{\"a\":2}", seen.toString());
+    }
+
+    @Test
+    void storeFailureIsReportedAs503() throws Exception {
+        login();
+        when(idempotency.claim(anyString(), anyString()))
+                .thenThrow(new DataAccessResourceFailureException("Communications link failure"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request("/api/orders/1/items/batch", "{}"), response, (req, res) -> {
+        });
+
+        assertEquals(503, response.getStatus());
+    }
+
+    @Test
+    void asyncResultIsStoredOnAsyncDispatch() throws Exception {
+        login();
+        when(idempotency.claim(anyString(), anyString())).thenReturn(new Claim(Outcome.PROCEED, null));
+        MockHttpServletRequest request = request("/api/orders/1/pay", "{}");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Lượt đầu: controller trả CompletableFuture, chưa có body
+        filter.doFilter(request, response, (req, res) -> req.startAsync(req, res));
+        verify(idempotency, never()).complete(anyString(), anyString(), anyInt(), any(), any());
+
+        // Lượt async dispatch: kết quả đã có
+        request.setAsyncStarted(false);
+        request.setDispatcherType(DispatcherType.ASYNC);
+        filter.doFilter(request, request.getAsyncContext().getResponse(), (req, res) -> {
+            res.setContentType("application/json");
+            res.getWriter().write("{\"ok\":true}");
+            res.getWriter().flush();
+        });
+
+        verify(idempotency).complete(eq("staff01:k1"), anyString(), eq(200), eq("application/json"),
+                eq("{\"ok\":true}"));
+        assertEquals("{\"ok\":true}", response.getContentAsString());
+    }
+
+    @Test
+    void bufferedBodySupportsNonBlockingReads() throws Exception {
+        ServletInputStream in = IdempotencyFilter.BufferedBodyRequest
+                .read(request("/api/orders/1/items/batch", "{\"a\":1}"), 1024).getInputStream();
+        StringBuilder events = new StringBuilder();
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                events.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onAllDataRead() {
+                events.append("|done");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                events.append("|error");
+            }
+        });
+
+        assertEquals("{\"a\":1}|done", events.toString());
+    }
+
+    private static MockHttpServletRequest request(String path, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setServletPath(path);
+        request.addHeader(IdempotencyFilter.HEADER, "k1");
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static void login() {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("staff01", null,
+                List.of(new SimpleGrantedAuthority("ROLE_STAFF"))));
+    }
+}
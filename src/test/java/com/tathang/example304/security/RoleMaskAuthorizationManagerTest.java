@@ -0,0 +1,143 @@
+package com.tathang.example304.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.objenesis.ObjenesisStd;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.util.SimpleMethodInvocation;
+import org.springframework.util.ReflectionUtils;
+
+import com.tathang.example304.controllers.BidaTableController;
+import com.tathang.example304.controllers.BillController;
+import com.tathang.example304.controllers.CategoryController;
+import com.tathang.example304.controllers.DashboardController;
+import com.tathang.example304.controllers.OrderController;
+import com.tathang.example304.controllers.ProductController;
+import com.tathang.example304.controllers.TestController;
+import com.tathang.example304.controllers.UserManagementController;
+import com.tathang.example304.model.ERole;
+import com.tathang.example304.security.services.UserDetailsImpl;
+
+/**
+ * Bảng quyền dựng từ bitmask phải cho cùng kết quả với SpEL trên mọi endpoint thật.
+ * Đo chi phí mỗi request so với SpEL là benchmark, chỉ chạy với {@code mvn test -Pbenchmark}.
+ */
+class RoleMaskAuthorizationManagerTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoleMaskAuthorizationManagerTest.class);
+
+    private static final Class<?>[] CONTROLLERS = {
+            BidaTableController.class, BillController.class, CategoryController.class, DashboardController.class,
+            OrderController.class, ProductController.class, TestController.class, UserManagementController.class };
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private final PreAuthorizeAuthorizationManager spel = new PreAuthorizeAuthorizationManager();
+    private final RoleMaskAuthorizationManager mask = new RoleMaskAuthorizationManager(spel);
+    private final ObjenesisStd objenesis = new ObjenesisStd();
+
+    @Test
+    void maskDecisionsMatchSpelForEveryEndpoint() {
+        List<MethodInvocation> invocations = securedInvocations();
+        assertTrue(invocations.size() > 40, "expected all @PreAuthorize endpoints to be found");
+
+        for (Class<?> controller : CONTROLLERS) {
+            mask.precompile(controller);
+        }
+        for (MethodInvocation invocation : invocations) {
+            for (Authentication user : users()) {
+                assertEquals(spel.check(() -> user, invocation).isGranted(),
+                        mask.check(() -> user, invocation).isGranted(),
+                        invocation.getMethod() + " for " + user.getAuthorities());
+            }
+        }
+    }
+
+    @Test
+    void compilesOnlySimpleRoleExpressions() {
+        assertEquals(ERole.ROLE_ADMIN.bit() | ERole.ROLE_MANAGER.bit(),
+                RoleMaskAuthorizationManager.compile("hasAnyRole('ADMIN','MANAGER')"));
+        assertEquals(ERole.ROLE_STAFF.bit(), RoleMaskAuthorizationManager.compile("hasAuthority('ROLE_STAFF')"));
+        assertEquals(0, RoleMaskAuthorizationManager.compile("hasRole('ADMIN') and #id == 1"));
+        assertEquals(0, RoleMaskAuthorizationManager.compile("hasRole('AUDITOR')"));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void maskCheckIsCheaperThanSpel() throws Exception {
+        Method method = OrderController.class.getMethod("getOrderByTable", Long.class);
+        MethodInvocation invocation = new SimpleMethodInvocation(objenesis.newInstance(OrderController.class), method,
+                1L);
+        Authentication staff = authenticated(ERole.ROLE_STAFF);
+        Supplier<Authentication> supplier = () -> staff;
+        mask.precompile(OrderController.class);
+
+        long spelNanos = measure(() -> spel.check(supplier, invocation));
+        long maskNanos = measure(() -> mask.check(supplier, invocation));
+
+        logger.info("@PreAuthorize per-request cost: SpEL={} ns/op, role mask={} ns/op", spelNanos, maskNanos);
+        assertTrue(maskNanos < spelNanos, "bitmask check should beat SpEL evaluation");
+    }
+
+    private List<MethodInvocation> securedInvocations() {
+        List<MethodInvocation> invocations = new ArrayList<>();
+        for (Class<?> controller : CONTROLLERS) {
+            Object target = objenesis.newInstance(controller);
+            boolean classLevel = AnnotatedElementUtils.hasAnnotation(controller, PreAuthorize.class);
+            for (Method method : ReflectionUtils.getUniqueDeclaredMethods(controller)) {
+                if (method.getDeclaringClass() == controller
+                        && (classLevel || AnnotatedElementUtils.hasAnnotation(method, PreAuthorize.class))) {
+                    invocations.add(new SimpleMethodInvocation(target, method, new Object[method.getParameterCount()]));
+                }
+            }
+        }
+        return invocations;
+    }
+
+    private static List<Authentication> users() {
+        List<Authentication> users = new ArrayList<>();
+        users.add(authenticated());
+        for (ERole role : ERole.values()) {
+            users.add(authenticated(role));
+        }
+        users.add(authenticated(ERole.ROLE_STAFF, ERole.ROLE_CUSTOMER));
+        return users;
+    }
+
+    private static Authentication authenticated(ERole... roles) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        for (ERole role : roles) {
+            authorities.add(new SimpleGrantedAuthority(role.name()));
+        }
+        UserDetailsImpl principal = new UserDetailsImpl(1L, "user", "user@bida.com", null, authorities);
+        return new UsernamePasswordAuthenticationToken(principal, null, authorities);
+    }
+
+    private static long measure(Runnable op) {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+}
@@ -0,0 +1,168 @@
+package com.tathang.example304.security.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.repository.UserRepository;
+import com.tathang.example304.security.services.UserDetailsImpl;
+import com.tathang.example304.security.services.UserSecurityVersionService;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+
+class JwtKeySetTest {
+
+    private static final String SECRET = "c2VjcmV0S2V5Rm9ySldUU2lnbmluZ0FuZFZlcmlmaWNhdGlvbk9mSldUVG9rZW5zMjAyNGV4YW1wbGUzMDRiYWNrZW5kYXBw";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tokensSignedBeforeRotationStillVerify() throws Exception {
+        JwtUtils authNode = jwtUtils(dir, "");
+        String before = authNode.generateJwtToken(authentication());
+        String pendingKid = List.copyOf(authNode.getPublicKeys().keySet()).get(1);
+
+        authNode.rotateSigningKey();
+        String after = authNode.generateJwtToken(authentication());
+
+        // Khóa pending đã được công bố trước khi bắt đầu ký
+        assertEquals(pendingKid, kid(after));
+        assertTrue(authNode.verifyJwtToken(before).isPresent());
+        assertTrue(authNode.verifyJwtToken(after).isPresent());
+        assertEquals(3, authNode.getPublicKeys().size());
+    }
+
+    @Test
+    void keysSurviveRestart() {
+        String token = jwtUtils(dir, "").generateJwtToken(authentication());
+
+        assertTrue(jwtUtils(dir, "").verifyJwtToken(token).isPresent());
+    }
+
+    @Test
+    void rs256RejectsHmacAccessTokensButKeepsRefreshTokens() {
+        JwtUtils authNode = jwtUtils(dir, "");
+        // Ai giữ secret chung cũ cũng không tự ký được access token
+        String forged = Jwts.builder().setSubject("admin").claim("userId", 1L)
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+                .compact();
+        assertFalse(authNode.verifyJwtToken(forged).isPresent());
+
+        String refresh = authNode.generateRefreshToken("staff01", "jti-1", "fid-1",
+                new Date(System.currentTimeMillis() + 60_000));
+        assertTrue(authNode.verifyRefreshToken(refresh).isPresent());
+    }
+
+    @Test
+    void verifyOnlyNodeNeedsNoSecret() {
+        JwtUtils authNode = jwtUtils(dir, "");
+        String token = authNode.generateJwtToken(authentication());
+        String refresh = authNode.generateRefreshToken("staff01", "jti-1", "fid-1",
+                new Date(System.currentTimeMillis() + 60_000));
+
+        JwtUtils verifier = new JwtUtils();
+        ReflectionTestUtils.setField(verifier, "jwtSecret", "");
+        ReflectionTestUtils.setField(verifier, "jwtExpirationMs", 900_000);
+        ReflectionTestUtils.setField(verifier, "verifiedCacheSize", 0);
+        ReflectionTestUtils.setField(verifier, "jwtAlgorithm", "RS256");
+        ReflectionTestUtils.setField(verifier, "jwtJwksUri", "http://auth-node/api/auth/jwks");
+        ReflectionTestUtils.setField(verifier, "jwksCacheMs", 300_000L);
+        verifier.init();
+
+        assertFalse(verifier.verifyRefreshToken(refresh).isPresent());
+        assertThrows(IllegalStateException.class, () -> verifier.generateRefreshToken("a", "b", "c",
+                new Date()));
+        // Không tải được JWKS (host giả) thì access token RS256 cũng không qua; chỉ cần không ném lỗi
+        assertFalse(verifier.verifyJwtToken(token).isPresent());
+    }
+
+    @Test
+    void jwksRoundTripsPublicKeys() throws Exception {
+        JwtKeySet keySet = new JwtKeySet(dir.toString(), 60_000);
+        keySet.load();
+        ObjectMapper mapper = new ObjectMapper();
+
+        String json = mapper.writeValueAsString(JwksKeyResolver.toJwks(keySet.publicKeys()));
+        Map<String, PublicKey> parsed = JwksKeyResolver.parseJwks(json, mapper);
+
+        assertEquals(keySet.publicKeys().keySet(), parsed.keySet());
+        keySet.publicKeys().forEach((kid, key) -> assertEquals(key, parsed.get(kid)));
+    }
+
+    @Test
+    void unknownKidRefreshesCacheAtMostOncePerInterval() {
+        JwtKeySet keySet = new JwtKeySet(dir.toString(), 60_000);
+        keySet.load();
+        Map<String, PublicKey> published = new HashMap<>(keySet.publicKeys());
+        AtomicInteger fetches = new AtomicInteger();
+        JwksKeyResolver resolver = new JwksKeyResolver(Keys.hmacShaKeyFor(new byte[64]), false, () -> {
+            fetches.incrementAndGet();
+            return Map.copyOf(published);
+        }, 300_000, 60_000);
+        var parser = Jwts.parserBuilder().setSigningKeyResolver(resolver).build();
+
+        JwtKeySet.ActiveKey active = keySet.active();
+        parser.parseClaimsJws(Jwts.builder().setSubject("a").setHeaderParam("kid", active.kid())
+                .signWith(active.privateKey()).compact());
+        assertEquals(1, fetches.get());
+
+        // Kid lạ: nạp lại một lần, lần sau trong cùng khoảng thời gian không gọi nguồn nữa
+        keySet.rotate();
+        keySet.rotate();
+        JwtKeySet.ActiveKey rotated = keySet.active();
+        String unknown = Jwts.builder().setSubject("a").setHeaderParam("kid", rotated.kid())
+                .signWith(rotated.privateKey()).compact();
+        assertThrows(SignatureException.class, () -> parser.parseClaimsJws(unknown));
+        assertThrows(SignatureException.class, () -> parser.parseClaimsJws(unknown));
+        assertEquals(2, fetches.get());
+        assertFalse(published.containsKey(rotated.kid()));
+    }
+
+    private static String kid(String token) throws Exception {
+        byte[] header = Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.')));
+        return new ObjectMapper().readTree(header).path("kid").asText();
+    }
+
+    private static JwtUtils jwtUtils(Path keysDir, String jwksUri) {
+        JwtUtils jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 900_000);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRefreshExpirationMs", 604_800_000);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheSize", 0);
+        ReflectionTestUtils.setField(jwtUtils, "jwtAlgorithm", "RS256");
+        ReflectionTestUtils.setField(jwtUtils, "jwtKeysDir", keysDir.toString());
+        ReflectionTestUtils.setField(jwtUtils, "jwtJwksUri", jwksUri);
+        ReflectionTestUtils.setField(jwtUtils, "jwksCacheMs", 300_000L);
+        ReflectionTestUtils.setField(jwtUtils, "securityVersions", new UserSecurityVersionService(mock(UserRepository.class), 60_000));
+        jwtUtils.init();
+        return jwtUtils;
+    }
+
+    private static UsernamePasswordAuthenticationToken authentication() {
+        UserDetailsImpl principal = new UserDetailsImpl(7L, "staff01", "staff01@bida.com", "x",
+                List.of(new SimpleGrantedAuthority("ROLE_STAFF")));
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+}
@@ -0,0 +1,103 @@
+package com.tathang.example304.security.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tathang.example304.repository.UserRepository;
+import com.tathang.example304.security.services.UserDetailsImpl;
+import com.tathang.example304.security.services.UserSecurityVersionService;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * verifyJwtToken trả claims đã kiểu hóa. Microbenchmark so sánh chi phí mỗi request với cách cũ
+ * (validate + getUserName, parse/verify 2 lần) chỉ chạy với {@code mvn test -Pbenchmark}.
+ */
+class JwtUtilsTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtUtilsTest.class);
+
+    private static final String SECRET = "c2VjcmV0S2V5Rm9ySldUU2lnbmluZ0FuZFZlcmlmaWNhdGlvbk9mSldUVG9rZW5zMjAyNGV4YW1wbGUzMDRiYWNrZW5kYXBw";
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 5_000;
+
+    private JwtUtils jwtUtils;
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 900_000);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRefreshExpirationMs", 604_800_000);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheSize", 1024);
+        ReflectionTestUtils.setField(jwtUtils, "securityVersions", new UserSecurityVersionService(mock(UserRepository.class), 60_000));
+        jwtUtils.init();
+
+        UserDetailsImpl principal = new UserDetailsImpl(7L, "staff01", "staff01@bida.com", "x",
+                List.of(new SimpleGrantedAuthority("ROLE_STAFF")));
+        token = jwtUtils.generateJwtToken(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @Test
+    void verifyReturnsTypedClaims() {
+        VerifiedJwt verified = jwtUtils.verifyJwtToken(token).orElseThrow();
+
+        assertEquals("staff01", verified.getUsername());
+        assertEquals(7L, verified.getUserId());
+        assertEquals("staff01@bida.com", verified.getEmail());
+        assertEquals(List.of("ROLE_STAFF"), verified.getRoles());
+        assertFalse(jwtUtils.verifyJwtToken(token + "x").isPresent());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void singlePassIsCheaperThanDoubleParse() {
+        long legacy = measure(() -> {
+            // Cách cũ: decode secret + dựng parser mới cho mỗi lần gọi, verify 2 lần
+            legacyParse(token);
+            legacyParse(token).getSubject();
+        });
+        long singlePass = measure(() -> jwtUtils.verifyJwtToken(token).orElseThrow().getUsername());
+
+        logger.info("JWT per-request cost: validate+getUserName={} ns/op, verifyJwtToken={} ns/op",
+                legacy, singlePass);
+        assertTrue(singlePass < legacy, "cached single-pass verification should beat double parsing");
+    }
+
+    private static Claims legacyParse(String jwt) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+                .build()
+                .parseClaimsJws(jwt)
+                .getBody();
+    }
+
+    private long measure(Runnable op) {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+}
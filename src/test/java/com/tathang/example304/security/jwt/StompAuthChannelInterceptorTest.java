@@ -0,0 +1,114 @@
+package com.tathang.example304.security.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tathang.example304.repository.UserRepository;
+import com.tathang.example304.security.services.UserDetailsImpl;
+import com.tathang.example304.security.services.UserSecurityVersionService;
+
+class StompAuthChannelInterceptorTest {
+
+    private static final String SECRET = "c2VjcmV0S2V5Rm9ySldUU2lnbmluZ0FuZFZlcmlmaWNhdGlvbk9mSldUVG9rZW5zMjAyNGV4YW1wbGUzMDRiYWNrZW5kYXBw";
+
+    private JwtUtils jwtUtils;
+    private UserSecurityVersionService securityVersions;
+    private StompAuthChannelInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        UserRepository users = mock(UserRepository.class);
+        when(users.findSecurityVersionById(anyLong())).thenReturn(Optional.of(0L));
+        // User 2 bị khóa sau khi nhận token: lần đọc sau bump thấy version mới
+        when(users.findSecurityVersionById(2L)).thenReturn(Optional.of(0L), Optional.of(1L));
+        securityVersions = new UserSecurityVersionService(users, 60_000);
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 900_000);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRefreshExpirationMs", 604_800_000);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheSize", 1024);
+        ReflectionTestUtils.setField(jwtUtils, "securityVersions", securityVersions);
+        jwtUtils.init();
+        interceptor = new StompAuthChannelInterceptor(jwtUtils, securityVersions, new AccessTokenDenylist(1024, 900_000));
+    }
+
+    @Test
+    void connectBindsPrincipalFromToken() {
+        Principal user = connect(token(1L, "ROLE_STAFF"));
+
+        assertEquals("staff", user.getName());
+    }
+
+    @Test
+    void connectWithoutValidTokenIsRejected() {
+        assertThrows(BadCredentialsException.class, () -> connect(null));
+        assertThrows(BadCredentialsException.class, () -> connect(token(1L, "ROLE_STAFF") + "x"));
+
+        String stale = token(2L, "ROLE_STAFF");
+        securityVersions.bump(2L);
+        assertThrows(BadCredentialsException.class, () -> connect(stale));
+    }
+
+    @Test
+    void subscribeUsesDestinationTable() {
+        Principal staff = connect(token(1L, "ROLE_STAFF"));
+        Principal customer = connect(token(3L, "ROLE_CUSTOMER"));
+
+        Message<?> allowed = frame(StompCommand.SUBSCRIBE, "/topic/order-updates", staff);
+        assertSame(allowed, interceptor.preSend(allowed, null));
+        interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/table-status", customer), null);
+
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/order-updates", customer), null));
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/order-updates", null), null));
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SEND, "/app/unknown", staff), null));
+    }
+
+    private Principal connect(String token) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        if (token != null) {
+            accessor.setNativeHeader("Authorization", "Bearer " + token);
+        }
+        accessor.setLeaveMutable(true);
+        Message<?> message = interceptor.preSend(MessageBuilder.createMessage(new byte[0],
+                accessor.getMessageHeaders()), null);
+        return StompHeaderAccessor.wrap(message).getUser();
+    }
+
+    private static Message<?> frame(StompCommand command, String destination, Principal user) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setDestination(destination);
+        accessor.setUser(user);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private String token(Long userId, String role) {
+        UserDetailsImpl principal = new UserDetailsImpl(userId, role.equals("ROLE_CUSTOMER") ? "customer" : "staff",
+                "user@bida.com", "x", List.of(new SimpleGrantedAuthority(role)));
+        return jwtUtils.generateJwtToken(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+}
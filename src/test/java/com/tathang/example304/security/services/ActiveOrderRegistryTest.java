@@ -0,0 +1,52 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Order;
+
+/**
+ * Danh sách bàn không tin con trỏ đã cũ: order bị đóng ngoài luồng thì con trỏ được bỏ / đọc lại.
+ */
+@Import(ActiveOrderRegistry.class)
+class ActiveOrderRegistryTest extends CommittingJpaTest {
+
+    @Autowired
+    private ActiveOrderRegistry registry;
+
+    @Test
+    void stalePointerIsEvictedAndReloaded() {
+        Long[] ids = tx.execute(status -> {
+            BidaTable closed = table(BidaTable.TableStatus.OCCUPIED);
+            BidaTable reopened = table(BidaTable.TableStatus.OCCUPIED);
+            Order first = order(reopened, Order.OrderStatus.OPEN, 0);
+            return new Long[] { closed.getId(), order(closed, Order.OrderStatus.OPEN, 0).getId(),
+                    reopened.getId(), first.getId() };
+        });
+        Long closedTable = ids[0];
+        Long reopenedTable = ids[2];
+        assertEquals(2, registry.findVerified(List.of(closedTable, reopenedTable)).size());
+
+        // Đổi trạng thái thẳng trong DB, không qua ended(): con trỏ trong map đã cũ
+        Long newOrder = tx.execute(status -> {
+            entityManager.createQuery("UPDATE Order o SET o.status = :status WHERE o.id IN :ids")
+                    .setParameter("status", Order.OrderStatus.PAID)
+                    .setParameter("ids", List.of(ids[1], ids[3])).executeUpdate();
+            return order(entityManager.find(BidaTable.class, reopenedTable), Order.OrderStatus.OPEN, 0).getId();
+        });
+
+        Map<Long, ActiveOrderRegistry.ActiveOrder> verified = registry
+                .findVerified(List.of(closedTable, reopenedTable));
+        assertTrue(registry.findVerified(List.of(closedTable)).isEmpty());
+        assertEquals(1, verified.size());
+        assertEquals(newOrder, verified.get(reopenedTable).orderId());
+    }
+}
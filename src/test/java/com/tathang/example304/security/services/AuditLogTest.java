@@ -0,0 +1,91 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AuditLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ringBufferDeliversEveryEventFromConcurrentProducersOnce() throws Exception {
+        AuditRingBuffer buffer = new AuditRingBuffer(1024);
+        int producers = 4;
+        int perProducer = 10_000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    AuditEvent event = new AuditEvent(i, "E", null, new Object[] { "id", producer * perProducer + i });
+                    while (!buffer.offer(event)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        Set<Object> seen = new HashSet<>();
+        start.countDown();
+        while (seen.size() < producers * perProducer) {
+            buffer.drain(event -> assertTrue(seen.add(event.fields()[1])), 256);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void fullBufferDropsInsteadOfBlocking() {
+        AuditRingBuffer buffer = new AuditRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(new AuditEvent(i, "E", null, null)));
+        }
+        assertFalse(buffer.offer(new AuditEvent(5, "E", null, null)));
+    }
+
+    @Test
+    void writesJsonLinesAndRotates() throws Exception {
+        AuditLog auditLog = new AuditLog(new SimpleMeterRegistry(), dir.toString(), 1024, 1024, 2);
+        auditLog.start();
+        for (int i = 0; i < 100; i++) {
+            auditLog.record("ORDER_ITEM_ADDED", "orderId", (long) i, "note", "bàn \"VIP\"");
+        }
+        auditLog.stop();
+
+        List<String> lines;
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> all = files.toList();
+            assertTrue(all.size() <= 3, "active file + at most 2 rotated files");
+            lines = Files.readAllLines(dir.resolve("audit.log"));
+        }
+        assertFalse(lines.isEmpty());
+        String last = lines.get(lines.size() - 1);
+        assertTrue(last.contains("\"type\":\"ORDER_ITEM_ADDED\""));
+        assertTrue(last.contains("\"orderId\":99"));
+        assertTrue(last.contains("\"note\":\"bàn \\\"VIP\\\"\""));
+    }
+}
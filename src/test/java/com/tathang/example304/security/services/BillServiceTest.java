@@ -0,0 +1,79 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.DailyRevenue;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.repository.DailyRevenueRepository;
+
+/**
+ * Thu ngân bấm xác nhận hai lần cùng lúc: hóa đơn chỉ được cộng vào doanh thu một lần.
+ */
+@Import({ BillService.class, OrderStateMachine.class, RevenueRollupService.class })
+class BillServiceTest extends CommittingJpaTest {
+
+    @Autowired
+    private BillService billService;
+
+    @Autowired
+    private DailyRevenueRepository rollupRepository;
+
+    @MockitoBean
+    private ActiveOrderRegistry activeOrders;
+
+    @MockitoBean
+    private TableSessionStore tableSessions;
+
+    @MockitoBean
+    private PricingEngine pricingEngine;
+
+    @MockitoBean
+    private AuditLog auditLog;
+
+    @Test
+    void concurrentConfirmsCountTheBillOnce() throws Exception {
+        Long billId = tx.execute(status -> bill(
+                order(table(BidaTable.TableStatus.OCCUPIED), Order.OrderStatus.WAITING_PAYMENT, 60_000),
+                null, Bill.PaymentStatus.PENDING, 60_000, null).getId());
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<Future<?>> confirms = List.of(
+                pool.submit(() -> {
+                    start.await();
+                    billService.confirmCashPayment(billId);
+                    return null;
+                }),
+                pool.submit(() -> {
+                    start.await();
+                    billService.confirmCashPayment(billId);
+                    return null;
+                }));
+        start.countDown();
+        for (Future<?> confirm : confirms) {
+            confirm.get();
+        }
+        pool.shutdown();
+
+        LocalDate today = LocalDate.now();
+        List<DailyRevenue> rows = rollupRepository.findByRevenueDateBetweenOrderByRevenueDate(today, today);
+        assertEquals(1, rows.size());
+        assertEquals(1, rows.get(0).getBillCount());
+        assertEquals(Money.of(60_000), rows.get(0).getRevenue());
+    }
+}
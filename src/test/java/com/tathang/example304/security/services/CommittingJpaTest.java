@@ -0,0 +1,88 @@
+package com.tathang.example304.security.services;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.model.Product;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Nền cho test service chạy trên H2 với transaction commit thật (khóa, nhiều thread, hook
+ * sau commit): test không bọc trong transaction, dựng dữ liệu bằng {@link #tx} và các hàm
+ * fixture bên dưới (gọi trong {@code tx}).
+ *
+ * Mỗi context Spring một database riêng, chế độ MySQL vì bảng doanh thu dùng upsert của MySQL.
+ * Lớp con thêm bean bằng {@code @Import}, thuộc tính riêng bằng {@code @TestPropertySource}.
+ */
+@DataJpaTest(properties = {
+        "spring.test.database.replace=none",
+        "spring.datasource.url=jdbc:h2:mem:${random.uuid};MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false" })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+abstract class CommittingJpaTest {
+
+    @Autowired
+    protected EntityManager entityManager;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    protected TransactionTemplate tx;
+
+    @BeforeEach
+    void createTransactionTemplate() {
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    protected BidaTable table(BidaTable.TableStatus status) {
+        BidaTable table = new BidaTable();
+        table.setStatus(status);
+        entityManager.persist(table);
+        return table;
+    }
+
+    protected Product product(String name, long price, int stock) {
+        Product product = new Product(name, BigDecimal.valueOf(price), null);
+        product.setStockQuantity(stock);
+        entityManager.persist(product);
+        return product;
+    }
+
+    protected Order order(BidaTable table, Order.OrderStatus status, long total) {
+        Order order = new Order(table, 1L);
+        order.setStatus(status);
+        order.setTotalAmount(Money.of(total));
+        entityManager.persist(order);
+        return order;
+    }
+
+    // Hóa đơn theo tổng tiền của order; method / issuedAt null: chưa thanh toán
+    protected Bill bill(Order order, Bill.PaymentMethod method, Bill.PaymentStatus status, long playFee,
+            LocalDateTime issuedAt) {
+        Bill bill = new Bill(order, order.getTotalAmount());
+        bill.setPlayFee(Money.of(playFee));
+        bill.setPaymentMethod(method);
+        bill.setPaymentStatus(status);
+        if (issuedAt != null) {
+            bill.setIssuedAt(issuedAt);
+        }
+        entityManager.persist(bill);
+        return bill;
+    }
+}
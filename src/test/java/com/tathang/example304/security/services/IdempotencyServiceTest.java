@@ -0,0 +1,94 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import com.tathang.example304.model.IdempotencyRecord;
+import com.tathang.example304.repository.IdempotencyRecordRepository;
+import com.tathang.example304.security.services.IdempotencyService.Claim;
+import com.tathang.example304.security.services.IdempotencyService.Outcome;
+
+/**
+ * Gửi lại cùng Idempotency-Key: chỉ request đầu tiên chạy, các bản trùng (kể cả đồng thời)
+ * nhận lại đúng response đã lưu.
+ */
+@Import(IdempotencyService.class)
+class IdempotencyServiceTest extends CommittingJpaTest {
+
+    private static final String CREATE_BILL = "POST /api/bills/create?orderId=7&method=CASH";
+
+    @Autowired
+    private IdempotencyService idempotency;
+
+    @Autowired
+    private IdempotencyRecordRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void replayReturnsStoredResponseAndRejectsOtherRequests() {
+        assertEquals(Outcome.PROCEED, idempotency.claim("staff1:k1", CREATE_BILL).outcome());
+        idempotency.complete("staff1:k1", CREATE_BILL, 200, "application/json", "{\"id\":42}");
+
+        Claim replay = idempotency.claim("staff1:k1", CREATE_BILL);
+        assertEquals(Outcome.REPLAY, replay.outcome());
+        assertEquals("{\"id\":42}", replay.response().body());
+        assertEquals(IdempotencyRecord.Status.COMPLETED, repository.findByScopeKey("staff1:k1").get().getStatus());
+
+        assertEquals(Outcome.MISMATCH, idempotency.claim("staff1:k1", "POST /api/bills/create?orderId=8").outcome());
+        // Cùng key nhưng người dùng khác: request độc lập
+        assertEquals(Outcome.PROCEED, idempotency.claim("staff2:k1", CREATE_BILL).outcome());
+
+        idempotency.release("staff2:k1");
+        assertEquals(Outcome.PROCEED, idempotency.claim("staff2:k1", CREATE_BILL).outcome());
+    }
+
+    @Test
+    void concurrentDuplicatesRunOnce() throws Exception {
+        int threads = 8;
+        AtomicInteger executed = new AtomicInteger();
+        AtomicInteger replayed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                Claim claim = idempotency.claim("staff1:retry", CREATE_BILL);
+                if (claim.outcome() == Outcome.PROCEED) {
+                    executed.incrementAndGet();
+                    Thread.sleep(200); // service đang chạy, các bản trùng phải chờ
+                    idempotency.complete("staff1:retry", CREATE_BILL, 200, "application/json", "{\"id\":1}");
+                } else if (claim.outcome() == Outcome.REPLAY) {
+                    replayed.incrementAndGet();
+                    assertEquals("{\"id\":1}", claim.response().body());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+
+        assertEquals(1, executed.get());
+        assertEquals(threads - 1, replayed.get());
+        assertEquals(1, repository.count());
+    }
+}
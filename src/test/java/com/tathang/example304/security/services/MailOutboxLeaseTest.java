@@ -0,0 +1,45 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.tathang.example304.model.MailOutbox;
+import com.tathang.example304.model.MailOutbox.MailStatus;
+import com.tathang.example304.repository.MailOutboxRepository;
+
+/**
+ * Lease của mail đang gửi: node khác không nhận lại được, chỉ lease quá hạn mới được trả về hàng đợi.
+ */
+class MailOutboxLeaseTest extends CommittingJpaTest {
+
+    @Autowired
+    private MailOutboxRepository repository;
+
+    @Test
+    void onlyStaleClaimsAreRequeued() {
+        LocalDateTime now = LocalDateTime.now();
+        Long live = repository.save(new MailOutbox("a@bida.com", "OTP", "123456")).getId();
+        Long stale = repository.save(new MailOutbox("b@bida.com", "OTP", "654321")).getId();
+
+        assertEquals(1, repository.claim(live, "node-a", now));
+        assertEquals(0, repository.claim(live, "node-b", now));
+        assertEquals(1, repository.claim(stale, "node-c", now.minusMinutes(10)));
+        // Node khác không trả được mail không phải của mình
+        assertEquals(0, repository.release(List.of(live), "node-b"));
+
+        assertEquals(1, repository.requeueStale(now.minusMinutes(5)));
+
+        MailOutbox claimed = repository.findById(live).orElseThrow();
+        assertEquals(MailStatus.SENDING, claimed.getStatus());
+        assertEquals("node-a", claimed.getClaimedBy());
+        MailOutbox requeued = repository.findById(stale).orElseThrow();
+        assertEquals(MailStatus.PENDING, requeued.getStatus());
+        assertNull(requeued.getClaimedBy());
+    }
+}
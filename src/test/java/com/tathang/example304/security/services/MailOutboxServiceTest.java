@@ -0,0 +1,99 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.tathang.example304.model.MailOutbox;
+import com.tathang.example304.model.MailOutbox.MailStatus;
+import com.tathang.example304.repository.MailOutboxRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MailOutboxServiceTest {
+
+    @RegisterExtension
+    static GreenMailExtension smtp = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final MailOutboxRepository repository = mock(MailOutboxRepository.class);
+
+    @Test
+    void deliversBatchInOneSessionAndMarksSent() throws Exception {
+        MailOutboxService service = service(smtp.getSmtp().getPort());
+
+        service.deliver(List.of(mail(1L, "a@bida.com"), mail(2L, "b@bida.com")));
+
+        assertEquals(2, smtp.getReceivedMessages().length);
+        assertEquals("OTP", smtp.getReceivedMessages()[0].getSubject());
+        verify(repository).markSent(eq(List.of(1L, 2L)), any(LocalDateTime.class));
+        verify(repository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void smtpDownSchedulesRetryWithBackoff() {
+        MailOutboxService service = service(1); // không có SMTP ở cổng này
+        MailOutbox mail = mail(3L, "c@bida.com");
+
+        service.deliver(List.of(mail));
+
+        verify(repository).saveAll(List.of(mail));
+        verify(repository, never()).markSent(anyList(), any());
+        assertEquals(MailStatus.PENDING, mail.getStatus());
+        assertEquals(1, mail.getAttempts());
+        assertTrue(mail.getNextAttemptAt().isAfter(LocalDateTime.now()));
+    }
+
+    @Test
+    void pollSendsOnlyMailsItClaimed() throws Exception {
+        MailOutboxService service = service(smtp.getSmtp().getPort());
+        MailOutbox ours = mail(4L, "d@bida.com");
+        MailOutbox taken = mail(5L, "e@bida.com");
+        when(repository.findDue(eq(MailStatus.PENDING), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(ours, taken), List.of());
+        when(repository.claim(eq(4L), anyString(), any(LocalDateTime.class))).thenReturn(1);
+        // Node khác đã nhận mail 5 giữa SELECT và UPDATE
+        when(repository.claim(eq(5L), anyString(), any(LocalDateTime.class))).thenReturn(0);
+
+        service.poll();
+
+        verify(repository, timeout(5_000)).markSent(eq(List.of(4L)), any(LocalDateTime.class));
+        assertEquals(1, smtp.getReceivedMessages().length);
+        assertEquals("d@bida.com", smtp.getReceivedMessages()[0].getAllRecipients()[0].toString());
+    }
+
+    private MailOutboxService service(int port) {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(port);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AuditLog auditLog = new AuditLog(registry, "target/audit-test", 64, 1024, 1);
+        return new MailOutboxService(repository, sender, registry, auditLog,
+                "no-reply@bida.com", 1, 20, 3, 5_000, 60_000, 300_000);
+    }
+
+    private static MailOutbox mail(Long id, String to) {
+        MailOutbox mail = new MailOutbox(to, "OTP", "Mã OTP của bạn là: 123456");
+        ReflectionTestUtils.setField(mail, "id", id);
+        mail.setStatus(MailStatus.SENDING);
+        return mail;
+    }
+}
@@ -0,0 +1,256 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.tathang.example304.dto.OrderDTO;
+import com.tathang.example304.dto.OrderItemDTO;
+import com.tathang.example304.dto.OrderSummaryDTO;
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.model.Product;
+import com.tathang.example304.payload.request.OrderItemRequest;
+import com.tathang.example304.payload.response.BatchItemsResponse;
+import com.tathang.example304.payload.response.CursorPage;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Khóa số câu SQL của thao tác thêm món: order đang chơi nằm trong session bộ nhớ, thao tác chỉ
+ * trừ kho (và INSERT dòng mới); tổng tiền / số lượng xuống DB ở lượt write-behind.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN",
+        "app.orders.journal-dir=target/order-journal-test",
+        "app.orders.write-behind-ms=3600000" })
+@Import({ OrderService.class, ActiveOrderRegistry.class, TableSessionStore.class, OrderStateMachine.class })
+class OrderServiceQueryCountTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private TableSessionStore tableSessions;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockitoBean
+    private WebSocketService webSocketService;
+
+    @MockitoBean
+    private AuditLog auditLog;
+
+    private Long orderId;
+    private Long productId;
+    private Long lastUnitId;
+    private BidaTable table;
+
+    @BeforeEach
+    void setUp() {
+        table = new BidaTable();
+        table.setStatus(BidaTable.TableStatus.OCCUPIED);
+        entityManager.persist(table);
+
+        Product product = new Product("Sting", new BigDecimal("15000.00"), null);
+        product.setStockQuantity(100);
+        entityManager.persist(product);
+        productId = product.getId();
+
+        Product lastUnit = new Product("Heineken", new BigDecimal("25000.00"), null);
+        lastUnit.setStockQuantity(1);
+        entityManager.persist(lastUnit);
+        lastUnitId = lastUnit.getId();
+
+        Order order = new Order(table, 1L);
+        entityManager.persist(order);
+        orderId = order.getId();
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void addingItemsKeepsTotalIncrementally() {
+        Statistics statistics = statistics();
+
+        orderService.addItem(orderId, productId, 2);
+        entityManager.flush();
+        long firstAdd = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        orderService.addItem(orderId, productId, 1);
+        entityManager.flush();
+        long secondAdd = statistics.getPrepareStatementCount();
+
+        assertEquals(1, tableSessions.pendingCount());
+        tableSessions.flushAll();
+        entityManager.clear();
+        Order order = entityManager.find(Order.class, orderId);
+        assertEquals(Money.of(45_000), order.getTotalAmount());
+        assertEquals(3, order.getItems().get(0).getQuantity());
+        assertEquals(97, entityManager.find(Product.class, productId).getStockQuantity());
+        // Trước đây: 10 câu (dòng mới) và 8 câu (dòng đã có); dòng mới gồm cả hai câu nạp session
+        assertTrue(firstAdd <= 5, "new line took " + firstAdd + " statements");
+        assertEquals(1, secondAdd, "existing line should only decrement stock");
+    }
+
+    @Test
+    void removingLineSubtractsItsAmount() {
+        OrderItemDTO item = orderService.addItem(orderId, productId, 3);
+        orderService.updateItemQuantity(orderId, item.id(), 1);
+        tableSessions.flushAll();
+        entityManager.clear();
+        assertEquals(Money.of(15_000), entityManager.find(Order.class, orderId).getTotalAmount());
+
+        orderService.removeItem(orderId, item.id());
+        tableSessions.flushAll();
+        entityManager.clear();
+
+        assertEquals(Money.ZERO, entityManager.find(Order.class, orderId).getTotalAmount());
+        assertEquals(100, entityManager.find(Product.class, productId).getStockQuantity());
+    }
+
+    @Test
+    void invalidQuantitiesAreRejectedAndZeroRemovesLine() {
+        OrderItemDTO item = orderService.addItem(orderId, productId, 2);
+
+        assertThrows(RuntimeException.class, () -> orderService.addItem(orderId, productId, 0));
+        assertThrows(RuntimeException.class, () -> orderService.addItem(orderId, productId, -3));
+        assertThrows(RuntimeException.class, () -> orderService.updateItemQuantity(orderId, item.id(), -1));
+        assertEquals(Money.of(30_000), tableSessions.view(orderId).totalAmount());
+
+        orderService.updateItemQuantity(orderId, item.id(), 0);
+        tableSessions.flushAll();
+        entityManager.clear();
+
+        assertEquals(Money.ZERO, entityManager.find(Order.class, orderId).getTotalAmount());
+        assertTrue(entityManager.find(Order.class, orderId).getItems().isEmpty());
+        assertEquals(100, entityManager.find(Product.class, productId).getStockQuantity());
+    }
+
+    @Test
+    void batchAddsLinesInOnePassAndReportsFailuresPerLine() {
+        Statistics statistics = statistics();
+
+        BatchItemsResponse response = orderService.addItems(orderId, List.of(
+                new OrderItemRequest(productId, 2),
+                new OrderItemRequest(lastUnitId, 1),
+                new OrderItemRequest(lastUnitId, 1),
+                new OrderItemRequest(999_999L, 1),
+                new OrderItemRequest(productId, 0),
+                new OrderItemRequest(productId, 1)));
+        entityManager.flush();
+        long statements = statistics.getPrepareStatementCount();
+
+        // 2 SELECT nạp session + 1 SELECT sản phẩm + một UPDATE kho mỗi dòng có số lượng hợp lệ + ghi
+        // dòng món; không còn SELECT dòng món cũ / UPDATE tổng tiền (ghi sau ở lượt write-behind)
+        assertTrue(statements <= 11, "batch took " + statements + " statements");
+        assertEquals(3, response.getSucceeded());
+        assertEquals(List.of(true, true, false, false, false, true),
+                response.getLines().stream().map(BatchItemsResponse.LineResult::isSuccess).toList());
+        assertEquals("Insufficient stock", response.getLines().get(2).getError());
+        assertEquals("Product not found", response.getLines().get(3).getError());
+        assertEquals(Money.of(70_000), response.getTotalAmount());
+        verify(webSocketService, times(1)).notifyOrderUpdate(any(), any(), any(), any());
+
+        tableSessions.flushAll();
+        entityManager.clear();
+        assertEquals(Money.of(70_000), entityManager.find(Order.class, orderId).getTotalAmount());
+        assertEquals(97, entityManager.find(Product.class, productId).getStockQuantity());
+        assertEquals(0, entityManager.find(Product.class, lastUnitId).getStockQuantity());
+    }
+
+    @Test
+    void activeOrderLookupDoesNotReadTableHistory() {
+        for (int i = 0; i < 30; i++) {
+            Order old = new Order(entityManager.merge(table), 1L);
+            old.setStatus(Order.OrderStatus.PAID);
+            entityManager.persist(old);
+        }
+        orderService.addItem(orderId, productId, 2);
+        entityManager.flush();
+        Statistics statistics = statistics();
+
+        assertEquals(orderId, orderService.getOrderByTable(table.getId()).id());
+        long cold = statistics.getPrepareStatementCount();
+
+        entityManager.clear();
+        statistics.clear();
+        OrderDTO order = orderService.getOrderByTable(table.getId());
+        long warm = statistics.getPrepareStatementCount();
+
+        // Lần đầu chỉ đọc con trỏ theo index (session đã có từ lúc thêm món), lần sau không chạm DB
+        assertTrue(cold <= 3, "cold lookup took " + cold + " statements");
+        assertEquals(0, warm);
+        assertEquals(orderId, order.id());
+        assertEquals(1, order.items().size());
+        assertEquals("Sting", order.items().get(0).productName());
+        assertEquals(Money.of(30_000), order.items().get(0).subtotal());
+    }
+
+    @Test
+    void ordersArePagedByCursorWithoutCount() {
+        for (int i = 0; i < 4; i++) {
+            entityManager.persist(new Order(entityManager.merge(table), 1L));
+        }
+        entityManager.flush();
+        Statistics statistics = statistics();
+
+        List<Long> seen = new ArrayList<>();
+        CursorPage<OrderSummaryDTO> page = orderService.getOrders(orderId - 1, 2);
+        int pages = 1;
+        page.items().forEach(o -> seen.add(o.id()));
+        while (page.hasNext()) {
+            page = orderService.getOrders(page.nextCursor(), 2);
+            page.items().forEach(o -> seen.add(o.id()));
+            pages++;
+        }
+
+        // Mỗi trang đúng một câu SELECT, không có COUNT
+        assertEquals(3, pages);
+        assertEquals(pages, statistics.getPrepareStatementCount());
+        assertEquals(5, seen.size());
+        assertEquals(seen.stream().sorted().toList(), seen);
+
+        List<Long> streamed = new ArrayList<>();
+        orderService.streamOrders(o -> {
+            if (o.id() >= orderId) {
+                streamed.add(o.id());
+            }
+        });
+        assertEquals(seen, streamed);
+    }
+
+    private Statistics statistics() {
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+}
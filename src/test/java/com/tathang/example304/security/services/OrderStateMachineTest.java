@@ -0,0 +1,99 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.model.Order.OrderStatus;
+
+/**
+ * Hủy bàn và thanh toán tranh nhau trên cùng một order: đúng một bên thắng, bên kia nhận 409.
+ */
+@Import(OrderStateMachine.class)
+class OrderStateMachineTest extends CommittingJpaTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private OrderStateMachine stateMachine;
+
+    private Long orderId;
+
+    @BeforeEach
+    void setUp() {
+        orderId = tx.execute(status -> order(table(BidaTable.TableStatus.OCCUPIED), OrderStatus.OPEN, 0).getId());
+    }
+
+    @AfterEach
+    void tearDown() {
+        tx.executeWithoutResult(status -> {
+            entityManager.createQuery("DELETE FROM Order").executeUpdate();
+            entityManager.createQuery("DELETE FROM BidaTable").executeUpdate();
+        });
+    }
+
+    @Test
+    void transitionTableAllowsOnlyForwardMoves() {
+        assertTrue(OrderStatus.OPEN.canTransitionTo(OrderStatus.WAITING_PAYMENT));
+        assertTrue(OrderStatus.WAITING_PAYMENT.canTransitionTo(OrderStatus.PAID));
+        assertTrue(OrderStatus.OPEN.canTransitionTo(OrderStatus.CANCELLED));
+        assertFalse(OrderStatus.PAID.canTransitionTo(OrderStatus.CANCELLED));
+        assertFalse(OrderStatus.CANCELLED.canTransitionTo(OrderStatus.OPEN));
+        assertFalse(OrderStatus.OPEN.canTransitionTo(OrderStatus.OPEN));
+
+        tx.executeWithoutResult(status -> stateMachine.transition(orderId, OrderStatus.PAID));
+        OrderStateConflictException conflict = assertThrows(OrderStateConflictException.class,
+                () -> tx.executeWithoutResult(status -> stateMachine.transition(orderId, OrderStatus.CANCELLED)));
+        assertEquals(OrderStatus.PAID, conflict.getCurrent());
+        assertEquals(OrderStatus.CANCELLED, conflict.getTarget());
+    }
+
+    @Test
+    void racingTransitionsHaveExactlyOneWinner() throws Exception {
+        AtomicInteger won = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            OrderStatus target = i % 2 == 0 ? OrderStatus.PAID : OrderStatus.CANCELLED;
+            workers.add(pool.submit(() -> {
+                start.await();
+                try {
+                    tx.executeWithoutResult(status -> stateMachine.transition(orderId, target));
+                    won.incrementAndGet();
+                } catch (OrderStateConflictException e) {
+                    conflicts.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+
+        assertEquals(1, won.get());
+        assertEquals(THREADS - 1, conflicts.get());
+        Order order = tx.execute(status -> entityManager.find(Order.class, orderId));
+        assertEquals(1L, order.getVersion());
+    }
+}
@@ -0,0 +1,153 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.model.BidaTable.TableType;
+
+/**
+ * Bảng giá theo khung giờ / loại bàn. So sánh chi phí với cách cũ (BigDecimal chia theo giờ) là
+ * benchmark, chỉ chạy với {@code mvn test -Pbenchmark}.
+ */
+class PricingEngineTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PricingEngineTest.class);
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 200_000;
+
+    // Thứ Sáu 16/10/2026
+    private static final LocalDateTime FRIDAY_15H = LocalDateTime.of(2026, 10, 16, 15, 0);
+
+    private static final List<DayOfWeek> WEEKDAYS = List.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY,
+            DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY);
+
+    private static PricingRules rules(List<PricingRules.Rule> rules, int increment, long minimum, long roundTo) {
+        return new PricingRules(Map.of(TableType.STANDARD, 60_000L, TableType.VIP, 90_000L), rules, increment,
+                minimum, roundTo, RoundingMode.UP);
+    }
+
+    @Test
+    void flatRateBillsPerStartedMinute() {
+        PricingEngine.PriceTable table = PricingEngine.compile(rules(List.of(), 1, 0, 1));
+
+        assertEquals(61_000, table.fee(null, FRIDAY_15H, FRIDAY_15H.plusMinutes(61)));
+        assertEquals(61_000, table.fee(TableType.STANDARD, FRIDAY_15H, FRIDAY_15H.plusMinutes(60).plusSeconds(5)));
+        assertEquals(1_000, table.fee(TableType.STANDARD, FRIDAY_15H, FRIDAY_15H));
+        assertEquals(91_500, table.fee(TableType.VIP, FRIDAY_15H, FRIDAY_15H.plusMinutes(61)));
+    }
+
+    @Test
+    void rulesAreWalkedAcrossIntervals() {
+        PricingEngine.PriceTable table = PricingEngine.compile(rules(List.of(
+                new PricingRules.Rule("happy-hour", WEEKDAYS, "14:00", "17:00", List.of(TableType.STANDARD),
+                        45_000L, null),
+                new PricingRules.Rule("weekend", List.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY), "00:00", "24:00",
+                        null, null, 150),
+                new PricingRules.Rule("late-night", List.of(), "22:00", "02:00", null, null, 50)),
+                15, 20_000, 1_000));
+
+        // 15:00-18:00 thứ Sáu: 2h happy hour (45k) + 1h giá thường (60k)
+        assertEquals(150_000, table.fee(TableType.STANDARD, FRIDAY_15H, FRIDAY_15H.plusHours(3)));
+        // VIP không có happy hour
+        assertEquals(270_000, table.fee(TableType.VIP, FRIDAY_15H, FRIDAY_15H.plusHours(3)));
+        // 23:00 thứ Sáu -> 01:00 thứ Bảy: cả hai giờ là late-night (đè lên weekend): 30k + 45k
+        LocalDateTime friday23h = FRIDAY_15H.withHour(23);
+        assertEquals(75_000, table.fee(TableType.STANDARD, friday23h, friday23h.plusHours(2)));
+        // 01:50 -> 02:10 thứ Bảy, block 15 phút: tính tới 02:20 = 10 phút late-night (45k/h)
+        // + 20 phút weekend (90k/h) = 37.500, làm tròn lên 38.000
+        LocalDateTime saturday0150 = LocalDateTime.of(2026, 10, 17, 1, 50);
+        assertEquals(38_000, table.fee(TableType.STANDARD, saturday0150, saturday0150.plusMinutes(20)));
+        // 20 phút ngày thường: 2 block = 30 phút * 60k = 30k
+        assertEquals(30_000, table.fee(TableType.STANDARD, FRIDAY_15H.withHour(10), FRIDAY_15H.withHour(10).plusMinutes(20)));
+        // Chủ nhật 23:45 -> thứ Hai 00:15 (quay vòng qua đầu tuần): 15 phút 45k/h + 15 phút 30k/h
+        // = 18.750 -> 19.000, thấp hơn mức tối thiểu 20.000
+        LocalDateTime sunday2345 = LocalDateTime.of(2026, 10, 18, 23, 45);
+        assertEquals(20_000, table.fee(TableType.STANDARD, sunday2345, sunday2345.plusMinutes(30)));
+    }
+
+    @Test
+    void changedRulesFileIsReloaded(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("pricing.json");
+        Files.writeString(file, "{\"baseRatePerHour\":{\"STANDARD\":60000}}");
+        PricingEngine engine = new PricingEngine(new ObjectMapper(), new DefaultResourceLoader(),
+                file.toUri().toString());
+        assertEquals(60_000, engine.playFee(TableType.STANDARD, FRIDAY_15H, FRIDAY_15H.plusHours(1)));
+
+        Files.writeString(file, "{\"baseRatePerHour\":{\"STANDARD\":80000},\"minimumCharge\":100000}");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        engine.reloadIfChanged();
+        assertEquals(100_000, engine.playFee(TableType.STANDARD, FRIDAY_15H, FRIDAY_15H.plusHours(1)));
+
+        // File hỏng: giữ bảng giá đang chạy
+        Files.writeString(file, "{broken");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        engine.reloadIfChanged();
+        assertEquals(160_000, engine.playFee(TableType.STANDARD, FRIDAY_15H, FRIDAY_15H.plusHours(2)));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void intervalWalkIsCheaperThanBigDecimalDivision() {
+        PricingEngine.PriceTable table = PricingEngine.compile(rules(List.of(
+                new PricingRules.Rule("happy-hour", WEEKDAYS, "14:00", "17:00", List.of(TableType.STANDARD),
+                        45_000L, null)), 1, 0, 100));
+        LocalDateTime[] ends = new LocalDateTime[64];
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = FRIDAY_15H.plusMinutes(30 + i * 7L);
+        }
+
+        long legacy = measure(i -> legacyPlayFee(FRIDAY_15H, ends[i & 63]).longValue());
+        long engine = measure(i -> table.fee(TableType.STANDARD, FRIDAY_15H, ends[i & 63]));
+
+        logger.info("Play fee per bill: BigDecimal={} ns/op, interval walk={} ns/op", legacy, engine);
+        assertTrue(engine < legacy, "long interval walk should beat BigDecimal division");
+    }
+
+    // Cách cũ của BillService.calculatePlayFee: 60.000/giờ, chia BigDecimal 2 chữ số
+    private static BigDecimal legacyPlayFee(LocalDateTime start, LocalDateTime end) {
+        long minutes = java.time.Duration.between(start, end).toMinutes();
+        if (minutes <= 0)
+            minutes = 1;
+        BigDecimal pricePerHour = new BigDecimal("60000");
+        BigDecimal hours = BigDecimal.valueOf(minutes)
+                .divide(BigDecimal.valueOf(60), 2, RoundingMode.UP);
+        return pricePerHour.multiply(hours);
+    }
+
+    private interface Op {
+        long run(int i);
+    }
+
+    private static long measure(Op op) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += op.run(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += op.run(i);
+        }
+        long elapsed = (System.nanoTime() - start) / ITERATIONS;
+        assertTrue(sink > 0);
+        return elapsed;
+    }
+}
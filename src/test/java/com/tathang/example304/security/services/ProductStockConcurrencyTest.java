@@ -0,0 +1,117 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.model.Product;
+
+/**
+ * Nhiều nhân viên cùng gọi một sản phẩm: tổng số lượng bán ra không được vượt tồn kho.
+ */
+@TestPropertySource(properties = {
+        "app.orders.journal-dir=target/order-journal-stock",
+        "app.orders.write-behind-ms=3600000" })
+@Import({ OrderService.class, ActiveOrderRegistry.class, TableSessionStore.class, OrderStateMachine.class })
+class ProductStockConcurrencyTest extends CommittingJpaTest {
+
+    private static final int THREADS = 8;
+    private static final int STOCK = 200;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private TableSessionStore tableSessions;
+
+    @MockitoBean
+    private WebSocketService webSocketService;
+
+    @MockitoBean
+    private AuditLog auditLog;
+
+    private Long productId;
+    private final List<Long> orderIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        tx.executeWithoutResult(status -> {
+            productId = product("Heineken", 25_000, STOCK).getId();
+
+            // Mỗi thread một bàn/order riêng, cùng tranh một sản phẩm
+            for (int i = 0; i < THREADS; i++) {
+                orderIds.add(order(table(BidaTable.TableStatus.OCCUPIED), Order.OrderStatus.OPEN, 0).getId());
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        tx.executeWithoutResult(status -> {
+            entityManager.createQuery("DELETE FROM OrderItem").executeUpdate();
+            entityManager.createQuery("DELETE FROM Order").executeUpdate();
+            entityManager.createQuery("DELETE FROM BidaTable").executeUpdate();
+            entityManager.createQuery("DELETE FROM Product").executeUpdate();
+        });
+    }
+
+    @Test
+    void concurrentOrdersNeverOversell() throws Exception {
+        AtomicInteger sold = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (Long orderId : orderIds) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                // Mỗi thread gọi tới khi hết hàng, cộng thêm vài lần sau khi đã hết
+                int misses = 0;
+                while (misses < 5) {
+                    try {
+                        orderService.addItem(orderId, productId, 1);
+                        sold.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        misses++;
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+        tableSessions.flushAll();
+
+        Integer remaining = tx.execute(status -> entityManager.find(Product.class, productId).getStockQuantity());
+        Long lineTotal = tx.execute(status -> entityManager
+                .createQuery("SELECT COALESCE(SUM(oi.quantity), 0) FROM OrderItem oi", Long.class)
+                .getSingleResult());
+        Long orderTotals = tx.execute(status -> entityManager
+                .createQuery("SELECT SUM(o.totalAmount) FROM Order o", Long.class)
+                .getSingleResult());
+
+        assertEquals(STOCK, sold.get());
+        assertEquals(0, remaining);
+        assertEquals(STOCK, lineTotal);
+        assertEquals(25_000L * STOCK, orderTotals);
+    }
+}
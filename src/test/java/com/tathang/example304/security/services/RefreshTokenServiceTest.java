@@ -0,0 +1,103 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tathang.example304.model.RefreshToken;
+import com.tathang.example304.model.User;
+import com.tathang.example304.repository.RefreshTokenRepository;
+import com.tathang.example304.repository.UserRepository;
+import com.tathang.example304.security.jwt.AccessTokenDenylist;
+import com.tathang.example304.security.jwt.JwtUtils;
+import com.tathang.example304.security.jwt.TokenRefreshException;
+
+/**
+ * Rotation rollback (vd. lỗi DB khi ghi token mới): token cũ vẫn đổi được, token mới chưa commit
+ * không có trong index. Node không có token trong index thì tra DB khi đổi và khi đăng xuất.
+ */
+class RefreshTokenServiceTest extends CommittingJpaTest {
+
+    private static final String SECRET = "c2VjcmV0S2V5Rm9ySldUU2lnbmluZ0FuZFZlcmlmaWNhdGlvbk9mSldUVG9rZW5zMjAyNGV4YW1wbGUzMDRiYWNrZW5kYXBw";
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private UserSecurityVersionService securityVersions;
+    private JwtUtils jwtUtils;
+    private RefreshTokenService service;
+    private UserDetailsImpl principal;
+
+    @BeforeEach
+    void setUp() {
+        securityVersions = new UserSecurityVersionService(userRepository, 0);
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 900_000);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRefreshExpirationMs", 604_800_000);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheSize", 1024);
+        ReflectionTestUtils.setField(jwtUtils, "securityVersions", securityVersions);
+        jwtUtils.init();
+        service = node();
+
+        // Các test dùng chung database của context: chỉ tạo user một lần
+        User user = userRepository.findByUsername("staff01")
+                .orElseGet(() -> userRepository.save(new User("staff01", "staff01@bida.com", "x")));
+        principal = UserDetailsImpl.fromClaims(user.getId(), user.getUsername(), user.getEmail(),
+                List.of("ROLE_STAFF"));
+    }
+
+    @Test
+    void rolledBackRotationKeepsOldTokenUsable() {
+        String refreshToken = tx.execute(status -> service.issue(principal)).refreshToken();
+
+        String discarded = tx.execute(status -> {
+            String issued = service.rotate(refreshToken).refreshToken();
+            status.setRollbackOnly();
+            return issued;
+        });
+
+        assertThrows(TokenRefreshException.class, () -> tx.execute(status -> service.rotate(discarded)));
+        assertNotNull(tx.execute(status -> service.rotate(refreshToken)).refreshToken());
+        // Đã đổi thật sự: dùng lại là bị phát hiện
+        assertThrows(TokenRefreshException.class, () -> tx.execute(status -> service.rotate(refreshToken)));
+    }
+
+    @Test
+    void tokensIssuedOnAnotherNodeRotateAndRevokeThroughTheDatabase() {
+        RefreshTokenService.IssuedTokens issued = tx.execute(status -> service.issue(principal));
+
+        // Node B khởi động trước khi token được phát hành: index không có token / family này
+        RefreshTokenService nodeB = node();
+        String rotated = tx.execute(status -> nodeB.rotate(issued.refreshToken())).refreshToken();
+
+        // Đăng xuất ở node C cũng không có family trong index: vẫn thu hồi trong DB
+        RefreshTokenService nodeC = node();
+        tx.executeWithoutResult(status -> nodeC.revoke(rotated, null));
+
+        String familyId = jwtUtils.verifyRefreshToken(rotated).orElseThrow().getFamilyId();
+        List<RefreshToken> family = refreshTokenRepository.findAll().stream()
+                .filter(row -> row.getFamilyId().equals(familyId))
+                .toList();
+        assertEquals(2, family.size());
+        assertTrue(family.stream().allMatch(RefreshToken::isRevoked));
+        assertThrows(TokenRefreshException.class, () -> tx.execute(status -> service.rotate(rotated)));
+        assertThrows(TokenRefreshException.class, () -> tx.execute(status -> nodeB.rotate(rotated)));
+    }
+
+    private RefreshTokenService node() {
+        return new RefreshTokenService(refreshTokenRepository, userRepository, jwtUtils,
+                new AccessTokenDenylist(1024, 900_000), securityVersions);
+    }
+}
@@ -0,0 +1,93 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.DailyRevenue;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.repository.BillRepository;
+import com.tathang.example304.repository.DailyRevenueRepository;
+
+/**
+ * Bảng doanh thu theo ngày: cộng/trừ khi hóa đơn đổi trạng thái khớp với dựng lại từ
+ * {@code bills}, và ngày hôm nay được đọc trực tiếp.
+ */
+class RevenueRollupServiceTest extends CommittingJpaTest {
+
+    @Autowired
+    private BillRepository billRepository;
+
+    @Autowired
+    private DailyRevenueRepository rollupRepository;
+
+    @Test
+    void incrementalUpdatesMatchBackfillAndTodayIsReadLive() {
+        LocalDate today = LocalDate.now();
+        LocalDate day = today.minusDays(3);
+        RevenueRollupService service = new RevenueRollupService(rollupRepository, billRepository, transactionManager);
+
+        Map<String, Long> ids = tx.execute(status -> {
+            BidaTable table = table(BidaTable.TableStatus.FREE);
+            return Map.of(
+                    "a", bill(table, Bill.PaymentMethod.CASH, Bill.PaymentStatus.PENDING, 75_000, 30_000, day.atTime(10, 0)),
+                    "b", bill(table, Bill.PaymentMethod.MOMO, Bill.PaymentStatus.PENDING, 50_000, 20_000, day.atTime(21, 0)),
+                    "c", bill(table, Bill.PaymentMethod.CASH, Bill.PaymentStatus.PENDING, 40_000, 40_000, day.atTime(22, 0)),
+                    // Hôm nay, không đi qua rollup: phải được đọc trực tiếp
+                    "d", bill(table, Bill.PaymentMethod.CASH, Bill.PaymentStatus.PAID, 10_000, 10_000, today.atStartOfDay()));
+        });
+
+        setStatus(service, ids.get("a"), Bill.PaymentStatus.PAID);
+        setStatus(service, ids.get("b"), Bill.PaymentStatus.PAID);
+        setStatus(service, ids.get("c"), Bill.PaymentStatus.PAID);
+        // Hủy sau khi đã PAID: trừ lại
+        setStatus(service, ids.get("c"), Bill.PaymentStatus.CANCELLED);
+        // Gọi lại cùng trạng thái: không cộng lần nữa
+        setStatus(service, ids.get("a"), Bill.PaymentStatus.PAID);
+
+        Map<String, String> incremental = rows(day);
+        assertEquals(Map.of("CASH", "1/75000/30000", "MOMO", "1/50000/20000"), incremental);
+
+        assertEquals(Map.of(day, 125_000L, today, 10_000L), service.dailyRevenue(day, today));
+        assertEquals(Map.of("CASH", 75_000L, "MOMO", 50_000L), service.revenueByPaymentMethod(day));
+        assertEquals(135_000L, service.totalRevenue());
+
+        // Dựng lại từ bills: cùng kết quả; hôm nay đọc trực tiếp nên không dựng lại
+        assertEquals(1, service.backfill(day, day));
+        assertEquals(incremental, rows(day));
+        assertEquals(3, service.backfill(day, today));
+        assertEquals(incremental, rows(day));
+        assertEquals(Map.of(), rows(today));
+        assertEquals(Map.of(day, 125_000L, today, 10_000L), service.dailyRevenue(day, today));
+        assertEquals(Map.of("CASH", 75_000L, "MOMO", 50_000L), service.revenueByPaymentMethod(day));
+    }
+
+    private void setStatus(RevenueRollupService service, Long billId, Bill.PaymentStatus status) {
+        tx.executeWithoutResult(s -> {
+            Bill bill = billRepository.findById(billId).orElseThrow();
+            RevenueRollupService.Contribution before = RevenueRollupService.Contribution.of(bill);
+            bill.setPaymentStatus(status);
+            service.billChanged(before, bill);
+        });
+    }
+
+    private Map<String, String> rows(LocalDate day) {
+        return rollupRepository.findByRevenueDateBetweenOrderByRevenueDate(day, day).stream()
+                .filter(r -> r.getBillCount() != 0)
+                .collect(Collectors.toMap(DailyRevenue::getPaymentMethod,
+                        r -> r.getBillCount() + "/" + r.getRevenue().minor() + "/" + r.getPlayFee().minor()));
+    }
+
+    private Long bill(BidaTable table, Bill.PaymentMethod method, Bill.PaymentStatus status, long total,
+            long playFee, LocalDateTime issuedAt) {
+        return bill(order(table, Order.OrderStatus.PAID, total), method, status, playFee, issuedAt).getId();
+    }
+}
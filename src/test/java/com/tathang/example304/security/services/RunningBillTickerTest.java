@@ -0,0 +1,64 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tathang.example304.dto.RunningOrderDTO;
+import com.tathang.example304.model.BidaTable.TableType;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.repository.OrderRepository;
+
+class RunningBillTickerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 10, 16, 15, 0);
+
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+    private final TableSessionStore tableSessions = mock(TableSessionStore.class);
+    private final WebSocketService webSocketService = mock(WebSocketService.class);
+    private final RunningBillTicker ticker = new RunningBillTicker(orderRepository, tableSessions,
+            new PricingEngine(new ObjectMapper(), new DefaultResourceLoader(), "classpath:pricing.json"),
+            webSocketService);
+
+    @Test
+    void sweepPricesEveryOpenTableAndPrefersLiveSessionTotals() {
+        when(orderRepository.findRunningOrders()).thenReturn(List.of(
+                new RunningOrderDTO(10L, 1L, TableType.STANDARD, NOW.minusMinutes(90), Money.of(25_000)),
+                new RunningOrderDTO(11L, 2L, TableType.VIP, NOW.minusMinutes(30), Money.ZERO),
+                new RunningOrderDTO(12L, 3L, TableType.STANDARD, NOW.minusMinutes(10), Money.ZERO)));
+        when(tableSessions.peek(10L)).thenReturn(Optional.empty());
+        when(tableSessions.peek(11L)).thenReturn(Optional.of(
+                new TableSessionStore.LiveState(Order.OrderStatus.OPEN, 40_000)));
+        when(tableSessions.peek(12L)).thenReturn(Optional.of(
+                new TableSessionStore.LiveState(Order.OrderStatus.WAITING_PAYMENT, 0)));
+
+        WebSocketService.RunningBillsMessage message = ticker.sweep(NOW);
+
+        // pricing.json: 60.000đ/giờ cho mọi loại bàn
+        assertEquals(List.of(
+                new WebSocketService.RunningBill(1L, 10L, 90, 90_000, 25_000, 115_000),
+                new WebSocketService.RunningBill(2L, 11L, 30, 30_000, 40_000, 70_000)), message.bills());
+    }
+
+    @Test
+    void emptyBatchIsSentOnceUntilTablesAreOccupiedAgain() {
+        when(orderRepository.findRunningOrders()).thenReturn(List.of());
+
+        ticker.tick();
+        ticker.tick();
+
+        verify(webSocketService, times(1)).notifyRunningBills(any());
+    }
+}
@@ -0,0 +1,153 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.tathang.example304.dto.SettlementDTO;
+import com.tathang.example304.dto.SettlementDTO.IssueType;
+import com.tathang.example304.dto.SettlementDTO.Totals;
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Bill;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.repository.DailySettlementRepository;
+
+/**
+ * Chốt sổ một ngày dựng từ luồng thật (mở bàn, gọi món, lập hóa đơn, thanh toán): tổng theo
+ * phương thức / nhân viên / bàn / giờ, hóa đơn chưa thanh toán tách riêng, các điểm lệch, và
+ * bản chốt không đổi khi chạy lại.
+ */
+@TestPropertySource(properties = {
+        "app.orders.journal-dir=target/order-journal-settlement",
+        "app.orders.write-behind-ms=3600000" })
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({ SettlementService.class, BillService.class, OrderService.class, ActiveOrderRegistry.class,
+        TableSessionStore.class, OrderStateMachine.class, PricingEngine.class, RevenueRollupService.class })
+class SettlementServiceTest extends CommittingJpaTest {
+
+    // pricing.json: 60.000đ/giờ, block 1 phút -> lượt chơi dưới 1 phút tính 1.000đ
+    private static final long PLAY_FEE = 1_000;
+
+    @Autowired
+    private SettlementService settlementService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private BillService billService;
+
+    @Autowired
+    private DailySettlementRepository settlementRepository;
+
+    @MockitoBean
+    private WebSocketService webSocketService;
+
+    @MockitoBean
+    private AuditLog auditLog;
+
+    @Test
+    void settlesDayInOnePassAndFlagsInconsistencies() {
+        LocalDate day = LocalDate.now().minusDays(1);
+        Map<String, Long> setup = tx.execute(status -> Map.of("sting", product("Sting", 15_000, 100).getId(),
+                "t1", table(), "t2", table(), "t3", table(), "t4", table(), "t5", table()));
+        Long sting = setup.get("sting");
+
+        // Khớp: 3 x 15.000 + tiền giờ, trả tiền mặt
+        Bill a = play(setup.get("t1"), 7L, sting, 3, Bill.PaymentMethod.CASH);
+        billService.confirmCashPayment(a.getId());
+
+        // Trả MoMo, sau đó tổng order bị sửa tay: lệch với tiền món + tiền giờ
+        Bill b = play(setup.get("t2"), 8L, sting, 1, Bill.PaymentMethod.MOMO);
+        billService.confirmMomoPayment(b.getId());
+
+        // Đóng order không qua hóa đơn
+        Long c = orderService.openOrder(setup.get("t3"), 7L).getId();
+        orderService.closeOrder(c);
+
+        // Đã lập hóa đơn nhưng khách chưa trả: order PAID, hóa đơn PENDING -> điểm lệch (khách bỏ về?)
+        Bill d = play(setup.get("t4"), 8L, sting, 2, Bill.PaymentMethod.CASH);
+
+        // Thanh toán hôm nay: không thuộc ngày được chốt
+        Bill e = play(setup.get("t5"), 7L, sting, 1, Bill.PaymentMethod.CASH);
+        billService.confirmCashPayment(e.getId());
+
+        // Luồng thật chạy với giờ hiện tại: dời các hóa đơn / order của ngày được chốt về hôm qua
+        tx.executeWithoutResult(status -> {
+            moveBill(a.getId(), day.atTime(10, 15));
+            moveBill(b.getId(), day.atTime(21, 40));
+            moveBill(d.getId(), day.atTime(23, 0));
+            entityManager.createQuery("UPDATE Order o SET o.endTime = :t WHERE o.id = :id")
+                    .setParameter("t", day.atTime(22, 0)).setParameter("id", c).executeUpdate();
+            entityManager.createQuery("UPDATE Order o SET o.totalAmount = :total WHERE o.id = :id")
+                    .setParameter("total", Money.of(50_000)).setParameter("id", b.getOrder().getId())
+                    .executeUpdate();
+        });
+
+        SettlementDTO settlement = settlementService.settle(day);
+
+        long aTotal = 3 * 15_000 + PLAY_FEE;
+        long bTotal = 15_000 + PLAY_FEE;
+        assertEquals(3, settlement.billCount());
+        assertEquals(2, settlement.paidBillCount());
+        assertEquals(Money.of(aTotal + bTotal), settlement.revenue());
+        assertEquals(Money.of(2 * PLAY_FEE), settlement.playFee());
+        assertEquals(Map.of("CASH", new Totals(1, Money.of(aTotal)), "MOMO", new Totals(1, Money.of(bTotal))),
+                settlement.breakdown().byPaymentMethod());
+        assertEquals(Map.of(7L, new Totals(1, Money.of(aTotal)), 8L, new Totals(1, Money.of(bTotal))),
+                settlement.breakdown().byEmployee());
+        assertEquals(Map.of(setup.get("t1"), new Totals(1, Money.of(aTotal)),
+                setup.get("t2"), new Totals(1, Money.of(bTotal))), settlement.breakdown().byTable());
+        assertEquals(new Totals(1, Money.of(aTotal)), settlement.breakdown().byHour().get(10));
+        assertEquals(new Totals(1, Money.of(bTotal)), settlement.breakdown().byHour().get(21));
+        assertEquals(new Totals(0, Money.ZERO), settlement.breakdown().byHour().get(23));
+        assertEquals(Map.of("PENDING", new Totals(1, Money.of(2 * 15_000 + PLAY_FEE))),
+                settlement.breakdown().unpaidByStatus());
+
+        assertEquals(Set.of(IssueType.BILL_ORDER_TOTAL_MISMATCH + ":" + b.getOrder().getId(),
+                IssueType.ORDER_ITEMS_TOTAL_MISMATCH + ":" + b.getOrder().getId(),
+                IssueType.PAID_ORDER_WITHOUT_BILL + ":" + c,
+                IssueType.PAID_ORDER_UNPAID_BILL + ":" + d.getOrder().getId()),
+                settlement.inconsistencies().stream().map(i -> i.type() + ":" + i.orderId())
+                        .collect(Collectors.toSet()));
+        assertEquals(4, settlement.inconsistencyCount());
+
+        // Chạy lại: trả bản đã chốt, không ghi thêm
+        assertEquals(settlement, settlementService.settle(day));
+        assertEquals(1, settlementRepository.count());
+    }
+
+    @Test
+    void refusesToSettleADayThatIsNotOver() {
+        assertThrows(RuntimeException.class, () -> settlementService.settle(LocalDate.now()));
+        assertEquals(0, settlementRepository.count());
+    }
+
+    private Long table() {
+        return table(BidaTable.TableStatus.FREE).getId();
+    }
+
+    private Bill play(Long tableId, Long employeeId, Long productId, int quantity, Bill.PaymentMethod method) {
+        Long orderId = orderService.openOrder(tableId, employeeId).getId();
+        orderService.addItemToOrder(orderId, productId, quantity);
+        return billService.createBill(orderId, method);
+    }
+
+    private void moveBill(Long billId, LocalDateTime issuedAt) {
+        entityManager.createQuery("UPDATE Bill b SET b.issuedAt = :t WHERE b.id = :id")
+                .setParameter("t", issuedAt).setParameter("id", billId).executeUpdate();
+    }
+}
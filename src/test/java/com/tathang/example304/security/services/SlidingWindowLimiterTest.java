@@ -0,0 +1,63 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowLimiterTest {
+
+    @Test
+    void concurrentBurstNeverExceedsLimit() throws Exception {
+        SlidingWindowLimiter limiter = new SlidingWindowLimiter(5, 60_000, 1000);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 200; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (limiter.tryAcquire("staff01")) {
+                    granted.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(5, granted.get());
+        assertTrue(limiter.isBlocked("staff01"));
+        limiter.reset("staff01");
+        assertFalse(limiter.isBlocked("staff01"));
+    }
+
+    @Test
+    void windowSlidesAndIdleKeysAreEvicted() {
+        SlidingWindowLimiter limiter = new SlidingWindowLimiter(2, 1_000, 16);
+        long t = 10_000;
+        assertTrue(limiter.tryAcquire("a", t));
+        assertTrue(limiter.tryAcquire("a", t));
+        assertFalse(limiter.tryAcquire("a", t + 999));
+        // Nửa cửa sổ sau: cửa sổ trước còn trọng số 0.5 -> 2 * 0.5 = 1 < 2
+        assertTrue(limiter.tryAcquire("a", t + 1_500));
+        assertFalse(limiter.tryAcquire("a", t + 1_500));
+
+        for (int i = 0; i < 1_000; i++) {
+            limiter.tryAcquire("ip-" + i, t + 5_000 + i * 10L);
+        }
+        assertTrue(limiter.size() <= 16);
+        limiter.evict(t + 60_000);
+        assertEquals(0, limiter.size());
+    }
+}
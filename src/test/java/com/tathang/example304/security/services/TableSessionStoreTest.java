@@ -0,0 +1,142 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.tathang.example304.model.BidaTable;
+import com.tathang.example304.model.Money;
+import com.tathang.example304.model.Order;
+import com.tathang.example304.model.OrderItem;
+import com.tathang.example304.model.Product;
+import com.tathang.example304.repository.OrderItemRepository;
+import com.tathang.example304.repository.OrderRepository;
+import com.tathang.example304.repository.ProductRepository;
+
+/**
+ * Session bộ nhớ của order đang chơi: phục hồi từ journal sau crash, đặt lại khi transaction của
+ * {@code close()} rollback, và bỏ session cũ (trả kho) khi order đã được chốt qua đường khác.
+ */
+class TableSessionStoreTest extends CommittingJpaTest {
+
+    private static final long PRICE = 15_000;
+
+    @TempDir
+    Path journalDir;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private Long orderId;
+    private Long productId;
+    private Long itemId;
+
+    // Order đang chơi, 2 x 15.000 đã ghi xuống DB, kho còn 98
+    @BeforeEach
+    void setUp() {
+        tx.executeWithoutResult(status -> {
+            Product product = product("Sting", PRICE, 98);
+            Order order = order(table(BidaTable.TableStatus.OCCUPIED), Order.OrderStatus.OPEN, 2 * PRICE);
+            OrderItem item = new OrderItem(order, product, 2, Money.of(PRICE));
+            entityManager.persist(item);
+            orderId = order.getId();
+            productId = product.getId();
+            itemId = item.getId();
+        });
+    }
+
+    @Test
+    void journalIsReplayedAfterCrash() throws IOException {
+        setQuantity(store(), 5);
+
+        // Tiến trình chết trước lượt write-behind: tiến trình mới đọc lại journal
+        store().recover();
+
+        assertEquals(5, quantity());
+        assertEquals(Money.of(5 * PRICE), total());
+        assertEquals(95, stock());
+        try (Stream<Path> files = Files.list(journalDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void rolledBackCloseReinstatesSession() {
+        TableSessionStore store = store();
+        setQuantity(store, 5);
+
+        tx.executeWithoutResult(status -> {
+            store.close(orderId);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(2, quantity());
+        assertTrue(store.peek(orderId).isPresent());
+        assertEquals(1, store.pendingCount());
+
+        store.flushAll();
+        assertEquals(5, quantity());
+        assertEquals(Money.of(5 * PRICE), total());
+    }
+
+    @Test
+    void staleSessionIsDroppedAndStockReturned() {
+        TableSessionStore store = store();
+        setQuantity(store, 5);
+
+        // Order được thanh toán qua đường khác trước lượt write-behind
+        tx.executeWithoutResult(status -> entityManager
+                .createQuery("UPDATE Order o SET o.status = :status WHERE o.id = :id")
+                .setParameter("status", Order.OrderStatus.PAID).setParameter("id", orderId).executeUpdate());
+        store.flushAll();
+
+        assertEquals(2, quantity());
+        assertEquals(Money.of(2 * PRICE), total());
+        assertEquals(98, stock());
+        assertTrue(store.peek(orderId).isEmpty());
+    }
+
+    private TableSessionStore store() {
+        return new TableSessionStore(orderRepository, orderItemRepository, productRepository, transactionManager,
+                journalDir.toString(), false, 4);
+    }
+
+    // Như OrderService: trừ kho đồng bộ, số lượng / tổng tiền ghi sau
+    private void setQuantity(TableSessionStore store, int quantity) {
+        store.mutate(orderId, session -> {
+            TableSession.Line line = session.lineById(itemId);
+            int diff = quantity - line.quantity;
+            tx.executeWithoutResult(status -> productRepository.decrementStock(productId, diff));
+            session.setQuantity(line, quantity);
+            session.addTotal(diff * PRICE);
+            return null;
+        });
+    }
+
+    private int quantity() {
+        return tx.execute(status -> entityManager.find(OrderItem.class, itemId).getQuantity());
+    }
+
+    private Money total() {
+        return tx.execute(status -> entityManager.find(Order.class, orderId).getTotalAmount());
+    }
+
+    private int stock() {
+        return tx.execute(status -> entityManager.find(Product.class, productId).getStockQuantity());
+    }
+}
@@ -0,0 +1,46 @@
+package com.tathang.example304.security.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.tathang.example304.model.User;
+import com.tathang.example304.repository.UserRepository;
+
+/**
+ * Security version nằm trong DB: token phát hành trước khi restart (hoặc ở node khác) vẫn khớp,
+ * còn bump ở một node làm token cũ hết khớp ở mọi node.
+ */
+class UserSecurityVersionServiceTest extends CommittingJpaTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void versionSurvivesRestartAndIsSharedAcrossNodes() {
+        Long userId = userRepository.save(new User("staff01", "staff01@bida.com", "x")).getId();
+
+        UserSecurityVersionService nodeA = new UserSecurityVersionService(userRepository, 0);
+        long issued = nodeA.current(userId);
+
+        // Restart / node khác: cùng version
+        UserSecurityVersionService nodeB = new UserSecurityVersionService(userRepository, 0);
+        assertTrue(nodeB.isCurrent(userId, issued));
+
+        tx.executeWithoutResult(status -> nodeA.bump(userId));
+        assertFalse(nodeA.isCurrent(userId, issued));
+        assertFalse(nodeB.isCurrent(userId, issued));
+
+        // Lưu lại entity cũ không ghi đè version
+        User user = userRepository.findById(userId).orElseThrow();
+        user.setFullName("Staff 01");
+        userRepository.save(user);
+        assertEquals(issued + 1, nodeB.current(userId));
+
+        userRepository.deleteById(userId);
+        assertFalse(nodeB.isCurrent(userId, nodeB.current(userId)));
+    }
+}